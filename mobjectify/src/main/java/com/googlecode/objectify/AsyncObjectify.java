@@ -3,6 +3,7 @@ package com.googlecode.objectify;
 import java.util.Map;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.googlecode.objectify.util.LongMap;
 
 /**
  * <p>Provides asynchronous get/put/delete methods.  Behavior is identical to the synchronous
@@ -30,6 +31,11 @@ public interface AsyncObjectify
 	 */
 	<T> Result<Map<Key<T>, T>> get(Iterable<? extends Key<? extends T>> keys);
 	
+	/**
+	 * @see Objectify#get(LoadProfile, Iterable)
+	 */
+	<T> Result<Map<Key<T>, T>> get(LoadProfile profile, Iterable<? extends Key<? extends T>> keys);
+	
 	/**
 	 * Note that the Result.get() method will throw NotFoundException if entity wasn't found
 	 * @see Objectify#get(Key)
@@ -53,6 +59,11 @@ public interface AsyncObjectify
 	 */
 	<S, T> Result<Map<S, T>> get(Class<? extends T> clazz, Iterable<S> idsOrNames);
 	
+	/**
+	 * @see Objectify#get(Class, long[])
+	 */
+	<T> Result<LongMap<T>> get(Class<? extends T> clazz, long[] ids);
+	
 	/**
 	 * @see Objectify#get(Class, Object...)
 	 */
@@ -15,6 +15,15 @@ public class Key<T> implements Serializable, Comparable<Key<?>>
 {
 	private static final long serialVersionUID = 2L;
 
+	/** Kinds are resolved from annotations once per class */
+	private static final ClassValue<String> kinds = new ClassValue<String>() {
+		@Override
+		protected String computeValue(Class<?> type)
+		{
+			return resolveKind(type);
+		}
+	};
+
 	/** */
 	protected com.google.appengine.api.datastore.Key raw;
 	
@@ -56,6 +65,13 @@ public class Key<T> implements Serializable, Comparable<Key<?>>
 		this.parent = parent;
 	}
 	
+	/** Wrap a raw Key whose parent wrapper is already known */
+	Key(com.google.appengine.api.datastore.Key raw, Key<?> parent)
+	{
+		this.raw = raw;
+		this.parent = parent;
+	}
+	
 	/**
 	 * @return the raw datastore version of this key
 	 */
@@ -184,9 +200,19 @@ public class Key<T> implements Serializable, Comparable<Key<?>>
 	 * <li>If the class has @Subclass, the kind is drawn from the first parent class that has an @Entity annotation.</li>
 	 * </ul>
 	 * 
+	 * <p>The answer is cached per class.</p>
+	 * 
 	 * @throws IllegalArgumentException if a kind cannot be determined (ie @Subclass with invalid hierarchy).
 	 */
 	public static String getKind(Class<?> clazz)
+	{
+		return kinds.get(clazz);
+	}
+	
+	/**
+	 * The uncached implementation of getKind()
+	 */
+	private static String resolveKind(Class<?> clazz)
 	{
 		// Check this one directly
 		String kind = getKindHere(clazz);
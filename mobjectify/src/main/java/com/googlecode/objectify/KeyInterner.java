@@ -0,0 +1,143 @@
+package com.googlecode.objectify;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Canonicalizes typed keys, so that a large result set or an in-memory index of keys
+ * holds one Key instance for each distinct key instead of many equal copies.  Interned
+ * keys also share their parent wrappers, which matters for ancestor-heavy models where
+ * thousands of entities point at the same handful of parents.</p>
+ *
+ * <p>The interner is a fixed-size table of weak references; it never grows, and it never
+ * keeps a key alive by itself.  It is lossy rather than exact: each key may live in one of
+ * two slots chosen by its hash, and a newcomer simply replaces an older key if both are
+ * taken.  Equal keys may therefore occasionally stay distinct, which costs memory but
+ * never correctness.  Instances are safe to share between threads.</p>
+ *
+ * <p>Enable it for a factory with {@code getConversions().setKeyInterner()}.  Keys produced
+ * by gets, puts, keys-only queries, @Parent fields, Key fields, and ObjectifyFactory.getKey()
+ * (which feeds the session cache) are then interned.</p>
+ */
+public class KeyInterner
+{
+	/** */
+	final AtomicReferenceArray<WeakReference<Key<?>>> slots;
+
+	/** */
+	final int mask;
+
+	/**
+	 * @param capacity is the number of keys which can be held; rounded up to a power of two
+	 */
+	public KeyInterner(int capacity)
+	{
+		if (capacity < 2)
+			throw new IllegalArgumentException("Capacity must be at least 2");
+
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		if (size <= 0)
+			throw new IllegalArgumentException("Capacity too large: " + capacity);
+
+		this.slots = new AtomicReferenceArray<WeakReference<Key<?>>>(size);
+		this.mask = size - 1;
+	}
+
+	/** @return the number of keys which can be held */
+	public int getCapacity()
+	{
+		return this.slots.length();
+	}
+
+	/**
+	 * @return the canonical instance equal to the key; the key itself if there wasn't one.
+	 *  Null stays null.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Key<T> intern(Key<T> key)
+	{
+		if (key == null)
+			return null;
+
+		int first = this.slotFor(key.raw);
+		Key<?> found = this.find(first, key.raw);
+		if (found != null)
+			return (Key<T>)found;
+
+		this.canonicalizeParent(key);
+		this.store(first, key);
+
+		return key;
+	}
+
+	/**
+	 * Wraps a raw key, without allocating a new wrapper if an equal key is already interned.
+	 *
+	 * @return the canonical typed key for the raw key.  Null stays null.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Key<T> intern(com.google.appengine.api.datastore.Key raw)
+	{
+		if (raw == null)
+			return null;
+
+		int first = this.slotFor(raw);
+		Key<?> found = this.find(first, raw);
+		if (found != null)
+			return (Key<T>)found;
+
+		Key<T> key = new Key<T>(raw);
+		this.canonicalizeParent(key);
+		this.store(first, key);
+
+		return key;
+	}
+
+	/**
+	 * Makes sure the key's parent wrapper is the interned one, so getParent() neither
+	 * allocates nor returns a duplicate.
+	 */
+	private void canonicalizeParent(Key<?> key)
+	{
+		if (key.parent != null)
+			key.parent = this.intern(key.parent);
+		else if (key.raw.getParent() != null)
+			key.parent = this.intern(key.raw.getParent());
+	}
+
+	/** @return the interned key equal to raw in either of its slots, or null */
+	private Key<?> find(int first, com.google.appengine.api.datastore.Key raw)
+	{
+		Key<?> key = this.get(first);
+		if (key != null && key.raw.equals(raw))
+			return key;
+
+		key = this.get(first ^ 1);
+		if (key != null && key.raw.equals(raw))
+			return key;
+
+		return null;
+	}
+
+	/** Puts the key in whichever of its slots is free, or the first one if neither is */
+	private void store(int first, Key<?> key)
+	{
+		int slot = (this.get(first) == null || this.get(first ^ 1) != null) ? first : first ^ 1;
+		this.slots.lazySet(slot, new WeakReference<Key<?>>(key));
+	}
+
+	/** @return the key in the slot, or null if it's empty or has been collected */
+	private Key<?> get(int slot)
+	{
+		WeakReference<Key<?>> ref = this.slots.get(slot);
+		return ref == null ? null : ref.get();
+	}
+
+	/** */
+	private int slotFor(com.google.appengine.api.datastore.Key raw)
+	{
+		// Spread the bits; raw key hashes are built from strings and small ids
+		int h = raw.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & this.mask;
+	}
+}
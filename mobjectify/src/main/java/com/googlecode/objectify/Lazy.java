@@ -0,0 +1,92 @@
+package com.googlecode.objectify;
+
+import java.io.Serializable;
+
+/**
+ * <p>A field type which defers conversion of its datastore value until the first time
+ * it is needed.  Declare a field as {@code Lazy<Text>} or {@code @Serialized Lazy<MyGraph>}
+ * (or any other type you would normally load) and Objectify will store the raw datastore
+ * value on load, converting or deserializing it only when {@code get()} is called.</p>
+ * 
+ * <p>This is worthwhile for large Text, Blob, and {@code @Serialized} properties that
+ * most code paths never look at.  If an entity is saved without its lazy value ever having
+ * been touched, the raw datastore value is written back as-is.</p>
+ * 
+ * <p>Lazy fields cannot be {@code @Embedded}.  A null property is loaded as a Lazy containing
+ * null, and both a null Lazy and a Lazy containing null are saved as a null property.</p>
+ * 
+ * <p>Java serialization of a Lazy forces it to load.</p>
+ */
+public class Lazy<T> implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+	
+	/** */
+	protected T value;
+	
+	/** Creates a Lazy containing null */
+	public Lazy()
+	{
+	}
+	
+	/** Creates a Lazy containing the value */
+	public Lazy(T value)
+	{
+		this.value = value;
+	}
+	
+	/**
+	 * @return the value, converting it from the datastore value if this is the first access
+	 */
+	public T get()
+	{
+		return this.value;
+	}
+	
+	/**
+	 * Replaces the value.  The datastore value we loaded (if any) is discarded.
+	 */
+	public void set(T value)
+	{
+		this.value = value;
+	}
+	
+	/**
+	 * @return true if get() will not need to do any conversion work
+	 */
+	public boolean isLoaded()
+	{
+		return true;
+	}
+	
+	/** Compares the contents, loading them if necessary */
+	@Override
+	public boolean equals(Object other)
+	{
+		if (this == other)
+			return true;
+		
+		if (!(other instanceof Lazy<?>))
+			return false;
+		
+		Object mine = this.get();
+		Object theirs = ((Lazy<?>)other).get();
+		
+		return (mine == null) ? theirs == null : mine.equals(theirs);
+	}
+	
+	/** */
+	@Override
+	public int hashCode()
+	{
+		Object mine = this.get();
+		return (mine == null) ? 0 : mine.hashCode();
+	}
+	
+	/** Does not force a load */
+	@Override
+	public String toString()
+	{
+		return this.isLoaded() ? "Lazy(" + this.get() + ")" : "Lazy(not loaded)";
+	}
+}
@@ -0,0 +1,96 @@
+package com.googlecode.objectify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * <p>Names the subset of an entity's fields that should be loaded.  Pass one to
+ * {@code Objectify.get(LoadProfile, Iterable)} or {@code Query.profile()} when you only need
+ * a few fields of a wide entity; properties outside the profile are not converted at all,
+ * embedded collections outside the profile are not reconstructed, and {@code @PostLoad}
+ * methods are not called (they would see a half-loaded object).  Fields outside the
+ * profile keep whatever value the no-arg constructor gave them.  The key fields
+ * ({@code @Id} and {@code @Parent}) are always set.</p>
+ *
+ * <p>Names are field paths, using the java field names: {@code "name"}, {@code "address"}
+ * (all of an embedded field), or {@code "address.city"} (part of it).  A field's
+ * {@code @AlsoLoad} names are loaded into it as usual; an {@code @AlsoLoad} method is
+ * included if the profile names its property.  Names which don't match anything in a
+ * particular class are ignored, so a profile can be used across a polymorphic hierarchy.</p>
+ *
+ * <p>A partially loaded object can't be saved; the fields which were not loaded would overwrite
+ * the real data, so the Objectify which loaded it throws IllegalArgumentException from put().
+ * Don't copy its fields into an object which can be put, either.  Partially loaded objects
+ * also bypass the session cache.</p>
+ *
+ * <p>LoadProfiles are immutable and cheap to compare; keep the ones you use in constants.  Each
+ * entity class remembers how to load the first 64 profiles it sees, and works it out again
+ * on every load for any others.</p>
+ */
+public class LoadProfile
+{
+	/** */
+	private final SortedSet<String> paths;
+
+	/**
+	 * @param fieldPaths are the "blah.blah" field paths to load
+	 */
+	public LoadProfile(String... fieldPaths)
+	{
+		if (fieldPaths.length == 0)
+			throw new IllegalArgumentException("A LoadProfile needs at least one field");
+
+		this.paths = Collections.unmodifiableSortedSet(new TreeSet<String>(Arrays.asList(fieldPaths)));
+	}
+
+	/** @return the field paths in this profile */
+	public SortedSet<String> getPaths()
+	{
+		return this.paths;
+	}
+
+	/**
+	 * @param path is a "blah.blah" field or property path
+	 * @return true if the path is named by this profile, is contained in something named by
+	 *  this profile, or contains something named by this profile.
+	 */
+	public boolean matches(String path)
+	{
+		for (String mine: this.paths)
+		{
+			if (path.equals(mine))
+				return true;
+
+			if (path.startsWith(mine) && path.length() > mine.length() && path.charAt(mine.length()) == '.')
+				return true;
+
+			if (mine.startsWith(path) && mine.length() > path.length() && mine.charAt(path.length()) == '.')
+				return true;
+		}
+
+		return false;
+	}
+
+	/** */
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof LoadProfile && this.paths.equals(((LoadProfile)other).paths);
+	}
+
+	/** */
+	@Override
+	public int hashCode()
+	{
+		return this.paths.hashCode();
+	}
+
+	/** */
+	@Override
+	public String toString()
+	{
+		return "LoadProfile" + this.paths;
+	}
+}
@@ -4,6 +4,7 @@ import java.util.Map;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Transaction;
+import com.googlecode.objectify.util.LongMap;
 
 /**
  * <p>This is the main "business end" of Objectify.  It lets you get(), put(), delete(),
@@ -35,6 +36,15 @@ public interface Objectify
 	 */
 	<T> Map<Key<T>, T> get(Iterable<? extends Key<? extends T>> keys);
 	
+	/**
+	 * <p>Just like {@code get(Iterable)}, but only loads the fields named in the profile.
+	 * The objects returned are partial; see {@code LoadProfile} for the rules.  They are
+	 * never taken from or placed in the session cache.</p>
+	 * 
+	 * @param profile names the fields to load; null loads everything (but still bypasses the session cache)
+	 */
+	<T> Map<Key<T>, T> get(LoadProfile profile, Iterable<? extends Key<? extends T>> keys);
+	
 	/**
 	 * <p>Gets one instance of your entity.</p>
 	 * 
@@ -75,6 +85,17 @@ public interface Objectify
 	 */
 	<S, T> Map<S, T> get(Class<? extends T> clazz, S... idsOrNames);
 	
+	/**
+	 * <p>The same as {@code get(Class, Iterable)} with numeric ids, for large batches.
+	 * No id is boxed and no Key or map entry is made for each id; the entities go
+	 * straight from the datastore response into a LongMap.</p>
+	 * 
+	 * <p>With a session cache, this looks in the cache first and so loses most of the savings.</p>
+	 * 
+	 * @return a map of id to entity pojo; ids which were not found are absent.
+	 */
+	<T> LongMap<T> get(Class<? extends T> clazz, long[] ids);
+	
 	/** Same as {@code get(Key)} but returns null instead of throwing NotFoundException */ 
 	<T> T find(Key<? extends T> key);
 	
@@ -97,6 +118,7 @@ public interface Objectify
 	 * 
 	 * @param obj must be an object of a registered entity type.
 	 * @return the key associated with the object.
+	 * @throws IllegalArgumentException if this Objectify loaded the object with a LoadProfile
 	 * 
 	 * @see DatastoreService#put(com.google.appengine.api.datastore.Entity) 
 	 */
@@ -200,4 +222,10 @@ public interface Objectify
 	 * asynchronous; just create multiple Iterators before iterating them.
 	 */
 	public AsyncObjectify async();
+	
+	/**
+	 * @return the number of entities that put() skipped because they had not changed since
+	 *  they were loaded or saved.  Always 0 unless {@code ObjectifyOpts.setDirtyTracking()} is on.
+	 */
+	public long getElidedWrites();
 }
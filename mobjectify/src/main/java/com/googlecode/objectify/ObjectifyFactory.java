@@ -11,8 +11,18 @@ import com.google.appengine.api.datastore.ReadPolicy;
 import com.google.appengine.api.datastore.Transaction;
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.cache.AbsentKeyFilter;
+import com.googlecode.objectify.cache.AsyncMemcache;
+import com.googlecode.objectify.cache.CacheEntityCodec;
+import com.googlecode.objectify.cache.CacheKeyCodec;
+import com.googlecode.objectify.cache.CacheStats;
 import com.googlecode.objectify.cache.CachingAsyncDatastoreService;
 import com.googlecode.objectify.cache.CachingDatastoreService;
+import com.googlecode.objectify.cache.LocalCache;
+import com.googlecode.objectify.cache.MemcacheServiceAdapter;
+import com.googlecode.objectify.cache.PathCacheKeyCodec;
+import com.googlecode.objectify.cache.SingleFlight;
+import com.googlecode.objectify.cache.WriteSequence;
 import com.googlecode.objectify.impl.AsyncObjectifyImpl;
 import com.googlecode.objectify.impl.EntityMetadata;
 import com.googlecode.objectify.impl.ObjectifyImpl;
@@ -50,8 +60,13 @@ import com.googlecode.objectify.util.FutureHelper;
  */
 public class ObjectifyFactory
 {
-	/** Default memcache namespace; override getRawMemcacheService() to change */
-	public static final String MEMCACHE_NAMESPACE = "ObjectifyCache";
+	/**
+	 * Default memcache namespace; override getRawMemcacheService() to change.  Releases
+	 * before the compact cache formats used "ObjectifyCache"; the name changed with the
+	 * formats so that the two never read each other's values.  See setCacheKeyCodec()
+	 * for what that means while upgrading.
+	 */
+	public static final String MEMCACHE_NAMESPACE = "ObjectifyCache2";
 	
 	/** Encapsulates entity registration info */
 	protected Registrar registrar = new Registrar(this);
@@ -59,6 +74,33 @@ public class ObjectifyFactory
 	/** All the various converters */
 	protected Conversions conversions = new Conversions(this);
 	
+	/** Makes the String keys for the global cache */
+	protected CacheKeyCodec cacheKeyCodec = new PathCacheKeyCodec();
+	
+	/** Makes the memcache values for the global cache; null stores Entity objects */
+	protected CacheEntityCodec cacheEntityCodec = new CacheEntityCodec();
+	
+	/** In-JVM cache in front of memcache; null if there isn't one */
+	protected LocalCache localCache;
+	
+	/** Counts what the global cache does; null if nobody is counting */
+	protected CacheStats cacheStats = new CacheStats();
+	
+	/** Answers lookups of keys recently found missing without memcache; null if there isn't one */
+	protected AbsentKeyFilter absentKeyFilter;
+	
+	/** Shares the global cache's datastore lookups between threads; null if they aren't shared */
+	protected SingleFlight singleFlight = new SingleFlight();
+	
+	/** Numbers the writes the global cache sees, so reads can tell what was written since they started */
+	protected WriteSequence writeSequence = new WriteSequence();
+	
+	/** The most keys in one global cache memcache call */
+	protected int cacheChunkSize = CachingAsyncDatastoreService.DEFAULT_CHUNK_SIZE;
+	
+	/** Roughly the most bytes of values in one global cache memcache call */
+	protected long cacheChunkBytes = CachingAsyncDatastoreService.DEFAULT_CHUNK_BYTES;
+	
 	/**
 	 * Creates the default options for begin() and beginTransaction().  You can
 	 * override this if, for example, you wanted to enable session caching by default.
@@ -115,7 +157,7 @@ public class ObjectifyFactory
 		
 		if (opts.getGlobalCache() && this.registrar.isCacheEnabled())
 		{
-			CachingAsyncDatastoreService async = new CachingAsyncDatastoreService(this, this.getRawAsyncDatastoreService(cfg), this.getRawMemcacheService());
+			CachingAsyncDatastoreService async = new CachingAsyncDatastoreService(this, this.getRawAsyncDatastoreService(cfg), this.getAsyncMemcache(), opts.getConsistency());
 			return new CachingDatastoreService(ds, async);
 		}
 		else
@@ -138,7 +180,7 @@ public class ObjectifyFactory
 		AsyncDatastoreService ads = this.getRawAsyncDatastoreService(cfg);
 
 		if (opts.getGlobalCache() && this.registrar.isCacheEnabled())
-			return new CachingAsyncDatastoreService(this, ads, this.getRawMemcacheService());
+			return new CachingAsyncDatastoreService(this, ads, this.getAsyncMemcache(), opts.getConsistency());
 		else
 			return ads;
 	}
@@ -167,6 +209,15 @@ public class ObjectifyFactory
 		return MemcacheServiceFactory.getMemcacheService(MEMCACHE_NAMESPACE);
 	}
 	
+	/**
+	 * The global cache does all its memcache work through this.  The default adapts
+	 * getRawMemcacheService(); override this to plug in a truly asynchronous memcache.
+	 */
+	protected AsyncMemcache getAsyncMemcache()
+	{
+		return new MemcacheServiceAdapter(this.getRawMemcacheService());
+	}
+	
 	/**
 	 * Create a lightweight Objectify instance with the default options.
 	 * Equivalent to begin(new ObjectifyOpts()).
@@ -195,6 +246,187 @@ public class ObjectifyFactory
 		return this.begin(this.createDefaultOpts().setBeginTransaction(true));
 	}
 	
+	/**
+	 * <p>Switches lazy registration on or off for classes registered after this call.  In
+	 * lazy mode register() is nearly free; the metadata for a kind is built the first time
+	 * the kind is used, so an instance which only touches a few of its registered kinds
+	 * never pays for the rest.  The price is that a badly annotated class is only reported
+	 * when it is first used.</p>
+	 */
+	public void setLazyRegistration(boolean value)
+	{
+		this.registrar.setLazy(value);
+	}
+	
+	/** @return true if registration is lazy; see setLazyRegistration() */
+	public boolean isLazyRegistration()
+	{
+		return this.registrar.isLazy();
+	}
+	
+	/**
+	 * <p>Changes how datastore keys are turned into memcache keys by the global cache.
+	 * The default is the compact PathCacheKeyCodec; KeyStringCacheKeyCodec makes the
+	 * keys older Objectify releases did.  Sharing a memcache with versions of your app
+	 * built on older releases is not supported whichever codec is used, because the
+	 * values stored are different too.</p>
+	 * 
+	 * <p>Upgrading: this release caches in its own namespace (see MEMCACHE_NAMESPACE),
+	 * so while old and new versions of an app run side by side, as in a rolling deploy,
+	 * neither one invalidates the other's cache.  An entity written by one version can
+	 * be read stale from the other's cache until it expires.  If that matters, stop
+	 * the old version before the new one serves writes, or flush memcache once the old
+	 * version is gone.</p>
+	 */
+	public void setCacheKeyCodec(CacheKeyCodec codec)
+	{
+		if (codec == null)
+			throw new IllegalArgumentException("CacheKeyCodec cannot be null");
+		
+		this.cacheKeyCodec = codec;
+	}
+	
+	/** @return the codec the global cache uses for memcache keys */
+	public CacheKeyCodec getCacheKeyCodec()
+	{
+		return this.cacheKeyCodec;
+	}
+	
+	/**
+	 * Changes how entities are stored in memcache by the global cache.  Either way,
+	 * entities stored the other way are still understood when read.
+	 * 
+	 * @param codec can be null to store java serialized Entity objects, as older
+	 *  Objectify releases did.  That alone does not let older releases read the cache,
+	 *  which also holds the placeholders and locks that guard fills.
+	 */
+	public void setCacheEntityCodec(CacheEntityCodec codec)
+	{
+		this.cacheEntityCodec = codec;
+	}
+	
+	/** @return the codec the global cache uses for memcache values, or null if there isn't one */
+	public CacheEntityCodec getCacheEntityCodec()
+	{
+		return this.cacheEntityCodec;
+	}
+	
+	/**
+	 * Puts an in-JVM cache in front of memcache for the kinds which ask for it with
+	 * {@code @Cached(localExpirationSeconds=...)} or {@code LocalCache.setExpirationSeconds()}.
+	 * Only gets made with the global cache enabled use it.
+	 * 
+	 * @param cache can be null to stop using one
+	 */
+	public void setLocalCache(LocalCache cache)
+	{
+		this.localCache = cache;
+	}
+	
+	/** @return the in-JVM cache in front of memcache, or null if there isn't one */
+	public LocalCache getLocalCache()
+	{
+		return this.localCache;
+	}
+	
+	/**
+	 * Replaces what counts the global cache's hits, misses, traffic, latency and failures.
+	 * 
+	 * @param stats can be null to stop counting
+	 */
+	public void setCacheStats(CacheStats stats)
+	{
+		this.cacheStats = stats;
+	}
+	
+	/** @return the statistics of the global cache, or null if nobody is counting */
+	public CacheStats getCacheStats()
+	{
+		return this.cacheStats;
+	}
+	
+	/**
+	 * Installs a filter of keys which were recently found not to exist, so repeated lookups
+	 * of them don't even cost a memcache call.  It applies to every {@code @Cached} kind
+	 * whose negative results are cached (see {@code @Cached(negativeExpirationSeconds=...)}).
+	 * 
+	 * @param filter can be null to have no filter, which is the default
+	 */
+	public void setAbsentKeyFilter(AbsentKeyFilter filter)
+	{
+		this.absentKeyFilter = filter;
+	}
+	
+	/** @return the absent key filter, or null if there isn't one */
+	public AbsentKeyFilter getAbsentKeyFilter()
+	{
+		return this.absentKeyFilter;
+	}
+	
+	/**
+	 * Controls whether concurrent cache misses for the same key share one datastore lookup.
+	 * They do by default.
+	 * 
+	 * @param flights can be null to have every miss do its own lookup
+	 */
+	public void setSingleFlight(SingleFlight flights)
+	{
+		this.singleFlight = flights;
+	}
+	
+	/** @return what keeps track of the global cache's shared lookups, or null if they aren't shared */
+	public SingleFlight getSingleFlight()
+	{
+		return this.singleFlight;
+	}
+	
+	/** @return what numbers the writes the global cache sees */
+	public WriteSequence getWriteSequence()
+	{
+		return this.writeSequence;
+	}
+	
+	/**
+	 * Limits how many keys the global cache puts in one memcache call.  Bigger gets are
+	 * split into chunks which are issued without waiting for each other, and each chunk
+	 * goes on to the datastore as soon as its own memcache results are in.  The chunks
+	 * only overlap if the AsyncMemcache is really asynchronous; the adapter around the
+	 * synchronous MemcacheService makes one call after another.
+	 */
+	public void setCacheChunkSize(int keys)
+	{
+		if (keys < 1)
+			throw new IllegalArgumentException("Cache chunk size must be positive");
+		
+		this.cacheChunkSize = keys;
+	}
+	
+	/** @return the most keys in one global cache memcache call */
+	public int getCacheChunkSize()
+	{
+		return this.cacheChunkSize;
+	}
+	
+	/**
+	 * Limits roughly how many bytes of values the global cache writes or reads in one
+	 * memcache call.  A single value bigger than this still gets a call of its own.  Reads
+	 * are sized by the average value of each kind the CacheStats have seen, so they are
+	 * only limited by this once there are stats.
+	 */
+	public void setCacheChunkBytes(long bytes)
+	{
+		if (bytes < 1)
+			throw new IllegalArgumentException("Cache chunk bytes must be positive");
+		
+		this.cacheChunkBytes = bytes;
+	}
+	
+	/** @return roughly the most bytes of values in one global cache memcache call */
+	public long getCacheChunkBytes()
+	{
+		return this.cacheChunkBytes;
+	}
+	
 	/**
 	 * <p>All POJO entity classes which are to be managed by Objectify
 	 * must be registered first.  This method must be called in a single-threaded
@@ -277,9 +509,9 @@ public class ObjectifyFactory
 		if (keyOrEntity instanceof Key<?>)
 			return (Key<T>)keyOrEntity;
 		else if (keyOrEntity instanceof com.google.appengine.api.datastore.Key)
-			return new Key<T>((com.google.appengine.api.datastore.Key)keyOrEntity);
+			return this.conversions.typedKey((com.google.appengine.api.datastore.Key)keyOrEntity);
 		else
-			return new Key<T>(this.getMetadataForEntity(keyOrEntity).getRawKey(keyOrEntity));
+			return this.conversions.typedKey(this.getMetadataForEntity(keyOrEntity).getRawKey(keyOrEntity));
 	}
 	
 	/**
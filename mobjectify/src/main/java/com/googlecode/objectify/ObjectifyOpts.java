@@ -1,5 +1,7 @@
 package com.googlecode.objectify;
 
+import java.util.concurrent.Executor;
+
 import com.google.appengine.api.datastore.ReadPolicy.Consistency;
 
 /**
@@ -13,6 +15,8 @@ import com.google.appengine.api.datastore.ReadPolicy.Consistency;
  * <li>DO use a global cache.</li>
  * <li>Use STRONG consistency.</li>
  * <li>Apply no deadline to calls.</li>
+ * <li>Do NOT track dirty entities.</li>
+ * <li>Translate entities (and convert put batches) in the calling thread.</li>
  * </ul>
  * 
  * @author Jeff Schnitzer <jeff@infohazard.org>
@@ -24,6 +28,10 @@ public class ObjectifyOpts implements Cloneable
 	boolean globalCache = true;
 	Consistency consistency = Consistency.STRONG;
 	Double deadline;
+	boolean dirtyTracking;
+	Executor translationExecutor;
+	int translationThreshold = 1000;
+	int putTranslationThreshold = Integer.MAX_VALUE;
 	
 	/** Gets the current value of beginTransaction */
 	public boolean getBeginTransaction() { return this.beginTransaction; }
@@ -104,6 +112,78 @@ public class ObjectifyOpts implements Cloneable
 		return this;
 	}
 
+	/** Gets whether or not the Objectify instance will skip writing unchanged entities */
+	public boolean getDirtyTracking() { return this.dirtyTracking; }
+	
+	/**
+	 * Sets whether or not the Objectify instance will skip writing unchanged entities.
+	 * If true, a fingerprint of each entity loaded (or saved) through the instance is kept,
+	 * and put() does not write entities whose fingerprint has not changed since.  The
+	 * entities are still returned from put() as usual, and @PrePersist methods are
+	 * still called.  See {@code Objectify.getElidedWrites()}.
+	 * 
+	 * <p>Only enable this if nothing else writes the same entities while the Objectify
+	 * instance is in use (or if you are in a transaction); put() trusts what was loaded.</p>
+	 */
+	public ObjectifyOpts setDirtyTracking(boolean value)
+	{
+		this.dirtyTracking = value;
+		return this;
+	}
+
+	/** Gets the executor used to translate large batches of entities, or null */
+	public Executor getTranslationExecutor() { return this.translationExecutor; }
+	
+	/**
+	 * Sets an executor (perhaps a ForkJoinPool) which helps translate large batches of
+	 * entities into POJOs.  Batch gets and query list()s of at least the translation
+	 * threshold are split into chunks which are translated in parallel; the calling
+	 * thread works on chunks too.  Results are always in the same order as they would
+	 * be otherwise.  @PostLoad methods always run on the calling thread, after the
+	 * parallel step.
+	 * 
+	 * @param value can be null to always translate in the calling thread.
+	 */
+	public ObjectifyOpts setTranslationExecutor(Executor value)
+	{
+		this.translationExecutor = value;
+		return this;
+	}
+	
+	/** Gets the smallest batch which will be translated in parallel */
+	public int getTranslationThreshold() { return this.translationThreshold; }
+	
+	/**
+	 * Sets the smallest batch which will be translated in parallel, if there is
+	 * a translation executor.  The default is 1000.
+	 */
+	public ObjectifyOpts setTranslationThreshold(int value)
+	{
+		if (value < 1)
+			throw new IllegalArgumentException("Translation threshold must be positive");
+		
+		this.translationThreshold = value;
+		return this;
+	}
+
+	/** Gets the smallest put() batch which will be converted in parallel */
+	public int getPutTranslationThreshold() { return this.putTranslationThreshold; }
+	
+	/**
+	 * Sets the smallest put() batch whose POJOs will be converted to entities in parallel,
+	 * using the translation executor.  This is off by default (the threshold is
+	 * Integer.MAX_VALUE) because @PrePersist methods then run on the executor's threads
+	 * and must be prepared for that.  Keys are still assigned to the objects in order.
+	 */
+	public ObjectifyOpts setPutTranslationThreshold(int value)
+	{
+		if (value < 1)
+			throw new IllegalArgumentException("Put translation threshold must be positive");
+		
+		this.putTranslationThreshold = value;
+		return this;
+	}
+
 	/** Make a copy of this object as-is. */
 	@Override
 	public ObjectifyOpts clone()
@@ -117,4 +197,4 @@ public class ObjectifyOpts implements Cloneable
 			throw new RuntimeException(e);	// impossible
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -92,6 +92,14 @@ public interface Query<T> extends QueryResultIterable<T>
 	 */
 	public Query<T> offset(int value);
 	
+	/**
+	 * Loads only the fields named in the profile.  The objects returned are partial;
+	 * see {@code LoadProfile} for the rules.  Has no effect on fetchKeys().
+	 * 
+	 * @param profile names the fields to load, or null to load whole objects
+	 */
+	public Query<T> profile(LoadProfile profile);
+	
 	/**
 	 * Starts query results at the specified Cursor.  You can obtain a Cursor from
 	 * a QueryResultIterator by calling the getCursor() method.
@@ -0,0 +1,108 @@
+package com.googlecode.objectify;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.appengine.api.datastore.KeyFactory;
+
+/**
+ * <p>Makes typed keys of one entity class (and optionally one parent) without resolving the
+ * kind or unwrapping the parent for every key.  Handy for bulk jobs which build a great many
+ * keys:</p>
+ *
+ * <code><pre>
+ * TypedKeyFactory&lt;Car&gt; cars = TypedKeyFactory.of(owner, Car.class);
+ * for (long id: ids)
+ *     keys.add(cars.create(id));
+ * </pre></code>
+ *
+ * <p>Instances are immutable and can be shared between threads.</p>
+ */
+public class TypedKeyFactory<T>
+{
+	/** */
+	final String kind;
+
+	/** Can be null */
+	final Key<?> parent;
+
+	/** The raw version of parent, can be null */
+	final com.google.appengine.api.datastore.Key rawParent;
+
+	/**
+	 * @throws IllegalArgumentException if the kind of the class cannot be determined
+	 */
+	protected TypedKeyFactory(Key<?> parent, Class<? extends T> kindClass)
+	{
+		this.kind = Key.getKind(kindClass);
+		this.parent = parent;
+		this.rawParent = Key.raw(parent);
+	}
+
+	/**
+	 * @return a factory for keys of the class with no parent
+	 */
+	public static <T> TypedKeyFactory<T> of(Class<? extends T> kindClass)
+	{
+		return new TypedKeyFactory<T>(null, kindClass);
+	}
+
+	/**
+	 * @param parent can be null for keys with no parent
+	 * @return a factory for keys of the class under the parent
+	 */
+	public static <T> TypedKeyFactory<T> of(Key<?> parent, Class<? extends T> kindClass)
+	{
+		return new TypedKeyFactory<T>(parent, kindClass);
+	}
+
+	/** @return the kind of every key this factory makes */
+	public String getKind()
+	{
+		return this.kind;
+	}
+
+	/** @return the parent of every key this factory makes, or null */
+	public Key<?> getParent()
+	{
+		return this.parent;
+	}
+
+	/** Create a key with a long id */
+	public Key<T> create(long id)
+	{
+		return new Key<T>(KeyFactory.createKey(this.rawParent, this.kind, id), this.parent);
+	}
+
+	/** Create a key with a String name */
+	public Key<T> create(String name)
+	{
+		return new Key<T>(KeyFactory.createKey(this.rawParent, this.kind, name), this.parent);
+	}
+
+	/**
+	 * Create keys for a batch of ids and/or names, in the same order.
+	 *
+	 * @param ids must contain only Long or String values
+	 * @throws IllegalArgumentException if an id is anything else
+	 */
+	public List<Key<T>> createAll(Iterable<?> ids)
+	{
+		List<Key<T>> keys = (ids instanceof Collection<?>)
+				? new ArrayList<Key<T>>(((Collection<?>)ids).size())
+				: new ArrayList<Key<T>>();
+
+		for (Object id: ids)
+		{
+			if (id instanceof Long)
+				keys.add(this.create((Long)id));
+			else if (id instanceof String)
+				keys.add(this.create((String)id));
+			else
+				throw new IllegalArgumentException("Only Long or String is allowed, not " + id.getClass().getName() + " (" + id + ")");
+		}
+
+		return keys;
+	}
+}
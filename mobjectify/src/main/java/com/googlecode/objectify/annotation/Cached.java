@@ -20,4 +20,21 @@ public @interface Cached
 	 * time due to memory pressure or the whim of Google's operations team.
 	 */
 	int expirationSeconds() default -1;
+	
+	/**
+	 * Number of seconds a copy may also be kept in the factory's in-JVM LocalCache, which
+	 * answers gets without a memcache call (see {@code ObjectifyFactory.setLocalCache()}).
+	 * Other app instances do not see changes until their copies expire, so keep this short.
+	 * The default (0) keeps the entity out of the local cache.  Never longer than
+	 * expirationSeconds.
+	 */
+	int localExpirationSeconds() default 0;
+	
+	/**
+	 * Number of seconds after which a cached negative result (the knowledge that an entity
+	 * does not exist) should be expired.  The default (-1) is the same as expirationSeconds;
+	 * 0 keeps negative results out of the cache altogether.  Shorter than expirationSeconds
+	 * is usually right, since lookups of missing entities tend to be one-offs.
+	 */
+	int negativeExpirationSeconds() default -1;
 }
\ No newline at end of file
@@ -5,9 +5,12 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import com.googlecode.objectify.serializer.Serializer;
+
 /**
  * <p>When placed on an entity field, the field will be written as a single Blob
- * property using java serialization.</p>
+ * property using java serialization, or whatever other {@code Serializer} is named
+ * here or configured on the factory.</p>
  * 
  * <ul>
  * <li>The field can contain an arbitrary object graph.</li>
@@ -17,6 +20,8 @@ import java.lang.annotation.Target;
  * {@code @Transient} fields *will* be stored!</li>
  * <li>{@code @Serialized} collections <em>can</em> be nested inside {@code @Embedded} collections.</li>
  * <li>Java serialization is opaque to the datastore viewer and other languages (ie gae/python).</li>
+ * <li>Values written in plain java serialization can always be read, no matter which serializer
+ * is currently configured.</li>
  * </ul>
  * 
  * <p>You are <strong>strongly</strong> advised to place {@code serialVersionUID} on all classes
@@ -29,4 +34,15 @@ import java.lang.annotation.Target;
 @Target({ElementType.FIELD})
 public @interface Serialized
 {
+	/**
+	 * The serializer to use for this field.  The default, {@code Serializer.class} itself,
+	 * means use whatever is configured with {@code Conversions.setSerializer()}.
+	 */
+	Class<? extends Serializer> value() default Serializer.class;
+	
+	/**
+	 * If true, the serialized bytes are compressed with deflate.  Compressed and
+	 * uncompressed values can both be read regardless of this setting.
+	 */
+	boolean zip() default false;
 }
\ No newline at end of file
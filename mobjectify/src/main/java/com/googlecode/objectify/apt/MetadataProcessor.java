@@ -0,0 +1,793 @@
+package com.googlecode.objectify.apt;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import com.googlecode.objectify.impl.Accessor;
+import com.googlecode.objectify.impl.FieldInfo;
+import com.googlecode.objectify.impl.GeneratedMetadata;
+import com.googlecode.objectify.impl.Instantiator;
+import com.googlecode.objectify.impl.MethodInfo;
+
+/**
+ * <p>Annotation processor which writes a {@code GeneratedMetadata} companion for each entity
+ * class (and each class it embeds or extends) in the compilation.  The companion replaces
+ * the reflective setup that registration would otherwise do for the class's
+ * fields and constructor, and carries what the annotations of its fields and methods say,
+ * with the If conditions resolved, so that registration doesn't parse them.  This matters
+ * most when an instance starts cold.</p>
+ *
+ * <p>Entity classes are recognized by an @Id field or any of the class-level annotations
+ * Objectify understands; embedded classes are found through @Embedded fields.  Only classes
+ * being compiled in the same run are processed.  Private classes, private fields, and field
+ * types which aren't visible from the class's package are left for registration to handle
+ * reflectively.</p>
+ *
+ * <p>The processor is not registered as a service, so it never runs unless asked for.
+ * To use it, name it explicitly: {@code javac -processor com.googlecode.objectify.apt.MetadataProcessor}
+ * or, with Maven, in the {@code annotationProcessors} of maven-compiler-plugin.  Nothing
+ * else changes; the companions are found by name when classes are registered.</p>
+ */
+@SupportedAnnotationTypes("*")
+public class MetadataProcessor extends AbstractProcessor
+{
+	/** Any of these on a class marks it as an entity */
+	static final Set<String> ENTITY_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+			"javax.persistence.Entity",
+			"com.googlecode.objectify.annotation.Entity",
+			"com.googlecode.objectify.annotation.Cached",
+			"com.googlecode.objectify.annotation.Subclass",
+			"com.googlecode.objectify.annotation.Indexed",
+			"com.googlecode.objectify.annotation.Unindexed"));
+
+	/** */
+	static final String ID = "javax.persistence.Id";
+	static final String EMBEDDED = "javax.persistence.Embedded";
+	static final String TRANSIENT = "javax.persistence.Transient";
+	static final String PRE_PERSIST = "javax.persistence.PrePersist";
+	static final String POST_LOAD = "javax.persistence.PostLoad";
+	static final String ALSO_LOAD = "com.googlecode.objectify.annotation.AlsoLoad";
+	static final String PARENT = "com.googlecode.objectify.annotation.Parent";
+	static final String SERIALIZED = "com.googlecode.objectify.annotation.Serialized";
+	static final String INDEXED = "com.googlecode.objectify.annotation.Indexed";
+	static final String UNINDEXED = "com.googlecode.objectify.annotation.Unindexed";
+	static final String NOT_SAVED = "com.googlecode.objectify.annotation.NotSaved";
+	static final String IF = "com.googlecode.objectify.condition.If";
+
+	/** Names the companions use */
+	static final String INSTANTIATOR = Instantiator.class.getName();
+	static final String FIELD_INFO = FieldInfo.class.getName();
+	static final String METHOD_INFO = MethodInfo.class.getName();
+
+	/** Binary names of classes we have already written companions for */
+	Set<String> done = new HashSet<String>();
+
+	/* (non-Javadoc)
+	 * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+	 */
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set, javax.annotation.processing.RoundEnvironment)
+	 */
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		if (roundEnv.processingOver())
+			return false;
+
+		Set<TypeElement> compiling = new HashSet<TypeElement>();
+		for (TypeElement type: ElementFilter.typesIn(roundEnv.getRootElements()))
+			this.addWithMembers(type, compiling);
+
+		Set<TypeElement> found = new LinkedHashSet<TypeElement>();
+		Deque<TypeElement> pending = new ArrayDeque<TypeElement>();
+		for (TypeElement type: compiling)
+			if (this.isEntity(type))
+				pending.add(type);
+
+		while (!pending.isEmpty())
+		{
+			TypeElement type = pending.removeFirst();
+			if (!found.add(type))
+				continue;
+
+			TypeElement superclass = this.asTypeElement(type.getSuperclass());
+			if (superclass != null && compiling.contains(superclass))
+				pending.add(superclass);
+
+			for (VariableElement field: ElementFilter.fieldsIn(type.getEnclosedElements()))
+				if (hasAnnotation(field, EMBEDDED))
+					this.addEmbedded(field.asType(), compiling, pending);
+		}
+
+		for (TypeElement type: found)
+		{
+			if (!this.done.add(this.processingEnv.getElementUtils().getBinaryName(type).toString()))
+				continue;
+
+			try
+			{
+				this.write(type);
+			}
+			catch (IOException ex)
+			{
+				this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						"Unable to write Objectify metadata: " + ex, type);
+			}
+		}
+
+		// Never claim annotations; other processors may want them
+		return false;
+	}
+
+	/** */
+	private void addWithMembers(TypeElement type, Set<TypeElement> into)
+	{
+		into.add(type);
+		for (TypeElement member: ElementFilter.typesIn(type.getEnclosedElements()))
+			this.addWithMembers(member, into);
+	}
+
+	/**
+	 * Queues the classes an @Embedded field of this type would embed: the type itself,
+	 * the component of an array, or the type arguments of a collection.
+	 */
+	private void addEmbedded(TypeMirror type, Set<TypeElement> compiling, Deque<TypeElement> pending)
+	{
+		if (type.getKind() == TypeKind.ARRAY)
+		{
+			this.addEmbedded(((ArrayType)type).getComponentType(), compiling, pending);
+		}
+		else if (type.getKind() == TypeKind.DECLARED)
+		{
+			TypeElement element = (TypeElement)((DeclaredType)type).asElement();
+			if (compiling.contains(element))
+				pending.add(element);
+
+			for (TypeMirror arg: ((DeclaredType)type).getTypeArguments())
+				this.addEmbedded(arg, compiling, pending);
+		}
+	}
+
+	/** */
+	private boolean isEntity(TypeElement type)
+	{
+		if (type.getKind() != ElementKind.CLASS)
+			return false;
+
+		for (AnnotationMirror mirror: type.getAnnotationMirrors())
+			if (ENTITY_ANNOTATIONS.contains(((TypeElement)mirror.getAnnotationType().asElement()).getQualifiedName().toString()))
+				return true;
+
+		for (VariableElement field: ElementFilter.fieldsIn(type.getEnclosedElements()))
+			if (hasAnnotation(field, ID))
+				return true;
+
+		return false;
+	}
+
+	/** @return the element of a class type, or null for anything else */
+	private TypeElement asTypeElement(TypeMirror type)
+	{
+		if (type.getKind() != TypeKind.DECLARED)
+			return null;
+
+		Element element = ((DeclaredType)type).asElement();
+		return element.getKind() == ElementKind.CLASS ? (TypeElement)element : null;
+	}
+
+	/** */
+	private static boolean hasAnnotation(Element element, String annotationName)
+	{
+		return getAnnotation(element, annotationName) != null;
+	}
+
+	/** @return the annotation on the element, or null if it isn't there */
+	private static AnnotationMirror getAnnotation(Element element, String annotationName)
+	{
+		for (AnnotationMirror mirror: element.getAnnotationMirrors())
+			if (((TypeElement)mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName))
+				return mirror;
+
+		return null;
+	}
+
+	/**
+	 * @return the elements of an array-valued annotation member, defaults included
+	 */
+	private List<? extends AnnotationValue> getArrayValue(AnnotationMirror mirror, String member)
+	{
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry: this.processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet())
+		{
+			if (entry.getKey().getSimpleName().contentEquals(member))
+			{
+				Object value = entry.getValue().getValue();
+				if (value instanceof List<?>)
+				{
+					@SuppressWarnings("unchecked")
+					List<? extends AnnotationValue> values = (List<? extends AnnotationValue>)value;
+					return values;
+				}
+				else
+				{
+					return Collections.singletonList(entry.getValue());
+				}
+			}
+		}
+
+		return Collections.emptyList();
+	}
+
+	/** @return the package the element belongs to */
+	private PackageElement packageOf(Element element)
+	{
+		return this.processingEnv.getElementUtils().getPackageOf(element);
+	}
+
+	/**
+	 * @return true if code in the package can name the type
+	 */
+	private boolean isVisible(Element element, PackageElement from)
+	{
+		boolean samePackage = this.packageOf(element).equals(from);
+
+		for (Element el = element; el instanceof TypeElement; el = el.getEnclosingElement())
+		{
+			Set<Modifier> mods = el.getModifiers();
+			if (mods.contains(Modifier.PRIVATE))
+				return false;
+
+			if (!samePackage && !mods.contains(Modifier.PUBLIC))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the erased type as it can be written in source in the package, or null if
+	 *  it can't be named there.
+	 */
+	private String sourceName(TypeMirror type, PackageElement from)
+	{
+		TypeMirror erased = this.processingEnv.getTypeUtils().erasure(type);
+
+		switch (erased.getKind())
+		{
+			case BOOLEAN: return "boolean";
+			case BYTE: return "byte";
+			case SHORT: return "short";
+			case INT: return "int";
+			case LONG: return "long";
+			case CHAR: return "char";
+			case FLOAT: return "float";
+			case DOUBLE: return "double";
+
+			case ARRAY:
+				String component = this.sourceName(((ArrayType)erased).getComponentType(), from);
+				return component == null ? null : component + "[]";
+
+			case DECLARED:
+				TypeElement element = (TypeElement)((DeclaredType)erased).asElement();
+				return this.isVisible(element, from) ? element.getQualifiedName().toString() : null;
+
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Writes the companion for one class.
+	 */
+	private void write(TypeElement type) throws IOException
+	{
+		PackageElement pkg = this.packageOf(type);
+		if (!this.isVisible(type, pkg))
+			return;
+
+		String binaryName = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String simpleName = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1)) + GeneratedMetadata.SUFFIX;
+		String className = type.getQualifiedName().toString();
+
+		JavaFileObject file = this.processingEnv.getFiler().createSourceFile(binaryName + GeneratedMetadata.SUFFIX, type);
+		PrintWriter out = new PrintWriter(file.openWriter());
+		try
+		{
+			out.println("// Generated by " + MetadataProcessor.class.getName() + " - do not edit");
+			if (packageName.length() > 0)
+			{
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+
+			out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+			out.println("public final class " + simpleName + " extends " + GeneratedMetadata.class.getName());
+			out.println("{");
+
+			out.println("\t@Override");
+			out.println("\tpublic Class<?> getDescribedClass()");
+			out.println("\t{");
+			out.println("\t\treturn " + className + ".class;");
+			out.println("\t}");
+			out.println();
+
+			if (this.canInstantiate(type))
+			{
+				out.println("\t@Override");
+				out.println("\tpublic " + INSTANTIATOR + "<?> getInstantiator()");
+				out.println("\t{");
+				out.println("\t\treturn new " + INSTANTIATOR + "<" + className + ">() {");
+				out.println("\t\t\t@Override");
+				out.println("\t\t\tpublic " + className + " newInstance() { return new " + className + "(); }");
+				out.println("\t\t};");
+				out.println("\t}");
+				out.println();
+			}
+
+			String fields = this.describeFields(type, pkg);
+			if (fields != null)
+			{
+				out.println("\t@Override");
+				out.println("\tprotected " + FIELD_INFO + "[] describeFields()");
+				out.println("\t{");
+				out.println("\t\treturn new " + FIELD_INFO + "[] {");
+				out.print(fields);
+				out.println("\t\t};");
+				out.println("\t}");
+				out.println();
+			}
+
+			String methods = this.describeMethods(type, pkg);
+			if (methods != null)
+			{
+				out.println("\t@Override");
+				out.println("\tpublic " + METHOD_INFO + "[] getMethodInfos()");
+				out.println("\t{");
+				out.println("\t\treturn new " + METHOD_INFO + "[] {");
+				out.print(methods);
+				out.println("\t\t};");
+				out.println("\t}");
+				out.println();
+			}
+
+			out.println("\t@Override");
+			out.println("\tpublic " + Accessor.class.getName() + " getAccessor(String fieldName)");
+			out.println("\t{");
+
+			for (VariableElement field: ElementFilter.fieldsIn(type.getEnclosedElements()))
+			{
+				Set<Modifier> mods = field.getModifiers();
+				if (mods.contains(Modifier.STATIC) || mods.contains(Modifier.FINAL) || mods.contains(Modifier.PRIVATE)
+						|| hasAnnotation(field, TRANSIENT))
+					continue;
+
+				String fieldType = this.sourceName(field.asType(), pkg);
+				if (fieldType == null)
+					continue;
+
+				this.writeAccessor(out, className, field.getSimpleName().toString(), fieldType);
+			}
+
+			out.println("\t\treturn null;");
+			out.println("\t}");
+
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic " + Accessor.class.getName() + " getMethodAccessor(String methodName, Class<?> paramType)");
+			out.println("\t{");
+
+			for (ExecutableElement method: ElementFilter.methodsIn(type.getEnclosedElements()))
+			{
+				Set<Modifier> mods = method.getModifiers();
+				if (mods.contains(Modifier.STATIC) || mods.contains(Modifier.PRIVATE) || !method.getThrownTypes().isEmpty()
+						|| method.getParameters().size() != 1 || !hasAnnotation(method.getParameters().get(0), ALSO_LOAD))
+					continue;
+
+				String paramType = this.sourceName(method.getParameters().get(0).asType(), pkg);
+				if (paramType == null)
+					continue;
+
+				this.writeMethodAccessor(out, className, method.getSimpleName().toString(), paramType);
+			}
+
+			out.println("\t\treturn null;");
+			out.println("\t}");
+			out.println("}");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the FieldInfo constructions for every non-static, non-final field declared by
+	 *  the class, one per line, or null if any of them can't be written in the package
+	 */
+	private String describeFields(TypeElement type, PackageElement pkg)
+	{
+		StringBuilder result = new StringBuilder();
+
+		for (VariableElement field: ElementFilter.fieldsIn(type.getEnclosedElements()))
+		{
+			Set<Modifier> mods = field.getModifiers();
+			if (mods.contains(Modifier.STATIC) || mods.contains(Modifier.FINAL))
+				continue;
+
+			int flags = 0;
+			if (hasAnnotation(field, TRANSIENT))
+				flags |= FieldInfo.TRANSIENT;
+			if (hasAnnotation(field, ID))
+				flags |= FieldInfo.ID;
+			if (hasAnnotation(field, PARENT))
+				flags |= FieldInfo.PARENT;
+			if (hasAnnotation(field, EMBEDDED))
+				flags |= FieldInfo.EMBEDDED;
+			if (hasAnnotation(field, SERIALIZED))
+				flags |= FieldInfo.SERIALIZED;
+
+			String indexed = this.describeConditions(getAnnotation(field, INDEXED), pkg);
+			String unindexed = this.describeConditions(getAnnotation(field, UNINDEXED), pkg);
+			String notSaved = this.describeConditions(getAnnotation(field, NOT_SAVED), pkg);
+			if (indexed == null || unindexed == null || notSaved == null)
+				return null;
+
+			result.append("\t\t\tnew " + FIELD_INFO + "(\"" + field.getSimpleName() + "\", " + flags + ", "
+					+ this.describeStrings(getAnnotation(field, ALSO_LOAD)) + ", " + indexed + ", " + unindexed + ", " + notSaved + "),\n");
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * @return the MethodInfo constructions for every method declared by the class which
+	 *  registration looks at, one per line, or null if any of them can't be written in
+	 *  the package
+	 */
+	private String describeMethods(TypeElement type, PackageElement pkg)
+	{
+		StringBuilder result = new StringBuilder();
+
+		for (ExecutableElement method: ElementFilter.methodsIn(type.getEnclosedElements()))
+		{
+			int flags = 0;
+			if (hasAnnotation(method, PRE_PERSIST))
+				flags |= MethodInfo.PRE_PERSIST;
+			if (hasAnnotation(method, POST_LOAD))
+				flags |= MethodInfo.POST_LOAD;
+			if (hasAnnotation(method, EMBEDDED))
+				flags |= MethodInfo.EMBEDDED;
+
+			AnnotationMirror alsoLoad = null;
+			for (VariableElement param: method.getParameters())
+			{
+				if (hasAnnotation(param, ALSO_LOAD))
+				{
+					alsoLoad = getAnnotation(param, ALSO_LOAD);
+					if (hasAnnotation(param, EMBEDDED))
+						flags |= MethodInfo.PARAMETER_EMBEDDED;
+				}
+			}
+
+			if (flags == 0 && alsoLoad == null)
+				continue;
+
+			StringBuilder params = new StringBuilder();
+			for (VariableElement param: method.getParameters())
+			{
+				String paramType = this.sourceName(param.asType(), pkg);
+				if (paramType == null)
+					return null;
+
+				params.append(params.length() == 0 ? " " : ", ").append(paramType).append(".class");
+			}
+
+			result.append("\t\t\tnew " + METHOD_INFO + "(\"" + method.getSimpleName() + "\", new Class<?>[] {" + params + " }, "
+					+ flags + ", " + this.describeStrings(alsoLoad) + "),\n");
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * @return a String[] expression holding the value of the annotation, or "null" if there
+	 *  is no annotation
+	 */
+	private String describeStrings(AnnotationMirror mirror)
+	{
+		if (mirror == null)
+			return "null";
+
+		StringBuilder result = new StringBuilder("new String[] {");
+		for (AnnotationValue value: this.getArrayValue(mirror, "value"))
+			result.append(" ").append(this.processingEnv.getElementUtils().getConstantExpression(value.getValue())).append(",");
+
+		return result.append(" }").toString();
+	}
+
+	/**
+	 * @return a Condition[] expression for the If classes named by the annotation, "null" if
+	 *  there is no annotation, or null if any of the classes can't be named in the package
+	 */
+	private String describeConditions(AnnotationMirror mirror, PackageElement pkg)
+	{
+		if (mirror == null)
+			return "null";
+
+		StringBuilder result = new StringBuilder("new " + FIELD_INFO + ".Condition[] {");
+		for (AnnotationValue value: this.getArrayValue(mirror, "value"))
+		{
+			if (!(value.getValue() instanceof DeclaredType))
+				return null;
+
+			String condition = this.describeCondition((DeclaredType)value.getValue(), pkg);
+			if (condition == null)
+				return null;
+
+			result.append(" ").append(condition).append(",");
+		}
+
+		return result.append(" }").toString();
+	}
+
+	/**
+	 * @return a Condition expression for the If class, which knows the type arguments the
+	 *  class gives If and calls its constructor directly where it can
+	 */
+	private String describeCondition(DeclaredType ifType, PackageElement pkg)
+	{
+		TypeElement element = (TypeElement)ifType.asElement();
+		String name = this.sourceName(ifType, pkg);
+		if (name == null)
+			return null;
+
+		// The If<V, P> the class implements, with whatever the class fills in for V and P
+		String valueType = "null";
+		String pojoType = "null";
+		DeclaredType implemented = this.findSupertype(element.asType(), IF);
+		if (implemented != null && implemented.getTypeArguments().size() == 2)
+		{
+			String value = this.sourceLiteral(implemented.getTypeArguments().get(0), pkg);
+			String pojo = this.sourceLiteral(implemented.getTypeArguments().get(1), pkg);
+			if (value != null && pojo != null)
+			{
+				valueType = value;
+				pojoType = pojo;
+			}
+		}
+
+		String make = null;
+		if (!element.getModifiers().contains(Modifier.ABSTRACT)
+				&& (element.getNestingKind() != NestingKind.MEMBER || element.getModifiers().contains(Modifier.STATIC)))
+		{
+			// Same preference as FieldSaver: (Class, Field) first, then no-arg
+			if (this.hasConstructor(element, pkg, "java.lang.Class", "java.lang.reflect.Field"))
+				make = "new " + name + "(examinedClass, field)";
+			else if (this.hasConstructor(element, pkg))
+				make = "new " + name + "()";
+		}
+
+		String condition = "new " + FIELD_INFO + ".Condition((Class)" + name + ".class, " + valueType + ", " + pojoType + ")";
+		if (make != null)
+			condition += " { @Override public " + IF + " create(Class<?> examinedClass, java.lang.reflect.Field field) { return " + make + "; } }";
+
+		return condition;
+	}
+
+	/**
+	 * @return the supertype of the type (or the type itself) whose class has the name, or null
+	 */
+	private DeclaredType findSupertype(TypeMirror type, String className)
+	{
+		if (type.getKind() != TypeKind.DECLARED)
+			return null;
+
+		if (((TypeElement)((DeclaredType)type).asElement()).getQualifiedName().contentEquals(className))
+			return (DeclaredType)type;
+
+		for (TypeMirror supertype: this.processingEnv.getTypeUtils().directSupertypes(type))
+		{
+			DeclaredType found = this.findSupertype(supertype, className);
+			if (found != null)
+				return found;
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return a class literal for the type, or null if it is a type variable, a wildcard,
+	 *  or can't be named in the package
+	 */
+	private String sourceLiteral(TypeMirror type, PackageElement pkg)
+	{
+		if (type.getKind() != TypeKind.DECLARED && type.getKind() != TypeKind.ARRAY)
+			return null;
+
+		String name = this.sourceName(type, pkg);
+		return name == null ? null : name + ".class";
+	}
+
+	/**
+	 * @return true if code in the package can call a constructor of the class which
+	 *  takes exactly the named (erased) parameter types and declares no exceptions
+	 */
+	private boolean hasConstructor(TypeElement type, PackageElement from, String... paramTypes)
+	{
+		boolean samePackage = this.packageOf(type).equals(from);
+
+		for (ExecutableElement ctor: ElementFilter.constructorsIn(type.getEnclosedElements()))
+		{
+			Set<Modifier> mods = ctor.getModifiers();
+			if (mods.contains(Modifier.PRIVATE) || (!samePackage && !mods.contains(Modifier.PUBLIC)) || !ctor.getThrownTypes().isEmpty())
+				continue;
+
+			List<? extends VariableElement> params = ctor.getParameters();
+			if (params.size() != paramTypes.length)
+				continue;
+
+			boolean matches = true;
+			for (int i=0; i<paramTypes.length; i++)
+			{
+				TypeMirror erased = this.processingEnv.getTypeUtils().erasure(params.get(i).asType());
+				if (erased.getKind() != TypeKind.DECLARED
+						|| !((TypeElement)((DeclaredType)erased).asElement()).getQualifiedName().contentEquals(paramTypes[i]))
+					matches = false;
+			}
+
+			if (matches)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return true if the companion can call a no-arg constructor of the class
+	 */
+	private boolean canInstantiate(TypeElement type)
+	{
+		if (type.getModifiers().contains(Modifier.ABSTRACT))
+			return false;
+
+		if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))
+			return false;
+
+		for (ExecutableElement ctor: ElementFilter.constructorsIn(type.getEnclosedElements()))
+			if (ctor.getParameters().isEmpty() && !ctor.getModifiers().contains(Modifier.PRIVATE) && ctor.getThrownTypes().isEmpty())
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Writes the part of getAccessor() which returns the accessor for one field.
+	 */
+	private void writeAccessor(PrintWriter out, String className, String fieldName, String fieldType)
+	{
+		String target = "((" + className + ")pojo)." + fieldName;
+		String description = "\"" + className + "." + fieldName + "\"";
+
+		out.println("\t\tif (\"" + fieldName + "\".equals(fieldName))");
+
+		Primitive prim = Primitive.forName(fieldType);
+		if (prim == null)
+		{
+			out.println("\t\t\treturn new MemberAccessor(" + description + ", false) {");
+			out.println("\t\t\t\t@Override protected Object read(Object pojo) { return " + target + "; }");
+			out.println("\t\t\t\t@Override protected void write(Object pojo, Object value) { " + target + " = (" + fieldType + ")value; }");
+			out.println("\t\t\t};");
+		}
+		else if (prim.datastoreType == null)
+		{
+			// char; the datastore has no equivalent so no typed access either
+			out.println("\t\t\treturn new MemberAccessor(" + description + ", true) {");
+			out.println("\t\t\t\t@Override protected Object read(Object pojo) { return " + target + "; }");
+			out.println("\t\t\t\t@Override protected void write(Object pojo, Object value) { " + target + " = " + prim.unboxer + "(value); }");
+			out.println("\t\t\t};");
+		}
+		else
+		{
+			String typed = Character.toUpperCase(prim.datastoreType.charAt(0)) + prim.datastoreType.substring(1);
+
+			out.println("\t\t\treturn new PrimitiveFieldAccessor(" + description + ", " + fieldType + ".class) {");
+			out.println("\t\t\t\t@Override protected Object read(Object pojo) { return " + target + "; }");
+			out.println("\t\t\t\t@Override protected void write(Object pojo, Object value) { " + target + " = " + prim.unboxer + "(value); }");
+			out.println("\t\t\t\t@Override protected " + prim.datastoreType + " read" + typed + "(Object pojo) { return " + target + "; }");
+			out.println("\t\t\t\t@Override protected void write" + typed + "(Object pojo, " + prim.datastoreType + " value) { " + target + " = (" + fieldType + ")value; }");
+			out.println("\t\t\t};");
+		}
+
+		out.println();
+	}
+
+	/**
+	 * Writes the part of getMethodAccessor() which returns the accessor for one method.
+	 */
+	private void writeMethodAccessor(PrintWriter out, String className, String methodName, String paramType)
+	{
+		Primitive prim = Primitive.forName(paramType);
+		String argument = prim == null ? "(" + paramType + ")value" : prim.unboxer + "(value)";
+
+		out.println("\t\tif (\"" + methodName + "\".equals(methodName) && paramType == " + paramType + ".class)");
+		out.println("\t\t\treturn new MemberAccessor(\"" + className + "." + methodName + "(" + paramType + ")\", " + (prim != null) + ") {");
+		out.println("\t\t\t\t@Override protected Object read(Object pojo) { return null; }");
+		out.println("\t\t\t\t@Override protected void write(Object pojo, Object value) { ((" + className + ")pojo)." + methodName + "(" + argument + "); }");
+		out.println("\t\t\t};");
+		out.println();
+	}
+
+	/**
+	 * How each primitive type is unboxed, and which of the typed PrimitiveAccessor
+	 * methods (if any) apply to it.
+	 */
+	enum Primitive
+	{
+		BOOLEAN("boolean", "toBoolean", "boolean"),
+		BYTE("byte", "toByte", "long"),
+		SHORT("short", "toShort", "long"),
+		INT("int", "toInt", "long"),
+		LONG("long", "toLong", "long"),
+		CHAR("char", "toChar", null),
+		FLOAT("float", "toFloat", "double"),
+		DOUBLE("double", "toDouble", "double");
+
+		final String name;
+		final String unboxer;
+		final String datastoreType;
+
+		Primitive(String name, String unboxer, String datastoreType)
+		{
+			this.name = name;
+			this.unboxer = unboxer;
+			this.datastoreType = datastoreType;
+		}
+
+		/** @return null if the name isn't a primitive type */
+		static Primitive forName(String name)
+		{
+			for (Primitive prim: values())
+				if (prim.name.equals(name))
+					return prim;
+
+			return null;
+		}
+	}
+}
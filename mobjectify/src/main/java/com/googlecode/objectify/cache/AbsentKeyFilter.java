@@ -0,0 +1,308 @@
+package com.googlecode.objectify.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * <p>Remembers, per kind, keys which were recently found not to exist, so that repeated
+ * lookups of them (say, requests for random ids) can be answered in the JVM without even
+ * a memcache call.  Install one with {@code ObjectifyFactory.setAbsentKeyFilter()}; every
+ * {@code @Cached} kind whose negative results are cached takes part.  A key is remembered
+ * for at most the filter's lifetime and never longer than the negative expiration of its
+ * kind.</p>
+ *
+ * <p>Keys are stored as 64-bit fingerprints in small open-addressed tables, two
+ * generations per kind: when the current generation is half a lifetime old or holds
+ * {@code maxKeysPerKind} keys it becomes the previous one, and the old previous one is
+ * dropped.  Unlike a Bloom filter, single keys can be forgotten (puts through the same
+ * factory do this) and, short of a 64-bit collision, an existing entity is never
+ * reported missing.  Puts made by other app instances are not seen until the key
+ * ages out, just as with {@code LocalCache}.</p>
+ */
+public class AbsentKeyFilter
+{
+	/** Slot values which are not fingerprints */
+	static final long FREE = 0;
+	static final long REMOVED = 1;
+
+	/** One table of fingerprints, with linear probing */
+	static class Generation
+	{
+		final long[] slots;
+
+		/** Slots which are not FREE, including REMOVED ones */
+		int used;
+
+		/** */
+		int size;
+
+		Generation(int capacity)
+		{
+			this.slots = new long[capacity];
+		}
+
+		/** @return the slot holding the fingerprint, or -1 */
+		int find(long fingerprint)
+		{
+			int mask = this.slots.length - 1;
+			for (int i=spread(fingerprint) & mask; this.slots[i] != FREE; i = (i + 1) & mask)
+				if (this.slots[i] == fingerprint)
+					return i;
+
+			return -1;
+		}
+
+		/** */
+		void add(long fingerprint)
+		{
+			if (this.find(fingerprint) >= 0)
+				return;
+
+			int mask = this.slots.length - 1;
+			int i = spread(fingerprint) & mask;
+			while (this.slots[i] != FREE && this.slots[i] != REMOVED)
+				i = (i + 1) & mask;
+
+			if (this.slots[i] == FREE)
+				this.used++;
+
+			this.slots[i] = fingerprint;
+			this.size++;
+		}
+
+		/** */
+		void remove(long fingerprint)
+		{
+			int slot = this.find(fingerprint);
+			if (slot >= 0)
+			{
+				this.slots[slot] = REMOVED;
+				this.size--;
+			}
+		}
+	}
+
+	/** The generations of one kind; lock it to use them */
+	class KindFilter
+	{
+		final long halfLifeMillis;
+		Generation current;
+		Generation previous;
+		long rotatesAt;
+
+		KindFilter(int seconds)
+		{
+			this.halfLifeMillis = seconds * 500L;
+			this.current = new Generation(capacity);
+			this.rotatesAt = System.currentTimeMillis() + this.halfLifeMillis;
+		}
+
+		/** Call with the lock held */
+		void age(long now)
+		{
+			if (now >= this.rotatesAt + this.halfLifeMillis)
+			{
+				// Both generations are too old
+				this.previous = null;
+				this.current = new Generation(capacity);
+				this.rotatesAt = now + this.halfLifeMillis;
+			}
+			else if (now >= this.rotatesAt)
+			{
+				this.rotate(now);
+			}
+		}
+
+		/** Call with the lock held */
+		void rotate(long now)
+		{
+			this.previous = this.current;
+			this.current = new Generation(capacity);
+			this.rotatesAt = now + this.halfLifeMillis;
+		}
+	}
+
+	/** */
+	final int maxKeysPerKind;
+	final int capacity;
+	final int seconds;
+
+	/** */
+	final ConcurrentHashMap<String, KindFilter> kinds = new ConcurrentHashMap<String, KindFilter>();
+
+	/** */
+	final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * @param maxKeysPerKind is the most keys of one kind each of the two generations holds;
+	 *  each takes about 16 bytes per key
+	 * @param seconds is the longest any key is remembered
+	 */
+	public AbsentKeyFilter(int maxKeysPerKind, int seconds)
+	{
+		if (maxKeysPerKind < 1 || seconds < 1)
+			throw new IllegalArgumentException("AbsentKeyFilter limits must be positive");
+
+		// Keep the tables no more than half full
+		int cap = 2;
+		while (cap < maxKeysPerKind * 2)
+			cap <<= 1;
+
+		this.maxKeysPerKind = maxKeysPerKind;
+		this.capacity = cap;
+		this.seconds = seconds;
+	}
+
+	/** @return the longest any key is remembered */
+	public int getSeconds()
+	{
+		return this.seconds;
+	}
+
+	/**
+	 * @return true if the key was recently found not to exist
+	 */
+	public boolean isAbsent(Key key)
+	{
+		KindFilter filter = this.kinds.get(key.getKind());
+		if (filter == null)
+			return false;
+
+		long fingerprint = fingerprint(key);
+		boolean absent;
+		synchronized (filter)
+		{
+			filter.age(System.currentTimeMillis());
+			absent = filter.current.find(fingerprint) >= 0
+					|| (filter.previous != null && filter.previous.find(fingerprint) >= 0);
+		}
+
+		if (absent)
+			this.hits.incrementAndGet();
+
+		return absent;
+	}
+
+	/**
+	 * Remembers that the key does not exist.
+	 *
+	 * @param seconds is the longest the key may be remembered, which is never longer than
+	 *  the filter's own limit.  It is fixed by the first key added of each kind.
+	 */
+	public void addAbsent(Key key, int seconds)
+	{
+		KindFilter filter = this.kinds.get(key.getKind());
+		if (filter == null)
+		{
+			KindFilter made = new KindFilter(Math.min(seconds, this.seconds));
+			filter = this.kinds.putIfAbsent(key.getKind(), made);
+			if (filter == null)
+				filter = made;
+		}
+
+		long fingerprint = fingerprint(key);
+		synchronized (filter)
+		{
+			long now = System.currentTimeMillis();
+			filter.age(now);
+			if (filter.current.used >= this.maxKeysPerKind)
+				filter.rotate(now);
+
+			filter.current.add(fingerprint);
+		}
+	}
+
+	/** Forgets the keys, because they have been written */
+	public void removeAll(Iterable<Key> keys)
+	{
+		for (Key key: keys)
+		{
+			KindFilter filter = this.kinds.get(key.getKind());
+			if (filter == null)
+				continue;
+
+			long fingerprint = fingerprint(key);
+			synchronized (filter)
+			{
+				filter.current.remove(fingerprint);
+				if (filter.previous != null)
+					filter.previous.remove(fingerprint);
+			}
+		}
+	}
+
+	/** Forgets everything; statistics are kept */
+	public void clear()
+	{
+		this.kinds.clear();
+	}
+
+	/** @return the number of keys remembered, including some which have aged out */
+	public int size()
+	{
+		int size = 0;
+		for (KindFilter filter: this.kinds.values())
+		{
+			synchronized (filter)
+			{
+				size += filter.current.size;
+				if (filter.previous != null)
+					size += filter.previous.size;
+			}
+		}
+
+		return size;
+	}
+
+	/** @return the number of lookups answered as absent */
+	public long getHitCount()
+	{
+		return this.hits.get();
+	}
+
+	/**
+	 * @return a 64-bit hash of the namespace and the whole path of the key, which is never
+	 *  one of the reserved slot values
+	 */
+	static long fingerprint(Key key)
+	{
+		long h = hash(0xcbf29ce484222325L, key.getNamespace());
+		for (Key k = key; k != null; k = k.getParent())
+		{
+			h = hash(h, k.getKind());
+			if (k.getName() != null)
+				h = hash(h ^ 0x5bd1e995L, k.getName());
+			else
+				h = (h ^ k.getId()) * 0x100000001b3L;
+		}
+
+		// Finish like MurmurHash3, so the low bits depend on all of the input
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+
+		return (h == FREE || h == REMOVED) ? h + 2 : h;
+	}
+
+	/** FNV-1a over the chars, plus the length so that adjacent strings can't run together */
+	static long hash(long h, String value)
+	{
+		if (value == null)
+			return h * 0x100000001b3L;
+
+		for (int i=0; i<value.length(); i++)
+			h = (h ^ value.charAt(i)) * 0x100000001b3L;
+
+		return (h ^ value.length()) * 0x100000001b3L;
+	}
+
+	/** */
+	static int spread(long fingerprint)
+	{
+		return (int)(fingerprint ^ (fingerprint >>> 32));
+	}
+}
@@ -0,0 +1,47 @@
+package com.googlecode.objectify.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+
+/**
+ * <p>The memcache operations the global cache needs, as Futures so the cache never has
+ * to wait on memcache before it can get on with other work.  This is the shape of the
+ * {@code AsyncMemcacheService} which later GAE SDKs provide, so adapting one is trivial;
+ * MemcacheServiceAdapter adapts the synchronous MemcacheService of this SDK.</p>
+ * 
+ * <p>Provide your own by overriding {@code ObjectifyFactory.getAsyncMemcache()}.</p>
+ */
+public interface AsyncMemcache
+{
+	/**
+	 * @return the values of only the keys which were found
+	 */
+	Future<Map<String, Object>> getAll(Collection<String> keys);
+	
+	/**
+	 * @param expires can be null to keep the values as long as possible
+	 * @return the keys which were stored, since the policy may prevent some
+	 */
+	Future<Set<String>> putAll(Map<String, ?> values, Expiration expires, SetPolicy policy);
+	
+	/**
+	 * @return the identifiable values of only the keys which were found
+	 */
+	Future<Map<String, IdentifiableValue>> getIdentifiables(Collection<String> keys);
+	
+	/**
+	 * Stores each value only if its key has not been changed since its identifiable
+	 * value was obtained.
+	 * 
+	 * @param expected has the identifiable value for every key in values
+	 * @param expires can be null to keep the values as long as possible
+	 * @return the keys which were stored
+	 */
+	Future<Set<String>> putIfUntouched(Map<String, IdentifiableValue> expected, Map<String, ?> values, Expiration expires);
+}
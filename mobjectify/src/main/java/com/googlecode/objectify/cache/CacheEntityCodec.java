@@ -0,0 +1,465 @@
+package com.googlecode.objectify.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.ShortBlob;
+import com.google.appengine.api.datastore.Text;
+import com.googlecode.objectify.util.VarInts;
+
+/**
+ * <p>Turns the Entity objects the global cache keeps in memcache into compact byte arrays
+ * and back.  Java serialization of an Entity carries class descriptors and the whole Key;
+ * this carries only the properties.  The Key is not stored at all, since the cache always
+ * knows which Key it asked for.</p>
+ *
+ * <p>The format is a version byte, a compression byte, and then the property count
+ * followed by each property's name, indexed flag, and tagged value.  The common property
+ * types have their own tags, and Key values are written as their namespace and path of
+ * kinds and ids or names rather than as {@code KeyFactory.keyToString()}; rarer ones
+ * (User, GeoPt, Email, etc) are java serialized in place.  Payloads of at least
+ * {@code compressThreshold} bytes are deflated if that makes them smaller.  Values
+ * written with another version are refused, so the cache treats them as misses rather
+ * than misreading them.</p>
+ *
+ * <p>Instances are immutable and thread-safe.  Install a different one with
+ * {@code ObjectifyFactory.setCacheEntityCodec()}.</p>
+ */
+public class CacheEntityCodec
+{
+	/** First byte of every encoding; bump it whenever the format changes */
+	public static final int VERSION = 1;
+
+	/** Second byte of every encoding */
+	static final int PLAIN = 0;
+	static final int DEFLATED = 1;
+
+	/** Default for the threshold */
+	public static final int DEFAULT_COMPRESS_THRESHOLD = 1024;
+
+	/** Byte arrays longer than this are read in pieces, so a corrupt length can't allocate a huge array */
+	static final int MAX_EAGER_BYTES = 64 * 1024;
+
+	/** Value tags */
+	static final int NULL = 0;
+	static final int TRUE = 1;
+	static final int FALSE = 2;
+	static final int LONG = 3;
+	static final int INT = 4;
+	static final int SHORT = 5;
+	static final int BYTE = 6;
+	static final int DOUBLE = 7;
+	static final int FLOAT = 8;
+	static final int STRING = 9;
+	static final int TEXT = 10;
+	static final int DATE = 11;
+	static final int KEY = 12;
+	static final int BLOB = 13;
+	static final int SHORT_BLOB = 14;
+	static final int LIST = 15;
+	static final int JAVA = 16;
+
+	/** Property flags */
+	static final int UNINDEXED = 1;
+
+	/** */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Payloads at least this long are candidates for compression */
+	int compressThreshold;
+
+	/** */
+	public CacheEntityCodec()
+	{
+		this(DEFAULT_COMPRESS_THRESHOLD);
+	}
+
+	/**
+	 * @param compressThreshold is the payload size at which we try deflating; use
+	 *  Integer.MAX_VALUE to never compress.
+	 */
+	public CacheEntityCodec(int compressThreshold)
+	{
+		if (compressThreshold < 0)
+			throw new IllegalArgumentException("Compression threshold cannot be negative");
+
+		this.compressThreshold = compressThreshold;
+	}
+
+	/** @return the payload size at which we try deflating */
+	public int getCompressThreshold()
+	{
+		return this.compressThreshold;
+	}
+
+	/**
+	 * @return the bytes which stand for the entity's properties
+	 */
+	public byte[] encode(Entity entity)
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			bytes.write(VERSION);
+			bytes.write(PLAIN);
+
+			DataOutputStream out = new DataOutputStream(bytes);
+			Map<String, Object> props = entity.getProperties();
+			VarInts.writeVarLong(props.size(), out);
+
+			for (Map.Entry<String, Object> prop: props.entrySet())
+			{
+				this.writeString(prop.getKey(), out);
+				out.write(entity.isUnindexedProperty(prop.getKey()) ? UNINDEXED : 0);
+				this.write(prop.getValue(), out);
+			}
+
+			out.flush();
+			byte[] plain = bytes.toByteArray();
+
+			if (plain.length >= this.compressThreshold)
+			{
+				byte[] deflated = this.deflate(plain);
+				if (deflated.length < plain.length)
+					return deflated;
+			}
+
+			return plain;
+		}
+		catch (IOException ex) { throw new RuntimeException("Unable to encode " + entity.getKey(), ex); }
+	}
+
+	/**
+	 * @param key is the key the entity was cached under
+	 * @throws IOException if the bytes are not something encode() wrote
+	 */
+	public Entity decode(Key key, byte[] bytes) throws IOException
+	{
+		if (bytes.length < 2)
+			throw new IOException("Truncated cached entity");
+
+		if ((bytes[0] & 0xFF) != VERSION)
+			throw new IOException("Unknown cached entity version " + (bytes[0] & 0xFF));
+
+		InputStream raw = new ByteArrayInputStream(bytes, 2, bytes.length - 2);
+		if (bytes[1] == DEFLATED)
+			raw = new InflaterInputStream(raw);
+		else if (bytes[1] != PLAIN)
+			throw new IOException("Unknown cached entity compression " + bytes[1]);
+
+		DataInputStream in = new DataInputStream(raw);
+		Entity entity = new Entity(key);
+
+		try
+		{
+			long count = VarInts.readVarLong(in);
+			for (long i=0; i<count; i++)
+			{
+				String name = this.readString(in);
+				int flags = in.readUnsignedByte();
+				Object value = this.read(in);
+
+				if ((flags & UNINDEXED) != 0)
+					entity.setUnindexedProperty(name, value);
+				else
+					entity.setProperty(name, value);
+			}
+		}
+		catch (ClassNotFoundException ex) { throw new IOException(ex); }
+		catch (IllegalArgumentException ex) { throw new IOException(ex); }
+
+		return entity;
+	}
+
+	/** @return the version and compression bytes followed by the deflated payload */
+	byte[] deflate(byte[] plain)
+	{
+		Deflater deflater = new Deflater();
+		try
+		{
+			deflater.setInput(plain, 2, plain.length - 2);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length / 2);
+			out.write(VERSION);
+			out.write(DEFLATED);
+
+			byte[] chunk = new byte[4096];
+			while (!deflater.finished())
+				out.write(chunk, 0, deflater.deflate(chunk));
+
+			return out.toByteArray();
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	/** */
+	void write(Object value, DataOutputStream out) throws IOException
+	{
+		if (value == null)
+		{
+			out.write(NULL);
+			return;
+		}
+
+		Class<?> clazz = value.getClass();
+
+		if (clazz == String.class)
+		{
+			out.write(STRING);
+			this.writeString((String)value, out);
+		}
+		else if (clazz == Long.class)
+		{
+			out.write(LONG);
+			VarInts.writeVarLong(VarInts.zigzag((Long)value), out);
+		}
+		else if (clazz == Boolean.class)
+		{
+			out.write((Boolean)value ? TRUE : FALSE);
+		}
+		else if (clazz == Double.class)
+		{
+			out.write(DOUBLE);
+			out.writeDouble((Double)value);
+		}
+		else if (clazz == Date.class)
+		{
+			out.write(DATE);
+			VarInts.writeVarLong(VarInts.zigzag(((Date)value).getTime()), out);
+		}
+		else if (clazz == Text.class)
+		{
+			out.write(TEXT);
+			this.writeString(((Text)value).getValue(), out);
+		}
+		else if (clazz == Key.class)
+		{
+			out.write(KEY);
+			Key key = (Key)value;
+			this.writeString(key.getNamespace() == null ? "" : key.getNamespace(), out);
+			this.writeKeyPath(key, out);
+		}
+		else if (clazz == Blob.class)
+		{
+			out.write(BLOB);
+			this.writeBytes(((Blob)value).getBytes(), out);
+		}
+		else if (clazz == ShortBlob.class)
+		{
+			out.write(SHORT_BLOB);
+			this.writeBytes(((ShortBlob)value).getBytes(), out);
+		}
+		else if (clazz == Integer.class)
+		{
+			out.write(INT);
+			VarInts.writeVarLong(VarInts.zigzag((Integer)value), out);
+		}
+		else if (clazz == Short.class)
+		{
+			out.write(SHORT);
+			VarInts.writeVarLong(VarInts.zigzag((Short)value), out);
+		}
+		else if (clazz == Byte.class)
+		{
+			out.write(BYTE);
+			out.writeByte((Byte)value);
+		}
+		else if (clazz == Float.class)
+		{
+			out.write(FLOAT);
+			out.writeFloat((Float)value);
+		}
+		else if (value instanceof Collection<?>)
+		{
+			Collection<?> coll = (Collection<?>)value;
+			out.write(LIST);
+			VarInts.writeVarLong(coll.size(), out);
+			for (Object element: coll)
+				this.write(element, out);
+		}
+		else
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(value);
+			oos.close();
+
+			out.write(JAVA);
+			this.writeBytes(bytes.toByteArray(), out);
+		}
+	}
+
+	/** */
+	Object read(DataInputStream in) throws IOException, ClassNotFoundException
+	{
+		int tag = in.readUnsignedByte();
+		switch (tag)
+		{
+			case NULL: return null;
+			case TRUE: return Boolean.TRUE;
+			case FALSE: return Boolean.FALSE;
+			case LONG: return VarInts.unzigzag(VarInts.readVarLong(in));
+			case INT: return (int)VarInts.unzigzag(VarInts.readVarLong(in));
+			case SHORT: return (short)VarInts.unzigzag(VarInts.readVarLong(in));
+			case BYTE: return in.readByte();
+			case DOUBLE: return in.readDouble();
+			case FLOAT: return in.readFloat();
+			case STRING: return this.readString(in);
+			case TEXT: return new Text(this.readString(in));
+			case DATE: return new Date(VarInts.unzigzag(VarInts.readVarLong(in)));
+			case KEY: return this.readKey(in);
+			case BLOB: return new Blob(this.readBytes(in));
+			case SHORT_BLOB: return new ShortBlob(this.readBytes(in));
+			case LIST:
+			{
+				long size = VarInts.readVarLong(in);
+				List<Object> list = new ArrayList<Object>((int)Math.min(size, 1024));
+				for (long i=0; i<size; i++)
+					list.add(this.read(in));
+
+				return list;
+			}
+			case JAVA: return new ObjectInputStream(new ByteArrayInputStream(this.readBytes(in))).readObject();
+
+			default: throw new IOException("Corrupt cached entity; unknown tag " + tag);
+		}
+	}
+
+	/** Writes the number of elements, then each one's kind and id or name, root first */
+	void writeKeyPath(Key key, DataOutputStream out) throws IOException
+	{
+		int depth = 0;
+		for (Key k = key; k != null; k = k.getParent())
+			depth++;
+
+		Key[] path = new Key[depth];
+		for (Key k = key; k != null; k = k.getParent())
+			path[--depth] = k;
+
+		VarInts.writeVarLong(path.length, out);
+		for (Key element: path)
+		{
+			this.writeString(element.getKind(), out);
+			if (element.getName() != null)
+			{
+				out.write(STRING);
+				this.writeString(element.getName(), out);
+			}
+			else
+			{
+				out.write(LONG);
+				VarInts.writeVarLong(element.getId(), out);
+			}
+		}
+	}
+
+	/** Reads what the KEY tag wrote, building the root in the key's own namespace */
+	Key readKey(DataInputStream in) throws IOException
+	{
+		String namespace = this.readString(in);
+		String current = NamespaceManager.get();
+		boolean switching = !namespace.equals(current == null ? "" : current);
+
+		if (switching)
+			NamespaceManager.set(namespace);
+		try
+		{
+			long depth = VarInts.readVarLong(in);
+			Key key = null;
+			for (long i=0; i<depth; i++)
+			{
+				String kind = this.readString(in);
+				int tag = in.readUnsignedByte();
+				if (tag == STRING)
+					key = KeyFactory.createKey(key, kind, this.readString(in));
+				else if (tag == LONG)
+					key = KeyFactory.createKey(key, kind, VarInts.readVarLong(in));
+				else
+					throw new IOException("Corrupt cached entity; unknown key element tag " + tag);
+			}
+
+			if (key == null)
+				throw new IOException("Corrupt cached entity; empty key");
+
+			return key;
+		}
+		finally
+		{
+			if (switching)
+				NamespaceManager.set(current);
+		}
+	}
+
+	/** */
+	void writeString(String value, DataOutputStream out) throws IOException
+	{
+		this.writeBytes(value.getBytes(UTF8), out);
+	}
+
+	/** */
+	String readString(DataInputStream in) throws IOException
+	{
+		return new String(this.readBytes(in), UTF8);
+	}
+
+	/** */
+	void writeBytes(byte[] bytes, DataOutputStream out) throws IOException
+	{
+		VarInts.writeVarLong(bytes.length, out);
+		out.write(bytes);
+	}
+
+	/** */
+	byte[] readBytes(DataInputStream in) throws IOException
+	{
+		long length = VarInts.readVarLong(in);
+		if (length < 0 || length > Integer.MAX_VALUE)
+			throw new IOException("Corrupt cached entity; length " + length);
+
+		if (length <= MAX_EAGER_BYTES)
+		{
+			byte[] bytes = new byte[(int)length];
+			in.readFully(bytes);
+			return bytes;
+		}
+
+		// Only grow as fast as the data actually arrives
+		ByteArrayOutputStream out = new ByteArrayOutputStream(MAX_EAGER_BYTES);
+		byte[] chunk = new byte[MAX_EAGER_BYTES];
+		long remaining = length;
+		while (remaining > 0)
+		{
+			int count = in.read(chunk, 0, (int)Math.min(chunk.length, remaining));
+			if (count < 0)
+				throw new IOException("Corrupt cached entity; ended " + remaining + " bytes early");
+
+			out.write(chunk, 0, count);
+			remaining -= count;
+		}
+
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,19 @@
+package com.googlecode.objectify.cache;
+
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * <p>Turns datastore keys into the String keys used in memcache.  The cache never needs
+ * to turn them back; it remembers which datastore key each String came from.</p>
+ * 
+ * <p>Every app version sharing a memcache namespace must use the same codec, otherwise
+ * a write by one version will not evict the entries read by another.</p>
+ */
+public interface CacheKeyCodec
+{
+	/**
+	 * @param key is always a complete key
+	 * @return a String which no other key encodes to
+	 */
+	String encode(Key key);
+}
@@ -0,0 +1,336 @@
+package com.googlecode.objectify.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * <p>Counts what the global cache does, per kind.  One of these is shared by everything
+ * made from an ObjectifyFactory; see {@code ObjectifyFactory.getCacheStats()}.  Every
+ * count is an atomic increment, so it is cheap enough to leave on in production.</p>
+ *
+ * <p>Latencies are measured from issuing a call to its completion, as noticed by the
+ * ListenableHook at the next API call (or by whoever waits on it first), not to the
+ * caller collecting the result.  Outside of App Engine (which does not allow JMX) the
+ * statistics can be published as an MXBean with register().</p>
+ */
+public class CacheStats implements CacheStatsMXBean
+{
+	/** The upper bounds of the latency buckets; the last bucket counts everything slower */
+	static final long[] BUCKET_LIMITS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+
+	/**
+	 * Counts of how long calls took.
+	 */
+	public static class Histogram
+	{
+		/** */
+		final AtomicLongArray counts = new AtomicLongArray(BUCKET_LIMITS_MILLIS.length + 1);
+		final AtomicLong totalNanos = new AtomicLong();
+
+		/** */
+		void record(long nanos)
+		{
+			long millis = nanos / 1000000;
+
+			int bucket = 0;
+			while (bucket < BUCKET_LIMITS_MILLIS.length && millis >= BUCKET_LIMITS_MILLIS[bucket])
+				bucket++;
+
+			this.counts.incrementAndGet(bucket);
+			this.totalNanos.addAndGet(nanos);
+		}
+
+		/** */
+		void add(Histogram other)
+		{
+			for (int i=0; i<this.counts.length(); i++)
+				this.counts.addAndGet(i, other.counts.get(i));
+
+			this.totalNanos.addAndGet(other.totalNanos.get());
+		}
+
+		/** @return the upper bound (exclusive) of each bucket but the last, which has none */
+		public long[] getBucketLimitsMillis()
+		{
+			return BUCKET_LIMITS_MILLIS.clone();
+		}
+
+		/** @return the number of calls in each bucket */
+		public long[] getCounts()
+		{
+			long[] result = new long[this.counts.length()];
+			for (int i=0; i<result.length; i++)
+				result[i] = this.counts.get(i);
+
+			return result;
+		}
+
+		/** @return the number of calls */
+		public long getCount()
+		{
+			long count = 0;
+			for (int i=0; i<this.counts.length(); i++)
+				count += this.counts.get(i);
+
+			return count;
+		}
+
+		/** @return the average call in milliseconds, or 0 if there were none */
+		public double getMeanMillis()
+		{
+			long count = this.getCount();
+			return (count == 0) ? 0 : this.totalNanos.get() / 1000000.0 / count;
+		}
+	}
+
+	/**
+	 * The statistics of one kind.
+	 */
+	public static class KindStats
+	{
+		/** */
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong negativeHits = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+		final AtomicLong bytesRead = new AtomicLong();
+		final AtomicLong bytesWritten = new AtomicLong();
+		final AtomicLong valuesRead = new AtomicLong();
+		final AtomicLong valuesWritten = new AtomicLong();
+		final AtomicLong fillFailures = new AtomicLong();
+		final AtomicLong decodeFailures = new AtomicLong();
+		final Histogram memcacheLatency = new Histogram();
+		final Histogram datastoreLatency = new Histogram();
+
+		/** */
+		void add(KindStats other)
+		{
+			this.hits.addAndGet(other.hits.get());
+			this.negativeHits.addAndGet(other.negativeHits.get());
+			this.misses.addAndGet(other.misses.get());
+			this.bytesRead.addAndGet(other.bytesRead.get());
+			this.bytesWritten.addAndGet(other.bytesWritten.get());
+			this.valuesRead.addAndGet(other.valuesRead.get());
+			this.valuesWritten.addAndGet(other.valuesWritten.get());
+			this.fillFailures.addAndGet(other.fillFailures.get());
+			this.decodeFailures.addAndGet(other.decodeFailures.get());
+			this.memcacheLatency.add(other.memcacheLatency);
+			this.datastoreLatency.add(other.datastoreLatency);
+		}
+
+		/** @return the number of keys found in the local cache or memcache */
+		public long getHitCount() { return this.hits.get(); }
+
+		/** @return the number of keys known not to exist without asking the datastore */
+		public long getNegativeHitCount() { return this.negativeHits.get(); }
+
+		/** @return the number of keys which had to be looked up in the datastore */
+		public long getMissCount() { return this.misses.get(); }
+
+		/** @return the size of the encoded entities read from memcache */
+		public long getBytesRead() { return this.bytesRead.get(); }
+
+		/** @return the size of the encoded entities written to memcache */
+		public long getBytesWritten() { return this.bytesWritten.get(); }
+
+		/** @return the number of encoded entities read from memcache */
+		public long getValuesRead() { return this.valuesRead.get(); }
+
+		/** @return the number of encoded entities written to memcache */
+		public long getValuesWritten() { return this.valuesWritten.get(); }
+
+		/** @return the average size of the encoded entities read or written, or 0 if there haven't been any */
+		public long getMeanValueBytes()
+		{
+			long values = this.valuesRead.get() + this.valuesWritten.get();
+			return (values == 0) ? 0 : (this.bytesRead.get() + this.bytesWritten.get()) / values;
+		}
+
+		/**
+		 * @return the number of entities which were not put in memcache after a miss, either
+		 *  because a write locked the key meanwhile or because memcache failed
+		 */
+		public long getFillFailureCount() { return this.fillFailures.get(); }
+
+		/** @return the number of cached values which could not be decoded and were treated as misses */
+		public long getDecodeFailureCount() { return this.decodeFailures.get(); }
+
+		/** @return how long memcache lookups took */
+		public Histogram getMemcacheLatency() { return this.memcacheLatency; }
+
+		/** @return how long datastore lookups took */
+		public Histogram getDatastoreLatency() { return this.datastoreLatency; }
+	}
+
+	/** */
+	final ConcurrentMap<String, KindStats> kinds = new ConcurrentHashMap<String, KindStats>();
+
+	/** */
+	final AtomicLong memcacheErrors = new AtomicLong();
+
+	/** @return the statistics of the kind, which are created if necessary */
+	KindStats of(Key key)
+	{
+		KindStats stats = this.kinds.get(key.getKind());
+		if (stats == null)
+		{
+			KindStats made = new KindStats();
+			stats = this.kinds.putIfAbsent(key.getKind(), made);
+			if (stats == null)
+				stats = made;
+		}
+
+		return stats;
+	}
+
+	/** Counts entities (and negative results) found without the datastore */
+	void found(Map<Key, Entity> found)
+	{
+		for (Map.Entry<Key, Entity> entry: found.entrySet())
+		{
+			if (entry.getValue() == null)
+				this.of(entry.getKey()).negativeHits.incrementAndGet();
+			else
+				this.of(entry.getKey()).hits.incrementAndGet();
+		}
+	}
+
+	/** */
+	void missed(Collection<Key> keys)
+	{
+		for (Key key: keys)
+			this.of(key).misses.incrementAndGet();
+	}
+
+	/** */
+	void read(Key key, int bytes)
+	{
+		KindStats stats = this.of(key);
+		stats.bytesRead.addAndGet(bytes);
+		stats.valuesRead.incrementAndGet();
+	}
+
+	/** */
+	void written(Key key, int bytes)
+	{
+		KindStats stats = this.of(key);
+		stats.bytesWritten.addAndGet(bytes);
+		stats.valuesWritten.incrementAndGet();
+	}
+
+	/** */
+	void fillFailed(Key key)
+	{
+		this.of(key).fillFailures.incrementAndGet();
+	}
+
+	/** */
+	void decodeFailed(Key key)
+	{
+		this.of(key).decodeFailures.incrementAndGet();
+	}
+
+	/** */
+	void memcacheError()
+	{
+		this.memcacheErrors.incrementAndGet();
+	}
+
+	/** Records the latency of a memcache lookup once for every kind it involved */
+	void memcacheLatency(Collection<Key> keys, long nanos)
+	{
+		for (KindStats stats: this.kindsOf(keys))
+			stats.memcacheLatency.record(nanos);
+	}
+
+	/** Records the latency of a datastore lookup once for every kind it involved */
+	void datastoreLatency(Collection<Key> keys, long nanos)
+	{
+		for (KindStats stats: this.kindsOf(keys))
+			stats.datastoreLatency.record(nanos);
+	}
+
+	/** @return the statistics of each distinct kind of the keys */
+	private Collection<KindStats> kindsOf(Collection<Key> keys)
+	{
+		Map<String, KindStats> found = new HashMap<String, KindStats>();
+		for (Key key: keys)
+			if (!found.containsKey(key.getKind()))
+				found.put(key.getKind(), this.of(key));
+
+		return found.values();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.CacheStatsMXBean#getKinds()
+	 */
+	@Override
+	public Map<String, KindStats> getKinds()
+	{
+		return new TreeMap<String, KindStats>(this.kinds);
+	}
+
+	/** @return the statistics of the kind, or null if it hasn't been seen */
+	public KindStats getKind(String kind)
+	{
+		return this.kinds.get(kind);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.CacheStatsMXBean#getTotals()
+	 */
+	@Override
+	public KindStats getTotals()
+	{
+		KindStats totals = new KindStats();
+		for (KindStats stats: this.kinds.values())
+			totals.add(stats);
+
+		return totals;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.CacheStatsMXBean#getMemcacheErrorCount()
+	 */
+	@Override
+	public long getMemcacheErrorCount()
+	{
+		return this.memcacheErrors.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.CacheStatsMXBean#reset()
+	 */
+	@Override
+	public void reset()
+	{
+		this.kinds.clear();
+		this.memcacheErrors.set(0);
+	}
+
+	/**
+	 * Publishes these statistics in the platform MBeanServer.  This does not work on App
+	 * Engine itself, only in other environments such as tests and tools.
+	 *
+	 * @param name is the name to register under, for example
+	 *  {@code com.googlecode.objectify:type=CacheStats}
+	 */
+	public ObjectName register(String name) throws JMException
+	{
+		ObjectName objectName = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+}
@@ -0,0 +1,21 @@
+package com.googlecode.objectify.cache;
+
+import java.util.Map;
+
+/**
+ * <p>The JMX view of a CacheStats; see {@code CacheStats.register()}.</p>
+ */
+public interface CacheStatsMXBean
+{
+	/** @return the statistics of each kind which has been looked up or written */
+	Map<String, CacheStats.KindStats> getKinds();
+
+	/** @return the statistics of all kinds added together */
+	CacheStats.KindStats getTotals();
+
+	/** @return the number of memcache calls which failed outright */
+	long getMemcacheErrorCount();
+
+	/** Starts counting from zero again */
+	void reset();
+}
@@ -1,5 +1,6 @@
 package com.googlecode.objectify.cache;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -10,22 +11,30 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.KeyRange;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.ReadPolicy.Consistency;
 import com.google.appengine.api.datastore.Transaction;
 import com.google.appengine.api.memcache.Expiration;
 import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.annotation.Cached;
 import com.googlecode.objectify.util.FutureHelper;
+import com.googlecode.objectify.util.NowFuture;
 import com.googlecode.objectify.util.SimpleFutureWrapper;
 
 /**
@@ -34,7 +43,19 @@ import com.googlecode.objectify.util.SimpleFutureWrapper;
  * by the {@code @Cached} annotation on the POJO.</p>
  * 
  * <ul>
- * <li>Caches negative results as well as positive results.</li>
+ * <li>Caches negative results as well as positive results, with their own expiration.  An optional
+ * AbsentKeyFilter answers repeated lookups of missing keys without memcache.</li>
+ * <li>Concurrent misses for the same key in the same instance share one datastore lookup.</li>
+ * <li>Writes lock the keys in memcache briefly rather than writing through.  A read which
+ * misses reserves the keys with placeholders as it starts its datastore read, and fills
+ * them with compare-and-set against those placeholders.  Any write which lands after the
+ * reservation replaces the placeholder, so the fill is refused however late it happens;
+ * the lock keeps a write which landed just before the reservation from being missed.</li>
+ * <li>Big gets and writes are split into chunks of memcache calls, which are issued one after
+ * another without waiting for each other's results; each chunk of a get goes on to the
+ * datastore as soon as its own memcache results are in.  The calls only overlap if the
+ * AsyncMemcache is really asynchronous.  Gets are chunked by what the CacheStats say the
+ * kinds' entities usually weigh, if there are stats.</li>
  * <li>Queries do not affect the cache in any way.</li>
  * <li>Transactional reads bypass the cache, but successful transaction commits will update the cache.</li>
  * </ul>
@@ -42,18 +63,52 @@ import com.googlecode.objectify.util.SimpleFutureWrapper;
  * <p>Note:  There is a horrible, obscure, and utterly bizarre bug in GAE's memcache
  * relating to Key serialization.  It manifests in certain circumstances when a Key
  * has a parent Key that has the same String name.  For this reason, we use the
- * keyToString method to stringify Keys as cache keys.  The actual structure
- * stored in the memcache will be String -> Entity.</p>
+ * factory's CacheKeyCodec to stringify Keys as cache keys.  The actual structure
+ * stored in the memcache will be String -> byte[] as written by the factory's
+ * CacheEntityCodec, or String -> Entity if it has none.</p>
  * 
  * <p>Note2:  Until Google adds a hook that lets us wrap native Future<?> implementations,
  * this cache requires the AsyncCacheFilter to be installed.  This wasn't necessary when
  * the cache was synchronous, but async caching requires an extra hook for the end of
  * a request when fired-and-forgotten put()s and delete()s get processed.</p>
  * 
+ * <p>Note3:  All memcache traffic goes through an AsyncMemcache.  A get() returns as soon
+ * as the memcache lookup is issued; the datastore lookup for the misses is chained onto
+ * its completion.  Cache fills and invalidations are not waited for at all.  They are
+ * tracked as pending Futures like everything else, and failures are only logged.</p>
+ * 
  * @author Jeff Schnitzer <jeff@infohazard.org>
  */
 public class CachingAsyncDatastoreService implements AsyncDatastoreService
 {
+	/** */
+	private static final Logger log = Logger.getLogger(CachingAsyncDatastoreService.class.getName());
+	
+	/** Placeholder for a key which may be filled once the datastore has been read */
+	static final String EMPTY = "objectify:empty";
+	
+	/** Placeholder for a key which was just written; it may not be filled until this expires */
+	static final String LOCKED = "objectify:locked";
+	
+	/** How long a reservation lasts; a fill which takes longer than this is discarded */
+	static final int EMPTY_SECONDS = 30;
+	
+	/**
+	 * How long writes keep keys from being reserved.  This only needs to cover the time
+	 * between a reader starting its datastore read and its reservation reaching memcache,
+	 * which are issued one right after the other.
+	 */
+	public static final int LOCK_SECONDS = 2;
+	
+	/** The most keys each memcache call (and the datastore lookup following it) covers, by default */
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+	
+	/** Roughly the most bytes of values each memcache call reads or writes, by default */
+	public static final long DEFAULT_CHUNK_BYTES = 1000000;
+	
+	/** For reading encoded entities when the factory has no codec */
+	private static final CacheEntityCodec DEFAULT_ENTITY_CODEC = new CacheEntityCodec();
+	
 	/** Source of metadata so we know which kinds to cache */
 	ObjectifyFactory fact;
 	
@@ -61,15 +116,72 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 	AsyncDatastoreService rawAsync;
 	
 	/** */
-	MemcacheService memcache;
+	AsyncMemcache memcache;
+	
+	/** Makes the String keys used in memcache */
+	CacheKeyCodec codec;
+	
+	/** Makes the values stored in memcache; null to store Entity objects */
+	CacheEntityCodec entityCodec;
+	
+	/** In-JVM cache in front of memcache; null if there isn't one */
+	LocalCache local;
+	
+	/** What the cache is doing; null if nobody is counting */
+	CacheStats stats;
+	
+	/** Keys recently found not to exist; null if there isn't one */
+	AbsentKeyFilter absent;
+	
+	/** Datastore lookups in progress, shared across the factory; null if they aren't shared */
+	SingleFlight flights;
+	
+	/** Numbers the writes, shared across the factory */
+	WriteSequence writes;
+	
+	/** The consistency rawAsync reads with */
+	Consistency consistency;
+	
+	/** The most keys in one memcache call */
+	int chunkSize;
+	
+	/** Roughly the most bytes of values in one memcache call */
+	long chunkBytes;
 	
 	/**
+	 * Uses a synchronous memcache, for compatibility.
 	 */
 	public CachingAsyncDatastoreService(ObjectifyFactory fact, AsyncDatastoreService rawAsync, MemcacheService memcache)
+	{
+		this(fact, rawAsync, new MemcacheServiceAdapter(memcache));
+	}
+	
+	/**
+	 * For a rawAsync which reads with strong consistency.
+	 */
+	public CachingAsyncDatastoreService(ObjectifyFactory fact, AsyncDatastoreService rawAsync, AsyncMemcache memcache)
+	{
+		this(fact, rawAsync, memcache, Consistency.STRONG);
+	}
+	
+	/**
+	 * @param consistency is what rawAsync reads with; lookups are only shared between reads of the same
+	 */
+	public CachingAsyncDatastoreService(ObjectifyFactory fact, AsyncDatastoreService rawAsync, AsyncMemcache memcache, Consistency consistency)
 	{
 		this.fact = fact;
+		this.consistency = consistency;
 		this.rawAsync = rawAsync;
 		this.memcache = memcache;
+		this.codec = fact.getCacheKeyCodec();
+		this.entityCodec = fact.getCacheEntityCodec();
+		this.local = fact.getLocalCache();
+		this.flights = fact.getSingleFlight();
+		this.writes = fact.getWriteSequence();
+		this.absent = fact.getAbsentKeyFilter();
+		this.stats = fact.getCacheStats();
+		this.chunkSize = fact.getCacheChunkSize();
+		this.chunkBytes = fact.getCacheChunkBytes();
 	}
 	
 	/**
@@ -86,7 +198,9 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 			Cached cachedAnno = this.fact.getMetadata(entry.getKey()).getCached(entry.getValue());
 			if (cachedAnno != null)
 			{
-				Integer expiry = cachedAnno.expirationSeconds();
+				Integer expiry = (entry.getValue() == null) ? negativeExpirationSeconds(cachedAnno) : cachedAnno.expirationSeconds();
+				if (expiry == 0)
+					continue;
 				
 				Map<Key, Entity> grouping = result.get(expiry);
 				if (grouping == null)
@@ -108,7 +222,18 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 	 */
 	private Future<Map<Key, Entity>> getFromDatastore(Transaction txn, final Set<Key> stillNeeded)
 	{
-		Future<Map<Key, Entity>> prelim = this.rawAsync.get(txn, stillNeeded);
+		final long start = System.nanoTime();
+		ListenableFuture<Map<Key, Entity>> prelim = new ListenableFuture<Map<Key, Entity>>(this.rawAsync.get(txn, stillNeeded));
+		
+		// Timed when the call completes rather than when someone gets around to the result
+		if (this.stats != null)
+			prelim.addCallback(new Runnable() {
+				@Override
+				public void run()
+				{
+					stats.datastoreLatency(stillNeeded, System.nanoTime() - start);
+				}
+			});
 		
 		return new SimpleFutureWrapper<Map<Key, Entity>, Map<Key, Entity>>(prelim) {
 			@Override
@@ -125,89 +250,501 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 		};
 	}
 
-	/** Hides the ugly casting and deals with String/Key conversion */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private Map<Key, Entity> getFromCacheRaw(Iterable<Key> keys)
+	/**
+	 * Starts a memcache lookup, dealing with String/Key conversion.  The String keys are
+	 * never parsed; hits are mapped back to the Keys they were made from.
+	 */
+	private Future<Map<Key, Entity>> getFromCacheRaw(Iterable<Key> keys)
 	{
-		Collection<String> keysColl = new ArrayList<String>();
+		final Map<String, Key> keysColl = new HashMap<String, Key>();
 		for (Key key: keys)
-			keysColl.add(KeyFactory.keyToString(key));
+			keysColl.put(this.codec.encode(key), key);
 		
-		Map<String, Entity> rawResults;
+		final long start = System.nanoTime();
+		final ListenableFuture<Map<String, Object>> rawResults;
 		try {
-			rawResults = (Map)this.memcache.getAll((Collection)keysColl);
+			rawResults = new ListenableFuture<Map<String, Object>>(this.memcache.getAll(keysColl.keySet()));
 		}
 		catch (Exception ex) {
-			// This should only be an issue if Google changes the serialization
-			// format of an Entity.  It's possible, but this is just a cache so we
-			// can safely ignore the error.
+			if (this.stats != null)
+				this.stats.memcacheError();
+			
+			return new NowFuture<Map<Key, Entity>>(new HashMap<Key, Entity>());
+		}
+		
+		// Counted when the call completes, so the stats don't wait on whoever collects the result
+		if (this.stats != null)
+			rawResults.addCallback(new Runnable() {
+				@Override
+				public void run()
+				{
+					stats.memcacheLatency(keysColl.values(), System.nanoTime() - start);
+					
+					Map<String, Object> results;
+					try
+					{
+						results = rawResults.get();
+					}
+					catch (Exception ex)
+					{
+						return;	// quietCacheGet() counts the error
+					}
+					
+					for (Map.Entry<String, Object> entry: results.entrySet())
+						if (entry.getValue() instanceof byte[])
+							stats.read(keysColl.get(entry.getKey()), ((byte[])entry.getValue()).length);
+				}
+			});
+		
+		return new SimpleFutureWrapper<Map<String, Object>, Map<Key, Entity>>(rawResults) {
+			@Override
+			protected Map<Key, Entity> wrap(Map<String, Object> t)
+			{
+				Map<Key, Entity> keyMapped = new HashMap<Key, Entity>((int)(t.size() * 1.5));
+				for (Map.Entry<String, Object> entry: t.entrySet())
+				{
+					Key key = keysColl.get(entry.getKey());
+					Object value = entry.getValue();
+					
+					if (value == null || value instanceof Entity)
+					{
+						// Negative results, or entities stored without a codec
+						keyMapped.put(key, (Entity)value);
+					}
+					else if (value instanceof byte[])
+					{
+						try
+						{
+							keyMapped.put(key, getEntityCodec().decode(key, (byte[])value));
+						}
+						catch (IOException ex)
+						{
+							// Probably written by another version; count it as a miss
+							log.log(Level.FINE, "Unable to decode cached " + key, ex);
+							
+							if (stats != null)
+								stats.decodeFailed(key);
+						}
+					}
+				}
+				
+				return keyMapped;
+			}
+		};
+	}
+	
+	/**
+	 * Waits for a memcache lookup.  This should only fail if Google changes the serialization
+	 * format of an Entity.  It's possible, but this is just a cache so we can safely ignore
+	 * the error and go to the datastore.
+	 */
+	private Map<Key, Entity> quietCacheGet(Future<Map<Key, Entity>> fromCache)
+	{
+		try
+		{
+			return fromCache.get();
+		}
+		catch (Exception ex)
+		{
+			log.log(Level.WARNING, "Error reading from memcache", ex);
+			
+			if (this.stats != null)
+				this.stats.memcacheError();
+			
 			return new HashMap<Key, Entity>();
 		}
+	}
+	
+	/**
+	 * @return the memcache expiration of a negative result: -1 for as long as possible,
+	 *  0 if it isn't cached at all
+	 */
+	static int negativeExpirationSeconds(Cached cachedAnno)
+	{
+		int seconds = cachedAnno.negativeExpirationSeconds();
+		return (seconds < 0) ? cachedAnno.expirationSeconds() : seconds;
+	}
+	
+	/**
+	 * @return how many seconds the entity may stay in the local cache; 0 if it doesn't belong there
+	 */
+	private int localExpirationSeconds(Key key, Entity entity)
+	{
+		Cached cachedAnno = this.fact.getMetadata(key).getCached(entity);
+		if (cachedAnno == null)
+			return 0;
 		
-		Map<Key, Entity> keyMapped = new HashMap<Key, Entity>((int)(rawResults.size() * 1.5));
-		for(Map.Entry<String, Entity> entry: rawResults.entrySet())
-			keyMapped.put(KeyFactory.stringToKey(entry.getKey()), entry.getValue());
-
-		return keyMapped;
+		Integer configured = this.local.getExpirationSeconds(key.getKind());
+		int seconds = (configured != null) ? configured : cachedAnno.localExpirationSeconds();
+		
+		int limit = (entity == null) ? negativeExpirationSeconds(cachedAnno) : cachedAnno.expirationSeconds();
+		if (limit >= 0 && seconds > limit)
+			seconds = limit;
+		
+		return seconds;
 	}
 	
 	/**
-	 * Get entries from cache.  Ignores uncacheable keys.
+	 * Copies whichever entities belong in the local cache, if there is one, and remembers
+	 * the negative results in the absent key filter, if there is one.  Keys which this
+	 * instance wrote after the entities were read are left out of both; what we have for
+	 * them may be older than the write.
+	 * 
+	 * @param since is what the WriteSequence was at when the entities were read
 	 */
-	private Map<Key, Entity> getFromCache(Iterable<Key> keys)
+	private void putInLocalCache(Map<Key, Entity> entities, long since)
 	{
-		Collection<Key> fetch = new ArrayList<Key>();
+		if (this.local != null)
+		{
+			for (Map.Entry<Key, Entity> entry: entities.entrySet())
+			{
+				if (this.writes.writtenSince(entry.getKey(), since))
+					continue;
+				
+				int seconds = this.localExpirationSeconds(entry.getKey(), entry.getValue());
+				if (seconds > 0)
+					this.local.put(entry.getKey(), entry.getValue(), seconds);
+			}
+		}
 		
+		if (this.absent != null)
+		{
+			for (Map.Entry<Key, Entity> entry: entities.entrySet())
+			{
+				if (entry.getValue() != null || this.writes.writtenSince(entry.getKey(), since))
+					continue;
+				
+				Cached cachedAnno = this.fact.getMetadata(entry.getKey()).getCached(null);
+				if (cachedAnno == null)
+					continue;
+				
+				int seconds = negativeExpirationSeconds(cachedAnno);
+				if (seconds != 0)
+					this.absent.addAbsent(entry.getKey(), (seconds < 0) ? this.absent.getSeconds() : seconds);
+			}
+		}
+	}
+	
+	/**
+	 * Puts a placeholder under each key which isn't in memcache yet.  This is issued just
+	 * before the datastore read, so that any write the read might miss replaces the
+	 * placeholder or the lock it finds.
+	 * 
+	 * @return the keys by their memcache keys, or null if the placeholders couldn't be sent
+	 */
+	private Map<String, Key> reserve(Collection<Key> keys)
+	{
+		Map<String, Key> keysColl = new HashMap<String, Key>();
+		Map<String, Object> placeholders = new HashMap<String, Object>();
 		for (Key key: keys)
-			if (this.fact.getMetadata(key).mightBeInCache())
-				fetch.add(key);
+		{
+			String encoded = this.codec.encode(key);
+			keysColl.put(encoded, key);
+			placeholders.put(encoded, EMPTY);
+		}
 		
-		return this.getFromCacheRaw(fetch);
+		try
+		{
+			for (Collection<String> chunk: this.chunk(placeholders))
+				this.track(this.memcache.putAll(subMap(placeholders, chunk), Expiration.byDeltaSeconds(EMPTY_SECONDS), SetPolicy.ADD_ONLY_IF_NOT_PRESENT), "Error reserving memcache keys");
+		}
+		catch (Exception ex)
+		{
+			log.log(Level.WARNING, "Error reserving memcache keys", ex);
+			
+			if (this.stats != null)
+				this.stats.memcacheError();
+			
+			return null;
+		}
+		
+		return keysColl;
 	}
 	
 	/**
-	 * Puts entries in the cache with the specified expiration.
-	 * @param expirationSeconds can be -1 to indicate "keep as long as possible". 
+	 * Obtains the identifiable values of keys which reserve() has put placeholders under.
+	 * Only keys which still hold the placeholder can be filled later; anything else means
+	 * someone else filled or locked the key.  This is issued after the datastore read has
+	 * started, so the two proceed side by side even when the identifiables take one
+	 * memcache call per key.
+	 * 
+	 * @param keysColl is what reserve() returned
+	 * @return a Future of the keys which may be filled, and how to recognize their placeholders
 	 */
-	@SuppressWarnings("rawtypes")
-	private void putInCache(Map<Key, Entity> entities, int expirationSeconds)
+	private Future<Map<Key, IdentifiableValue>> identify(final Map<String, Key> keysColl)
 	{
-		Map<String, Entity> rawMap = new HashMap<String, Entity>((int)(entities.size() * 1.5));
-
-		for (Map.Entry<Key, Entity> entry: entities.entrySet())
-			rawMap.put(KeyFactory.keyToString(entry.getKey()), entry.getValue());
+		List<Future<Map<Key, IdentifiableValue>>> chunks = new ArrayList<Future<Map<Key, IdentifiableValue>>>();
+		try
+		{
+			for (Collection<String> chunk: this.chunk(keysColl))
+			{
+				chunks.add(new SimpleFutureWrapper<Map<String, IdentifiableValue>, Map<Key, IdentifiableValue>>(this.memcache.getIdentifiables(chunk)) {
+					@Override
+					protected Map<Key, IdentifiableValue> wrap(Map<String, IdentifiableValue> t)
+					{
+						Map<Key, IdentifiableValue> reserved = new HashMap<Key, IdentifiableValue>();
+						for (Map.Entry<String, IdentifiableValue> entry: t.entrySet())
+							if (EMPTY.equals(entry.getValue().getValue()))
+								reserved.put(keysColl.get(entry.getKey()), entry.getValue());
+						
+						return reserved;
+					}
+				});
+			}
+		}
+		catch (Exception ex)
+		{
+			log.log(Level.WARNING, "Error reserving memcache keys", ex);
+			
+			if (this.stats != null)
+				this.stats.memcacheError();
+			
+			return new NowFuture<Map<Key, IdentifiableValue>>(new HashMap<Key, IdentifiableValue>());
+		}
 		
-		if (expirationSeconds < 0)
-			this.memcache.putAll((Map)rawMap);
+		if (chunks.size() == 1)
+			return chunks.get(0);
 		else
-			this.memcache.putAll((Map)rawMap, Expiration.byDeltaSeconds(expirationSeconds));
+			return new MergeFuture<Key, IdentifiableValue>(new HashMap<Key, IdentifiableValue>(), chunks);
 	}
 	
 	/**
-	 * Puts entries in the cache with the appropriate expirations.
+	 * Fills memcache with entities (and negative results) fetched from the datastore, but
+	 * only the keys which still hold the placeholders identify() found.  If a write locked a
+	 * key since then, what we read may already be stale and it is left alone.  The local
+	 * cache is filled with the keys this instance has not written since the read started.
+	 * 
+	 * @param reserved is the result of identify(), or null if nothing was reserved
+	 * @param since is what the WriteSequence was at when the read started
 	 */
-	void putInCache(Map<Key, Entity> entities)
+	private void fill(Map<Key, Entity> fetched, Future<Map<Key, IdentifiableValue>> reserved, long since)
 	{
-		Map<Integer, Map<Key, Entity>> categories = this.categorize(entities);
+		this.putInLocalCache(fetched, since);
 		
-		for (Map.Entry<Integer, Map<Key, Entity>> entry: categories.entrySet())
-			this.putInCache(entry.getValue(), entry.getKey());
+		if (reserved == null)
+			return;
+		
+		Map<Key, IdentifiableValue> expected;
+		try
+		{
+			expected = reserved.get();
+		}
+		catch (Exception ex)
+		{
+			log.log(Level.WARNING, "Error reserving memcache keys", ex);
+			
+			if (this.stats != null)
+				this.stats.memcacheError();
+			
+			return;
+		}
+		
+		Map<Key, Entity> fillable = new HashMap<Key, Entity>();
+		for (Map.Entry<Key, Entity> entry: fetched.entrySet())
+			if (expected.containsKey(entry.getKey()))
+				fillable.put(entry.getKey(), entry.getValue());
+		
+		for (Map.Entry<Integer, Map<Key, Entity>> category: this.categorize(fillable).entrySet())
+		{
+			Map<String, IdentifiableValue> rawExpected = new HashMap<String, IdentifiableValue>();
+			Map<String, Object> rawMap = new HashMap<String, Object>();
+			Map<String, Key> keysColl = new HashMap<String, Key>();
+			
+			for (Map.Entry<Key, Entity> entry: category.getValue().entrySet())
+			{
+				String encoded = this.codec.encode(entry.getKey());
+				Object value = this.toCacheValue(entry.getValue());
+				rawExpected.put(encoded, expected.get(entry.getKey()));
+				rawMap.put(encoded, value);
+				keysColl.put(encoded, entry.getKey());
+				
+				if (this.stats != null && value instanceof byte[])
+					this.stats.written(entry.getKey(), ((byte[])value).length);
+			}
+			
+			int expirationSeconds = category.getKey();
+			Expiration expires = (expirationSeconds < 0) ? null : Expiration.byDeltaSeconds(expirationSeconds);
+			
+			for (Collection<String> chunk: this.chunk(rawMap))
+			{
+				Future<Set<String>> stored = this.memcache.putIfUntouched(subMap(rawExpected, chunk), subMap(rawMap, chunk), expires);
+				
+				if (this.stats == null)
+					this.track(stored, "Error writing to memcache");
+				else
+					this.trackFill(stored, subMap(keysColl, chunk));
+			}
+		}
 	}
 	
 	/**
-	 * Deletes from the cache, ignoring any noncacheable keys
+	 * Like track(), but also counts the fills which memcache refused.
+	 * 
+	 * @param offered are the keys which were offered, by their memcache keys
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	void deleteFromCache(Iterable<Key> keys)
+	private void trackFill(Future<Set<String>> stored, final Map<String, Key> offered)
 	{
-		Collection<String> cacheables = new ArrayList<String>();
+		final ListenableFuture<Set<String>> listenable = new ListenableFuture<Set<String>>(stored);
+		listenable.addCallback(new Runnable() {
+			@Override
+			public void run()
+			{
+				Set<String> filled;
+				try
+				{
+					filled = listenable.get();
+				}
+				catch (Exception ex)
+				{
+					log.log(Level.WARNING, "Error writing to memcache", ex);
+					stats.memcacheError();
+					filled = Collections.emptySet();
+				}
+				
+				for (Map.Entry<String, Key> entry: offered.entrySet())
+					if (!filled.contains(entry.getKey()))
+						stats.fillFailed(entry.getValue());
+			}
+		});
+	}
+	
+	/**
+	 * Splits the memcache keys into chunks which hold no more than chunkSize values and,
+	 * unless a single value is bigger, no more than roughly chunkBytes.
+	 */
+	private List<Collection<String>> chunk(Map<String, ?> values)
+	{
+		List<Collection<String>> chunks = new ArrayList<Collection<String>>();
+		Collection<String> chunk = new ArrayList<String>();
+		long bytes = 0;
+		
+		for (Map.Entry<String, ?> entry: values.entrySet())
+		{
+			long size = entry.getKey().length() + estimateBytes(entry.getValue());
+			
+			if (!chunk.isEmpty() && (chunk.size() >= this.chunkSize || bytes + size > this.chunkBytes))
+			{
+				chunks.add(chunk);
+				chunk = new ArrayList<String>();
+				bytes = 0;
+			}
+			
+			chunk.add(entry.getKey());
+			bytes += size;
+		}
+		
+		if (!chunk.isEmpty())
+			chunks.add(chunk);
+		
+		return chunks;
+	}
+	
+	/** @return roughly how many bytes the value takes in memcache */
+	private static long estimateBytes(Object value)
+	{
+		if (value instanceof byte[])
+			return ((byte[])value).length;
+		else if (value instanceof Entity)
+			return LocalCache.weigh((Entity)value);
+		else
+			return 16;
+	}
+	
+	/** @return the entries of the map for just the keys */
+	private static <V> Map<String, V> subMap(Map<String, V> map, Collection<String> keys)
+	{
+		Map<String, V> result = new HashMap<String, V>((int)(keys.size() * 1.5));
+		for (String key: keys)
+			result.put(key, map.get(key));
+		
+		return result;
+	}
+	
+	/**
+	 * Replaces whatever memcache holds for the keys with a short-lived lock, which spoils
+	 * any fill that was reserved before and keeps new ones from being reserved until it
+	 * expires.  Ignores noncacheable keys.
+	 */
+	private void lock(Iterable<Key> keys)
+	{
+		Map<String, Object> locks = new HashMap<String, Object>();
 		
 		for (Key key: keys)
 			if (this.fact.getMetadata(key).mightBeInCache())
-				cacheables.add(KeyFactory.keyToString(key));
+				locks.put(this.codec.encode(key), LOCKED);
 		
-		if (!cacheables.isEmpty())
-			this.memcache.deleteAll((Collection)cacheables);
+		for (Collection<String> chunk: this.chunk(locks))
+			this.track(this.memcache.putAll(subMap(locks, chunk), Expiration.byDeltaSeconds(LOCK_SECONDS), SetPolicy.SET_ALWAYS), "Error locking memcache keys");
+	}
+	
+	/**
+	 * @return what is stored in memcache for the entity, which can be null for a negative result
+	 */
+	private Object toCacheValue(Entity entity)
+	{
+		if (entity == null || this.entityCodec == null)
+			return entity;
+		else
+			return this.entityCodec.encode(entity);
+	}
+	
+	/** @return the codec to read with, even if we are writing Entity objects */
+	private CacheEntityCodec getEntityCodec()
+	{
+		return (this.entityCodec != null) ? this.entityCodec : DEFAULT_ENTITY_CODEC;
+	}
+	
+	/**
+	 * Fire-and-forget for memcache writes.  If the write isn't done yet, it becomes a
+	 * pending Future which is finished off at a later API call or the end of the request.
+	 */
+	private <T> void track(Future<T> write, final String failure)
+	{
+		final ListenableFuture<T> listenable = new ListenableFuture<T>(write);
+		listenable.addCallback(new Runnable() {
+			@Override
+			public void run()
+			{
+				try
+				{
+					listenable.get();
+				}
+				catch (Exception ex)
+				{
+					log.log(Level.WARNING, failure, ex);
+					
+					if (stats != null)
+						stats.memcacheError();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Called once entities have been written to the datastore.  Memcache is locked for the
+	 * keys; the local cache gets the new values.
+	 */
+	void written(Map<Key, Entity> entities)
+	{
+		long number = this.writes.written(entities.keySet());
+		this.lock(entities.keySet());
+		
+		if (this.absent != null)
+			this.absent.removeAll(entities.keySet());
+		
+		this.putInLocalCache(entities, number);
+	}
+	
+	/**
+	 * Called once keys have been deleted from the datastore.
+	 */
+	void deleted(Iterable<Key> keys)
+	{
+		this.writes.written(keys);
+		this.lock(keys);
+		
+		if (this.local != null)
+			this.local.removeAll(keys);
 	}
 	
 	/* (non-Javadoc)
@@ -293,7 +830,7 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 				}
 				else
 				{
-					deleteFromCache(keys);
+					deleted(keys);
 				}
 			}
 		});
@@ -356,44 +893,245 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 		}
 		else
 		{
-			// soFar will not contain uncacheables, but it will have negative results
-			Map<Key, Entity> soFar = this.getFromCache(keys);
-
+			// Each chunk goes to the datastore as soon as its own memcache lookup is done.
+			// With the synchronous adapter the lookups still run one at a time.
+			List<Future<Map<Key, Entity>>> chunks = new ArrayList<Future<Map<Key, Entity>>>();
+			List<Key> chunk = new ArrayList<Key>();
+			Map<String, Long> weights = new HashMap<String, Long>();
+			long bytes = 0;
+			for (Key key: keys)
+			{
+				long size = this.estimateReadBytes(key, weights);
+				if (!chunk.isEmpty() && (chunk.size() >= this.chunkSize || bytes + size > this.chunkBytes))
+				{
+					chunks.add(new CachedGetFuture(chunk));
+					chunk = new ArrayList<Key>();
+					bytes = 0;
+				}
+				
+				chunk.add(key);
+				bytes += size;
+			}
+			
+			if (!chunk.isEmpty() || chunks.isEmpty())
+				chunks.add(new CachedGetFuture(chunk));
+			
+			if (chunks.size() == 1)
+				return chunks.get(0);
+			else
+				return new MergeFuture<Key, Entity>(new HashMap<Key, Entity>(), chunks);
+		}
+	}
+	
+	/**
+	 * @param weights remembers the estimate for each kind, so the stats are consulted once per kind
+	 * @return roughly how many bytes memcache will return for the key, or 0 if we can't tell
+	 */
+	private long estimateReadBytes(Key key, Map<String, Long> weights)
+	{
+		if (this.stats == null)
+			return 0;
+		
+		Long weight = weights.get(key.getKind());
+		if (weight == null)
+		{
+			CacheStats.KindStats kind = this.stats.getKind(key.getKind());
+			weight = (kind == null) ? 0 : kind.getMeanValueBytes();
+			weights.put(key.getKind(), weight);
+		}
+		
+		return weight;
+	}
+	
+	/**
+	 * A non-transactional get() in flight.  The local cache is checked right away and a
+	 * memcache lookup is started for the rest.  When that is done, a datastore lookup is
+	 * started for whatever is still missing; this happens at the first API call or method
+	 * call on this Future after memcache answers, so other work can overlap both.
+	 */
+	class CachedGetFuture implements Future<Map<Key, Entity>>
+	{
+		/** Every key asked for */
+		Collection<Key> keys = new ArrayList<Key>();
+		
+		/** What the WriteSequence was at before anything was read */
+		long since = writes.current();
+		
+		/** Will not contain uncacheables, but it will have negative results */
+		Map<Key, Entity> soFar;
+		
+		/** Null if memcache didn't need to be asked */
+		Future<Map<Key, Entity>> fromCache;
+		
+		/** Set first thing in startDatastore(), which waiting on memcache can reenter */
+		boolean started;
+		
+		/** Null until the datastore lookup is started; then merges everything without negative results */
+		Future<Map<Key, Entity>> result;
+		
+		/** */
+		CachedGetFuture(Iterable<Key> keys)
+		{
+			Collection<Key> fetch = new ArrayList<Key>();
+			for (Key key: keys)
+			{
+				this.keys.add(key);
+				if (fact.getMetadata(key).mightBeInCache())
+					fetch.add(key);
+			}
+			
+			this.soFar = (local == null) ? new HashMap<Key, Entity>() : local.getAll(fetch);
+			
+			if (absent != null)
+				for (Key key: fetch)
+					if (!this.soFar.containsKey(key) && absent.isAbsent(key))
+						this.soFar.put(key, null);
+			
+			if (stats != null)
+				stats.found(this.soFar);
+			
+			if (this.soFar.size() < fetch.size())
+			{
+				Collection<Key> remote = new ArrayList<Key>(fetch.size() - this.soFar.size());
+				for (Key key: fetch)
+					if (!this.soFar.containsKey(key))
+						remote.add(key);
+				
+				ListenableFuture<Map<Key, Entity>> listenable = new ListenableFuture<Map<Key, Entity>>(getFromCacheRaw(remote));
+				this.fromCache = listenable;
+				listenable.addCallback(new Runnable() {
+					@Override
+					public void run()
+					{
+						startDatastore();
+					}
+				});
+			}
+			else
+			{
+				this.startDatastore();
+			}
+		}
+		
+		/**
+		 * Collects the memcache results (waiting if necessary) and starts the datastore
+		 * lookup for the rest.  Only the first call does anything.
+		 */
+		void startDatastore()
+		{
+			if (this.started)
+				return;
+			
+			this.started = true;
+			
+			if (this.fromCache != null)
+			{
+				Map<Key, Entity> hits = quietCacheGet(this.fromCache);
+				if (stats != null)
+					stats.found(hits);
+				
+				putInLocalCache(hits, this.since);
+				this.soFar.putAll(hits);
+			}
+			
 			Set<Key> stillNeeded = new HashSet<Key>();
-			for (Key getKey: keys)
-				if (!soFar.containsKey(getKey))
+			for (Key getKey: this.keys)
+				if (!this.soFar.containsKey(getKey))
 					stillNeeded.add(getKey);
 
 			// Maybe we need to fetch some more
 			Future<Map<Key, Entity>> pending = null;
 			if (!stillNeeded.isEmpty())
 			{
-				// Includes negative results
-				Future<Map<Key, Entity>> fromDatastore = this.getFromDatastore(txn, stillNeeded);
-				final ListenableFuture<Map<Key, Entity>> listenable = new ListenableFuture<Map<Key, Entity>>(fromDatastore);
-				listenable.addCallback(new Runnable() {
-					@Override
-					public void run()
+				final Set<Key> cacheable = new HashSet<Key>();
+				for (Key key: stillNeeded)
+					if (fact.getMetadata(key).mightBeInCache())
+						cacheable.add(key);
+				
+				if (stats != null)
+					stats.missed(cacheable);
+				
+				// Cacheable keys which another thread is already fetching are not fetched again
+				Map<Key, SingleFlight.Flight> joined = null;
+				final SingleFlight.Flight flight = (flights != null && !cacheable.isEmpty()) ? new SingleFlight.Flight(consistency, this.since) : null;
+				if (flight != null)
+				{
+					joined = new HashMap<Key, SingleFlight.Flight>();
+					cacheable.retainAll(flights.board(cacheable, flight, writes, joined));
+					stillNeeded.removeAll(joined.keySet());
+				}
+				
+				if (!stillNeeded.isEmpty())
+				{
+					final long since = this.since;
+					Future<Map<Key, Entity>> fromDatastore;
+					final Future<Map<Key, IdentifiableValue>> reserved;
+					try
 					{
-						try
+						// Issued first, so that any write the read might miss spoils the reservation
+						Map<String, Key> placeholders = cacheable.isEmpty() ? null : reserve(cacheable);
+						
+						// Includes negative results
+						fromDatastore = getFromDatastore(null, stillNeeded);
+						
+						// Only after the read, which then needn't wait behind them
+						reserved = (placeholders == null) ? null : identify(placeholders);
+					}
+					catch (RuntimeException ex)
+					{
+						if (flight != null)
 						{
-							putInCache(listenable.get());
+							flight.fail(ex);
+							flights.land(cacheable, flight);
 						}
-						catch (Exception e)
+						throw ex;
+					}
+					
+					final ListenableFuture<Map<Key, Entity>> listenable = new ListenableFuture<Map<Key, Entity>>(fromDatastore);
+					if (flight != null)
+						flight.start(listenable);
+					
+					listenable.addCallback(new Runnable() {
+						@Override
+						public void run()
 						{
-							// Not entirely certain what to do with this
-							throw new RuntimeException(e);
+							try
+							{
+								Map<Key, Entity> fetched = listenable.get();
+								
+								// Others only ever read their copy
+								if (flight != null)
+									flight.complete(new HashMap<Key, Entity>(fetched));
+								
+								fill(fetched, reserved, since);
+							}
+							catch (Exception e)
+							{
+								if (flight != null)
+									flight.fail((e instanceof ExecutionException && e.getCause() != null) ? e.getCause() : e);
+								
+								// Not entirely certain what to do with this
+								throw new RuntimeException(e);
+							}
+							finally
+							{
+								if (flight != null)
+									flights.land(cacheable, flight);
+							}
 						}
-					}
-				});
+					});
+					
+					pending = listenable;
+				}
 				
-				pending = listenable;
+				if (joined != null && !joined.isEmpty())
+					pending = new SingleFlight.Joined(pending, joined);
 			}
 			
-			Future<Map<Key, Entity>> merged = new MergeFuture<Key, Entity>(soFar, pending);
+			Future<Map<Key, Entity>> merged = new MergeFuture<Key, Entity>(this.soFar, pending);
 			
 			// Need to strip out any negative results
-			Future<Map<Key, Entity>> stripped = new SimpleFutureWrapper<Map<Key, Entity>, Map<Key, Entity>>(merged) {
+			this.result = new SimpleFutureWrapper<Map<Key, Entity>, Map<Key, Entity>>(merged) {
 				@Override
 				protected Map<Key, Entity> wrap(Map<Key, Entity> t)
 				{
@@ -405,11 +1143,78 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 					return t;
 				}
 			};
+		}
 
-			if (txn instanceof TransactionWrapper)
-				((TransactionWrapper)txn).enlist(stripped);
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#cancel(boolean)
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			throw new UnsupportedOperationException("This makes my head spin. Don't do it.");
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#isCancelled()
+		 */
+		@Override
+		public boolean isCancelled()
+		{
+			return false;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#isDone()
+		 */
+		@Override
+		public boolean isDone()
+		{
+			if (this.result == null)
+			{
+				if (!this.fromCache.isDone())
+					return false;
+				
+				this.startDatastore();
+				if (this.result == null)
+					return false;	// we are inside startDatastore()
+			}
+			
+			return this.result.isDone();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#get()
+		 */
+		@Override
+		public Map<Key, Entity> get() throws InterruptedException, ExecutionException
+		{
+			this.startDatastore();
+			return this.result.get();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Map<Key, Entity> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			
+			if (this.result == null)
+			{
+				try
+				{
+					this.fromCache.get(timeout, unit);
+				}
+				catch (ExecutionException ex)
+				{
+					// Dealt with by startDatastore()
+				}
+				
+				this.startDatastore();
+			}
 			
-			return stripped;
+			return this.result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
 		}
 	}
 
@@ -497,7 +1302,7 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 				if (txn != null)
 					((TransactionWrapper)txn).deferCachePut(entity);
 				else
-					putInCache(Collections.singletonMap(entity.getKey(), entity));
+					written(Collections.singletonMap(entity.getKey(), entity));
 				
 			}
 		});
@@ -533,7 +1338,7 @@ public class CachingAsyncDatastoreService implements AsyncDatastoreService
 					for (Entity entity: entities)
 						map.put(entity.getKey(), entity);
 					
-					putInCache(map);
+					written(map);
 				}
 				
 			}
@@ -30,8 +30,9 @@ import com.googlecode.objectify.util.FutureHelper;
  * <p>Note:  There is a horrible, obscure, and utterly bizarre bug in GAE's memcache
  * relating to Key serialization.  It manifests in certain circumstances when a Key
  * has a parent Key that has the same String name.  For this reason, we use the
- * keyToString method to stringify Keys as cache keys.  The actual structure
- * stored in the memcache will be String -> Entity.</p>  
+ * factory's CacheKeyCodec to stringify Keys as cache keys.  The actual structure
+ * stored in the memcache will be String -> byte[] as written by the factory's
+ * CacheEntityCodec, or String -> Entity if it has none.</p>  
  * 
  * @author Jeff Schnitzer <jeff@infohazard.org>
  */
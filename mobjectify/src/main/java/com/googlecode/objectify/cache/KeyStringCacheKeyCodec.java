@@ -0,0 +1,23 @@
+package com.googlecode.objectify.cache;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+
+/**
+ * <p>Encodes cache keys with {@code KeyFactory.keyToString()}, the way all earlier versions
+ * of Objectify did.  This does not make it safe for old and new versions of an app to
+ * share a memcache: the values (encoded entities, and the placeholders and locks the
+ * cache uses to guard fills) are not ones older releases understand, which is why the
+ * default namespace changed too; see {@code ObjectifyFactory.setCacheKeyCodec()}.</p>
+ */
+public class KeyStringCacheKeyCodec implements CacheKeyCodec
+{
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.CacheKeyCodec#encode(com.google.appengine.api.datastore.Key)
+	 */
+	@Override
+	public String encode(Key key)
+	{
+		return KeyFactory.keyToString(key);
+	}
+}
@@ -0,0 +1,317 @@
+package com.googlecode.objectify.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.ShortBlob;
+import com.google.appengine.api.datastore.Text;
+
+/**
+ * <p>A bounded in-JVM cache which sits in front of memcache, so hot entities can be read
+ * without an RPC.  Install one with {@code ObjectifyFactory.setLocalCache()}; kinds take
+ * part if their {@code @Cached} annotation has a {@code localExpirationSeconds}, or if
+ * {@code setExpirationSeconds()} is called for the kind here.  Copies are never kept
+ * longer than the memcache expiration of the kind.</p>
+ *
+ * <p>Puts and deletes through the same factory update the local cache right away, but
+ * other app instances only see them when their copies expire.  Only use this for kinds
+ * where reading data that is a few seconds stale is acceptable.</p>
+ *
+ * <p>Entries are evicted least-recently-used first, when either the number of entries
+ * or their total estimated weight (roughly bytes) exceeds the limits.  A cache whose limits
+ * are large enough is split into independently locked segments, each of which enforces its
+ * share of the limits; a smaller one is a single segment, so that one entity can still use
+ * all of the weight allowed.  Like memcache, it remembers negative results too.</p>
+ */
+public class LocalCache
+{
+	/** */
+	static final int SEGMENTS = 8;
+
+	/** The cache is only split if every segment gets at least this many entries and this much weight */
+	static final int MIN_SEGMENT_ENTRIES = 8;
+	static final long MIN_SEGMENT_WEIGHT = 64 * 1024;
+
+	/** */
+	static class Entry
+	{
+		/** Null for an entity which does not exist */
+		final Entity entity;
+		final long expiresAt;
+		final long weight;
+
+		Entry(Entity entity, long expiresAt, long weight)
+		{
+			this.entity = entity;
+			this.expiresAt = expiresAt;
+			this.weight = weight;
+		}
+	}
+
+	/** One independently locked LRU */
+	class Segment extends LinkedHashMap<Key, Entry>
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int maxEntries;
+		final long maxWeight;
+		long weight;
+
+		Segment(int maxEntries, long maxWeight)
+		{
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+		}
+
+		/** Call with the lock held */
+		void add(Key key, Entry entry)
+		{
+			Entry old = this.put(key, entry);
+			if (old != null)
+				this.weight -= old.weight;
+
+			this.weight += entry.weight;
+
+			Iterator<Entry> it = this.values().iterator();
+			while ((this.size() > this.maxEntries || this.weight > this.maxWeight) && it.hasNext())
+			{
+				Entry eldest = it.next();
+				it.remove();
+				this.weight -= eldest.weight;
+				evictions.incrementAndGet();
+			}
+		}
+
+		/** Call with the lock held */
+		Entry take(Key key)
+		{
+			Entry old = this.remove(key);
+			if (old != null)
+				this.weight -= old.weight;
+
+			return old;
+		}
+	}
+
+	/** */
+	final Segment[] segments;
+
+	/** Kinds whose local expiration was set here rather than by annotation */
+	final Map<String, Integer> expirations = new ConcurrentHashMap<String, Integer>();
+
+	/** */
+	final AtomicLong hits = new AtomicLong();
+	final AtomicLong misses = new AtomicLong();
+	final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxEntries is the most entities (and negative results) which will be kept
+	 * @param maxWeight is the most estimated bytes of entities which will be kept
+	 */
+	public LocalCache(int maxEntries, long maxWeight)
+	{
+		if (maxEntries < 1 || maxWeight < 1)
+			throw new IllegalArgumentException("LocalCache limits must be positive");
+
+		boolean split = maxEntries >= SEGMENTS * MIN_SEGMENT_ENTRIES && maxWeight >= SEGMENTS * MIN_SEGMENT_WEIGHT;
+		int count = split ? SEGMENTS : 1;
+
+		this.segments = new Segment[count];
+		for (int i=0; i<count; i++)
+			this.segments[i] = new Segment(maxEntries / count, maxWeight / count);
+	}
+
+	/**
+	 * Overrides the {@code localExpirationSeconds} of a kind's {@code @Cached} annotation.
+	 * The kind must still be {@code @Cached}, and its memcache expiration still applies.
+	 *
+	 * @param seconds of 0 keeps the kind out of the local cache
+	 */
+	public void setExpirationSeconds(String kind, int seconds)
+	{
+		if (seconds < 0)
+			throw new IllegalArgumentException("Local expiration cannot be negative");
+
+		this.expirations.put(kind, seconds);
+	}
+
+	/**
+	 * @return the expiration set for the kind with setExpirationSeconds(), or null if it
+	 *  is up to the annotation
+	 */
+	public Integer getExpirationSeconds(String kind)
+	{
+		return this.expirations.get(kind);
+	}
+
+	/** */
+	private Segment segmentFor(Key key)
+	{
+		int h = key.hashCode();
+		return this.segments[((h ^ (h >>> 16)) & 0x7fffffff) % this.segments.length];
+	}
+
+	/**
+	 * @return copies of any unexpired entities for the keys.  Negative results come back
+	 *  as null values; keys which aren't cached are absent.
+	 */
+	public Map<Key, Entity> getAll(Collection<Key> keys)
+	{
+		Map<Key, Entity> result = new HashMap<Key, Entity>();
+		long now = System.currentTimeMillis();
+
+		for (Key key: keys)
+		{
+			Segment seg = this.segmentFor(key);
+			Entry entry;
+			synchronized (seg)
+			{
+				entry = seg.get(key);
+				if (entry != null && entry.expiresAt <= now)
+				{
+					seg.take(key);
+					entry = null;
+				}
+			}
+
+			if (entry == null)
+			{
+				this.misses.incrementAndGet();
+			}
+			else
+			{
+				this.hits.incrementAndGet();
+				result.put(key, entry.entity == null ? null : entry.entity.clone());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Caches a copy of the entity, so later changes to it are not seen here.
+	 *
+	 * @param entity can be null to remember that the key does not exist
+	 * @param seconds must be positive
+	 */
+	public void put(Key key, Entity entity, int seconds)
+	{
+		Entity copy = (entity == null) ? null : entity.clone();
+		Entry entry = new Entry(copy, System.currentTimeMillis() + seconds * 1000L, weigh(copy));
+
+		Segment seg = this.segmentFor(key);
+		synchronized (seg)
+		{
+			seg.add(key, entry);
+		}
+	}
+
+	/** */
+	public void removeAll(Iterable<Key> keys)
+	{
+		for (Key key: keys)
+		{
+			Segment seg = this.segmentFor(key);
+			synchronized (seg)
+			{
+				seg.take(key);
+			}
+		}
+	}
+
+	/** Empties the cache; statistics are kept */
+	public void clear()
+	{
+		for (Segment seg: this.segments)
+		{
+			synchronized (seg)
+			{
+				seg.clear();
+				seg.weight = 0;
+			}
+		}
+	}
+
+	/** @return the number of entries, including expired ones not yet noticed */
+	public int size()
+	{
+		int size = 0;
+		for (Segment seg: this.segments)
+			synchronized (seg) { size += seg.size(); }
+
+		return size;
+	}
+
+	/** @return the total estimated weight of the entries */
+	public long getWeight()
+	{
+		long weight = 0;
+		for (Segment seg: this.segments)
+			synchronized (seg) { weight += seg.weight; }
+
+		return weight;
+	}
+
+	/** @return the number of keys found */
+	public long getHitCount()
+	{
+		return this.hits.get();
+	}
+
+	/** @return the number of keys not found, including expired ones */
+	public long getMissCount()
+	{
+		return this.misses.get();
+	}
+
+	/** @return the number of entries dropped to stay within the limits */
+	public long getEvictionCount()
+	{
+		return this.evictions.get();
+	}
+
+	/** @return a rough estimate of the bytes an entity occupies */
+	static long weigh(Entity entity)
+	{
+		long weight = 64;
+		if (entity == null)
+			return weight;
+		
+		for (Map.Entry<String, Object> prop: entity.getProperties().entrySet())
+			weight += 32 + 2 * prop.getKey().length() + weighValue(prop.getValue());
+
+		return weight;
+	}
+
+	/** */
+	static long weighValue(Object value)
+	{
+		if (value instanceof String)
+			return 40 + 2 * ((String)value).length();
+		else if (value instanceof Text)
+			return 56 + 2 * ((Text)value).getValue().length();
+		else if (value instanceof Blob)
+			return 32 + ((Blob)value).getBytes().length;
+		else if (value instanceof ShortBlob)
+			return 32 + ((ShortBlob)value).getBytes().length;
+		else if (value instanceof Collection<?>)
+		{
+			long weight = 32;
+			for (Object item: (Collection<?>)value)
+				weight += 8 + weighValue(item);
+
+			return weight;
+		}
+		else
+			return 16;
+	}
+}
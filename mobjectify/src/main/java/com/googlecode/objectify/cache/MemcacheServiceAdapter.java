@@ -0,0 +1,146 @@
+package com.googlecode.objectify.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+
+/**
+ * <p>Presents a synchronous MemcacheService as an AsyncMemcache.  The calls are made
+ * right away and the Futures are already done, so this behaves exactly like calling the
+ * MemcacheService directly; failures surface from {@code Future.get()}.</p>
+ * 
+ * <p>This SDK has no batch versions of getIdentifiable() and putIfUntouched(), so those
+ * take one memcache call per key, one after another.  The cache only uses them for keys
+ * which missed, but a big miss could still cost a thousand calls.  So getIdentifiables()
+ * only looks up the first {@code compareAndSetLimit} keys of each call and reports the
+ * rest as not found.  The cache leaves keys without an identifiable value out of the fill;
+ * they are still read from the datastore, and are filled by a later miss.  A higher
+ * limit warms the cache in fewer gets, at the price of two more calls per key on the
+ * gets which miss.</p>
+ */
+public class MemcacheServiceAdapter implements AsyncMemcache
+{
+	/** The compareAndSetLimit if none is given */
+	public static final int DEFAULT_COMPARE_AND_SET_LIMIT = 20;
+	
+	/** */
+	MemcacheService memcache;
+	
+	/** The most keys one getIdentifiables() looks up */
+	int compareAndSetLimit;
+	
+	/** */
+	public MemcacheServiceAdapter(MemcacheService memcache)
+	{
+		this(memcache, DEFAULT_COMPARE_AND_SET_LIMIT);
+	}
+	
+	/**
+	 * @param compareAndSetLimit is the most keys one getIdentifiables() looks up, and so
+	 *  the most one putIfUntouched() of the cache's will store
+	 */
+	public MemcacheServiceAdapter(MemcacheService memcache, int compareAndSetLimit)
+	{
+		if (compareAndSetLimit < 0)
+			throw new IllegalArgumentException("compareAndSetLimit cannot be negative");
+		
+		this.memcache = memcache;
+		this.compareAndSetLimit = compareAndSetLimit;
+	}
+	
+	/** @return a Future which has already run the call */
+	private <T> Future<T> now(Callable<T> call)
+	{
+		FutureTask<T> task = new FutureTask<T>(call);
+		task.run();
+		return task;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.AsyncMemcache#getAll(java.util.Collection)
+	 */
+	@Override
+	public Future<Map<String, Object>> getAll(final Collection<String> keys)
+	{
+		return this.now(new Callable<Map<String, Object>>() {
+			@Override
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public Map<String, Object> call()
+			{
+				return (Map)memcache.getAll((Collection)keys);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.AsyncMemcache#putAll(java.util.Map, com.google.appengine.api.memcache.Expiration, com.google.appengine.api.memcache.MemcacheService.SetPolicy)
+	 */
+	@Override
+	public Future<Set<String>> putAll(final Map<String, ?> values, final Expiration expires, final SetPolicy policy)
+	{
+		return this.now(new Callable<Set<String>>() {
+			@Override
+			public Set<String> call()
+			{
+				return memcache.putAll(values, expires, policy);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.AsyncMemcache#getIdentifiables(java.util.Collection)
+	 */
+	@Override
+	public Future<Map<String, IdentifiableValue>> getIdentifiables(final Collection<String> keys)
+	{
+		return this.now(new Callable<Map<String, IdentifiableValue>>() {
+			@Override
+			public Map<String, IdentifiableValue> call()
+			{
+				Map<String, IdentifiableValue> result = new HashMap<String, IdentifiableValue>();
+				int remaining = compareAndSetLimit;
+				for (String key: keys)
+				{
+					if (remaining-- == 0)
+						break;
+					
+					IdentifiableValue value = memcache.getIdentifiable(key);
+					if (value != null)
+						result.put(key, value);
+				}
+				
+				return result;
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.cache.AsyncMemcache#putIfUntouched(java.util.Map, java.util.Map, com.google.appengine.api.memcache.Expiration)
+	 */
+	@Override
+	public Future<Set<String>> putIfUntouched(final Map<String, IdentifiableValue> expected, final Map<String, ?> values, final Expiration expires)
+	{
+		return this.now(new Callable<Set<String>>() {
+			@Override
+			public Set<String> call()
+			{
+				Set<String> stored = new HashSet<String>();
+				for (Map.Entry<String, ?> entry: values.entrySet())
+					if (memcache.putIfUntouched(entry.getKey(), expected.get(entry.getKey()), entry.getValue(), expires))
+						stored.add(entry.getKey());
+				
+				return stored;
+			}
+		});
+	}
+}
@@ -1,5 +1,10 @@
 package com.googlecode.objectify.cache;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -8,8 +13,8 @@ import java.util.concurrent.TimeoutException;
 
 
 /**
- * A Future which merges some previously loaded values with the results of another
- * Future that is in progress.  It can apply to any key/value pair type; typically
+ * A Future which merges some previously loaded values with the results of other
+ * Futures that are in progress.  It can apply to any key/value pair type; typically
  * it will be for Key/Entity or Key<T>/T
  * 
  * @author Jeff Schnitzer <jeff@infohazard.org>
@@ -22,8 +27,8 @@ public class MergeFuture<K, V> implements Future<Map<K, V>>
 	 */
 	Map<K, V> loaded;
 	
-	/** Pending requests - if null, this Future is complete and all values are in loaded */
-	Future<Map<K, V>> pending;
+	/** Pending requests; each is removed once its values are in loaded */
+	List<Future<Map<K, V>>> pending;
 	
 	/**
 	 * @param preloaded is a collection of entities that have already been obtained, say
@@ -32,10 +37,21 @@ public class MergeFuture<K, V> implements Future<Map<K, V>>
 	 * null if merging is unnecessary and the preloaded values complete the result.
 	 */
 	public MergeFuture(Map<K, V> preloaded, Future<Map<K, V>> pending)
+	{
+		this(preloaded, (pending == null) ? Collections.<Future<Map<K, V>>>emptyList() : Collections.singletonList(pending));
+	}
+	
+	/**
+	 * @param preloaded is a collection of entities that have already been obtained.
+	 * TAKES OWNERSHIP OF THE MAP OBJECT - it will be modified later.
+	 * @param pending are futures of entities that will be obtained sometime later, all
+	 * of whose values are added to the preloaded ones.
+	 */
+	public MergeFuture(Map<K, V> preloaded, Collection<? extends Future<Map<K, V>>> pending)
 	{
 		assert preloaded != null;
 		this.loaded = preloaded;
-		this.pending = pending;
+		this.pending = new ArrayList<Future<Map<K, V>>>(pending);
 	}
 
 	/* (non-Javadoc)
@@ -64,10 +80,11 @@ public class MergeFuture<K, V> implements Future<Map<K, V>>
 	@Override
 	public boolean isDone()
 	{
-		if (this.pending == null)
-			return true;
-		else
-			return this.pending.isDone();
+		for (Future<Map<K, V>> future: this.pending)
+			if (!future.isDone())
+				return false;
+		
+		return true;
 	}
 
 	/* (non-Javadoc)
@@ -76,10 +93,11 @@ public class MergeFuture<K, V> implements Future<Map<K, V>>
 	@Override
 	public Map<K, V> get() throws InterruptedException, ExecutionException
 	{
-		if (this.pending != null)
+		Iterator<Future<Map<K, V>>> it = this.pending.iterator();
+		while (it.hasNext())
 		{
-			this.loaded.putAll(this.pending.get());
-			this.pending = null;
+			this.loaded.putAll(it.next().get());
+			it.remove();
 		}
 		
 		return this.loaded;
@@ -91,10 +109,13 @@ public class MergeFuture<K, V> implements Future<Map<K, V>>
 	@Override
 	public Map<K, V> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
 	{
-		if (this.pending != null)
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		
+		Iterator<Future<Map<K, V>>> it = this.pending.iterator();
+		while (it.hasNext())
 		{
-			this.loaded.putAll(this.pending.get(timeout, unit));
-			this.pending = null;
+			this.loaded.putAll(it.next().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+			it.remove();
 		}
 		
 		return this.loaded;
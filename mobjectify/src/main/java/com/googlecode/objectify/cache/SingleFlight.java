@@ -0,0 +1,386 @@
+package com.googlecode.objectify.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.ReadPolicy.Consistency;
+
+/**
+ * <p>Keeps track of the datastore lookups the global cache has in progress, so that when
+ * many threads miss the cache for the same Key at once (say, right after a popular entity
+ * expires or memcache is flushed) only the first goes to the datastore.  The rest wait
+ * for its answer.  One of these is shared by everything made from an ObjectifyFactory;
+ * see {@code ObjectifyFactory.setSingleFlight()}.</p>
+ *
+ * <p>Only lookups which are still in progress are shared.  Once a lookup has finished,
+ * the next miss for the same Key goes to the datastore again.  Nor is a lookup shared
+ * with a read of a different consistency, or once its key has been written by this
+ * instance, since it may have read the key before the write.  Everyone who shares a
+ * lookup gets their own copies of the entities.</p>
+ *
+ * <p>The thread which owns a lookup hands its answer over when it collects the answer
+ * itself: when it gets its result, at its next API call, at the end of its request, or
+ * before it waits on somebody else's lookup.  Until then the others wait.</p>
+ */
+public class SingleFlight
+{
+	/**
+	 * A datastore lookup which other threads may wait on.  It is registered before the
+	 * lookup is actually started, and the owner completes it with the lookup's answer.
+	 * Waiters never touch the owner's own Futures, which are only safe on the owner's
+	 * thread; they only see the answer the owner publishes here.
+	 */
+	static class Flight implements Future<Map<Key, Entity>>
+	{
+		/** The consistency the lookup reads with */
+		final Consistency consistency;
+
+		/** What the WriteSequence was at before the lookup started */
+		final long since;
+
+		/** */
+		final CountDownLatch done = new CountDownLatch(1);
+
+		/** The answer, once the owner has it; never modified after it is published */
+		volatile Map<Key, Entity> result;
+
+		/** Set instead of result if the lookup failed */
+		volatile Throwable failure;
+
+		/** The owner's own Future of the lookup; only ever used on the owner's thread */
+		Future<?> driver;
+
+		/** */
+		Flight(Consistency consistency, long since)
+		{
+			this.consistency = consistency;
+			this.since = since;
+		}
+
+		/**
+		 * Called on the owner's thread once the lookup is issued.
+		 *
+		 * @param driver is what the owner waits on to get the answer, and completes this with
+		 */
+		void start(Future<?> driver)
+		{
+			this.driver = driver;
+			owned.get().add(this);
+		}
+
+		/** Called on the owner's thread with the answer, which nobody may modify afterwards */
+		void complete(Map<Key, Entity> result)
+		{
+			this.result = result;
+			this.finish();
+		}
+
+		/** Called on the owner's thread if the lookup could not be started or failed; ignored once completed */
+		void fail(Throwable failure)
+		{
+			if (this.isDone())
+				return;
+
+			this.failure = failure;
+			this.finish();
+		}
+
+		/** */
+		private void finish()
+		{
+			this.done.countDown();
+			owned.get().remove(this);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#cancel(boolean)
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#isCancelled()
+		 */
+		@Override
+		public boolean isCancelled()
+		{
+			return false;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#isDone()
+		 */
+		@Override
+		public boolean isDone()
+		{
+			return this.done.getCount() == 0;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#get()
+		 */
+		@Override
+		public Map<Key, Entity> get() throws InterruptedException, ExecutionException
+		{
+			if (!this.isDone())
+			{
+				completeOwned();
+				this.done.await();
+			}
+
+			return this.answer();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Map<Key, Entity> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			if (!this.isDone())
+			{
+				long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+				completeOwned();
+				if (!this.done.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+					throw new TimeoutException();
+			}
+
+			return this.answer();
+		}
+
+		/** */
+		private Map<Key, Entity> answer() throws ExecutionException
+		{
+			if (this.failure != null)
+				throw new ExecutionException(this.failure);
+
+			return this.result;
+		}
+	}
+
+	/**
+	 * The flights each thread has started but not yet completed.  Before a thread waits on
+	 * somebody else's flight it completes its own, since the other thread may in turn be
+	 * waiting on one of them.
+	 */
+	static final ThreadLocal<Set<Flight>> owned = new ThreadLocal<Set<Flight>>() {
+		@Override
+		protected Set<Flight> initialValue()
+		{
+			return new HashSet<Flight>();
+		}
+	};
+
+	/**
+	 * Waits for the lookups of this thread's own flights, which completes them.  Failures
+	 * are left for whoever gets the lookups.
+	 */
+	static void completeOwned()
+	{
+		for (Flight flight: new ArrayList<Flight>(owned.get()))
+		{
+			try
+			{
+				flight.driver.get();
+			}
+			catch (Exception ex) {}
+		}
+	}
+
+	/**
+	 * The answer to a lookup of which some keys were fetched by others.  Like all the
+	 * lookups, it includes negative results (null values).  The entities fetched by
+	 * others are copied, since the others and the cache have the originals.
+	 */
+	static class Joined implements Future<Map<Key, Entity>>
+	{
+		/** Our own lookup of the rest of the keys, or null if there weren't any */
+		Future<Map<Key, Entity>> own;
+
+		/** The lookups we joined, for each key */
+		Map<Key, Flight> joined;
+
+		/** */
+		Joined(Future<Map<Key, Entity>> own, Map<Key, Flight> joined)
+		{
+			this.own = own;
+			this.joined = joined;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#cancel(boolean)
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#isCancelled()
+		 */
+		@Override
+		public boolean isCancelled()
+		{
+			return false;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#isDone()
+		 */
+		@Override
+		public boolean isDone()
+		{
+			if (this.own != null && !this.own.isDone())
+				return false;
+
+			for (Flight flight: this.joined.values())
+				if (!flight.isDone())
+					return false;
+
+			return true;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#get()
+		 */
+		@Override
+		public Map<Key, Entity> get() throws InterruptedException, ExecutionException
+		{
+			// Never modify the others' maps; they are shared
+			Map<Key, Entity> result = new HashMap<Key, Entity>();
+			if (this.own != null)
+				result.putAll(this.own.get());
+
+			for (Map.Entry<Key, Flight> entry: this.joined.entrySet())
+				result.put(entry.getKey(), copy(entry.getValue().get().get(entry.getKey())));
+
+			return result;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+		 */
+		@Override
+		public Map<Key, Entity> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+			Map<Key, Entity> result = new HashMap<Key, Entity>();
+			if (this.own != null)
+				result.putAll(this.own.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+
+			for (Map.Entry<Key, Flight> entry: this.joined.entrySet())
+			{
+				Map<Key, Entity> theirs = entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				result.put(entry.getKey(), copy(theirs.get(entry.getKey())));
+			}
+
+			return result;
+		}
+
+		/** */
+		private static Entity copy(Entity entity)
+		{
+			return (entity == null) ? null : entity.clone();
+		}
+	}
+
+	/** The lookup fetching each key, for each consistency */
+	final Map<Consistency, ConcurrentHashMap<Key, Flight>> flights = new EnumMap<Consistency, ConcurrentHashMap<Key, Flight>>(Consistency.class);
+
+	/** */
+	final AtomicLong coalesced = new AtomicLong();
+
+	/** */
+	public SingleFlight()
+	{
+		for (Consistency consistency: Consistency.values())
+			this.flights.put(consistency, new ConcurrentHashMap<Key, Flight>());
+	}
+
+	/**
+	 * Registers the flight as the lookup for whichever keys nobody else is fetching with
+	 * the same consistency.
+	 *
+	 * @param writes tells which keys were written since the others started
+	 * @param joined gets the lookups which are already fetching the other keys
+	 * @return the keys the flight must fetch
+	 */
+	Set<Key> board(Collection<Key> keys, Flight flight, WriteSequence writes, Map<Key, Flight> joined)
+	{
+		ConcurrentHashMap<Key, Flight> fetching = this.flights.get(flight.consistency);
+		Set<Key> claimed = new HashSet<Key>();
+
+		for (Key key: keys)
+		{
+			Flight other = fetching.putIfAbsent(key, flight);
+
+			// A finished lookup is as stale as the cache we just missed, and one which
+			// started before a write may have missed it; don't share either
+			while (other != null && (other.isDone() || writes.writtenSince(key, other.since)))
+			{
+				if (fetching.replace(key, other, flight))
+					other = null;
+				else
+					other = fetching.putIfAbsent(key, flight);
+			}
+
+			if (other == null)
+			{
+				claimed.add(key);
+			}
+			else
+			{
+				joined.put(key, other);
+				this.coalesced.incrementAndGet();
+			}
+		}
+
+		return claimed;
+	}
+
+	/**
+	 * Called when the flight is finished, so its keys will be fetched afresh.
+	 */
+	void land(Collection<Key> keys, Flight flight)
+	{
+		ConcurrentHashMap<Key, Flight> fetching = this.flights.get(flight.consistency);
+		for (Key key: keys)
+			fetching.remove(key, flight);
+	}
+
+	/** @return the number of keys which were fetched by another thread's lookup instead of our own */
+	public long getCoalescedCount()
+	{
+		return this.coalesced.get();
+	}
+
+	/** @return the number of keys being fetched right now */
+	public int size()
+	{
+		int size = 0;
+		for (ConcurrentHashMap<Key, Flight> fetching: this.flights.values())
+			size += fetching.size();
+
+		return size;
+	}
+}
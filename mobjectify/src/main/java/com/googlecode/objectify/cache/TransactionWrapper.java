@@ -92,10 +92,10 @@ class TransactionWrapper implements Transaction
 			{
 				// Only after successful commit should we modify the cache
 				if (deferredDeletes != null)
-					cache.deleteFromCache(deferredDeletes);
+					cache.deleted(deferredDeletes);
 				
 				if (deferredPuts != null)
-					cache.putInCache(deferredPuts);
+					cache.written(deferredPuts);
 			}
 		});
 		
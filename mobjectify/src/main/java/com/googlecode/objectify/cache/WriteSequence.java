@@ -0,0 +1,96 @@
+package com.googlecode.objectify.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.appengine.api.datastore.Key;
+
+/**
+ * <p>Numbers the writes the global cache sees in this instance, so that a read can tell
+ * whether any of its keys were written after it started.  Keys are hashed into a fixed
+ * number of slots, each remembering the last write to any key in it; two keys sharing a
+ * slot only make a read more cautious than it needs to be.  One of these is shared by
+ * everything made from an ObjectifyFactory.</p>
+ */
+public class WriteSequence
+{
+	/** The number of slots by default */
+	public static final int DEFAULT_SLOTS = 4096;
+
+	/** The number of the last write */
+	final AtomicLong last = new AtomicLong();
+
+	/** The number of the last write to any key in each slot */
+	final AtomicLongArray slots;
+
+	/** */
+	public WriteSequence()
+	{
+		this(DEFAULT_SLOTS);
+	}
+
+	/**
+	 * @param slots is rounded up to a power of two
+	 */
+	public WriteSequence(int slots)
+	{
+		if (slots < 1)
+			throw new IllegalArgumentException("Write sequence needs at least one slot");
+
+		int size = 1;
+		while (size < slots)
+			size <<= 1;
+
+		this.slots = new AtomicLongArray(size);
+	}
+
+	/**
+	 * @return where reads which start now are; anything written later has a higher number
+	 */
+	public long current()
+	{
+		return this.last.get();
+	}
+
+	/**
+	 * Numbers a write of the keys.  Called once the datastore has them.
+	 *
+	 * @return the number of the write
+	 */
+	public long written(Iterable<Key> keys)
+	{
+		long number = this.last.incrementAndGet();
+
+		for (Key key: keys)
+		{
+			int slot = this.slotOf(key);
+
+			// Writes can be numbered in one order and recorded in the other
+			long previous;
+			do
+			{
+				previous = this.slots.get(slot);
+			}
+			while (previous < number && !this.slots.compareAndSet(slot, previous, number));
+		}
+
+		return number;
+	}
+
+	/**
+	 * @param since is what current() returned when the read started
+	 * @return true if the key may have been written after that
+	 */
+	public boolean writtenSince(Key key, long since)
+	{
+		return this.slots.get(this.slotOf(key)) > since;
+	}
+
+	/** */
+	private int slotOf(Key key)
+	{
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return hash & (this.slots.length() - 1);
+	}
+}
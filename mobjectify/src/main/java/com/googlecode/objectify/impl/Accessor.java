@@ -0,0 +1,18 @@
+package com.googlecode.objectify.impl;
+
+/**
+ * <p>Reads and writes a single persistent member of a pojo.  Accessors are created once,
+ * at registration time, by {@code Accessors}; they replace the reflective {@code Field.get()}
+ * and {@code Field.set()} calls in the load and save paths.</p>
+ *
+ * <p>Accessors behave like {@code Field}: setting a value of the wrong type (or a null on
+ * a primitive) produces an IllegalArgumentException.</p>
+ */
+public interface Accessor
+{
+	/** @return the current value of the member on the pojo; methods always return null */
+	Object get(Object pojo);
+
+	/** Set the member on the pojo to the value */
+	void set(Object pojo, Object value);
+}
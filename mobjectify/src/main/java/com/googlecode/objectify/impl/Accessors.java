@@ -0,0 +1,497 @@
+package com.googlecode.objectify.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * <p>Creates the Accessors used by the load and save engine.  Classes compiled with
+ * {@code MetadataProcessor} come with accessors written as plain java code (see
+ * {@code GeneratedMetadata}).  Other fields get accessors built from MethodHandles
+ * when the accessor is created; if a handle can't be made, or handles are turned off
+ * with the system property {@code objectify.generateAccessors=false}, plain reflection
+ * is used instead.  @AlsoLoad methods are always invoked reflectively.</p>
+ */
+public class Accessors
+{
+	/** System property which can disable MethodHandle accessors */
+	public static final String GENERATE_PROPERTY = "objectify.generateAccessors";
+
+	/** */
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	/** */
+	private static volatile boolean generate = !"false".equals(System.getProperty(GENERATE_PROPERTY));
+
+	/** @return true if field accessors will be built from MethodHandles */
+	public static boolean isGenerateEnabled()
+	{
+		return generate;
+	}
+
+	/**
+	 * Turns MethodHandle accessors on or off for fields registered after this call.
+	 * Mostly useful for benchmarking.
+	 */
+	public static void setGenerateEnabled(boolean value)
+	{
+		generate = value;
+	}
+
+	/**
+	 * @param field must already be accessible
+	 */
+	public static Accessor forField(Field field)
+	{
+		Accessor compiled = forCompiledField(field);
+		if (compiled != null)
+			return compiled;
+
+		if (generate)
+		{
+			Accessor handle = HandleAccessor.create(field);
+			if (handle != null)
+				return handle;
+		}
+
+		return new FieldAccessor(field);
+	}
+
+	/**
+	 * @return true if forPrimitiveField() can make an accessor for fields of this type;
+	 *  that is, any primitive except char.
+	 */
+	public static boolean isSupportedPrimitive(Class<?> type)
+	{
+		return type.isPrimitive() && type != Character.TYPE && type != Void.TYPE;
+	}
+
+	/**
+	 * @param field must already be accessible, and of a type accepted by isSupportedPrimitive()
+	 */
+	public static PrimitiveAccessor forPrimitiveField(Field field)
+	{
+		Class<?> type = field.getType();
+		if (!isSupportedPrimitive(type))
+			throw new IllegalArgumentException("Not a supported primitive field: " + field);
+
+		Accessor compiled = forCompiledField(field);
+		if (compiled instanceof PrimitiveAccessor)
+			return (PrimitiveAccessor)compiled;
+
+		if (generate)
+		{
+			PrimitiveAccessor handle = HandlePrimitiveAccessor.create(field);
+			if (handle != null)
+				return handle;
+		}
+
+		return new FieldPrimitiveAccessor(field);
+	}
+
+	/**
+	 * @return the accessor written by the annotation processor for this field, or null if there isn't one
+	 */
+	static Accessor forCompiledField(Field field)
+	{
+		GeneratedMetadata meta = GeneratedMetadata.forClass(field.getDeclaringClass());
+		return meta == null ? null : meta.getAccessor(field.getName());
+	}
+
+	/**
+	 * @param method must take a single parameter and already be accessible
+	 */
+	public static Accessor forMethod(Method method)
+	{
+		GeneratedMetadata meta = GeneratedMetadata.forClass(method.getDeclaringClass());
+		if (meta != null)
+		{
+			Accessor compiled = meta.getMethodAccessor(method.getName(), method.getParameterTypes()[0]);
+			if (compiled != null)
+				return compiled;
+		}
+
+		return new MethodAccessor(method);
+	}
+
+	/**
+	 * Reflective accessor for fields.
+	 */
+	static class FieldAccessor implements Accessor
+	{
+		Field field;
+
+		/** */
+		public FieldAccessor(Field field)
+		{
+			this.field = field;
+		}
+
+		@Override
+		public Object get(Object pojo)
+		{
+			try { return this.field.get(pojo); }
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public void set(Object pojo, Object value)
+		{
+			try { this.field.set(pojo, value); }
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.field.toString();
+		}
+	}
+
+	/**
+	 * Reflective accessor for primitive fields, using the typed Field methods.
+	 */
+	static class FieldPrimitiveAccessor extends FieldAccessor implements PrimitiveAccessor
+	{
+		Class<?> type;
+
+		/** */
+		public FieldPrimitiveAccessor(Field field)
+		{
+			super(field);
+			this.type = field.getType();
+		}
+
+		@Override
+		public boolean isIntegral() { return isIntegralType(this.type); }
+
+		@Override
+		public boolean isFloatingPoint() { return isFloatingPointType(this.type); }
+
+		@Override
+		public long getLong(Object pojo)
+		{
+			if (!this.isIntegral())
+				throw new IllegalStateException(this.field + " is not an integral field");
+
+			try { return this.field.getLong(pojo); }
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public void setLong(Object pojo, long value)
+		{
+			try
+			{
+				if (this.type == Long.TYPE) this.field.setLong(pojo, value);
+				else if (this.type == Integer.TYPE) this.field.setInt(pojo, (int)value);
+				else if (this.type == Short.TYPE) this.field.setShort(pojo, (short)value);
+				else if (this.type == Byte.TYPE) this.field.setByte(pojo, (byte)value);
+				else throw new IllegalStateException(this.field + " is not an integral field");
+			}
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public double getDouble(Object pojo)
+		{
+			if (!this.isFloatingPoint())
+				throw new IllegalStateException(this.field + " is not a floating point field");
+
+			try { return this.field.getDouble(pojo); }
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public void setDouble(Object pojo, double value)
+		{
+			try
+			{
+				if (this.type == Double.TYPE) this.field.setDouble(pojo, value);
+				else if (this.type == Float.TYPE) this.field.setFloat(pojo, (float)value);
+				else throw new IllegalStateException(this.field + " is not a floating point field");
+			}
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public boolean getBoolean(Object pojo)
+		{
+			if (this.type != Boolean.TYPE)
+				throw new IllegalStateException(this.field + " is not a boolean field");
+
+			try { return this.field.getBoolean(pojo); }
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public void setBoolean(Object pojo, boolean value)
+		{
+			if (this.type != Boolean.TYPE)
+				throw new IllegalStateException(this.field + " is not a boolean field");
+
+			try { this.field.setBoolean(pojo, value); }
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		}
+	}
+
+	/**
+	 * Accessor for fields which goes through MethodHandles adapted to Object signatures.
+	 * Conversion failures are reported as IllegalArgumentException, like Field.set().
+	 */
+	static class HandleAccessor implements Accessor
+	{
+		Field field;
+		MethodHandle getter;
+		MethodHandle setter;
+
+		/** */
+		HandleAccessor(Field field, MethodHandle getter, MethodHandle setter)
+		{
+			this.field = field;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		/**
+		 * @return the accessor, or null if the handles could not be created
+		 */
+		static HandleAccessor create(Field field)
+		{
+			if (Modifier.isStatic(field.getModifiers()))
+				return null;
+
+			try
+			{
+				MethodHandle getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+				MethodHandle setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+				return new HandleAccessor(field, getter, setter);
+			}
+			catch (IllegalAccessException ex) { return null; }
+		}
+
+		@Override
+		public Object get(Object pojo)
+		{
+			try { return this.getter.invokeExact(pojo); }
+			catch (ClassCastException ex) { throw this.illegal(pojo, ex); }
+			catch (RuntimeException ex) { throw ex; }
+			catch (Error ex) { throw ex; }
+			catch (Throwable ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public void set(Object pojo, Object value)
+		{
+			try { this.setter.invokeExact(pojo, value); }
+			catch (ClassCastException ex) { throw this.illegal(value, ex); }
+			catch (NullPointerException ex) { if (pojo != null) throw this.illegal(value, ex); else throw ex; }
+			catch (RuntimeException ex) { throw ex; }
+			catch (Error ex) { throw ex; }
+			catch (Throwable ex) { throw new RuntimeException(ex); }
+		}
+
+		/** */
+		IllegalArgumentException illegal(Object value, RuntimeException cause)
+		{
+			String type = value == null ? "null" : value.getClass().getName();
+			IllegalArgumentException ex = new IllegalArgumentException("Can not set " + this.field + " to " + type);
+			ex.initCause(cause);
+			return ex;
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.field.toString();
+		}
+	}
+
+	/**
+	 * MethodHandle accessor for primitive fields.  The typed handles widen on the way
+	 * out and narrow on the way in, like a java cast.
+	 */
+	static class HandlePrimitiveAccessor extends HandleAccessor implements PrimitiveAccessor
+	{
+		Class<?> type;
+		MethodHandle longGetter;
+		MethodHandle longSetter;
+		MethodHandle doubleGetter;
+		MethodHandle doubleSetter;
+		MethodHandle booleanGetter;
+		MethodHandle booleanSetter;
+
+		/** */
+		HandlePrimitiveAccessor(Field field, MethodHandle getter, MethodHandle setter)
+		{
+			super(field, getter, setter);
+			this.type = field.getType();
+		}
+
+		/**
+		 * @return the accessor, or null if the handles could not be created
+		 */
+		static HandlePrimitiveAccessor create(Field field)
+		{
+			if (Modifier.isStatic(field.getModifiers()))
+				return null;
+
+			try
+			{
+				MethodHandle rawGetter = lookup.unreflectGetter(field);
+				MethodHandle rawSetter = lookup.unreflectSetter(field);
+
+				HandlePrimitiveAccessor acc = new HandlePrimitiveAccessor(field,
+						rawGetter.asType(MethodType.methodType(Object.class, Object.class)),
+						rawSetter.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+
+				if (acc.isIntegral())
+				{
+					acc.longGetter = MethodHandles.explicitCastArguments(rawGetter, MethodType.methodType(long.class, Object.class));
+					acc.longSetter = MethodHandles.explicitCastArguments(rawSetter, MethodType.methodType(void.class, Object.class, long.class));
+				}
+				else if (acc.isFloatingPoint())
+				{
+					acc.doubleGetter = MethodHandles.explicitCastArguments(rawGetter, MethodType.methodType(double.class, Object.class));
+					acc.doubleSetter = MethodHandles.explicitCastArguments(rawSetter, MethodType.methodType(void.class, Object.class, double.class));
+				}
+				else
+				{
+					acc.booleanGetter = rawGetter.asType(MethodType.methodType(boolean.class, Object.class));
+					acc.booleanSetter = rawSetter.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+				}
+
+				return acc;
+			}
+			catch (IllegalAccessException ex) { return null; }
+		}
+
+		@Override
+		public boolean isIntegral() { return isIntegralType(this.type); }
+
+		@Override
+		public boolean isFloatingPoint() { return isFloatingPointType(this.type); }
+
+		@Override
+		public long getLong(Object pojo)
+		{
+			if (this.longGetter == null)
+				throw new IllegalStateException(this.field + " is not an integral field");
+
+			try { return (long)this.longGetter.invokeExact(pojo); }
+			catch (RuntimeException ex) { throw ex; }
+			catch (Error ex) { throw ex; }
+			catch (Throwable ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public void setLong(Object pojo, long value)
+		{
+			if (this.longSetter == null)
+				throw new IllegalStateException(this.field + " is not an integral field");
+
+			try { this.longSetter.invokeExact(pojo, value); }
+			catch (RuntimeException ex) { throw ex; }
+			catch (Error ex) { throw ex; }
+			catch (Throwable ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public double getDouble(Object pojo)
+		{
+			if (this.doubleGetter == null)
+				throw new IllegalStateException(this.field + " is not a floating point field");
+
+			try { return (double)this.doubleGetter.invokeExact(pojo); }
+			catch (RuntimeException ex) { throw ex; }
+			catch (Error ex) { throw ex; }
+			catch (Throwable ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public void setDouble(Object pojo, double value)
+		{
+			if (this.doubleSetter == null)
+				throw new IllegalStateException(this.field + " is not a floating point field");
+
+			try { this.doubleSetter.invokeExact(pojo, value); }
+			catch (RuntimeException ex) { throw ex; }
+			catch (Error ex) { throw ex; }
+			catch (Throwable ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public boolean getBoolean(Object pojo)
+		{
+			if (this.booleanGetter == null)
+				throw new IllegalStateException(this.field + " is not a boolean field");
+
+			try { return (boolean)this.booleanGetter.invokeExact(pojo); }
+			catch (RuntimeException ex) { throw ex; }
+			catch (Error ex) { throw ex; }
+			catch (Throwable ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public void setBoolean(Object pojo, boolean value)
+		{
+			if (this.booleanSetter == null)
+				throw new IllegalStateException(this.field + " is not a boolean field");
+
+			try { this.booleanSetter.invokeExact(pojo, value); }
+			catch (RuntimeException ex) { throw ex; }
+			catch (Error ex) { throw ex; }
+			catch (Throwable ex) { throw new RuntimeException(ex); }
+		}
+	}
+
+	/** */
+	static boolean isIntegralType(Class<?> type)
+	{
+		return type == Long.TYPE || type == Integer.TYPE || type == Short.TYPE || type == Byte.TYPE;
+	}
+
+	/** */
+	static boolean isFloatingPointType(Class<?> type)
+	{
+		return type == Double.TYPE || type == Float.TYPE;
+	}
+
+	/**
+	 * Reflective accessor for single-parameter methods; get() always returns null.
+	 */
+	static class MethodAccessor implements Accessor
+	{
+		Method method;
+
+		/** */
+		public MethodAccessor(Method method)
+		{
+			this.method = method;
+		}
+
+		@Override
+		public Object get(Object pojo)
+		{
+			return null;	// can't get values from methods
+		}
+
+		@Override
+		public void set(Object pojo, Object value)
+		{
+			try { this.method.invoke(pojo, value); }
+			catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+			catch (InvocationTargetException ex) { throw new RuntimeException(ex); }
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.method.toString();
+		}
+	}
+}
@@ -11,14 +11,19 @@ import java.util.concurrent.Future;
 
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.Transaction;
 import com.googlecode.objectify.AsyncObjectify;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.NotFoundException;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.Query;
 import com.googlecode.objectify.Result;
+import com.googlecode.objectify.TypedKeyFactory;
+import com.googlecode.objectify.util.LongMap;
+import com.googlecode.objectify.util.NowFuture;
 import com.googlecode.objectify.util.SimpleFutureWrapper;
 
 /**
@@ -41,6 +46,18 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 	/** The synchronous version of this API; gets initialized by ObjectifyImpl's constructor */
 	protected Objectify sync;
 	
+	/** If not null, put() skips entities which have not changed; gets initialized by ObjectifyImpl's constructor */
+	protected DirtyTracker tracker;
+	
+	/** The objects we loaded with a LoadProfile, which put() refuses */
+	protected PartialObjects partials = new PartialObjects();
+	
+	/** Translates large batches; gets initialized by ObjectifyImpl's constructor */
+	protected Parallelizer parallelizer = Parallelizer.SEQUENTIAL;
+	
+	/** Converts large put batches; gets initialized by ObjectifyImpl's constructor */
+	protected Parallelizer putParallelizer = Parallelizer.SEQUENTIAL;
+	
 	/**
 	 * Protected constructor creates a wrapper on the datastore with
 	 * the specified txn.
@@ -59,6 +76,26 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 	 */
 	@Override
 	public <T> Result<Map<Key<T>, T>> get(Iterable<? extends Key<? extends T>> keys)
+	{
+		return this.loadAll(null, keys);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.AsyncObjectify#get(com.googlecode.objectify.LoadProfile, java.lang.Iterable)
+	 */
+	@Override
+	public <T> Result<Map<Key<T>, T>> get(LoadProfile profile, Iterable<? extends Key<? extends T>> keys)
+	{
+		return this.loadAll(profile, keys);
+	}
+
+	/**
+	 * Fetches the keys from the datastore, ignoring any caching that subclasses may do.
+	 * 
+	 * @param profile limits the fields loaded; null loads everything
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> Result<Map<Key<T>, T>> loadAll(final LoadProfile profile, Iterable<? extends Key<? extends T>> keys)
 	{
 		// First we need to turn the keys into raw keys
 		final List<com.google.appengine.api.datastore.Key> rawKeys = new ArrayList<com.google.appengine.api.datastore.Key>();
@@ -70,19 +107,21 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 			@Override
 			protected Map<Key<T>, T> wrap(Map<com.google.appengine.api.datastore.Key, Entity> orig) throws Exception
 			{
-				Map<Key<T>, T> result = new LinkedHashMap<Key<T>, T>(orig.size() * 2);
-
 				// We preserve the order of the original keys
+				List<Entity> found = new ArrayList<Entity>(orig.size());
 				for (com.google.appengine.api.datastore.Key rawKey: rawKeys)
 				{
 					Entity entity = orig.get(rawKey);
 					if (entity != null)
-					{
-						EntityMetadata<T> metadata = factory.getMetadata(rawKey);
-						result.put(new Key<T>(rawKey), (T)metadata.toObject(entity, sync()));
-					}
+						found.add(entity);
 				}
 				
+				Object[] pojos = toPojos(found, profile);
+				
+				Map<Key<T>, T> result = new LinkedHashMap<Key<T>, T>(orig.size() * 2);
+				for (int i=0; i<pojos.length; i++)
+					result.put(factory.getConversions().<T>typedKey(found.get(i).getKey()), (T)pojos[i]);
+				
 				return result;
 			}
 		};
@@ -90,6 +129,50 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 		return new ResultAdapter<Map<Key<T>, T>>(wrapped);
 	}
 
+	/**
+	 * Translates loaded entities into pojos, possibly on other threads, and remembers
+	 * them for dirty tracking (or as partial objects, with a profile).  @PostLoad methods
+	 * are called afterwards on this thread, since they may use the Objectify.
+	 * 
+	 * @param profile limits the fields loaded; null loads everything
+	 * @return the pojos, in the same order as the entities
+	 */
+	protected Object[] toPojos(final List<Entity> entities, final LoadProfile profile)
+	{
+		// Partial objects would always look changed, so there is no point remembering them
+		if (this.tracker != null && profile == null)
+			for (Entity entity: entities)
+				this.tracker.loaded(entity);
+		
+		final Object[] pojos = new Object[entities.size()];
+		this.parallelizer.run(entities.size(), new Parallelizer.Step() {
+			@Override
+			public void run(int index)
+			{
+				Entity entity = entities.get(index);
+				EntityMetadata<?> metadata = factory.getMetadata(entity.getKey());
+				pojos[index] = metadata.load(entity, profile);
+			}
+		});
+		
+		if (profile != null)
+		{
+			for (Object pojo: pojos)
+				this.partials.add(pojo);
+		}
+		else
+		{
+			Objectify ofy = this.sync();
+			for (int i=0; i<pojos.length; i++)
+			{
+				EntityMetadata<Object> metadata = this.factory.getMetadata(entities.get(i).getKey());
+				metadata.postLoad(pojos[i], entities.get(i), ofy);
+			}
+		}
+		
+		return pojos;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.googlecode.objectify.AsyncObjectify#get(com.googlecode.objectify.Key)
 	 */
@@ -140,17 +223,7 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 	@SuppressWarnings("unchecked")
 	public <S, T> Result<Map<S, T>> get(Class<? extends T> clazz, Iterable<S> ids)
 	{
-		List<Key<? extends T>> keys = new ArrayList<Key<? extends T>>();
-		
-		for (Object id: ids)
-		{
-			if (id instanceof Long)
-				keys.add(new Key<T>(clazz, (Long)id));
-			else if (id instanceof String)
-				keys.add(new Key<T>(clazz, (String)id));
-			else
-				throw new IllegalArgumentException("Only Long or String is allowed, not " + id.getClass().getName() + " (" + id + ")");
-		}
+		List<Key<T>> keys = TypedKeyFactory.<T>of(clazz).createAll(ids);
 		
 		Result<Map<Key<T>, T>> fetched = this.get(keys);
 		
@@ -173,6 +246,43 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 		return new ResultAdapter<Map<S, T>>(wrapped);
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.AsyncObjectify#get(java.lang.Class, long[])
+	 */
+	@Override
+	public <T> Result<LongMap<T>> get(Class<? extends T> clazz, long[] ids)
+	{
+		String kind = Key.getKind(clazz);
+		
+		List<com.google.appengine.api.datastore.Key> rawKeys = new ArrayList<com.google.appengine.api.datastore.Key>(ids.length);
+		for (long id: ids)
+			rawKeys.add(KeyFactory.createKey(kind, id));
+		
+		Future<Map<com.google.appengine.api.datastore.Key, Entity>> futureEntities = this.ads.get(this.txn, rawKeys);
+		Future<LongMap<T>> wrapped = new SimpleFutureWrapper<Map<com.google.appengine.api.datastore.Key, Entity>, LongMap<T>>(futureEntities) {
+			@Override
+			@SuppressWarnings("unchecked")
+			protected LongMap<T> wrap(Map<com.google.appengine.api.datastore.Key, Entity> orig) throws Exception
+			{
+				// The result is unordered, so the entities can be taken as they come
+				List<Entity> found = new ArrayList<Entity>(orig.size());
+				for (Entity entity: orig.values())
+					if (entity != null)
+						found.add(entity);
+				
+				Object[] pojos = toPojos(found, null);
+				
+				LongMap<T> result = new LongMap<T>(pojos.length);
+				for (int i=0; i<pojos.length; i++)
+					result.put(found.get(i).getKey().getId(), (T)pojos[i]);
+				
+				return result;
+			}
+		};
+		
+		return new ResultAdapter<LongMap<T>>(wrapped);
+	}
+
 	/* (non-Javadoc)
 	 * @see com.googlecode.objectify.AsyncObjectify#get(java.lang.Class, S[])
 	 */
@@ -245,29 +355,100 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 	@Override
 	public <T> Result<Map<Key<T>, T>> put(final Iterable<? extends T> objs)
 	{
-		List<Entity> entityList = new ArrayList<Entity>();
+		final List<T> objList = new ArrayList<T>();
 		for (T obj: objs)
 		{
-			EntityMetadata<T> metadata = this.factory.getMetadataForEntity(obj);
-			entityList.add(metadata.toEntity(obj, this.sync()));
+			if (this.partials.contains(obj))
+				throw new IllegalArgumentException("Can not put() " + obj + "; it was loaded with a LoadProfile and would overwrite the fields which were not loaded");
+			
+			objList.add(obj);
+		}
+		
+		// Large batches may be converted on several threads, @PrePersist methods included
+		// Each thread sets only its own indexes, which never changes the list's structure
+		final List<EntityMetadata<T>> metadatas = new ArrayList<EntityMetadata<T>>(Collections.<EntityMetadata<T>>nCopies(objList.size(), null));
+		final Entity[] entities = new Entity[objList.size()];
+		final long[] fingerprints = (this.tracker == null) ? null : new long[objList.size()];
+		final Objectify ofy = this.sync();
+		
+		this.putParallelizer.run(objList.size(), new Parallelizer.Step() {
+			@Override
+			public void run(int index)
+			{
+				T obj = objList.get(index);
+				EntityMetadata<T> metadata = factory.getMetadataForEntity(obj);
+				metadatas.set(index, metadata);
+				entities[index] = metadata.toEntity(obj, ofy);
+				
+				if (fingerprints != null)
+					fingerprints[index] = DirtyTracker.fingerprint(entities[index]);
+			}
+		});
+		
+		final List<Entity> entityList = Arrays.asList(entities);
+		
+		// With dirty tracking, a null in written means the entity was unchanged and is not sent
+		final List<Entity> written;
+		List<Entity> toWrite;
+		
+		if (this.tracker == null)
+		{
+			written = entityList;
+			toWrite = entityList;
+		}
+		else
+		{
+			written = new ArrayList<Entity>(entityList.size());
+			toWrite = new ArrayList<Entity>(entityList.size());
+			
+			for (int i=0; i<entityList.size(); i++)
+			{
+				Entity ent = entityList.get(i);
+				
+				if (this.tracker.isUnchanged(ent, fingerprints[i]))
+				{
+					written.add(null);
+				}
+				else
+				{
+					written.add(ent);
+					toWrite.add(ent);
+				}
+			}
 		}
 
-		Future<List<com.google.appengine.api.datastore.Key>> raw = this.ads.put(this.txn, entityList);
+		Future<List<com.google.appengine.api.datastore.Key>> raw;
+		if (toWrite.isEmpty() && this.tracker != null)
+			raw = new NowFuture<List<com.google.appengine.api.datastore.Key>>(Collections.<com.google.appengine.api.datastore.Key>emptyList());
+		else
+			raw = this.ads.put(this.txn, toWrite);
+		
 		Future<Map<Key<T>, T>> wrapped = new SimpleFutureWrapper<List<com.google.appengine.api.datastore.Key>, Map<Key<T>, T>>(raw) {
 			@Override
 			protected Map<Key<T>, T> wrap(List<com.google.appengine.api.datastore.Key> rawKeys) throws Exception
 			{
-				Map<Key<T>, T> result = new LinkedHashMap<Key<T>, T>(rawKeys.size() * 2);
+				Map<Key<T>, T> result = new LinkedHashMap<Key<T>, T>(entityList.size() * 2);
 				
 				// Patch up any generated keys in the original objects while building new key list
 				Iterator<com.google.appengine.api.datastore.Key> keysIt = rawKeys.iterator();
-				for (T obj: objs)
+				for (int index=0; index<objList.size(); index++)
 				{
-					com.google.appengine.api.datastore.Key k = keysIt.next();
-					EntityMetadata<T> metadata = factory.getMetadataForEntity(obj);
-					metadata.setKey(obj, k);
+					T obj = objList.get(index);
+					com.google.appengine.api.datastore.Key k;
+					if (written.get(index) == null)
+					{
+						k = entityList.get(index).getKey();
+					}
+					else
+					{
+						k = keysIt.next();
+						if (tracker != null)
+							tracker.saved(k, fingerprints[index]);
+					}
 					
-					result.put(new Key<T>(k), obj);
+					metadatas.get(index).setKey(obj, k);
+					
+					result.put(factory.getConversions().<T>typedKey(k), obj);
 				}
 				
 				return result;
@@ -325,6 +506,10 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 		for (Object obj: keysOrEntities)
 			keys.add(this.factory.getRawKey(obj));
 		
+		if (this.tracker != null)
+			for (com.google.appengine.api.datastore.Key key: keys)
+				this.tracker.forget(key);
+		
 		return new ResultAdapter<Void>(this.ads.delete(this.txn, keys));
 	}
 
@@ -333,7 +518,11 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 	 */
 	public <T> Query<T> query()
 	{
-		return new QueryImpl<T>(this.factory, this.sync());
+		QueryImpl<T> query = new QueryImpl<T>(this.factory, this.sync());
+		query.tracker = this.tracker;
+		query.partials = this.partials;
+		query.parallelizer = this.parallelizer;
+		return query;
 	}
 	
 	/**
@@ -341,7 +530,11 @@ public class AsyncObjectifyImpl implements AsyncObjectify
 	 */
 	public <T> Query<T> query(Class<T> clazz)
 	{
-		return new QueryImpl<T>(this.factory, this.sync(), clazz);
+		QueryImpl<T> query = new QueryImpl<T>(this.factory, this.sync(), clazz);
+		query.tracker = this.tracker;
+		query.partials = this.partials;
+		query.parallelizer = this.parallelizer;
+		return query;
 	}
 	
 	/**
@@ -0,0 +1,345 @@
+package com.googlecode.objectify.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.appengine.api.datastore.Blob;
+import com.googlecode.objectify.annotation.Serialized;
+import com.googlecode.objectify.impl.conv.Conversions;
+import com.googlecode.objectify.serializer.CompactSerializer;
+import com.googlecode.objectify.serializer.JavaSerializer;
+import com.googlecode.objectify.serializer.Serializer;
+
+/**
+ * <p>Translates the value of a single {@code @Serialized} field to and from a Blob.  One of
+ * these is created for each serialized field; the setter and saver share the format.</p>
+ *
+ * <p>A stored Blob is one of:</p>
+ * <ul>
+ * <li>Raw java serialization (starts with 0xACED).  This is what older versions of Objectify
+ * wrote, and what the default JavaSerializer still writes when compression is off.</li>
+ * <li>{@code HEADER_PLAIN} followed by the serializer id and the serializer's output.</li>
+ * <li>{@code HEADER_DEFLATED} followed by the deflated serializer id and output.</li>
+ * </ul>
+ *
+ * <p>The serializer id is one byte:  {@code ID_JAVA}, {@code ID_COMPACT}, or {@code ID_NAMED}
+ * followed by the class name of the serializer.  When reading, the payload is always handed
+ * to the serializer which wrote it, whatever serializer is configured now, so existing data
+ * can be migrated between any two serializers simply by changing the serializer and
+ * re-saving.  Named serializers must still be on the classpath to read old data.</p>
+ *
+ * <p>Buffers, Deflaters and Inflaters are kept per-thread and reused.</p>
+ */
+public class BlobCodec
+{
+	/** Marks a serializer's output which is stored as-is */
+	public static final int HEADER_PLAIN = 0xB0;
+
+	/** Marks a serializer's output which has been deflated */
+	public static final int HEADER_DEFLATED = 0xB1;
+
+	/** Serializer id of JavaSerializer */
+	public static final int ID_JAVA = 1;
+
+	/** Serializer id of CompactSerializer */
+	public static final int ID_COMPACT = 2;
+
+	/** Serializer id of any other serializer; followed by its class name in writeUTF() format */
+	public static final int ID_NAMED = 3;
+
+	/** Buffers which grow past this are not kept around for reuse */
+	static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+	/** Always available for data which was written with java serialization */
+	static final Serializer JAVA = new JavaSerializer();
+
+	/** Used for compact data when some other serializer is configured */
+	static final Serializer COMPACT = new CompactSerializer();
+
+	/** Instances of named serializers, by class name, for data they wrote which is read after switching */
+	static final ConcurrentMap<String, Serializer> NAMED = new ConcurrentHashMap<String, Serializer>();
+
+	/** A ByteArrayOutputStream which exposes its internals so we can avoid extra copies */
+	static class Buffer extends ByteArrayOutputStream
+	{
+		public Buffer() { super(1024); }
+
+		/** @return the byte at the index */
+		public int at(int index) { return this.buf[index] & 0xFF; }
+
+		/** @return the internal array; only the first size() bytes are valid */
+		public byte[] array() { return this.buf; }
+
+		/** @return a copy of the contents, starting at offset */
+		public byte[] copy(int offset)
+		{
+			byte[] result = new byte[this.count - offset];
+			System.arraycopy(this.buf, offset, result, 0, result.length);
+			return result;
+		}
+
+		/** Make room for at least this many more bytes; returns the position to write at */
+		public int reserve(int more)
+		{
+			int at = this.count;
+			if (this.buf.length < at + more)
+			{
+				byte[] bigger = new byte[Math.max(this.buf.length * 2, at + more)];
+				System.arraycopy(this.buf, 0, bigger, 0, at);
+				this.buf = bigger;
+			}
+			return at;
+		}
+
+		/** Advance the count after writing directly into the array */
+		public void advance(int written) { this.count += written; }
+
+		/** @return true if this buffer should not be kept */
+		public boolean isOversized() { return this.buf.length > MAX_RETAINED_BUFFER; }
+	}
+
+	/** Per-thread working state */
+	static class Workspace
+	{
+		Buffer out = new Buffer();
+		Buffer zipped = new Buffer();
+		Deflater deflater = new Deflater();
+		Inflater inflater = new Inflater();
+	}
+
+	/** */
+	static final ThreadLocal<Workspace> WORKSPACE = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue()
+		{
+			return new Workspace();
+		}
+	};
+
+	/** Needed to find the factory's serializer */
+	Conversions conversions;
+
+	/** The serializer named on the field, or null to use the factory's */
+	Serializer serializer;
+
+	/** If true, we deflate the serialized bytes */
+	boolean zip;
+
+	/** Used in error messages */
+	Object field;
+
+	/**
+	 * @param serialized is the annotation on the field
+	 * @param field is the field or method, used only for error messages
+	 */
+	public BlobCodec(Conversions conversions, Serialized serialized, Object field)
+	{
+		this.conversions = conversions;
+		this.field = field;
+
+		if (serialized != null)
+		{
+			this.zip = serialized.zip();
+
+			if (serialized.value() != Serializer.class)
+				this.serializer = TypeUtils.newInstance(TypeUtils.getNoArgConstructor(serialized.value()));
+		}
+	}
+
+	/** @return the serializer we should use for writing */
+	Serializer getSerializer()
+	{
+		return (this.serializer != null) ? this.serializer : this.conversions.getSerializer();
+	}
+
+	/**
+	 * Serializes the value.
+	 * @param value must not be null
+	 */
+	public Blob encode(Object value)
+	{
+		Workspace work = WORKSPACE.get();
+		Buffer out = work.out;
+		out.reset();
+
+		try
+		{
+			Serializer ser = this.getSerializer();
+			int id = idOf(ser);
+
+			// Leave room for the header; we may not need it
+			out.write(HEADER_PLAIN);
+			out.write(id);
+			if (id == ID_NAMED)
+				new DataOutputStream(out).writeUTF(ser.getClass().getName());
+
+			ser.serialize(value, out);
+
+			if (this.zip)
+				return new Blob(this.deflate(work, out));
+			else if (id == ID_JAVA)
+				return new Blob(out.copy(2));	// java serialization is stored the old way
+			else
+				return new Blob(out.copy(0));
+		}
+		catch (IOException ex) { throw new RuntimeException("Unable to serialize " + value + " on field " + this.field, ex); }
+		finally
+		{
+			if (out.isOversized())
+				work.out = new Buffer();
+		}
+	}
+
+	/** @return the header and deflated contents of the buffer (skipping its header) */
+	byte[] deflate(Workspace work, Buffer out)
+	{
+		Deflater deflater = work.deflater;
+		deflater.reset();
+		deflater.setInput(out.array(), 1, out.size() - 1);
+		deflater.finish();
+
+		Buffer zipped = work.zipped;
+		zipped.reset();
+		zipped.write(HEADER_DEFLATED);
+
+		while (!deflater.finished())
+		{
+			int at = zipped.reserve(4096);
+			zipped.advance(deflater.deflate(zipped.array(), at, zipped.array().length - at));
+		}
+
+		byte[] result = zipped.copy(0);
+
+		if (zipped.isOversized())
+			work.zipped = new Buffer();
+
+		return result;
+	}
+
+	/**
+	 * Deserializes the blob, whichever of the formats it was stored in.
+	 */
+	public Object decode(Blob blob)
+	{
+		byte[] bytes = blob.getBytes();
+
+		try
+		{
+			if (bytes.length == 0)
+				throw new IOException("Empty blob");
+
+			int header = bytes[0] & 0xFF;
+
+			if (header == 0xAC)
+				return JAVA.deserialize(new ByteArrayInputStream(bytes));
+			else if (header == HEADER_PLAIN)
+				return this.decodePayload(bytes, 1, bytes.length - 1);
+			else if (header == HEADER_DEFLATED)
+			{
+				Workspace work = WORKSPACE.get();
+				Buffer inflated = this.inflate(work, bytes);
+				try
+				{
+					return this.decodePayload(inflated.array(), 0, inflated.size());
+				}
+				finally
+				{
+					if (inflated.isOversized())
+						work.zipped = new Buffer();
+				}
+			}
+			else
+				throw new IOException("Unrecognized serialization header " + header);
+		}
+		catch (IOException ex) { throw new RuntimeException("Unable to deserialize " + blob + " on field " + this.field, ex); }
+		catch (ClassNotFoundException ex) { throw new IllegalStateException("Unable to deserialize " + blob + " on field " + this.field + ": " + ex); }
+	}
+
+	/** @return the serializer id to write for the serializer */
+	static int idOf(Serializer ser)
+	{
+		if (ser.getClass() == JavaSerializer.class)
+			return ID_JAVA;
+		else if (ser.getClass() == CompactSerializer.class)
+			return ID_COMPACT;
+		else
+			return ID_NAMED;
+	}
+
+	/** Hands the payload (which starts with the serializer id) to the serializer which wrote it */
+	Object decodePayload(byte[] bytes, int offset, int length) throws IOException, ClassNotFoundException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, length));
+		Serializer current = this.getSerializer();
+
+		int id = in.read();
+		switch (id)
+		{
+			case ID_JAVA:
+				return JAVA.deserialize(in);
+
+			case ID_COMPACT:
+				return (current.getClass() == CompactSerializer.class ? current : COMPACT).deserialize(in);
+
+			case ID_NAMED:
+				String name = in.readUTF();
+				return (current.getClass().getName().equals(name) ? current : named(name)).deserialize(in);
+
+			default:
+				throw new IOException("Unrecognized serializer id " + id);
+		}
+	}
+
+	/** @return an instance of the named serializer class, for reading data it wrote */
+	static Serializer named(String name) throws IOException, ClassNotFoundException
+	{
+		Serializer ser = NAMED.get(name);
+		if (ser == null)
+		{
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			Class<?> clazz = Class.forName(name, true, loader != null ? loader : BlobCodec.class.getClassLoader());
+			if (!Serializer.class.isAssignableFrom(clazz))
+				throw new IOException(name + " is not a Serializer");
+
+			ser = (Serializer)TypeUtils.newInstance(TypeUtils.getNoArgConstructor(clazz));
+			NAMED.putIfAbsent(name, ser);
+		}
+
+		return ser;
+	}
+
+	/** @return the per-thread buffer holding the inflated contents of the bytes (after the header) */
+	Buffer inflate(Workspace work, byte[] bytes) throws IOException
+	{
+		Inflater inflater = work.inflater;
+		inflater.reset();
+		inflater.setInput(bytes, 1, bytes.length - 1);
+
+		Buffer inflated = work.zipped;
+		inflated.reset();
+
+		try
+		{
+			while (!inflater.finished())
+			{
+				int at = inflated.reserve(4096);
+				int count = inflater.inflate(inflated.array(), at, inflated.array().length - at);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IOException("Truncated compressed data");
+
+				inflated.advance(count);
+			}
+		}
+		catch (DataFormatException ex) { throw new IOException(ex); }
+
+		return inflated;
+	}
+}
@@ -1,22 +1,17 @@
 package com.googlecode.objectify.impl;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.persistence.Id;
-import javax.persistence.PostLoad;
-import javax.persistence.PrePersist;
-
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.annotation.Cached;
-import com.googlecode.objectify.annotation.Parent;
 import com.googlecode.objectify.impl.conv.Conversions;
 
 
@@ -30,7 +25,7 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 {
 	/** */
 	protected Class<T> entityClass;
-	protected Constructor<T> entityClassConstructor;
+	protected Instantiator<T> entityClassInstantiator;
 
 	/** The kind that is associated with the class, ala ObjectifyFactory.getKind(Class<?>) */
 	protected String kind;
@@ -54,14 +49,18 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 	/** The cached annotation, or null if entity should not be cached */
 	protected Cached cached;
 
+	/** Makes the typed keys for @Parent fields */
+	protected Conversions conversions;
+
 	/**
 	 * Inspects and stores the metadata for a particular entity class.
 	 * @param clazz must be a properly-annotated Objectify entity class.
 	 */
 	public ConcreteEntityMetadata(Conversions conversions, Class<T> clazz)
 	{
+		this.conversions = conversions;
 		this.entityClass = clazz;
-		this.entityClassConstructor = TypeUtils.getNoArgConstructor(clazz);
+		this.entityClassInstantiator = Instantiator.forClass(clazz);
 		this.kind = Key.getKind(clazz);
 		this.cached = clazz.getAnnotation(Cached.class);
 		
@@ -125,9 +124,13 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 			if (!TypeUtils.isSaveable(field))
 				continue;
 
+			FieldInfo info = FieldInfo.of(field);
+			if (!info.isId() && !info.isParent())
+				continue;
+
 			field.setAccessible(true);
 
-			if (field.isAnnotationPresent(Id.class))
+			if (info.isId())
 			{
 				if ((this.idField != null) || (this.nameField != null))
 					throw new IllegalStateException("Multiple @Id fields in the class hierarchy of " + this.entityClass.getName());
@@ -140,7 +143,7 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 					throw new IllegalStateException("Only fields of type Long, long, or String are allowed as @Id. Invalid on field "
 							+ field + " in " + clazz.getName());
 			}
-			else if (field.isAnnotationPresent(Parent.class))
+			else
 			{
 				if (this.parentField != null)
 					throw new IllegalStateException("Multiple @Parent fields in the class hierarchy of " + this.entityClass.getName());
@@ -166,10 +169,11 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 		this.processLifecycleCallbacks(clazz.getSuperclass());
 
 		// Check all the methods
-		for (Method method: clazz.getDeclaredMethods())
+		for (MethodInfo info: MethodInfo.of(clazz))
 		{
-			if (method.isAnnotationPresent(PrePersist.class) || method.isAnnotationPresent(PostLoad.class))
+			if (info.isPrePersist() || info.isPostLoad())
 			{
+				Method method = info.resolve(clazz);
 				method.setAccessible(true);
 				
 				Class<?>[] ptypes = method.getParameterTypes();
@@ -178,7 +182,7 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 					if (ptypes[i] != Objectify.class && ptypes[i] != Entity.class)
 						throw new IllegalStateException("@PrePersist and @PostLoad methods can only have parameters of type Objectify or Entity");
 				
-				if (method.isAnnotationPresent(PrePersist.class))
+				if (info.isPrePersist())
 				{
 					if (this.prePersistMethods == null)
 						this.prePersistMethods = new ArrayList<Method>();
@@ -186,7 +190,7 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 					this.prePersistMethods.add(method);
 				}
 				
-				if (method.isAnnotationPresent(PostLoad.class))
+				if (info.isPostLoad())
 				{
 					if (this.postLoadMethods == null)
 						this.postLoadMethods = new ArrayList<Method>();
@@ -204,19 +208,49 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 	@Override
 	public T toObject(Entity ent, Objectify ofy)
 	{
-		T pojo = TypeUtils.newInstance(this.entityClassConstructor);
+		return this.toObject(ent, ofy, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.EntityMetadata#toObject(com.google.appengine.api.datastore.Entity, com.googlecode.objectify.Objectify, com.googlecode.objectify.LoadProfile)
+	 */
+	@Override
+	public T toObject(Entity ent, Objectify ofy, LoadProfile profile)
+	{
+		T pojo = this.load(ent, profile);
+		
+		// If there are any @PostLoad methods, call them - but not on a partial object
+		if (profile == null)
+			this.postLoad(pojo, ent, ofy);
+
+		return pojo;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.EntityMetadata#load(com.google.appengine.api.datastore.Entity, com.googlecode.objectify.LoadProfile)
+	 */
+	@Override
+	public T load(Entity ent, LoadProfile profile)
+	{
+		T pojo = this.entityClassInstantiator.newInstance();
 
 		// This will set the id and parent fields as appropriate.
 		this.setKey(pojo, ent.getKey());
 
-		this.transmog.load(ent, pojo);
-		
-		// If there are any @PostLoad methods, call them
-		this.invokeLifecycleCallbacks(this.postLoadMethods, pojo, ent, ofy);
+		this.transmog.load(ent, pojo, profile);
 
 		return pojo;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.EntityMetadata#postLoad(java.lang.Object, com.google.appengine.api.datastore.Entity, com.googlecode.objectify.Objectify)
+	 */
+	@Override
+	public void postLoad(T pojo, Entity ent, Objectify ofy)
+	{
+		this.invokeLifecycleCallbacks(this.postLoadMethods, pojo, ent, ofy);
+	}
+
 	/* (non-Javadoc)
 	 * @see com.googlecode.objectify.impl.EntityMetadata#toEntity(java.lang.Object, com.googlecode.objectify.Objectify)
 	 */
@@ -361,7 +395,7 @@ public class ConcreteEntityMetadata<T> implements EntityMetadata<T>
 				if (this.parentField.getType() == com.google.appengine.api.datastore.Key.class)
 					this.parentField.set(obj, parentKey);
 				else
-					this.parentField.set(obj, new Key<Object>(parentKey));
+					this.parentField.set(obj, this.conversions.typedKey(parentKey));
 			}
 		}
 		catch (IllegalAccessException e) { throw new RuntimeException(e); }
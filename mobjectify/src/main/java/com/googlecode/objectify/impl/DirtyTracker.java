@@ -0,0 +1,281 @@
+package com.googlecode.objectify.impl;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Category;
+import com.google.appengine.api.datastore.Email;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.GeoPt;
+import com.google.appengine.api.datastore.IMHandle;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Link;
+import com.google.appengine.api.datastore.PhoneNumber;
+import com.google.appengine.api.datastore.PostalAddress;
+import com.google.appengine.api.datastore.Rating;
+import com.google.appengine.api.datastore.ShortBlob;
+import com.google.appengine.api.datastore.Text;
+import com.google.appengine.api.users.User;
+
+/**
+ * <p>Remembers a fingerprint of each entity an Objectify instance has loaded or saved, so
+ * that put() can skip entities which would be written back exactly as they are stored.</p>
+ *
+ * <p>A fingerprint is a 64-bit hash of the property names, values, and indexed state.  Values
+ * are normalized the way the datastore stores them, so an int field which was loaded as a
+ * Long still matches.  The order of properties does not matter, but the order of values
+ * in a collection does.  Every value is hashed by its whole content - keys by app, namespace,
+ * and each kind and id or name in the path; the datastore's wrapper types (Email, GeoPt,
+ * User, etc) by each of their fields - never by {@code hashCode()}, which for most of them
+ * is just the hash of one string and collides too easily.</p>
+ *
+ * <p>Like the session cache, this is not thread-safe; it belongs to a single Objectify instance.</p>
+ */
+public class DirtyTracker
+{
+	/** FNV-1a parameters */
+	static final long OFFSET = 0xcbf29ce484222325L;
+	static final long PRIME = 0x100000001b3L;
+
+	/** Type tags, so that (say) the string "1" and the number 1 hash differently */
+	static final int TAG_NULL = 1;
+	static final int TAG_INTEGRAL = 2;
+	static final int TAG_FLOATING = 3;
+	static final int TAG_BOOLEAN = 4;
+	static final int TAG_STRING = 5;
+	static final int TAG_TEXT = 6;
+	static final int TAG_BYTES = 7;
+	static final int TAG_DATE = 8;
+	static final int TAG_KEY = 9;
+	static final int TAG_COLLECTION = 10;
+	static final int TAG_OTHER = 11;
+	static final int TAG_NAME = 12;
+	static final int TAG_ID = 13;
+
+	/** Raw key to the fingerprint of what we believe is stored */
+	Map<Key, Long> fingerprints = new HashMap<Key, Long>();
+
+	/** How many entities put() did not need to write */
+	long elided;
+
+	/**
+	 * Notes the state of an entity which was just loaded.
+	 */
+	public void loaded(Entity ent)
+	{
+		this.fingerprints.put(ent.getKey(), fingerprint(ent));
+	}
+
+	/**
+	 * Notes the state of an entity which was just written.
+	 *
+	 * @param key is the complete key, which may have been allocated by the put
+	 */
+	public void saved(Key key, long fingerprint)
+	{
+		this.fingerprints.put(key, fingerprint);
+	}
+
+	/**
+	 * Forgets the entity; the next put() of it will always be written.
+	 */
+	public void forget(Key key)
+	{
+		this.fingerprints.remove(key);
+	}
+
+	/**
+	 * @return true if the entity has a complete key and is the same as what was last loaded or saved.
+	 *  Counts it as an elided write if so.
+	 */
+	public boolean isUnchanged(Entity ent, long fingerprint)
+	{
+		if (!ent.getKey().isComplete())
+			return false;
+
+		Long known = this.fingerprints.get(ent.getKey());
+		if (known != null && known == fingerprint)
+		{
+			this.elided++;
+			return true;
+		}
+		else
+			return false;
+	}
+
+	/** @return the number of entities put() did not need to write */
+	public long getElidedWrites()
+	{
+		return this.elided;
+	}
+
+	/**
+	 * @return the fingerprint of the entity's properties
+	 */
+	public static long fingerprint(Entity ent)
+	{
+		long result = 0;
+
+		// Summing per-property hashes makes the result independent of property order
+		for (Map.Entry<String, Object> prop: ent.getProperties().entrySet())
+		{
+			long hash = hashString(OFFSET, prop.getKey());
+			hash = mix(hash, ent.isUnindexedProperty(prop.getKey()) ? 0 : 1);
+			hash = hashValue(hash, prop.getValue());
+
+			result += finish(hash);
+		}
+
+		return result;
+	}
+
+	/** */
+	static long hashValue(long hash, Object value)
+	{
+		if (value == null)
+			return mix(hash, TAG_NULL);
+		else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return mixLong(mix(hash, TAG_INTEGRAL), ((Number)value).longValue());
+		else if (value instanceof Double || value instanceof Float)
+			return mixLong(mix(hash, TAG_FLOATING), Double.doubleToLongBits(((Number)value).doubleValue()));
+		else if (value instanceof Boolean)
+			return mix(mix(hash, TAG_BOOLEAN), (Boolean)value ? 1 : 0);
+		else if (value instanceof String)
+			return hashString(mix(hash, TAG_STRING), (String)value);
+		else if (value instanceof Text)
+			return hashString(mix(hash, TAG_TEXT), ((Text)value).getValue());
+		else if (value instanceof Blob)
+			return hashBytes(mix(hash, TAG_BYTES), ((Blob)value).getBytes());
+		else if (value instanceof ShortBlob)
+			return hashBytes(mix(hash, TAG_BYTES), ((ShortBlob)value).getBytes());
+		else if (value instanceof Date)
+			return mixLong(mix(hash, TAG_DATE), ((Date)value).getTime());
+		else if (value instanceof Key)
+			return hashKey(mix(hash, TAG_KEY), (Key)value);
+		else if (value instanceof Collection<?>)
+		{
+			Collection<?> coll = (Collection<?>)value;
+			hash = mixLong(mix(hash, TAG_COLLECTION), coll.size());
+			for (Object element: coll)
+				hash = hashValue(hash, element);
+
+			return hash;
+		}
+		else
+		{
+			hash = hashString(mix(hash, TAG_OTHER), value.getClass().getName());
+
+			if (value instanceof Email)
+				return hashNullable(hash, ((Email)value).getEmail());
+			else if (value instanceof Link)
+				return hashNullable(hash, ((Link)value).getValue());
+			else if (value instanceof Category)
+				return hashNullable(hash, ((Category)value).getCategory());
+			else if (value instanceof PhoneNumber)
+				return hashNullable(hash, ((PhoneNumber)value).getNumber());
+			else if (value instanceof PostalAddress)
+				return hashNullable(hash, ((PostalAddress)value).getAddress());
+			else if (value instanceof IMHandle)
+				return hashNullable(hashNullable(hash, ((IMHandle)value).getProtocol()), ((IMHandle)value).getAddress());
+			else if (value instanceof BlobKey)
+				return hashNullable(hash, ((BlobKey)value).getKeyString());
+			else if (value instanceof Rating)
+				return mixLong(hash, ((Rating)value).getRating());
+			else if (value instanceof GeoPt)
+				return mixLong(hash, ((long)Float.floatToIntBits(((GeoPt)value).getLatitude()) << 32)
+						| (Float.floatToIntBits(((GeoPt)value).getLongitude()) & 0xffffffffL));
+			else if (value instanceof User)
+			{
+				User user = (User)value;
+				hash = hashNullable(hash, user.getEmail());
+				hash = hashNullable(hash, user.getAuthDomain());
+				hash = hashNullable(hash, user.getUserId());
+				return hashNullable(hash, user.getFederatedIdentity());
+			}
+			else
+				// Not something the datastore stores; the string form is the best we can do
+				return hashNullable(hash, value.toString());
+		}
+	}
+
+	/** Hashes the app, namespace, and the kind and id or name of every key in the path */
+	static long hashKey(long hash, Key key)
+	{
+		hash = hashNullable(hash, key.getAppId());
+		hash = hashNullable(hash, key.getNamespace());
+
+		for (Key k = key; k != null; k = k.getParent())
+		{
+			hash = hashString(hash, k.getKind());
+			if (k.getName() != null)
+				hash = hashString(mix(hash, TAG_NAME), k.getName());
+			else
+				hash = mixLong(mix(hash, TAG_ID), k.getId());
+		}
+
+		return hash;
+	}
+
+	/** */
+	static long hashNullable(long hash, String value)
+	{
+		return (value == null) ? mix(hash, TAG_NULL) : hashString(mix(hash, TAG_STRING), value);
+	}
+
+	/** */
+	static long mix(long hash, int b)
+	{
+		return (hash ^ (b & 0xff)) * PRIME;
+	}
+
+	/** */
+	static long mixLong(long hash, long value)
+	{
+		for (int i=0; i<8; i++)
+		{
+			hash = mix(hash, (int)value);
+			value >>>= 8;
+		}
+
+		return hash;
+	}
+
+	/** */
+	static long hashString(long hash, String value)
+	{
+		int len = value.length();
+		hash = mixLong(hash, len);
+		for (int i=0; i<len; i++)
+		{
+			char ch = value.charAt(i);
+			hash = mix(mix(hash, ch), ch >>> 8);
+		}
+
+		return hash;
+	}
+
+	/** */
+	static long hashBytes(long hash, byte[] value)
+	{
+		hash = mixLong(hash, value.length);
+		for (byte b: value)
+			hash = mix(hash, b);
+
+		return hash;
+	}
+
+	/** Spreads the bits so that summing property hashes doesn't cancel out */
+	static long finish(long hash)
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
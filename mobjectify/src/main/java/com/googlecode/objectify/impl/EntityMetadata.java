@@ -1,6 +1,7 @@
 package com.googlecode.objectify.impl;
 
 import com.google.appengine.api.datastore.Entity;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.annotation.Cached;
 
@@ -39,6 +40,28 @@ public interface EntityMetadata<T>
 	 */
 	public T toObject(Entity ent, Objectify ofy);
 
+	/**
+	 * Like toObject(Entity, Objectify) but loads only the fields in the profile.  @PostLoad
+	 * methods are not called on partially loaded objects.
+	 * 
+	 * @param profile can be null to load the whole object
+	 */
+	public T toObject(Entity ent, Objectify ofy, LoadProfile profile);
+
+	/**
+	 * Like toObject(Entity, Objectify, LoadProfile) but never calls @PostLoad methods, so it
+	 * can run on any thread.  The thread which owns the Objectify should follow it with
+	 * postLoad() for every whole object.
+	 * 
+	 * @param profile can be null to load the whole object
+	 */
+	public T load(Entity ent, LoadProfile profile);
+
+	/**
+	 * Calls the @PostLoad methods of an object which load() made from the entity.
+	 */
+	public void postLoad(T pojo, Entity ent, Objectify ofy);
+
 
 	/**
 	 * Converts an object to a datastore Entity with the appropriate Key type.
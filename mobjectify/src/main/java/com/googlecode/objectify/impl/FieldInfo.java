@@ -0,0 +1,179 @@
+package com.googlecode.objectify.impl;
+
+import java.lang.reflect.Field;
+
+import javax.persistence.Embedded;
+import javax.persistence.Id;
+import javax.persistence.Transient;
+
+import com.googlecode.objectify.annotation.AlsoLoad;
+import com.googlecode.objectify.annotation.Indexed;
+import com.googlecode.objectify.annotation.NotSaved;
+import com.googlecode.objectify.annotation.Parent;
+import com.googlecode.objectify.annotation.Serialized;
+import com.googlecode.objectify.annotation.Unindexed;
+import com.googlecode.objectify.condition.If;
+
+/**
+ * <p>What the annotations of one field say, as far as registration cares.  Companions
+ * written by {@code MetadataProcessor} carry these precomputed, so registering a class
+ * compiled with the processor does not parse the annotations of its fields; otherwise
+ * they are read reflectively.  Values are not checked here; registration does that the
+ * same way for both.</p>
+ */
+public class FieldInfo
+{
+	/** Flags */
+	public static final int TRANSIENT = 1;
+	public static final int ID = 2;
+	public static final int PARENT = 4;
+	public static final int EMBEDDED = 8;
+	public static final int SERIALIZED = 16;
+
+	/**
+	 * One of the If classes named by @Indexed, @Unindexed, or @NotSaved.
+	 */
+	public static class Condition
+	{
+		/** */
+		Class<? extends If<?, ?>> type;
+		Class<?> valueType;
+		Class<?> pojoType;
+
+		/**
+		 * @param valueType and pojoType are the type arguments the class gives If, or
+		 *  null if they have to be worked out reflectively
+		 */
+		public Condition(Class<? extends If<?, ?>> type, Class<?> valueType, Class<?> pojoType)
+		{
+			this.type = type;
+			this.valueType = valueType;
+			this.pojoType = pojoType;
+		}
+
+		/** @return the If class */
+		public Class<? extends If<?, ?>> getType() { return this.type; }
+
+		/** @return the first type argument of If, or null if it isn't known */
+		public Class<?> getValueType() { return this.valueType; }
+
+		/** @return the second type argument of If, or null if it isn't known */
+		public Class<?> getPojoType() { return this.pojoType; }
+
+		/**
+		 * @return a new instance of the If class for the field, or null if it has to be made
+		 *  reflectively.  Companions override this with a direct constructor call.
+		 */
+		public If<?, ?> create(Class<?> examinedClass, Field field)
+		{
+			return null;
+		}
+	}
+
+	/** */
+	String name;
+	int flags;
+	String[] alsoLoad;
+	Condition[] indexed;
+	Condition[] unindexed;
+	Condition[] notSaved;
+
+	/**
+	 * @param alsoLoad is the value of @AlsoLoad, or null if it is absent
+	 * @param indexed is the value of @Indexed, or null if it is absent; likewise unindexed and notSaved
+	 */
+	public FieldInfo(String name, int flags, String[] alsoLoad, Condition[] indexed, Condition[] unindexed, Condition[] notSaved)
+	{
+		this.name = name;
+		this.flags = flags;
+		this.alsoLoad = alsoLoad;
+		this.indexed = indexed;
+		this.unindexed = unindexed;
+		this.notSaved = notSaved;
+	}
+
+	/** @return the name of the field */
+	public String getName() { return this.name; }
+
+	/** */
+	public boolean isTransient() { return (this.flags & TRANSIENT) != 0; }
+
+	/** */
+	public boolean isId() { return (this.flags & ID) != 0; }
+
+	/** */
+	public boolean isParent() { return (this.flags & PARENT) != 0; }
+
+	/** */
+	public boolean isEmbedded() { return (this.flags & EMBEDDED) != 0; }
+
+	/** */
+	public boolean isSerialized() { return (this.flags & SERIALIZED) != 0; }
+
+	/** @return the value of @AlsoLoad, or null if there is none */
+	public String[] getAlsoLoad() { return this.alsoLoad; }
+
+	/** @return the conditions of @Indexed, or null if there is none */
+	public Condition[] getIndexed() { return this.indexed; }
+
+	/** @return the conditions of @Unindexed, or null if there is none */
+	public Condition[] getUnindexed() { return this.unindexed; }
+
+	/** @return the conditions of @NotSaved, or null if there is none */
+	public Condition[] getNotSaved() { return this.notSaved; }
+
+	/**
+	 * @return the info the field's companion has for it, or else the info read from its annotations
+	 */
+	public static FieldInfo of(Field field)
+	{
+		GeneratedMetadata meta = GeneratedMetadata.forClass(field.getDeclaringClass());
+		if (meta != null)
+		{
+			FieldInfo info = meta.getFieldInfo(field.getName());
+			if (info != null)
+				return info;
+		}
+
+		return reflect(field);
+	}
+
+	/**
+	 * @return the info read from the field's annotations
+	 */
+	static FieldInfo reflect(Field field)
+	{
+		int flags = 0;
+		if (field.isAnnotationPresent(Transient.class))
+			flags |= TRANSIENT;
+		if (field.isAnnotationPresent(Id.class))
+			flags |= ID;
+		if (field.isAnnotationPresent(Parent.class))
+			flags |= PARENT;
+		if (field.isAnnotationPresent(Embedded.class))
+			flags |= EMBEDDED;
+		if (field.isAnnotationPresent(Serialized.class))
+			flags |= SERIALIZED;
+
+		AlsoLoad alsoLoad = field.getAnnotation(AlsoLoad.class);
+		Indexed indexed = field.getAnnotation(Indexed.class);
+		Unindexed unindexed = field.getAnnotation(Unindexed.class);
+		NotSaved notSaved = field.getAnnotation(NotSaved.class);
+
+		return new FieldInfo(field.getName(), flags,
+				alsoLoad == null ? null : alsoLoad.value(),
+				indexed == null ? null : conditions(indexed.value()),
+				unindexed == null ? null : conditions(unindexed.value()),
+				notSaved == null ? null : conditions(notSaved.value()));
+	}
+
+	/** */
+	private static Condition[] conditions(Class<? extends If<?, ?>>[] types)
+	{
+		Condition[] result = new Condition[types.length];
+		for (int i=0; i<types.length; i++)
+			result[i] = new Condition(types[i], null, null);
+
+		return result;
+	}
+}
@@ -1,9 +1,9 @@
 package com.googlecode.objectify.impl;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 
-import com.googlecode.objectify.annotation.Serialized;
 
 /** 
  * Wrapper which makes a field look just like... a field.  More importantly,
@@ -13,7 +13,14 @@ public class FieldWrapper implements Wrapper
 {
 	Field field;
 	
-	public FieldWrapper(Field field) { this.field = field; }
+	/** Does the actual reading and writing */
+	Accessor accessor;
+	
+	public FieldWrapper(Field field)
+	{
+		this.field = field;
+		this.accessor = Accessors.forField(field);
+	}
 	
 	@Override
 	public Class<?> getType() { return this.field.getType(); }
@@ -24,21 +31,25 @@ public class FieldWrapper implements Wrapper
 	@Override
 	public void set(Object pojo, Object value)
 	{
-		try { this.field.set(pojo, value); }
-		catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		this.accessor.set(pojo, value);
 	}
 	
 	@Override
 	public Object get(Object pojo)
 	{
-		try { return this.field.get(pojo); }
-		catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
+		return this.accessor.get(pojo);
 	}
 
 	@Override
 	public boolean isSerialized()
 	{
-		return this.field.isAnnotationPresent(Serialized.class);
+		return FieldInfo.of(this.field).isSerialized();
+	}
+	
+	@Override
+	public <A extends Annotation> A getAnnotation(Class<A> annotationType)
+	{
+		return this.field.getAnnotation(annotationType);
 	}
 	
 	@Override
@@ -0,0 +1,407 @@
+package com.googlecode.objectify.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Base class of the companion classes written by {@code MetadataProcessor} at compile
+ * time.  For a class {@code com.example.Thing} the companion is {@code com.example.Thing$$ObjectifyMetadata};
+ * it lives in the same package so it can touch package-private fields and constructors
+ * with plain java code.</p>
+ *
+ * <p>A companion provides direct (non-reflective) accessors for the non-private persistent
+ * fields and @AlsoLoad methods declared by its class and, when the class has a visible
+ * no-arg constructor, a way to instantiate it.  It also describes what the annotations
+ * of the declared fields and methods say ({@code FieldInfo}, {@code MethodInfo}), with
+ * the If conditions already resolved, so registration neither parses annotations nor
+ * resolves generic types for the class.  Anything the companion doesn't cover (private
+ * members, classes compiled without the processor) is handled the usual way, with
+ * MethodHandle or reflective accessors from {@code Accessors}.</p>
+ *
+ * <p>Companions can be ignored with the system property {@code objectify.useGeneratedMetadata=false}.</p>
+ */
+public abstract class GeneratedMetadata
+{
+	/** */
+	private static final Logger log = Logger.getLogger(GeneratedMetadata.class.getName());
+
+	/** Appended to the binary name of a class to get the name of its companion */
+	public static final String SUFFIX = "$$ObjectifyMetadata";
+
+	/** System property which can disable the use of companions */
+	public static final String USE_PROPERTY = "objectify.useGeneratedMetadata";
+
+	/** Cached in place of classes which have no companion */
+	private static final GeneratedMetadata NONE = new GeneratedMetadata() {
+		@Override
+		public Class<?> getDescribedClass() { return null; }
+
+		@Override
+		public Accessor getAccessor(String fieldName) { return null; }
+	};
+
+	/** */
+	private static final ConcurrentMap<Class<?>, GeneratedMetadata> companions = new ConcurrentHashMap<Class<?>, GeneratedMetadata>();
+
+	/** */
+	private static volatile boolean enabled = !"false".equals(System.getProperty(USE_PROPERTY));
+
+	/** @return true if companions will be used by registrations */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Turns the use of companions on or off for classes registered after this call.
+	 * Mostly useful for benchmarking.
+	 */
+	public static void setEnabled(boolean value)
+	{
+		enabled = value;
+	}
+
+	/**
+	 * @return the companion generated for the class, or null if there isn't one (or
+	 *  companions are disabled).
+	 */
+	public static GeneratedMetadata forClass(Class<?> clazz)
+	{
+		if (!enabled)
+			return null;
+
+		GeneratedMetadata meta = companions.get(clazz);
+		if (meta == null)
+		{
+			meta = load(clazz);
+			companions.putIfAbsent(clazz, meta);
+		}
+
+		return meta == NONE ? null : meta;
+	}
+
+	/**
+	 * @return the companion or NONE, never null
+	 */
+	private static GeneratedMetadata load(Class<?> clazz)
+	{
+		if (clazz.isPrimitive() || clazz.isArray())
+			return NONE;
+
+		try
+		{
+			Class<?> companion = Class.forName(clazz.getName() + SUFFIX, true, clazz.getClassLoader());
+			GeneratedMetadata meta = (GeneratedMetadata)companion.getDeclaredConstructor().newInstance();
+
+			// Guard against a stale companion left behind by a renamed class
+			if (meta.getDescribedClass() == clazz)
+				return meta;
+		}
+		catch (ClassNotFoundException ex)
+		{
+			// Normal; the class wasn't compiled with the processor
+		}
+		catch (Exception ex)
+		{
+			log.log(Level.WARNING, "Unable to use generated metadata for " + clazz.getName(), ex);
+		}
+		catch (LinkageError ex)
+		{
+			log.log(Level.WARNING, "Unable to use generated metadata for " + clazz.getName(), ex);
+		}
+
+		return NONE;
+	}
+
+	/** @return the class this companion was generated for */
+	public abstract Class<?> getDescribedClass();
+
+	/**
+	 * @return an accessor for the named field declared by the described class, or null
+	 *  if none was generated.  Fields of supported primitive types get a PrimitiveAccessor.
+	 */
+	public abstract Accessor getAccessor(String fieldName);
+
+	/**
+	 * @return an accessor which calls the named single-parameter @AlsoLoad method declared
+	 *  by the described class, or null if none was generated.
+	 */
+	public Accessor getMethodAccessor(String methodName, Class<?> paramType)
+	{
+		return null;
+	}
+
+	/**
+	 * @return a way to call the no-arg constructor of the described class, or null if the
+	 *  class has none that the companion can call
+	 */
+	public Instantiator<?> getInstantiator()
+	{
+		return null;
+	}
+
+	/** Built from describeFields() on first use */
+	private volatile Map<String, FieldInfo> fieldInfos;
+
+	/**
+	 * @return every non-static, non-final field declared by the described class, or null
+	 *  if the processor couldn't describe all of them
+	 */
+	protected FieldInfo[] describeFields()
+	{
+		return null;
+	}
+
+	/**
+	 * @return what the annotations of the named field say, or null if the companion
+	 *  doesn't know
+	 */
+	public FieldInfo getFieldInfo(String fieldName)
+	{
+		Map<String, FieldInfo> infos = this.fieldInfos;
+		if (infos == null)
+		{
+			infos = new HashMap<String, FieldInfo>();
+			FieldInfo[] described = this.describeFields();
+			if (described != null)
+				for (FieldInfo info: described)
+					infos.put(info.getName(), info);
+
+			this.fieldInfos = infos;
+		}
+
+		return infos.get(fieldName);
+	}
+
+	/**
+	 * @return every annotated method declared by the described class which MethodInfo
+	 *  covers, or null if the processor couldn't describe all of them
+	 */
+	public MethodInfo[] getMethodInfos()
+	{
+		return null;
+	}
+
+	/**
+	 * <p>Base of the generated accessors.  Subclasses only need to cast and assign (or call);
+	 * this class makes the result behave like {@code Field.set()}, turning a value of the
+	 * wrong type (or a null for a primitive) into an IllegalArgumentException.</p>
+	 */
+	protected abstract static class MemberAccessor implements Accessor
+	{
+		/** */
+		String name;
+		boolean primitive;
+
+		/**
+		 * @param name is used in error messages
+		 */
+		protected MemberAccessor(String name, boolean primitive)
+		{
+			this.name = name;
+			this.primitive = primitive;
+		}
+
+		/** Read the member; the pojo must be cast to the declaring class.  Methods return null. */
+		protected abstract Object read(Object pojo);
+
+		/** Write the member; the value must be cast (or unboxed) to the member type */
+		protected abstract void write(Object pojo, Object value);
+
+		/* (non-Javadoc)
+		 * @see com.googlecode.objectify.impl.Accessor#get(java.lang.Object)
+		 */
+		@Override
+		public final Object get(Object pojo)
+		{
+			try
+			{
+				return this.read(pojo);
+			}
+			catch (ClassCastException ex) { throw new IllegalArgumentException("Can not get " + this.name + " from " + pojo, ex); }
+		}
+
+		/* (non-Javadoc)
+		 * @see com.googlecode.objectify.impl.Accessor#set(java.lang.Object, java.lang.Object)
+		 */
+		@Override
+		public final void set(Object pojo, Object value)
+		{
+			if (value == null && this.primitive)
+				throw new IllegalArgumentException("Can not set " + this.name + " to null value");
+
+			try
+			{
+				this.write(pojo, value);
+			}
+			catch (ClassCastException ex) { throw new IllegalArgumentException("Can not set " + this.name + " to " + value, ex); }
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString()
+		{
+			return this.name;
+		}
+	}
+
+	/**
+	 * <p>Base of the generated accessors for primitive fields.  Subclasses override the
+	 * typed read and write methods which match the field; the rest throw IllegalStateException
+	 * just like the other PrimitiveAccessor implementations.</p>
+	 */
+	protected abstract static class PrimitiveFieldAccessor extends MemberAccessor implements PrimitiveAccessor
+	{
+		/** */
+		Class<?> type;
+
+		/** */
+		protected PrimitiveFieldAccessor(String name, Class<?> type)
+		{
+			super(name, true);
+			this.type = type;
+		}
+
+		/** */
+		protected long readLong(Object pojo) { throw new IllegalStateException(this.name + " is not an integral field"); }
+
+		/** */
+		protected void writeLong(Object pojo, long value) { throw new IllegalStateException(this.name + " is not an integral field"); }
+
+		/** */
+		protected double readDouble(Object pojo) { throw new IllegalStateException(this.name + " is not a floating point field"); }
+
+		/** */
+		protected void writeDouble(Object pojo, double value) { throw new IllegalStateException(this.name + " is not a floating point field"); }
+
+		/** */
+		protected boolean readBoolean(Object pojo) { throw new IllegalStateException(this.name + " is not a boolean field"); }
+
+		/** */
+		protected void writeBoolean(Object pojo, boolean value) { throw new IllegalStateException(this.name + " is not a boolean field"); }
+
+		@Override
+		public boolean isIntegral() { return Accessors.isIntegralType(this.type); }
+
+		@Override
+		public boolean isFloatingPoint() { return Accessors.isFloatingPointType(this.type); }
+
+		@Override
+		public final long getLong(Object pojo)
+		{
+			try { return this.readLong(pojo); }
+			catch (ClassCastException ex) { throw new IllegalArgumentException("Can not get " + this.name + " from " + pojo, ex); }
+		}
+
+		@Override
+		public final void setLong(Object pojo, long value)
+		{
+			try { this.writeLong(pojo, value); }
+			catch (ClassCastException ex) { throw new IllegalArgumentException("Can not set " + this.name + " on " + pojo, ex); }
+		}
+
+		@Override
+		public final double getDouble(Object pojo)
+		{
+			try { return this.readDouble(pojo); }
+			catch (ClassCastException ex) { throw new IllegalArgumentException("Can not get " + this.name + " from " + pojo, ex); }
+		}
+
+		@Override
+		public final void setDouble(Object pojo, double value)
+		{
+			try { this.writeDouble(pojo, value); }
+			catch (ClassCastException ex) { throw new IllegalArgumentException("Can not set " + this.name + " on " + pojo, ex); }
+		}
+
+		@Override
+		public final boolean getBoolean(Object pojo)
+		{
+			try { return this.readBoolean(pojo); }
+			catch (ClassCastException ex) { throw new IllegalArgumentException("Can not get " + this.name + " from " + pojo, ex); }
+		}
+
+		@Override
+		public final void setBoolean(Object pojo, boolean value)
+		{
+			try { this.writeBoolean(pojo, value); }
+			catch (ClassCastException ex) { throw new IllegalArgumentException("Can not set " + this.name + " on " + pojo, ex); }
+		}
+	}
+
+	//
+	// Unboxing with the widening conversions that Field.set() allows.  Anything else
+	// is a ClassCastException, which the accessors turn into IllegalArgumentException.
+	//
+
+	/** */
+	protected static boolean toBoolean(Object value)
+	{
+		return (Boolean)value;
+	}
+
+	/** */
+	protected static char toChar(Object value)
+	{
+		return (Character)value;
+	}
+
+	/** */
+	protected static byte toByte(Object value)
+	{
+		return (Byte)value;
+	}
+
+	/** */
+	protected static short toShort(Object value)
+	{
+		if (value instanceof Byte)
+			return (Byte)value;
+		else
+			return (Short)value;
+	}
+
+	/** */
+	protected static int toInt(Object value)
+	{
+		if (value instanceof Character)
+			return (Character)value;
+		else if (value instanceof Byte || value instanceof Short)
+			return ((Number)value).intValue();
+		else
+			return (Integer)value;
+	}
+
+	/** */
+	protected static long toLong(Object value)
+	{
+		if (value instanceof Long)
+			return (Long)value;
+		else
+			return toInt(value);
+	}
+
+	/** */
+	protected static float toFloat(Object value)
+	{
+		if (value instanceof Float)
+			return (Float)value;
+		else
+			return toLong(value);
+	}
+
+	/** */
+	protected static double toDouble(Object value)
+	{
+		if (value instanceof Double)
+			return (Double)value;
+		else
+			return toFloat(value);
+	}
+}
@@ -0,0 +1,38 @@
+package com.googlecode.objectify.impl;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * <p>Makes new instances of a class with its no-arg constructor, either through a call
+ * written by {@code MetadataProcessor} or reflectively.</p>
+ */
+public abstract class Instantiator<T>
+{
+	/** @return a new instance */
+	public abstract T newInstance();
+
+	/**
+	 * @return an instantiator for the class, preferring its companion's
+	 * @throws IllegalStateException if the class has no no-arg constructor
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Instantiator<T> forClass(Class<T> clazz)
+	{
+		GeneratedMetadata meta = GeneratedMetadata.forClass(clazz);
+		if (meta != null)
+		{
+			Instantiator<?> compiled = meta.getInstantiator();
+			if (compiled != null)
+				return (Instantiator<T>)compiled;
+		}
+
+		final Constructor<T> ctor = TypeUtils.getNoArgConstructor(clazz);
+		return new Instantiator<T>() {
+			@Override
+			public T newInstance()
+			{
+				return TypeUtils.newInstance(ctor);
+			}
+		};
+	}
+}
@@ -0,0 +1,93 @@
+package com.googlecode.objectify.impl;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/** 
+ * <p>Wrapper which makes the T inside a {@code Lazy<T>} field look like a field of its own,
+ * so the converters see the type they would see if the field weren't lazy.  Annotations
+ * come from the real field.</p>
+ * 
+ * <p>The contents of a Lazy are always converted into a fresh value, so there is nothing
+ * to get() and set() does nothing; this is the same behavior converters already see with
+ * @AlsoLoad methods.</p>
+ */
+public class LazyContentWrapper implements Wrapper
+{
+	/** The actual Lazy field or method */
+	Wrapper lazy;
+	
+	/** */
+	Type genericType;
+	Class<?> type;
+	
+	/** */
+	public LazyContentWrapper(Wrapper lazy)
+	{
+		this.lazy = lazy;
+		this.genericType = getContentType(lazy.getGenericType());
+		this.type = getRawType(this.genericType);
+	}
+	
+	/**
+	 * @param lazyType is the generic type of a Lazy field
+	 * @return the T of the {@code Lazy<T>}, or Object if it is not specified 
+	 */
+	public static Type getContentType(Type lazyType)
+	{
+		if (lazyType instanceof ParameterizedType)
+			return ((ParameterizedType)lazyType).getActualTypeArguments()[0];
+		else
+			return Object.class;
+	}
+	
+	/**
+	 * @return the class of a type, or Object if it cannot be determined (type variables, wildcards)
+	 */
+	public static Class<?> getRawType(Type type)
+	{
+		if (type instanceof Class<?>)
+			return (Class<?>)type;
+		else if (type instanceof ParameterizedType)
+			return (Class<?>)((ParameterizedType)type).getRawType();
+		else
+			return Object.class;
+	}
+	
+	@Override
+	public Class<?> getType() { return this.type; }
+	
+	@Override
+	public Type getGenericType() { return this.genericType; }
+	
+	@Override
+	public void set(Object pojo, Object value)
+	{
+		// Nothing to set; the Lazy receives the converted value
+	}
+	
+	@Override
+	public Object get(Object pojo)
+	{
+		return null;
+	}
+	
+	@Override
+	public boolean isSerialized()
+	{
+		return this.lazy.isSerialized();
+	}
+	
+	@Override
+	public <A extends Annotation> A getAnnotation(Class<A> annotationType)
+	{
+		return this.lazy.getAnnotation(annotationType);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return this.lazy.toString();
+	}
+}
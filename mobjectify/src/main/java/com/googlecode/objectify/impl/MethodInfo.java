@@ -0,0 +1,148 @@
+package com.googlecode.objectify.impl;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.Embedded;
+import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
+
+import com.googlecode.objectify.annotation.AlsoLoad;
+
+/**
+ * <p>The methods of a class which registration cares about: @PrePersist and @PostLoad
+ * callbacks, @AlsoLoad methods, and methods wrongly marked @Embedded.  Like FieldInfo,
+ * these come precomputed from a companion when there is one and are otherwise read
+ * from the annotations.  Values are not checked here.</p>
+ */
+public class MethodInfo
+{
+	/** Flags */
+	public static final int PRE_PERSIST = 1;
+	public static final int POST_LOAD = 2;
+	public static final int EMBEDDED = 4;
+	public static final int PARAMETER_EMBEDDED = 8;
+
+	/** */
+	String name;
+	Class<?>[] parameterTypes;
+	int flags;
+	String[] alsoLoad;
+
+	/** Known up front when read reflectively, otherwise looked up by resolve() */
+	Method method;
+
+	/**
+	 * @param alsoLoad is the value of @AlsoLoad on a parameter, or null if there is none
+	 */
+	public MethodInfo(String name, Class<?>[] parameterTypes, int flags, String[] alsoLoad)
+	{
+		this.name = name;
+		this.parameterTypes = parameterTypes;
+		this.flags = flags;
+		this.alsoLoad = alsoLoad;
+	}
+
+	/** */
+	MethodInfo(Method method, int flags, String[] alsoLoad)
+	{
+		this(method.getName(), method.getParameterTypes(), flags, alsoLoad);
+		this.method = method;
+	}
+
+	/** */
+	public boolean isPrePersist() { return (this.flags & PRE_PERSIST) != 0; }
+
+	/** */
+	public boolean isPostLoad() { return (this.flags & POST_LOAD) != 0; }
+
+	/** @return true if the method itself is marked @Embedded */
+	public boolean isEmbedded() { return (this.flags & EMBEDDED) != 0; }
+
+	/** @return true if the @AlsoLoad parameter is also marked @Embedded */
+	public boolean isParameterEmbedded() { return (this.flags & PARAMETER_EMBEDDED) != 0; }
+
+	/** @return the value of @AlsoLoad on a parameter, or null if there is none */
+	public String[] getAlsoLoad() { return this.alsoLoad; }
+
+	/** @return the number of parameters the method takes */
+	public int getParameterCount() { return this.parameterTypes.length; }
+
+	/**
+	 * @return the method, declared by the class
+	 */
+	public Method resolve(Class<?> clazz)
+	{
+		if (this.method != null)
+			return this.method;
+
+		try
+		{
+			return clazz.getDeclaredMethod(this.name, this.parameterTypes);
+		}
+		catch (NoSuchMethodException ex)
+		{
+			throw new IllegalStateException("Generated metadata of " + clazz.getName() + " is out of date; recompile it", ex);
+		}
+	}
+
+	/**
+	 * @return the methods of interest declared by the class (not its superclasses), from
+	 *  its companion if it has one that describes them
+	 */
+	public static List<MethodInfo> of(Class<?> clazz)
+	{
+		GeneratedMetadata meta = GeneratedMetadata.forClass(clazz);
+		if (meta != null)
+		{
+			MethodInfo[] methods = meta.getMethodInfos();
+			if (methods != null)
+				return Arrays.asList(methods);
+		}
+
+		return reflect(clazz);
+	}
+
+	/**
+	 * @return the methods of interest read from the annotations
+	 */
+	static List<MethodInfo> reflect(Class<?> clazz)
+	{
+		List<MethodInfo> result = new ArrayList<MethodInfo>();
+
+		for (Method method: clazz.getDeclaredMethods())
+		{
+			int flags = 0;
+			if (method.isAnnotationPresent(PrePersist.class))
+				flags |= PRE_PERSIST;
+			if (method.isAnnotationPresent(PostLoad.class))
+				flags |= POST_LOAD;
+			if (method.isAnnotationPresent(Embedded.class))
+				flags |= EMBEDDED;
+
+			String[] alsoLoad = null;
+			for (Annotation[] paramAnnotations: method.getParameterAnnotations())
+			{
+				for (Annotation ann: paramAnnotations)
+				{
+					if (ann instanceof AlsoLoad)
+					{
+						alsoLoad = ((AlsoLoad)ann).value();
+
+						for (Annotation maybeEmbedded: paramAnnotations)
+							if (maybeEmbedded instanceof Embedded)
+								flags |= PARAMETER_EMBEDDED;
+					}
+				}
+			}
+
+			if (flags != 0 || alsoLoad != null)
+				result.add(new MethodInfo(method, flags, alsoLoad));
+		}
+
+		return result;
+	}
+}
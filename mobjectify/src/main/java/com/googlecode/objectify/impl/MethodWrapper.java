@@ -1,7 +1,6 @@
 package com.googlecode.objectify.impl;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 
@@ -15,7 +14,14 @@ public class MethodWrapper implements Wrapper
 {
 	Method method;
 	
-	public MethodWrapper(Method method) { this.method = method; }
+	/** Does the actual invocation */
+	Accessor accessor;
+	
+	public MethodWrapper(Method method)
+	{
+		this.method = method;
+		this.accessor = Accessors.forMethod(method);
+	}
 	
 	@Override
 	public Class<?> getType() { return this.method.getParameterTypes()[0]; }
@@ -26,9 +32,7 @@ public class MethodWrapper implements Wrapper
 	@Override
 	public void set(Object pojo, Object value)
 	{
-		try { this.method.invoke(pojo, value); }
-		catch (IllegalAccessException ex) { throw new RuntimeException(ex); }
-		catch (InvocationTargetException ex) { throw new RuntimeException(ex); }
+		this.accessor.set(pojo, value);
 	}
 	
 	@Override
@@ -39,13 +43,19 @@ public class MethodWrapper implements Wrapper
 	
 	@Override
 	public boolean isSerialized()
+	{
+		return this.getAnnotation(Serialized.class) != null;
+	}
+	
+	@Override
+	public <A extends Annotation> A getAnnotation(Class<A> annotationType)
 	{
 		Annotation[] annos = this.method.getParameterAnnotations()[0];
 		for (Annotation anno: annos)
-			if (anno instanceof Serialized)
-				return true;
+			if (annotationType.isInstance(anno))
+				return annotationType.cast(anno);
 		
-		return false;
+		return null;
 	}
 	
 	@Override
@@ -6,11 +6,13 @@ import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Transaction;
 import com.googlecode.objectify.AsyncObjectify;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.NotFoundException;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.ObjectifyOpts;
 import com.googlecode.objectify.Query;
+import com.googlecode.objectify.util.LongMap;
 
 /**
  * Implementation of the Objectify interface.  This actually just calls through to
@@ -34,6 +36,12 @@ public class ObjectifyImpl implements Objectify
 		this.opts = opts;
 		this.async = async;
 		this.async.sync = this;
+		
+		if (opts.getDirtyTracking())
+			this.async.tracker = new DirtyTracker();
+		
+		this.async.parallelizer = new Parallelizer(opts.getTranslationExecutor(), opts.getTranslationThreshold());
+		this.async.putParallelizer = new Parallelizer(opts.getTranslationExecutor(), opts.getPutTranslationThreshold());
 	}
 
 	/* (non-Javadoc)
@@ -45,6 +53,15 @@ public class ObjectifyImpl implements Objectify
 		return this.async.get(keys).get();
 	}
 
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.Objectify#get(com.googlecode.objectify.LoadProfile, java.lang.Iterable)
+	 */
+	@Override
+	public <T> Map<Key<T>, T> get(LoadProfile profile, Iterable<? extends Key<? extends T>> keys)
+	{
+		return this.async.get(profile, keys).get();
+	}
+
 	/* (non-Javadoc)
 	 * @see com.google.code.objectify.Objectify#get(com.google.appengine.api.datastore.Key)
 	 */
@@ -81,6 +98,15 @@ public class ObjectifyImpl implements Objectify
 		return this.async.get(clazz, ids).get();
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.Objectify#get(java.lang.Class, long[])
+	 */
+	@Override
+	public <T> LongMap<T> get(Class<? extends T> clazz, long[] ids)
+	{
+		return this.async.get(clazz, ids).get();
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.googlecode.objectify.Objectify#get(java.lang.Class, S[])
 	 */
@@ -233,4 +259,13 @@ public class ObjectifyImpl implements Objectify
 	{
 		return this.getFactory().getDatastoreService(this.opts);
 	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.Objectify#getElidedWrites()
+	 */
+	@Override
+	public long getElidedWrites()
+	{
+		return (this.async.tracker == null) ? 0 : this.async.tracker.getElidedWrites();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+package com.googlecode.objectify.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.googlecode.objectify.util.FutureHelper;
+
+/**
+ * <p>Runs the same step over every index of a batch, spreading the work across an
+ * Executor when the batch is large enough to be worth it.  This is how large gets,
+ * queries, and puts translate between Entities and POJOs on several cores.</p>
+ *
+ * <p>The batch is cut into chunks which are claimed by the workers one at a time.  The
+ * calling thread claims chunks too, so the work always finishes even if the executor is
+ * saturated (or never runs our tasks at all); workers which haven't started by the time
+ * the caller runs out of chunks are abandoned.  Each step writes its own index of some
+ * result array, so order is never disturbed.</p>
+ *
+ * <p>If a step throws, no further chunks are started and the first exception is rethrown
+ * on the calling thread.</p>
+ */
+public class Parallelizer
+{
+	/** Chunks smaller than this aren't worth handing to another thread */
+	static final int MIN_CHUNK = 64;
+
+	/** One step of the work */
+	public interface Step
+	{
+		/** Process the item at index */
+		void run(int index) throws Exception;
+	}
+
+	/** Runs everything in the calling thread */
+	public static final Parallelizer SEQUENTIAL = new Parallelizer(null, Integer.MAX_VALUE);
+
+	/** Null means always run in the calling thread */
+	Executor executor;
+
+	/** Batches smaller than this run in the calling thread */
+	int threshold;
+
+	/**
+	 * @param executor can be null to always run sequentially
+	 * @param threshold is the smallest batch which will be spread across the executor
+	 */
+	public Parallelizer(Executor executor, int threshold)
+	{
+		this.executor = executor;
+		this.threshold = threshold;
+	}
+
+	/** @return true if some batches might be run in parallel */
+	public boolean isEnabled()
+	{
+		return this.executor != null;
+	}
+
+	/** @return true if a batch of this size would be run in parallel */
+	public boolean isParallel(int size)
+	{
+		return this.executor != null && size >= this.threshold && size >= MIN_CHUNK * 2;
+	}
+
+	/**
+	 * Runs the step for every index from 0 to size-1, returning when all are done.
+	 */
+	public void run(final int size, final Step step)
+	{
+		if (!this.isParallel(size))
+		{
+			for (int i=0; i<size; i++)
+			{
+				try
+				{
+					step.run(i);
+				}
+				catch (Exception ex) { FutureHelper.unwrapAndThrow(ex); }
+			}
+
+			return;
+		}
+
+		int cpus = Runtime.getRuntime().availableProcessors();
+		final int chunkSize = Math.max(MIN_CHUNK, size / (cpus * 4));
+		final int chunks = (size + chunkSize - 1) / chunkSize;
+
+		final AtomicInteger nextChunk = new AtomicInteger();
+		final AtomicBoolean failed = new AtomicBoolean();
+
+		Callable<Void> work = new Callable<Void>() {
+			@Override
+			public Void call() throws Exception
+			{
+				try
+				{
+					int chunk;
+					while (!failed.get() && (chunk = nextChunk.getAndIncrement()) < chunks)
+					{
+						int end = Math.min(size, (chunk + 1) * chunkSize);
+						for (int i=chunk*chunkSize; i<end; i++)
+							step.run(i);
+					}
+
+					return null;
+				}
+				catch (Exception ex)
+				{
+					failed.set(true);
+					throw ex;
+				}
+				catch (Error ex)
+				{
+					failed.set(true);
+					throw ex;
+				}
+			}
+		};
+
+		// The caller is one of the workers
+		int helpers = Math.min(cpus, chunks) - 1;
+		List<Helper> submitted = new ArrayList<Helper>(helpers);
+		try
+		{
+			for (int i=0; i<helpers; i++)
+			{
+				Helper helper = new Helper(work);
+				submitted.add(helper);
+				this.executor.execute(helper.task);
+			}
+		}
+		catch (RejectedExecutionException ex)
+		{
+			// Fine, we'll just do more of it ourselves
+		}
+
+		Throwable problem = null;
+
+		try
+		{
+			work.call();
+		}
+		catch (Throwable ex) { problem = ex; }
+
+		for (Helper helper: submitted)
+		{
+			// If it hasn't started there's nothing left for it to do; otherwise wait for its chunk
+			if (helper.started.compareAndSet(false, true))
+				continue;
+
+			try
+			{
+				helper.task.get();
+			}
+			catch (Throwable ex)
+			{
+				if (problem == null)
+					problem = ex;
+			}
+		}
+
+		if (problem != null)
+			FutureHelper.unwrapAndThrow(problem);
+	}
+
+	/**
+	 * A task which runs the work only if the caller hasn't already given up on it.
+	 */
+	static class Helper
+	{
+		final AtomicBoolean started = new AtomicBoolean();
+		final FutureTask<Void> task;
+
+		/** */
+		Helper(final Callable<Void> work)
+		{
+			this.task = new FutureTask<Void>(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception
+				{
+					if (started.compareAndSet(false, true))
+						work.call();
+
+					return null;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.googlecode.objectify.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>Remembers the objects an Objectify instance has loaded with a LoadProfile, so that
+ * put() can refuse to write their missing fields over the real data.</p>
+ *
+ * <p>Objects are compared by identity, since a pojo's equals() may well say that a fully
+ * loaded copy is the same thing, and they are held weakly, so an object which is dropped
+ * doesn't stay around for the life of the Objectify.  Unlike the DirtyTracker this is
+ * thread-safe, because translation may happen on several threads.</p>
+ */
+public class PartialObjects
+{
+	/**
+	 * Weak reference which is equal to another one for the same object.
+	 */
+	static class Ref extends WeakReference<Object>
+	{
+		/** Kept so that the hash doesn't change once the object is collected */
+		final int hash;
+
+		/** */
+		Ref(Object referent, ReferenceQueue<Object> queue)
+		{
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		/** */
+		@Override
+		public int hashCode()
+		{
+			return this.hash;
+		}
+
+		/** */
+		@Override
+		public boolean equals(Object other)
+		{
+			if (this == other)
+				return true;
+
+			if (!(other instanceof Ref))
+				return false;
+
+			Object referent = this.get();
+			return referent != null && referent == ((Ref)other).get();
+		}
+	}
+
+	/** */
+	Set<Ref> refs = new HashSet<Ref>();
+
+	/** Collected objects show up here, to be taken out of refs */
+	ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	/**
+	 * Notes that the object was only partially loaded.
+	 */
+	public synchronized void add(Object pojo)
+	{
+		this.expunge();
+		this.refs.add(new Ref(pojo, this.queue));
+	}
+
+	/**
+	 * @return true if the object was partially loaded
+	 */
+	public synchronized boolean contains(Object pojo)
+	{
+		if (this.refs.isEmpty())
+			return false;
+
+		this.expunge();
+		return this.refs.contains(new Ref(pojo, null));
+	}
+
+	/** */
+	private void expunge()
+	{
+		Reference<?> ref;
+		while ((ref = this.queue.poll()) != null)
+			this.refs.remove(ref);
+	}
+}
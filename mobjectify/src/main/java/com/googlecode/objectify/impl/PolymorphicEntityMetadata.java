@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.google.appengine.api.datastore.Entity;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.annotation.Cached;
 import com.googlecode.objectify.annotation.Subclass;
@@ -76,6 +77,11 @@ public class PolymorphicEntityMetadata<T> implements EntityMetadata<T>
 	/** The metadata for the base @Entity, which has no discriminator */
 	SubclassInfo<T> base;
 	
+	/*
+	 * The maps below are plain HashMaps because they are never modified once the
+	 * metadata is published; addSubclass() only ever touches an unpublished copy().
+	 */
+	
 	/** Keyed by discriminator value; doesn't include the base metdata */
 	Map<String, ConcreteEntityMetadata<? extends T>> byDiscriminator = new HashMap<String, ConcreteEntityMetadata<? extends T>>();
 	
@@ -96,7 +102,27 @@ public class PolymorphicEntityMetadata<T> implements EntityMetadata<T>
 	}
 	
 	/**
-	 * Registers a @Subclass in a polymorphic hierarchy.
+	 * @return a copy which subclasses can be added to without anyone using this one seeing them
+	 */
+	public PolymorphicEntityMetadata<T> copy()
+	{
+		PolymorphicEntityMetadata<T> copy = new PolymorphicEntityMetadata<T>(this.base);
+		copy.byDiscriminator.putAll(this.byDiscriminator);
+		copy.byClass.putAll(this.byClass);
+		copy.mightBeInCache = this.mightBeInCache;
+		
+		return copy;
+	}
+	
+	/** */
+	private PolymorphicEntityMetadata(SubclassInfo<T> base)
+	{
+		this.base = base;
+	}
+	
+	/**
+	 * Registers a @Subclass in a polymorphic hierarchy.  Only for metadata which hasn't
+	 * been published yet; the Registrar adds subclasses to a copy().
 	 * 
 	 * @param clazz must have the @Subclass annotation
 	 */
@@ -187,6 +213,30 @@ public class PolymorphicEntityMetadata<T> implements EntityMetadata<T>
 		return this.getConcrete(ent).toObject(ent, ofy);
 	}
 
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.EntityMetadata#toObject(com.google.appengine.api.datastore.Entity, com.googlecode.objectify.Objectify, com.googlecode.objectify.LoadProfile)
+	 */
+	public T toObject(Entity ent, Objectify ofy, LoadProfile profile)
+	{
+		return this.getConcrete(ent).toObject(ent, ofy, profile);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.EntityMetadata#load(com.google.appengine.api.datastore.Entity, com.googlecode.objectify.LoadProfile)
+	 */
+	public T load(Entity ent, LoadProfile profile)
+	{
+		return this.getConcrete(ent).load(ent, profile);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.EntityMetadata#postLoad(java.lang.Object, com.google.appengine.api.datastore.Entity, com.googlecode.objectify.Objectify)
+	 */
+	public void postLoad(T pojo, Entity ent, Objectify ofy)
+	{
+		this.getConcrete(pojo).metadata.postLoad(pojo, ent, ofy);
+	}
+
 	/* (non-Javadoc)
 	 * @see com.googlecode.objectify.impl.EntityMetadata#toEntity(java.lang.Object, com.googlecode.objectify.Objectify)
 	 */
@@ -0,0 +1,37 @@
+package com.googlecode.objectify.impl;
+
+/**
+ * <p>An Accessor for a field of primitive type which can also read and write the value
+ * without boxing it.  Created by {@code Accessors.forPrimitiveField()}.</p>
+ *
+ * <p>The datastore only knows about longs, doubles, and booleans, so those are the only
+ * signatures.  Getters widen the field's value and setters narrow the value to the field's
+ * type, exactly like a java cast.  Calling the long methods on a floating point field (or
+ * vice versa), or the boolean methods on a numeric field, is an IllegalStateException.</p>
+ */
+public interface PrimitiveAccessor extends Accessor
+{
+	/** @return true for byte, short, int, and long fields */
+	boolean isIntegral();
+
+	/** @return true for float and double fields */
+	boolean isFloatingPoint();
+
+	/** */
+	long getLong(Object pojo);
+
+	/** */
+	void setLong(Object pojo, long value);
+
+	/** */
+	double getDouble(Object pojo);
+
+	/** */
+	void setDouble(Object pojo, double value);
+
+	/** */
+	boolean getBoolean(Object pojo);
+
+	/** */
+	void setBoolean(Object pojo, boolean value);
+}
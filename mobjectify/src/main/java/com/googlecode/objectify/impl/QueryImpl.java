@@ -22,6 +22,7 @@ import com.google.appengine.api.datastore.Query.SortPredicate;
 import com.google.appengine.api.datastore.QueryResultIterable;
 import com.google.appengine.api.datastore.QueryResultIterator;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.Query;
@@ -51,6 +52,18 @@ public class QueryImpl<T> implements Query<T>, Cloneable
 	Cursor startCursor;
 	Cursor endCursor;
 	
+	/** If not null, only these fields are loaded */
+	LoadProfile profile;
+	
+	/** If not null, entities we load are remembered here */
+	DirtyTracker tracker;
+	
+	/** If not null, objects we load with a profile are remembered here */
+	PartialObjects partials;
+	
+	/** Used to translate large list()s */
+	Parallelizer parallelizer = Parallelizer.SEQUENTIAL;
+	
 	/** */
 	public QueryImpl(ObjectifyFactory fact, Objectify objectify) 
 	{
@@ -235,6 +248,16 @@ public class QueryImpl<T> implements Query<T>, Cloneable
 		return this;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.Query#profile(com.googlecode.objectify.LoadProfile)
+	 */
+	@Override
+	public Query<T> profile(LoadProfile profile)
+	{
+		this.profile = profile;
+		return this;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.googlecode.objectify.Query#startCursor(com.google.appengine.api.datastore.Cursor)
 	 */
@@ -332,6 +355,9 @@ public class QueryImpl<T> implements Query<T>, Cloneable
 		if (this.endCursor != null)
 			bld.append(",endCursor=").append(this.endCursor.toWebSafeString());
 
+		if (this.profile != null)
+			bld.append(",profile=").append(this.profile.getPaths());
+
 		bld.append('}');
 		
 		return bld.toString();
@@ -464,14 +490,89 @@ public class QueryImpl<T> implements Query<T>, Cloneable
 	 * @see com.googlecode.objectify.Query#list()
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public List<T> list()
 	{
 		List<T> result = new ArrayList<T>();
-		for (T obj: this)
-			result.add(obj);
+		
+		if (!this.parallelizer.isEnabled())
+		{
+			for (T obj: this)
+				result.add(obj);
+		}
+		else
+		{
+			// Gather all the entities so that we can translate them in bulk
+			final List<Entity> entities = new ArrayList<Entity>();
+			for (Entity ent: this.prepare().asQueryResultIterable(this.fetchOptions()))
+			{
+				if (this.tracker != null && this.profile == null)
+					this.tracker.loaded(ent);
+				
+				entities.add(ent);
+			}
+			
+			final Object[] pojos = new Object[entities.size()];
+			this.parallelizer.run(entities.size(), new Parallelizer.Step() {
+				@Override
+				public void run(int index)
+				{
+					pojos[index] = load(entities.get(index));
+				}
+			});
+			
+			for (int i=0; i<pojos.length; i++)
+			{
+				this.postLoad((T)pojos[i], entities.get(i));
+				result.add(this.loaded((T)pojos[i]));
+			}
+		}
 		
 		return result;
 	}
+	
+	/**
+	 * Translates an entity which came back from the query.
+	 */
+	protected T toObject(Entity ent)
+	{
+		T obj = this.load(ent);
+		this.postLoad(obj, ent);
+		return obj;
+	}
+	
+	/**
+	 * Translates an entity without calling its @PostLoad methods; may be called from several threads.
+	 */
+	protected T load(Entity ent)
+	{
+		EntityMetadata<T> meta = this.factory.getMetadata(ent.getKey());
+		T obj = meta.load(ent, this.profile);
+		
+		if (this.profile != null && this.partials != null)
+			this.partials.add(obj);
+		
+		return obj;
+	}
+	
+	/**
+	 * Calls the @PostLoad methods of an object which load() made, unless it is partial.
+	 * Only on the thread which owns the Objectify; they may use it.
+	 */
+	protected void postLoad(T obj, Entity ent)
+	{
+		if (this.profile == null)
+			this.factory.<T>getMetadata(ent.getKey()).postLoad(obj, ent, this.ofy);
+	}
+	
+	/**
+	 * Called on each translated object as it is returned from the query.  Subclasses can
+	 * substitute a different object.
+	 */
+	protected T loaded(T obj)
+	{
+		return obj;
+	}
 
 	/* (non-Javadoc)
 	 * @see com.googlecode.objectify.Query#listKeys()
@@ -600,7 +701,7 @@ public class QueryImpl<T> implements Query<T>, Cloneable
 		@Override
 		protected Key<T> translate(Entity from)
 		{
-			return new Key<T>(from.getKey());
+			return factory.getConversions().typedKey(from.getKey());
 		}
 	}
 
@@ -636,8 +737,10 @@ public class QueryImpl<T> implements Query<T>, Cloneable
 		@Override
 		protected T translate(Entity from)
 		{
-			EntityMetadata<T> meta = factory.getMetadata(from.getKey());
-			return meta.toObject(from, ofy);
+			if (tracker != null && profile == null)
+				tracker.loaded(from);
+			
+			return toObject(from);
 		}
 	}
 }
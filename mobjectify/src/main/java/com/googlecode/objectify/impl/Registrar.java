@@ -1,10 +1,16 @@
 package com.googlecode.objectify.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.annotation.Cached;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Subclass;
 
@@ -14,6 +20,17 @@ import com.googlecode.objectify.annotation.Subclass;
  * <p>There logic here is convoluted by polymorphic hierarchies.  Entity classes can
  * be registered in any particular order, requiring some considerable care.</p>
  * 
+ * <p>In lazy mode, register() only records the class under its kind.  The metadata for
+ * a kind (every class registered under it, in registration order) is built the first
+ * time anything asks for the kind or one of its classes, and only then published to
+ * the lookup maps, so other threads never see a half-built polymorphic hierarchy.
+ * Errors in an entity class surface on first use instead of at registration.</p>
+ * 
+ * <p>Lookups happen on every load, save, and delete, while registration is rare, so the
+ * registry is copy-on-write: registration builds new maps off to the side under a lock
+ * and publishes them with a volatile write.  Lookups never lock.  Class lookups go through
+ * a ClassValue, which hangs the answer directly off the Class object.</p>
+ * 
  * @author Jeff Schnitzer <jeff@infohazard.org>
  */
 public class Registrar
@@ -21,14 +38,46 @@ public class Registrar
 	/** Needed to obtain the converters */
 	protected ObjectifyFactory fact;
 	
-	/** This maps kind to EntityMetadata */
-	protected Map<String, EntityMetadata<?>> byKind = new HashMap<String, EntityMetadata<?>>();
+	/** This maps kind to EntityMetadata; never modified once published */
+	protected volatile Map<String, EntityMetadata<?>> byKind = new HashMap<String, EntityMetadata<?>>();
+	
+	/** This maps class to EntityMetadata for all registered classes; never modified once published */
+	protected volatile Map<Class<?>, EntityMetadata<?>> byClass = new HashMap<Class<?>, EntityMetadata<?>>();
 	
-	/** This maps class to EntityMetadata for all registered classes */
-	protected Map<Class<?>, EntityMetadata<?>> byClass = new HashMap<Class<?>, EntityMetadata<?>>();
+	/** Holds the current byClass answer for a class */
+	static class Slot
+	{
+		volatile EntityMetadata<?> metadata;
+		
+		Slot(EntityMetadata<?> metadata) { this.metadata = metadata; }
+	}
+	
+	/** Fast path for getMetadata(Class); slots are updated whenever byClass is published */
+	protected final ClassValue<Slot> classSlots = new ClassValue<Slot>() {
+		@Override
+		protected Slot computeValue(Class<?> type)
+		{
+			return new Slot(byClass.get(type));
+		}
+	};
+	
+	/** On a staging Registrar, the kinds whose PolymorphicEntityMetadata it made itself and so may change */
+	protected Set<String> stagedKinds = new HashSet<String>();
 	
 	/** True if any @Cached entities have been registered */
-	protected boolean cacheEnabled;
+	protected volatile boolean cacheEnabled;
+	
+	/** If true, metadata is built on first use rather than at registration */
+	protected boolean lazy;
+	
+	/** Classes registered in lazy mode whose metadata has not been built yet, by kind in registration order; guarded by this */
+	protected Map<String, List<Class<?>>> pendingByKind = new HashMap<String, List<Class<?>>>();
+	
+	/** The kind of each class in pendingByKind; guarded by this */
+	protected Map<Class<?>, String> pendingKinds = new HashMap<Class<?>, String>();
+	
+	/** True if there might be anything in pendingByKind, so lookups can skip the lock */
+	protected volatile boolean hasPending;
 	
 	/** @return true if any entities are cacheable */
 	public boolean isCacheEnabled()
@@ -44,12 +93,130 @@ public class Registrar
 		this.fact = fact;
 	}
 	
+	/** @return true if registration defers building metadata until first use */
+	public boolean isLazy()
+	{
+		return this.lazy;
+	}
+	
+	/**
+	 * Turns lazy registration on or off for classes registered after this call.
+	 */
+	public void setLazy(boolean value)
+	{
+		this.lazy = value;
+	}
+	
 	/**
 	 * <p>All POJO entity classes which are to be managed by Objectify
-	 * must be registered first.  This method must be called in a single-threaded
-	 * mode sometime around application initialization.</p> 
+	 * must be registered first.  This is usually done around application
+	 * initialization, but it is safe to do while other threads are using
+	 * the registry.</p> 
+	 */
+	public synchronized <T> void register(Class<T> clazz)
+	{
+		String kind = Key.getKind(clazz);
+		if (this.lazy && !this.byKind.containsKey(kind))
+		{
+			this.registerPending(kind, clazz);
+			return;
+		}
+		
+		// Eager registration into a kind which is still pending must see the earlier classes
+		if (this.hasPending)
+			this.buildPending(kind);
+		
+		this.build(Collections.<Class<?>>singletonList(clazz));
+	}
+	
+	/**
+	 * Builds metadata for the classes into copies of the lookup maps (and of any polymorphic
+	 * metadata they add subclasses to), then publishes the copies.  If any class fails,
+	 * nothing is published.
+	 */
+	protected synchronized void build(List<Class<?>> classes)
+	{
+		Registrar staging = new Registrar(this.fact);
+		staging.byKind = new HashMap<String, EntityMetadata<?>>(this.byKind);
+		staging.byClass = new HashMap<Class<?>, EntityMetadata<?>>(this.byClass);
+		
+		for (Class<?> clazz: classes)
+			staging.registerNow(clazz);
+		
+		Map<Class<?>, EntityMetadata<?>> previous = this.byClass;
+		
+		// Classes first, so anyone who finds the kind also finds its classes
+		this.byClass = staging.byClass;
+		this.byKind = staging.byKind;
+		
+		for (Map.Entry<Class<?>, EntityMetadata<?>> entry: staging.byClass.entrySet())
+			if (previous.get(entry.getKey()) != entry.getValue())
+				this.classSlots.get(entry.getKey()).metadata = entry.getValue();
+		
+		if (staging.cacheEnabled)
+			this.cacheEnabled = true;
+	}
+	
+	/**
+	 * Records the class for building later, checking what can be checked cheaply.
 	 */
-	public <T> void register(Class<T> clazz)
+	protected synchronized void registerPending(String kind, Class<?> clazz)
+	{
+		boolean subclass = clazz.isAnnotationPresent(Subclass.class);
+		
+		List<Class<?>> pending = this.pendingByKind.get(kind);
+		if (pending == null)
+		{
+			pending = new ArrayList<Class<?>>();
+			this.pendingByKind.put(kind, pending);
+		}
+		else if (!subclass)
+		{
+			// Same rule as registerNow(); a second base is fine only once the kind is polymorphic
+			boolean polymorphic = false;
+			for (Class<?> other: pending)
+				if (other.isAnnotationPresent(Subclass.class))
+					polymorphic = true;
+			
+			if (!polymorphic)
+				throw new IllegalArgumentException("Attempted to register kind '" + kind + "' twice");
+		}
+		
+		pending.add(clazz);
+		this.pendingKinds.put(clazz, kind);
+		this.hasPending = true;
+		
+		// Same answer ConcreteEntityMetadata.mightBeInCache() would give
+		if (!subclass && clazz.isAnnotationPresent(Cached.class))
+			this.cacheEnabled = true;
+	}
+	
+	/**
+	 * Builds the metadata for every pending class of the kind and publishes it.  Does
+	 * nothing if no classes of the kind are pending, perhaps because another thread
+	 * just built them.
+	 */
+	protected synchronized void buildPending(String kind)
+	{
+		List<Class<?>> pending = this.pendingByKind.get(kind);
+		if (pending == null)
+			return;
+		
+		// If any class is broken, nothing is published and the kind stays pending
+		this.build(pending);
+		
+		this.pendingByKind.remove(kind);
+		for (Class<?> clazz: pending)
+			this.pendingKinds.remove(clazz);
+		
+		this.hasPending = !this.pendingByKind.isEmpty();
+	}
+	
+	/**
+	 * Builds the metadata for the class and adds it to the lookup maps.  Only
+	 * ever called on a staging Registrar, whose maps aren't visible to anyone else.
+	 */
+	protected <T> void registerNow(Class<T> clazz)
 	{
 		// There are two possible cases
 		// 1) This might be a simple class with @Entity or unannotated
@@ -111,11 +278,27 @@ public class Registrar
 				PolymorphicEntityMetadata<T> polymeta = new PolymorphicEntityMetadata<T>(clazz, (ConcreteEntityMetadata<T>)meta);
 				this.byKind.put(kind, polymeta);
 				this.byClass.put(clazz, polymeta);
+				this.stagedKinds.add(kind);
 				
 				return polymeta;
 			}
-			else
+			else if (this.stagedKinds.contains(kind))
+			{
 				return (PolymorphicEntityMetadata<? super T>)meta;
+			}
+			else
+			{
+				// The published metadata is in use, so subclasses go into a copy of it
+				PolymorphicEntityMetadata<? super T> polymeta = ((PolymorphicEntityMetadata<? super T>)meta).copy();
+				this.byKind.put(kind, polymeta);
+				for (Map.Entry<Class<?>, EntityMetadata<?>> entry: this.byClass.entrySet())
+					if (entry.getValue() == meta)
+						entry.setValue(polymeta);
+				
+				this.stagedKinds.add(kind);
+				
+				return polymeta;
+			}
 		}
 		else
 		{
@@ -141,7 +324,14 @@ public class Registrar
 	@SuppressWarnings("unchecked")
 	public <T> EntityMetadata<T> getMetadata(String kind)
 	{
-		return (EntityMetadata<T>)this.byKind.get(kind);
+		EntityMetadata<?> meta = this.byKind.get(kind);
+		if (meta == null && this.hasPending)
+		{
+			this.buildPending(kind);
+			meta = this.byKind.get(kind);
+		}
+		
+		return (EntityMetadata<T>)meta;
 	}
 
 	/**
@@ -150,6 +340,20 @@ public class Registrar
 	@SuppressWarnings("unchecked")
 	public <T> EntityMetadata<T> getMetadata(Class<T> clazz)
 	{
-		return (EntityMetadata<T>)this.byClass.get(clazz);
+		EntityMetadata<?> meta = this.classSlots.get(clazz).metadata;
+		if (meta == null && this.hasPending)
+		{
+			synchronized (this)
+			{
+				String kind = this.pendingKinds.get(clazz);
+				if (kind != null)
+					this.buildPending(kind);
+			}
+			
+			// Whoever built it, it's published by now
+			meta = this.classSlots.get(clazz).metadata;
+		}
+		
+		return (EntityMetadata<T>)meta;
 	}
 }
\ No newline at end of file
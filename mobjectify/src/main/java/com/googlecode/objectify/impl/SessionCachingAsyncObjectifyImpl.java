@@ -13,8 +13,10 @@ import com.googlecode.objectify.Key;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.Query;
 import com.googlecode.objectify.Result;
+import com.googlecode.objectify.TypedKeyFactory;
 import com.googlecode.objectify.cache.ListenableFuture;
 import com.googlecode.objectify.util.FutureHelper;
+import com.googlecode.objectify.util.LongMap;
 import com.googlecode.objectify.util.NowFuture;
 import com.googlecode.objectify.util.SimpleFutureWrapper;
 
@@ -106,6 +108,36 @@ public class SessionCachingAsyncObjectifyImpl extends AsyncObjectifyImpl
 		}
 	}
 
+	/**
+	 * Goes through the session cache like any other get, so it loses most of the
+	 * savings of the primitive version.
+	 * 
+	 * @see com.googlecode.objectify.AsyncObjectify#get(java.lang.Class, long[])
+	 */
+	@Override
+	public <T> Result<LongMap<T>> get(Class<? extends T> clazz, long[] ids)
+	{
+		TypedKeyFactory<T> keyFactory = TypedKeyFactory.of(clazz);
+		List<Key<T>> keys = new ArrayList<Key<T>>(ids.length);
+		for (long id: ids)
+			keys.add(keyFactory.create(id));
+		
+		Future<Map<Key<T>, T>> fetched = this.get(keys).getFuture();
+		Future<LongMap<T>> wrapped = new SimpleFutureWrapper<Map<Key<T>, T>, LongMap<T>>(fetched) {
+			@Override
+			protected LongMap<T> wrap(Map<Key<T>, T> base) throws Exception
+			{
+				LongMap<T> result = new LongMap<T>(base.size());
+				for (Map.Entry<Key<T>, T> entry: base.entrySet())
+					result.put(entry.getKey().getId(), entry.getValue());
+				
+				return result;
+			}
+		};
+		
+		return new ResultAdapter<LongMap<T>>(wrapped);
+	}
+
 	/* (non-Javadoc)
 	 * @see com.google.code.objectify.AsyncObjectify#put(java.lang.Iterable)
 	 */
@@ -154,7 +186,11 @@ public class SessionCachingAsyncObjectifyImpl extends AsyncObjectifyImpl
 	@Override
 	public <T> Query<T> query()
 	{
-		return new SessionCachingQueryImpl<T>(this.factory, this.sync, this.cache);
+		QueryImpl<T> query = new SessionCachingQueryImpl<T>(this.factory, this.sync, this.cache);
+		query.tracker = this.tracker;
+		query.partials = this.partials;
+		query.parallelizer = this.parallelizer;
+		return query;
 	}
 	
 	/* (non-Javadoc)
@@ -163,6 +199,10 @@ public class SessionCachingAsyncObjectifyImpl extends AsyncObjectifyImpl
 	@Override
 	public <T> Query<T> query(Class<T> clazz)
 	{
-		return new SessionCachingQueryImpl<T>(this.factory, this.sync, this.cache, clazz);
+		QueryImpl<T> query = new SessionCachingQueryImpl<T>(this.factory, this.sync, this.cache, clazz);
+		query.tracker = this.tracker;
+		query.partials = this.partials;
+		query.parallelizer = this.parallelizer;
+		return query;
 	}
 }
\ No newline at end of file
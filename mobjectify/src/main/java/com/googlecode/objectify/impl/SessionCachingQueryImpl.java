@@ -10,7 +10,7 @@ import com.googlecode.objectify.util.QueryResultIteratorWrapper;
 
 /**
  * Extends the QueryImpl to add a session cache.  Note that it only needs
- * to override the iterator() method.
+ * to override the iterator() and loaded() methods.
  * 
  * @author Jeff Schnitzer <jeff@infohazard.org>
  */
@@ -36,9 +36,35 @@ public class SessionCachingQueryImpl<T> extends QueryImpl<T>
 	@Override
 	public QueryResultIterator<T> iterator()
 	{
+		// Partially loaded objects must not get into (or come from) the cache
+		if (this.profile != null)
+			return super.iterator();
+		
 		return new SessionCachingQueryResultIterator(super.iterator());
 	}
 
+	/**
+	 * Merges the object with the session cache; whatever is already in the cache wins.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected T loaded(T t)
+	{
+		if (this.profile != null)
+			return t;
+		
+		Key<T> key = this.factory.getKey(t);
+		T cached = (T)this.cache.get(key);
+		
+		if (cached == null || cached == SessionCachingAsyncObjectifyImpl.NEGATIVE_RESULT)
+		{
+			this.cache.put(key, t);
+			cached = t;
+		}
+		
+		return cached;
+	}
+
 	/**
 	 * Simple iterator passes through and merges with the cache.
 	 */
@@ -50,20 +76,9 @@ public class SessionCachingQueryImpl<T> extends QueryImpl<T>
 		}
 
 		@Override
-		@SuppressWarnings("unchecked")
 		public T next()
 		{
-			T t = super.next();
-			Key<T> key = factory.getKey(t);
-			T cached = (T)cache.get(key);
-			
-			if (cached == null || cached == SessionCachingAsyncObjectifyImpl.NEGATIVE_RESULT)
-			{
-				cache.put(key, t);
-				cached = t;
-			}
-			
-			return cached;
+			return loaded(super.next());
 		}
 	}
 }
@@ -6,11 +6,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.appengine.api.datastore.Entity;
+import com.googlecode.objectify.Lazy;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.impl.TypeUtils.FieldMetadata;
 import com.googlecode.objectify.impl.TypeUtils.MethodMetadata;
 import com.googlecode.objectify.impl.conv.Conversions;
@@ -19,7 +24,9 @@ import com.googlecode.objectify.impl.load.EmbeddedClassSetter;
 import com.googlecode.objectify.impl.load.EmbeddedCollectionSetter;
 import com.googlecode.objectify.impl.load.EmbeddedMultivalueSetter;
 import com.googlecode.objectify.impl.load.EmbeddedNullIndexSetter;
+import com.googlecode.objectify.impl.load.LazyLeafSetter;
 import com.googlecode.objectify.impl.load.LeafSetter;
+import com.googlecode.objectify.impl.load.PrimitiveLeafSetter;
 import com.googlecode.objectify.impl.load.RootSetter;
 import com.googlecode.objectify.impl.load.Setter;
 import com.googlecode.objectify.impl.save.ClassSaver;
@@ -53,7 +60,8 @@ import com.googlecode.objectify.impl.save.ClassSaver;
  * that knows how to set this property somewhere deep in the object graph of a typed pojo.  In the case
  * of @Embedded arrays and collections, this single collection datastore value will set multipel
  * values in the pojo.  The core data structure is {@code rootSetters}, a map of entity property
- * name to a Setter which knows what to do with that data.</li>
+ * name to a Setter which knows what to do with that data.  It is compiled once into {@code loadPlan},
+ * which holds the same information in flat arrays so that loading never touches the map.</li>
  * <li>When saving, Transmog <em>recurses</em> through the class structure of a pojo (and any embedded objects), calling
  * all relevant Savers to populate the datastore Entity.  The core data structure is {@code rootSaver}, which
  * understands the whole pojo object graph and knows how to translate it into a number of properties
@@ -64,6 +72,9 @@ import com.googlecode.objectify.impl.save.ClassSaver;
  */
 public class Transmog<T>
 {
+	/** Profiles are made by callers, so only this many plans are remembered; the rest are compiled on every load */
+	static final int MAX_PROFILE_PLANS = 64;
+	
 	/** */
 	Conversions conversions;
 	
@@ -71,11 +82,76 @@ public class Transmog<T>
 	Class<T> clazz;
 	
 	/** Maps full "blah.blah.blah" property name to a particular Setter implementation */
-	Map<String, Setter> rootSetters = new HashMap<String, Setter>();
+	Map<String, Setter> rootSetters = new LinkedHashMap<String, Setter>();
+	
+	/** Maps the same property names to the "blah.blah.blah" path of java field names, for LoadProfiles */
+	Map<String, String> rootFieldPaths = new HashMap<String, String>();
+	
+	/** The rootSetters compiled for fast loading */
+	LoadPlan loadPlan;
+	
+	/** Smaller plans for partial loads, created as needed, up to MAX_PROFILE_PLANS of them */
+	ConcurrentMap<LoadProfile, LoadPlan> profilePlans = new ConcurrentHashMap<LoadProfile, LoadPlan>();
 	
 	/** The root saver that knows how to persist an object of type T */
 	ClassSaver rootSaver;
 	
+	/**
+	 * <p>The rootSetters, flattened into parallel arrays of property paths and the setters
+	 * which handle them.  Loading walks the slots and asks the Entity for each path directly;
+	 * {@code Entity.getProperties()} would copy the whole property map on every call, and
+	 * then we would need a hash lookup for every property anyway.  TransmogBenchmark shows
+	 * this holds even when most slots are @AlsoLoad aliases the Entity lacks.</p>
+	 * 
+	 * <p>Collision detection for @AlsoLoad paths is unchanged; the setters still do it.</p>
+	 */
+	static class LoadPlan
+	{
+		/** Full "blah.blah.blah" property paths, indexed by slot */
+		final String[] paths;
+		
+		/** The setter chain for each slot */
+		final Setter[] setters;
+		
+		/**
+		 * @param fieldPaths maps the same keys as setters to field paths; only needed with a profile
+		 * @param profile can be null to include everything
+		 */
+		public LoadPlan(Map<String, Setter> setters, Map<String, String> fieldPaths, LoadProfile profile)
+		{
+			List<String> paths = new ArrayList<String>(setters.size());
+			List<Setter> chosen = new ArrayList<Setter>(setters.size());
+			
+			for (Map.Entry<String, Setter> entry: setters.entrySet())
+			{
+				if (profile == null || profile.matches(fieldPaths.get(entry.getKey())) || profile.matches(entry.getKey()))
+				{
+					paths.add(entry.getKey());
+					chosen.add(entry.getValue());
+				}
+			}
+			
+			this.paths = paths.toArray(new String[paths.size()]);
+			this.setters = chosen.toArray(new Setter[chosen.size()]);
+		}
+		
+		/**
+		 * Runs every slot that has a property in the entity.
+		 */
+		public void load(Entity fromEntity, Object toPojo, LoadContext context)
+		{
+			for (int slot=0; slot<this.paths.length; slot++)
+			{
+				String path = this.paths[slot];
+				Object value = fromEntity.getProperty(path);
+				
+				// Only pay for the second lookup when we need to tell a null value from a missing property
+				if (value != null || fromEntity.hasProperty(path))
+					this.setters[slot].set(toPojo, value, context);
+			}
+		}
+	}
+	
 	/**
 	 * <p>Object which visits various levels of the pojo class graph does two things:
 	 * <ol>
@@ -90,6 +166,7 @@ public class Transmog<T>
 	{
 		Setter setterChain;
 		String prefix;	// starts null for root
+		String fieldPrefix;	// same as prefix, but using only the java field names
 		boolean embedded;
 		
 		Set<String> fieldPathsUsed;
@@ -108,10 +185,11 @@ public class Transmog<T>
 		 * Constructs a visitor for an embedded object.
 		 * @param setterChain is the root of the setter chain
 		 */
-		public Visitor(Setter setterChain, String prefix, Set<String> fieldPathsUsed, Set<String> methodPathsUsed)
+		public Visitor(Setter setterChain, String prefix, String fieldPrefix, Set<String> fieldPathsUsed, Set<String> methodPathsUsed)
 		{
 			this.setterChain = setterChain;
 			this.prefix = prefix;
+			this.fieldPrefix = fieldPrefix;
 			this.embedded = true;
 			
 			this.fieldPathsUsed = fieldPathsUsed;
@@ -148,8 +226,8 @@ public class Transmog<T>
 			for (String path: paths)
 			{
 				List<String> collisions = makeCollisions(paths, path);
-				LeafSetter setter = new LeafSetter(conversions, new MethodWrapper(method), collisions);
-				this.addRootSetter(path, setter, true);
+				LeafSetter setter = this.makeLeafSetter(new MethodWrapper(method), collisions);
+				this.addRootSetter(path, path, setter, true);
 			}
 		}
 		
@@ -163,6 +241,7 @@ public class Transmog<T>
 		void visitField(Field field, Collection<String> names)
 		{
 			List<String> paths = this.namesToPaths(names);
+			String fieldPath = TypeUtils.extendPropertyPath(this.fieldPrefix, field.getName());
 
 			if (TypeUtils.isEmbedded(field))
 			{
@@ -174,9 +253,9 @@ public class Transmog<T>
 					{
 						List<String> collisions = makeCollisions(paths, path);
 						EmbeddedMultivalueSetter setter = new EmbeddedArraySetter(field, path, collisions);
-						this.addNullIndexSetter(setter, path, collisions);
+						this.addNullIndexSetter(setter, path, fieldPath, collisions);
 						
-						Visitor visitor = new Visitor(this.setterChain.extend(setter), path, this.fieldPathsUsed, this.methodPathsUsed);
+						Visitor visitor = new Visitor(this.setterChain.extend(setter), path, fieldPath, this.fieldPathsUsed, this.methodPathsUsed);
 						visitor.visitClass(visitType);
 					}
 				}
@@ -188,9 +267,9 @@ public class Transmog<T>
 					{
 						List<String> collisions = makeCollisions(paths, path);
 						EmbeddedMultivalueSetter setter = new EmbeddedCollectionSetter(field, path, collisions);
-						this.addNullIndexSetter(setter, path, collisions);
+						this.addNullIndexSetter(setter, path, fieldPath, collisions);
 						
-						Visitor visitor = new Visitor(this.setterChain.extend(setter), path, this.fieldPathsUsed, this.methodPathsUsed);
+						Visitor visitor = new Visitor(this.setterChain.extend(setter), path, fieldPath, this.fieldPathsUsed, this.methodPathsUsed);
 						visitor.visitClass(visitType);
 					}
 				}
@@ -203,7 +282,7 @@ public class Transmog<T>
 						List<String> collisions = makeCollisions(paths, path);
 						Setter setter = new EmbeddedClassSetter(field, collisions);
 						
-						Visitor visitor = new Visitor(this.setterChain.extend(setter), path, this.fieldPathsUsed, this.methodPathsUsed);
+						Visitor visitor = new Visitor(this.setterChain.extend(setter), path, fieldPath, this.fieldPathsUsed, this.methodPathsUsed);
 						visitor.visitClass(visitType);
 					}
 				}
@@ -213,12 +292,28 @@ public class Transmog<T>
 				for (String path: paths)
 				{
 					List<String> collisions = makeCollisions(paths, path);
-					LeafSetter setter = new LeafSetter(conversions, new FieldWrapper(field), collisions);
-					this.addRootSetter(path, setter, false);
+					LeafSetter setter;
+					if (Accessors.isSupportedPrimitive(field.getType()) && !FieldInfo.of(field).isSerialized())
+						setter = new PrimitiveLeafSetter(conversions, field, collisions);
+					else
+						setter = this.makeLeafSetter(new FieldWrapper(field), collisions);
+					
+					this.addRootSetter(path, fieldPath, setter, false);
 				}
 			}
 		}
 		
+		/**
+		 * Lazy fields get a setter which defers conversion.
+		 */
+		private LeafSetter makeLeafSetter(Wrapper wrapper, List<String> collisions)
+		{
+			if (wrapper.getType() == Lazy.class)
+				return new LazyLeafSetter(conversions, wrapper, collisions);
+			else
+				return new LeafSetter(conversions, wrapper, collisions);
+		}
+		
 		/**
 		 * Translates names to paths based on the current path prefix.
 		 */
@@ -257,19 +352,20 @@ public class Transmog<T>
 		 * Embedded collections need a null index setter to handle the case of an all-null
 		 * collection.
 		 */
-		void addNullIndexSetter(EmbeddedMultivalueSetter setter, String path, Collection<String> collisionPaths)
+		void addNullIndexSetter(EmbeddedMultivalueSetter setter, String path, String fieldPath, Collection<String> collisionPaths)
 		{
 			EmbeddedNullIndexSetter nes = new EmbeddedNullIndexSetter(setter, path, collisionPaths);
-			this.addRootSetter(TypeUtils.getNullIndexPath(path), nes, false);
+			this.addRootSetter(TypeUtils.getNullIndexPath(path), fieldPath, nes, false);
 		}
 		
 		/**
 		 * Takes a final leaf setter, extends the setter chain so far, and 
 		 * Adds a final leaf setter to the setters collection.
 		 * @param fullPath is the whole "blah.blah.blah" path for this property
+		 * @param fieldPath is the "blah.blah.blah" path of java field names that leads to the setter
 		 * @param method is true if this is setting a method, false if setting a field
 		 */
-		void addRootSetter(String fullPath, Setter setter, boolean method)
+		void addRootSetter(String fullPath, String fieldPath, Setter setter, boolean method)
 		{
 			if (method)
 			{
@@ -289,6 +385,7 @@ public class Transmog<T>
 			// Extend and strip off the unnecessary (at runtime) SetterRoot
 			Setter chain = this.setterChain.extend(setter).getNext();
 			rootSetters.put(fullPath, chain);
+			rootFieldPaths.put(fullPath, fieldPath);
 		}
 	}
 	
@@ -303,6 +400,7 @@ public class Transmog<T>
 		
 		// This creates the setters in the rootSetters collection and validates the pojo
 		new Visitor().visitClass(clazz);
+		this.loadPlan = new LoadPlan(this.rootSetters, this.rootFieldPaths, null);
 		
 		// Construction of the savers is relatively straighforward
 		this.rootSaver = new ClassSaver(conversions, clazz);
@@ -317,16 +415,44 @@ public class Transmog<T>
 	 */
 	public void load(Entity fromEntity, T toPojo)
 	{
+		this.load(fromEntity, toPojo, null);
+	}
+	
+	/**
+	 * Loads some or all of the property data in an Entity into a POJO.  Does not affect
+	 * id/parent (ie key) fields; those are assumed to already have been set.
+	 * 
+	 * @param fromEntity is a raw datastore entity
+	 * @param toPojo is your typed entity
+	 * @param profile limits the fields which are loaded; null loads everything
+	 */
+	public void load(Entity fromEntity, T toPojo, LoadProfile profile)
+	{
+		LoadPlan plan = (profile == null) ? this.loadPlan : this.getPlan(profile);
+		
 		LoadContext context = new LoadContext(toPojo, fromEntity);
 		
-		for (Map.Entry<String, Object> property: fromEntity.getProperties().entrySet())
+		plan.load(fromEntity, toPojo, context);
+		
+		context.done();
+	}
+	
+	/**
+	 * @return the plan for a partial load, compiling it if necessary
+	 */
+	LoadPlan getPlan(LoadProfile profile)
+	{
+		LoadPlan plan = this.profilePlans.get(profile);
+		if (plan == null)
 		{
-			Setter setter = this.rootSetters.get(property.getKey());
-			if (setter != null)
-				setter.set(toPojo, property.getValue(), context);
+			plan = new LoadPlan(this.rootSetters, this.rootFieldPaths, profile);
+			
+			// Harmless if two threads race to create the same plan, or to take the last place
+			if (this.profilePlans.size() < MAX_PROFILE_PLANS)
+				this.profilePlans.put(profile, plan);
 		}
 		
-		context.done();
+		return plan;
 	}
 	
 	/**
@@ -1,6 +1,5 @@
 package com.googlecode.objectify.impl;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -22,15 +21,9 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
-import javax.persistence.Embedded;
-import javax.persistence.Id;
-import javax.persistence.Transient;
-
 import com.google.appengine.api.datastore.Entity;
-import com.googlecode.objectify.annotation.AlsoLoad;
+import com.googlecode.objectify.Lazy;
 import com.googlecode.objectify.annotation.Indexed;
-import com.googlecode.objectify.annotation.Parent;
-import com.googlecode.objectify.annotation.Serialized;
 import com.googlecode.objectify.annotation.Unindexed;
 import com.googlecode.objectify.condition.Always;
 
@@ -122,9 +115,9 @@ public class TypeUtils
 	 */
 	public static boolean isSaveable(Field field)
 	{
-		return !field.isAnnotationPresent(Transient.class)
-			&& ((field.getModifiers() & NOT_SAVED_MODIFIERS) == 0)
-			&& !field.isSynthetic();
+		return ((field.getModifiers() & NOT_SAVED_MODIFIERS) == 0)
+			&& !field.isSynthetic()
+			&& !FieldInfo.of(field).isTransient();
 	}
 
 	/**
@@ -304,7 +297,7 @@ public class TypeUtils
 	 */
 	public static boolean isEmbedded(Field field)
 	{
-		return field.isAnnotationPresent(Embedded.class);
+		return FieldInfo.of(field).isEmbedded();
 	}
 	
 	/** Checked exceptions are LAME. */
@@ -381,22 +374,28 @@ public class TypeUtils
 		
 		for (Field field: clazz.getDeclaredFields())
 		{
-			if (TypeUtils.isSaveable(field) &&
-					(embedded || (!field.isAnnotationPresent(Id.class) && !field.isAnnotationPresent(Parent.class))))
+			if (!TypeUtils.isSaveable(field))
+				continue;
+			
+			FieldInfo info = FieldInfo.of(field);
+			if (embedded || (!info.isId() && !info.isParent()))
 			{
-				if (field.isAnnotationPresent(Embedded.class) && field.isAnnotationPresent(Serialized.class))
+				if (info.isEmbedded() && info.isSerialized())
 					throw new IllegalStateException("Cannot have @Embedded and @Serialized on the same field! Check " + field);
 
+				if (info.isEmbedded() && field.getType() == Lazy.class)
+					throw new IllegalStateException("Lazy fields cannot be @Embedded! Check " + field);
+
 				FieldMetadata metadata = new FieldMetadata(field);
 				metadata.names.add(field.getName());
 				
 				// Now any additional names, either @AlsoLoad or the deprecated @OldName
-				AlsoLoad alsoLoad = field.getAnnotation(AlsoLoad.class);
+				String[] alsoLoad = info.getAlsoLoad();
 				if (alsoLoad != null)
-					if (alsoLoad.value() == null || alsoLoad.value().length == 0)
-						throw new IllegalStateException("Illegal value '" + Arrays.toString(alsoLoad.value()) + "' in @AlsoLoad for " + field);
+					if (alsoLoad.length == 0)
+						throw new IllegalStateException("Illegal value '" + Arrays.toString(alsoLoad) + "' in @AlsoLoad for " + field);
 					else
-						for (String value: alsoLoad.value())
+						for (String value: alsoLoad)
 							if (value == null || value.trim().length() == 0)
 								throw new IllegalStateException("Illegal value '" + value + "' in @AlsoLoad for " + field);
 							else
@@ -433,48 +432,40 @@ public class TypeUtils
 		
 		getAlsoLoadMethods(clazz.getSuperclass(), goodMethods);
 		
-		for (Method method: clazz.getDeclaredMethods())
+		for (MethodInfo info: MethodInfo.of(clazz))
 		{
 			// This seems like a good idea
-			if (method.isAnnotationPresent(Embedded.class))
+			if (info.isEmbedded())
 				throw new IllegalStateException("@Embedded is not a legal annotation for methods");
 
+			String[] alsoLoad = info.getAlsoLoad();
+			if (alsoLoad == null)
+				continue;
+			
+			Method method = info.resolve(clazz);
+			
+			// Method must have only one parameter
+			if (info.getParameterCount() != 1)
+				throw new IllegalStateException("@AlsoLoad methods must have a single parameter. Can't use " + method);
+			
+			// Parameter cannot be @Embedded
+			if (info.isParameterEmbedded())
+				throw new IllegalStateException("@Embedded cannot be used on @AlsoLoad methods. The offender is " + method);
+			
+			// It's good, let's add it
+			method.setAccessible(true);
+			
 			MethodMetadata metadata = new MethodMetadata(method);
 			
-			for (Annotation[] paramAnnotations: method.getParameterAnnotations())
+			if (alsoLoad.length == 0)
+				throw new IllegalStateException("@AlsoLoad must have a value on " + method);
+			
+			for (String name: alsoLoad)
 			{
-				for (Annotation ann: paramAnnotations)
-				{
-					if (ann instanceof AlsoLoad)
-					{
-						// Method must have only one parameter
-						if (method.getParameterTypes().length != 1)
-							throw new IllegalStateException("@AlsoLoad methods must have a single parameter. Can't use " + method);
-						
-						// Parameter cannot be @Embedded
-						for (Annotation maybeEmbedded: paramAnnotations)
-							if (maybeEmbedded instanceof Embedded)
-								throw new IllegalStateException("@Embedded cannot be used on @AlsoLoad methods. The offender is " + method);
-						
-						// It's good, let's add it
-						method.setAccessible(true);
-						
-						if (ann instanceof AlsoLoad)
-						{
-							AlsoLoad alsoLoad = (AlsoLoad)ann;
-							if (alsoLoad.value() == null || alsoLoad.value().length == 0)
-								throw new IllegalStateException("@AlsoLoad must have a value on " + method);
-							
-							for (String name: alsoLoad.value())
-							{
-								if (name == null || name.trim().length() == 0)
-									throw new IllegalStateException("Illegal value '" + name + "' in @AlsoLoad for " + method);
-								
-								metadata.names.add(name);
-							}
-						}
-					}
-				}
+				if (name == null || name.trim().length() == 0)
+					throw new IllegalStateException("Illegal value '" + name + "' in @AlsoLoad for " + method);
+				
+				metadata.names.add(name);
 			}
 			
 			goodMethods.add(metadata);
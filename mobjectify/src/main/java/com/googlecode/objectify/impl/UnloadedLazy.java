@@ -0,0 +1,97 @@
+package com.googlecode.objectify.impl;
+
+import com.googlecode.objectify.Lazy;
+
+/**
+ * <p>The Lazy that Objectify puts in a field at load time.  It holds the raw datastore value
+ * until the first get(), then converts it and forgets the raw value.</p>
+ * 
+ * <p>All access is synchronized on this object; savers which want to write back the raw
+ * value should hold the same lock while checking isLoaded() and calling getRaw().</p>
+ */
+public class UnloadedLazy<T> extends Lazy<T>
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Knows how to convert the raw datastore value.
+	 */
+	public interface Hydrator
+	{
+		/**
+		 * @param raw is the datastore value, never null
+		 * @param onPojo is the pojo which holds the Lazy field
+		 */
+		Object hydrate(Object raw, Object onPojo);
+	}
+	
+	/** All of these are cleared once we have loaded */
+	transient Hydrator hydrator;
+	transient Object raw;
+	transient Object onPojo;
+	
+	/** */
+	public UnloadedLazy(Hydrator hydrator, Object raw, Object onPojo)
+	{
+		this.hydrator = hydrator;
+		this.raw = raw;
+		this.onPojo = onPojo;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.Lazy#get()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized T get()
+	{
+		if (this.hydrator != null)
+		{
+			this.value = (T)this.hydrator.hydrate(this.raw, this.onPojo);
+			this.forget();
+		}
+		
+		return this.value;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.Lazy#set(java.lang.Object)
+	 */
+	@Override
+	public synchronized void set(T value)
+	{
+		this.value = value;
+		this.forget();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.Lazy#isLoaded()
+	 */
+	@Override
+	public synchronized boolean isLoaded()
+	{
+		return this.hydrator == null;
+	}
+	
+	/**
+	 * @return the raw datastore value; only meaningful if !isLoaded()
+	 */
+	public synchronized Object getRaw()
+	{
+		return this.raw;
+	}
+	
+	/** */
+	private void forget()
+	{
+		this.hydrator = null;
+		this.raw = null;
+		this.onPojo = null;
+	}
+	
+	/** Serialized form is a plain, loaded Lazy */
+	protected Object writeReplace()
+	{
+		return new Lazy<T>(this.get());
+	}
+}
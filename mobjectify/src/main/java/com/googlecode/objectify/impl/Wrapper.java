@@ -1,5 +1,6 @@
 package com.googlecode.objectify.impl;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 
 /** 
@@ -22,4 +23,7 @@ public interface Wrapper
 	
 	/** @return true if the value should be deserialized from blob */
 	boolean isSerialized();
+	
+	/** @return the annotation on the field (or the parameter of the method), or null if not present */
+	<A extends Annotation> A getAnnotation(Class<A> annotationType);
 }
\ No newline at end of file
@@ -2,8 +2,13 @@ package com.googlecode.objectify.impl.conv;
 
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.KeyInterner;
 import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.serializer.JavaSerializer;
+import com.googlecode.objectify.serializer.Serializer;
 
 
 /** 
@@ -23,6 +28,15 @@ public class Conversions
 	/** This lets us insert in order at the head of the list*/
 	ListIterator<Converter> inserter;
 	
+	/** Bumped whenever the converters change, which invalidates every ConverterCache */
+	final AtomicInteger generation = new AtomicInteger();
+	
+	/** Used for @Serialized fields which don't name their own serializer */
+	volatile Serializer serializer = new JavaSerializer();
+	
+	/** Canonicalizes loaded keys; null means keys are not interned */
+	volatile KeyInterner keyInterner;
+	
 	/**
 	 * Initialize the default set of converters.
 	 */
@@ -32,7 +46,7 @@ public class Conversions
 		this.converters.add(new NumberConverter());
 		this.converters.add(new BooleanConverter());
 		this.converters.add(new EnumConverter());
-		this.converters.add(new KeyConverter());
+		this.converters.add(new KeyConverter(this));
 		this.converters.add(new ArrayConverter(this));
 		this.converters.add(new CollectionConverter(this));
 		this.converters.add(new SqlDateConverter());
@@ -47,6 +61,65 @@ public class Conversions
 	public void add(Converter cvt)
 	{
 		this.inserter.add(cvt);
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * @return true if no converters have been added to the builtin set.  Some fields
+	 *  take shortcuts which are only safe when the builtin conversions apply.
+	 */
+	public boolean isStandard()
+	{
+		return this.generation.get() == 0;
+	}
+
+	/**
+	 * @return the serializer used by @Serialized fields which don't specify one
+	 */
+	public Serializer getSerializer()
+	{
+		return this.serializer;
+	}
+	
+	/**
+	 * Changes the serializer used by @Serialized fields which don't specify one.  Values
+	 * stored with java serialization remain readable after a change.
+	 */
+	public void setSerializer(Serializer serializer)
+	{
+		if (serializer == null)
+			throw new IllegalArgumentException("Serializer cannot be null");
+		
+		this.serializer = serializer;
+	}
+
+	/**
+	 * @return the interner for keys produced by loads and queries, or null if keys are not interned
+	 */
+	public KeyInterner getKeyInterner()
+	{
+		return this.keyInterner;
+	}
+	
+	/**
+	 * Starts (or, with null, stops) canonicalizing the keys produced by loads, puts,
+	 * and queries.  Worthwhile when an application holds many equal keys at once.
+	 */
+	public void setKeyInterner(KeyInterner keyInterner)
+	{
+		this.keyInterner = keyInterner;
+	}
+	
+	/**
+	 * @return the typed key for the raw key, interned if an interner is set.  Null stays null.
+	 */
+	public <T> Key<T> typedKey(com.google.appengine.api.datastore.Key raw)
+	{
+		KeyInterner interner = this.keyInterner;
+		if (interner != null)
+			return interner.intern(raw);
+		else
+			return (raw == null) ? null : new Key<T>(raw);
 	}
 
 	/**
@@ -57,17 +130,54 @@ public class Conversions
 	 * return value defined by the Converter interface.
 	 */
 	public Object forDatastore(Object value, ConverterSaveContext ctx)
+	{
+		return this.forDatastore(value, ctx, null);
+	}
+
+	/**
+	 * Just like forDatastore(Object, ConverterSaveContext) but tries the converter remembered in
+	 * the cache first, and remembers the winner for next time.
+	 * 
+	 * @param cache belongs to the field being saved; can be null
+	 */
+	public Object forDatastore(Object value, ConverterSaveContext ctx, ConverterCache cache)
 	{
 		if (value == null)
 			return null;
 		
+		int gen = this.generation.get();
+		
+		if (cache != null)
+		{
+			ConverterCache.Resolution res = cache.get(value.getClass(), gen);
+			if (res != null)
+			{
+				if (res.converter == null)
+					return value;
+				
+				Object soFar = res.converter.forDatastore(value, ctx);
+				if (soFar != null)
+					return soFar;
+				
+				// Otherwise the converter changed its mind about this particular value; do it the hard way
+			}
+		}
+		
 		for (Converter cvt: this.converters)
 		{
 			Object soFar = cvt.forDatastore(value, ctx);
 			if (soFar != null)
+			{
+				if (cache != null)
+					cache.put(value.getClass(), cvt, gen);
+				
 				return soFar;
+			}
 		}
 		
+		if (cache != null)
+			cache.put(value.getClass(), null, gen);
+		
 		return value;
 	}
 
@@ -81,6 +191,18 @@ public class Conversions
 	 * @throws IllegalArgumentException if we weren't able to find a proper conversion
 	 */
 	public Object forPojo(Object value, Class<?> fieldType, ConverterLoadContext ctx, Object onPojo)
+	{
+		return this.forPojo(value, fieldType, ctx, onPojo, null);
+	}
+	
+	/**
+	 * Just like forPojo(Object, Class, ConverterLoadContext, Object) but tries the converter
+	 * remembered in the cache first, and remembers the winner for next time.
+	 * 
+	 * @param cache belongs to the field being loaded, so fieldType must always be the same for
+	 *  a particular cache; can be null
+	 */
+	public Object forPojo(Object value, Class<?> fieldType, ConverterLoadContext ctx, Object onPojo, ConverterCache cache)
 	{
 		if (value == null)
 			return null;
@@ -88,17 +210,45 @@ public class Conversions
 		if (fieldType == null)
 			return value;
 		
+		int gen = this.generation.get();
+		
+		if (cache != null)
+		{
+			ConverterCache.Resolution res = cache.get(value.getClass(), gen);
+			if (res != null)
+			{
+				if (res.converter == null)
+					return value;
+				
+				Object soFar = res.converter.forPojo(value, fieldType, ctx, onPojo);
+				if (soFar != null)
+					return soFar;
+				
+				// Otherwise the converter changed its mind about this particular value; do it the hard way
+			}
+		}
+		
 		for (Converter cvt: this.converters)
 		{
 			Object soFar = cvt.forPojo(value, fieldType, ctx, onPojo);
 			if (soFar != null)
+			{
+				if (cache != null)
+					cache.put(value.getClass(), cvt, gen);
+				
 				return soFar;
+			}
 		}
 
 		// We need to run the assignable check last because of generic collections
 		// that need to have their contents processed (eg, a List<Enum>).
 		if (fieldType.isAssignableFrom(value.getClass()))
+		{
+			if (cache != null)
+				cache.put(value.getClass(), null, gen);
+			
 			return value;
+		}
 		
 		throw new IllegalArgumentException("Don't know how to convert " + value.getClass() + " to " + fieldType + " for " + ctx.getField());
 	}
@@ -13,6 +13,12 @@ package com.googlecode.objectify.impl.conv;
  * (eg, Enum) and a simple hashmap lookup is inadequate.  The first converter
  * that returns a non-null value "wins".</p>
  * 
+ * <p>Objectify remembers the winner for each field and runtime value class, and
+ * offers later values of that class straight to the winner.  A converter may still
+ * return null for a particular value (the whole chain is then consulted again), but
+ * a converter which declines one value of a class should decline them all for that
+ * field; otherwise values which nobody converted may continue to bypass it.</p>
+ * 
  * <p>THIS API IS EXPERIMENTAL.  It may change significantly in minor point releases.</p>
  */
 public interface Converter
@@ -0,0 +1,61 @@
+package com.googlecode.objectify.impl.conv;
+
+
+/**
+ * <p>Remembers which converter won the last time a value of a particular class passed
+ * through {@code Conversions} for a single field.  Leaf setters and savers each own one,
+ * so in the common case a value goes straight to the right converter instead of being
+ * offered to every converter in the chain.</p>
+ *
+ * <p>Only one value class is remembered; a field which sees values of several classes
+ * (say, an Object field) simply resolves again when the class changes.  Resolutions made
+ * before {@code Conversions.add()} was last called are ignored.</p>
+ *
+ * <p>THIS API IS EXPERIMENTAL.  It may change significantly in minor point releases.</p>
+ */
+public class ConverterCache
+{
+	/**
+	 * Immutable, so it can be published to other threads without synchronization.
+	 */
+	static class Resolution
+	{
+		/** The runtime class of the value that was converted */
+		final Class<?> valueClass;
+
+		/** The converter that won, or null if the value passed through untouched */
+		final Converter converter;
+
+		/** The Conversions generation at the time this was resolved */
+		final int generation;
+
+		/** */
+		Resolution(Class<?> valueClass, Converter converter, int generation)
+		{
+			this.valueClass = valueClass;
+			this.converter = converter;
+			this.generation = generation;
+		}
+	}
+
+	/** The last resolution, possibly null */
+	Resolution resolution;
+
+	/**
+	 * @return the resolution for the value class, or null if we don't know (or it is stale)
+	 */
+	Resolution get(Class<?> valueClass, int generation)
+	{
+		Resolution res = this.resolution;
+		if (res != null && res.valueClass == valueClass && res.generation == generation)
+			return res;
+		else
+			return null;
+	}
+
+	/** */
+	void put(Class<?> valueClass, Converter converter, int generation)
+	{
+		this.resolution = new Resolution(valueClass, converter, generation);
+	}
+}
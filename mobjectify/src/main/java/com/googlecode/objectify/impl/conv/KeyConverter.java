@@ -8,6 +8,20 @@ import com.googlecode.objectify.Key;
  */
 public class KeyConverter implements Converter
 {
+	/** Typed keys are made here, so they can be interned; null makes plain keys */
+	Conversions conversions;
+	
+	/** Makes plain, uninterned keys */
+	public KeyConverter()
+	{
+	}
+	
+	/** */
+	public KeyConverter(Conversions conversions)
+	{
+		this.conversions = conversions;
+	}
+	
 	@Override
 	public Object forDatastore(Object value, ConverterSaveContext ctx)
 	{
@@ -21,7 +35,10 @@ public class KeyConverter implements Converter
 	public Object forPojo(Object value, Class<?> fieldType, ConverterLoadContext ctx, Object onPojo)
 	{
 		if (Key.class.isAssignableFrom(fieldType) && value instanceof com.google.appengine.api.datastore.Key)
-			return new Key<Object>((com.google.appengine.api.datastore.Key)value);
+		{
+			com.google.appengine.api.datastore.Key raw = (com.google.appengine.api.datastore.Key)value;
+			return (this.conversions == null) ? new Key<Object>(raw) : this.conversions.typedKey(raw);
+		}
 		else
 			return null;
 	}
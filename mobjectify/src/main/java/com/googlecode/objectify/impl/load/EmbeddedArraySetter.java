@@ -1,13 +1,12 @@
 package com.googlecode.objectify.impl.load;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collection;
 
-import com.googlecode.objectify.impl.TypeUtils;
+import com.googlecode.objectify.impl.Instantiator;
 
 /**
  * <p>This setter handles an embedded array by constructing the array and all the objects
@@ -18,7 +17,7 @@ import com.googlecode.objectify.impl.TypeUtils;
 public class EmbeddedArraySetter extends EmbeddedMultivalueSetter
 {
 	Class<?> componentType;
-	Constructor<?> componentTypeCtor;
+	Instantiator<?> componentTypeInstantiator;
 	
 	/**
 	 * The lame Arrays.asList() wrapper doesn't support the clear() operation, and
@@ -63,16 +62,16 @@ public class EmbeddedArraySetter extends EmbeddedMultivalueSetter
 		assert field.getType().isArray();
 		
 		this.componentType = this.field.getType().getComponentType();
-		this.componentTypeCtor = TypeUtils.getNoArgConstructor(this.componentType);
+		this.componentTypeInstantiator = Instantiator.forClass(this.componentType);
 	}
 	
 	/* (non-Javadoc)
-	 * @see com.googlecode.objectify.impl.load.EmbeddedMultivalueSetter#getComponentConstructor()
+	 * @see com.googlecode.objectify.impl.load.EmbeddedMultivalueSetter#getComponentInstantiator()
 	 */
 	@Override
-	protected Constructor<?> getComponentConstructor()
+	protected Instantiator<?> getComponentInstantiator()
 	{
-		return this.componentTypeCtor;
+		return this.componentTypeInstantiator;
 	}
 
 	/* (non-Javadoc)
@@ -1,11 +1,12 @@
 package com.googlecode.objectify.impl.load;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.Collection;
 
+import com.googlecode.objectify.impl.Accessor;
+import com.googlecode.objectify.impl.Accessors;
+import com.googlecode.objectify.impl.Instantiator;
 import com.googlecode.objectify.impl.LoadContext;
-import com.googlecode.objectify.impl.TypeUtils;
 
 /**
  * <p>Setter which knows how to get or instantiate an embedded class, then
@@ -15,7 +16,8 @@ public class EmbeddedClassSetter extends CollisionDetectingSetter
 {
 	/** The field which holds the embedded class */
 	Field field;
-	Constructor<?> ctor;
+	Accessor accessor;
+	Instantiator<?> instantiator;
 
 	/** */
 	public EmbeddedClassSetter(Field field, Collection<String> collisionPaths)
@@ -23,7 +25,8 @@ public class EmbeddedClassSetter extends CollisionDetectingSetter
 		super(collisionPaths);
 		
 		this.field = field;
-		this.ctor = TypeUtils.getNoArgConstructor(field.getType());
+		this.accessor = Accessors.forField(field);
+		this.instantiator = Instantiator.forClass(field.getType());
 	}
 	
 	/* (non-Javadoc)
@@ -32,11 +35,11 @@ public class EmbeddedClassSetter extends CollisionDetectingSetter
 	@Override
 	protected void safeSet(Object obj, Object value, LoadContext context)
 	{
-		Object embedded = TypeUtils.field_get(this.field, obj);
+		Object embedded = this.accessor.get(obj);
 		if (embedded == null)
 		{
-			embedded = TypeUtils.newInstance(ctor);
-			TypeUtils.field_set(this.field, obj, embedded);
+			embedded = this.instantiator.newInstance();
+			this.accessor.set(obj, embedded);
 		}
 		
 		this.next.set(embedded, value, context);
@@ -1,9 +1,9 @@
 package com.googlecode.objectify.impl.load;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.Collection;
 
+import com.googlecode.objectify.impl.Instantiator;
 import com.googlecode.objectify.impl.TypeUtils;
 
 /**
@@ -16,7 +16,7 @@ public class EmbeddedCollectionSetter extends EmbeddedMultivalueSetter
 {
 	/**
 	 */
-	Constructor<?> componentTypeCtor;
+	Instantiator<?> componentTypeInstantiator;
 
 	/** */
 	public EmbeddedCollectionSetter(Field field, String path, Collection<String> collsionPaths)
@@ -30,16 +30,16 @@ public class EmbeddedCollectionSetter extends EmbeddedMultivalueSetter
 		if (componentType == null)
 			throw new RuntimeException("Collections must be generic. Can't process " + this.field.getType().getName() + " at " + path);
 		
-		this.componentTypeCtor = TypeUtils.getNoArgConstructor(componentType);
+		this.componentTypeInstantiator = Instantiator.forClass(componentType);
 	}
 
 	/* (non-Javadoc)
-	 * @see com.googlecode.objectify.impl.load.EmbeddedMultivalueSetter#getComponentTypeConstructor()
+	 * @see com.googlecode.objectify.impl.load.EmbeddedMultivalueSetter#getComponentInstantiator()
 	 */
 	@Override
-	protected Constructor<?> getComponentConstructor()
+	protected Instantiator<?> getComponentInstantiator()
 	{
-		return this.componentTypeCtor;
+		return this.componentTypeInstantiator;
 	}
 
 	/* (non-Javadoc)
@@ -1,6 +1,5 @@
 package com.googlecode.objectify.impl.load;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -8,6 +7,7 @@ import java.util.Iterator;
 import java.util.Set;
 
 import com.googlecode.objectify.impl.FieldWrapper;
+import com.googlecode.objectify.impl.Instantiator;
 import com.googlecode.objectify.impl.LoadContext;
 import com.googlecode.objectify.impl.TypeUtils;
 
@@ -40,8 +40,8 @@ abstract public class EmbeddedMultivalueSetter extends CollisionDetectingSetter
 		this.path = path;
 	}
 	
-	/** @return the no-arg constructor of the embedded type */
-	protected abstract Constructor<?> getComponentConstructor();
+	/** @return what makes new instances of the embedded type */
+	protected abstract Instantiator<?> getComponentInstantiator();
 	
 	/**
 	 * Gets the collection in the relevant field of the specified POJO, or creates (and
@@ -93,7 +93,7 @@ abstract public class EmbeddedMultivalueSetter extends CollisionDetectingSetter
 				}
 				else
 				{
-					Object embedded = TypeUtils.newInstance(this.getComponentConstructor());
+					Object embedded = this.getComponentInstantiator().newInstance();
 					pending.add(embedded);
 				}
 			}
@@ -0,0 +1,50 @@
+package com.googlecode.objectify.impl.load;
+
+import java.util.Collection;
+
+import com.googlecode.objectify.Lazy;
+import com.googlecode.objectify.impl.LazyContentWrapper;
+import com.googlecode.objectify.impl.LoadContext;
+import com.googlecode.objectify.impl.UnloadedLazy;
+import com.googlecode.objectify.impl.Wrapper;
+import com.googlecode.objectify.impl.conv.Conversions;
+
+/**
+ * <p>Leaf setter for {@code Lazy<T>} fields.  Instead of converting the datastore value,
+ * it puts an UnloadedLazy holding the raw value in the field; conversion happens (using
+ * the normal LeafSetter logic for a field of type T) when the Lazy is first read.</p>
+ */
+public class LazyLeafSetter extends LeafSetter implements UnloadedLazy.Hydrator
+{
+	/** The actual Lazy field or method */
+	Wrapper lazyField;
+	
+	/** */
+	public LazyLeafSetter(Conversions conv, Wrapper lazyField, Collection<String> collisionPaths)
+	{
+		super(conv, new LazyContentWrapper(lazyField), collisionPaths);
+		
+		this.lazyField = lazyField;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.load.LeafSetter#safeSet(java.lang.Object, java.lang.Object, com.googlecode.objectify.impl.LoadContext)
+	 */
+	@Override
+	protected void safeSet(Object obj, Object value, LoadContext context)
+	{
+		if (value == null)
+			this.lazyField.set(obj, new Lazy<Object>());
+		else
+			this.lazyField.set(obj, new UnloadedLazy<Object>(this, value, obj));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.UnloadedLazy.Hydrator#hydrate(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public Object hydrate(Object raw, Object onPojo)
+	{
+		return this.importBasic(raw, this.field.getType(), onPojo);
+	}
+}
@@ -1,15 +1,15 @@
 package com.googlecode.objectify.impl.load;
 
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.Collection;
 
 import com.google.appengine.api.datastore.Blob;
+import com.googlecode.objectify.annotation.Serialized;
+import com.googlecode.objectify.impl.BlobCodec;
 import com.googlecode.objectify.impl.LoadContext;
 import com.googlecode.objectify.impl.Wrapper;
 import com.googlecode.objectify.impl.conv.Conversions;
+import com.googlecode.objectify.impl.conv.ConverterCache;
 import com.googlecode.objectify.impl.conv.ConverterLoadContext;
 
 /**
@@ -26,8 +26,11 @@ public class LeafSetter extends CollisionDetectingSetter implements ConverterLoa
 	/** The field or method we set */
 	Wrapper field;
 	
-	/** If true, we expect a Blob and need to de-serialize it */
-	boolean serialized;
+	/** If non-null, we expect a Blob and need to de-serialize it */
+	BlobCodec serialized;
+	
+	/** Remembers which converter handles our values */
+	ConverterCache converterCache = new ConverterCache();
 	
 	/** */
 	public LeafSetter(Conversions conv, Wrapper field, Collection<String> collisionPaths)
@@ -36,7 +39,8 @@ public class LeafSetter extends CollisionDetectingSetter implements ConverterLoa
 		
 		this.conversions = conv;
 		this.field = field;
-		this.serialized = field.isSerialized();
+		if (field.isSerialized())
+			this.serialized = new BlobCodec(conv, field.getAnnotation(Serialized.class), field);
 	}
 	
 	/* (non-Javadoc)
@@ -60,25 +64,17 @@ public class LeafSetter extends CollisionDetectingSetter implements ConverterLoa
 	Object importBasic(Object fromValue, Class<?> toType, Object onPojo)
 	{
 		// For now, special case serialization
-		if (this.serialized && fromValue != null)
+		if (this.serialized != null && fromValue != null)
 		{
 			// Above all others, if we're serialized, take the Blob and deserialize it.
 			if (!(fromValue instanceof Blob))
 				throw new IllegalStateException("Tried to deserialize non-Blob " + fromValue + " for field " + this.field);
 			
-			try
-			{
-				ByteArrayInputStream bais = new ByteArrayInputStream(((Blob)fromValue).getBytes());
-				ObjectInputStream ois = new ObjectInputStream(bais);
-				
-				return ois.readObject();
-			}
-			catch (IOException ex) { throw new RuntimeException(ex); }
-			catch (ClassNotFoundException ex) { throw new IllegalStateException("Unable to deserialize " + fromValue + " on field " + this.field + ": " + ex); }
+			return this.serialized.decode((Blob)fromValue);
 		}
 		else
 		{
-			return this.conversions.forPojo(fromValue, toType, this, onPojo);
+			return this.conversions.forPojo(fromValue, toType, this, onPojo, this.converterCache);
 		}
 	}
 
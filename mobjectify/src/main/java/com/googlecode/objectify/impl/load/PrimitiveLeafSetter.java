@@ -0,0 +1,65 @@
+package com.googlecode.objectify.impl.load;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+
+import com.googlecode.objectify.impl.Accessors;
+import com.googlecode.objectify.impl.FieldWrapper;
+import com.googlecode.objectify.impl.LoadContext;
+import com.googlecode.objectify.impl.PrimitiveAccessor;
+import com.googlecode.objectify.impl.conv.Conversions;
+
+/**
+ * <p>LeafSetter for fields of primitive numeric or boolean type.  Numbers come out of the
+ * datastore as Long or Double; rather than converting them to the boxed field type and
+ * unboxing again, we narrow the primitive value straight into the field.</p>
+ *
+ * <p>Anything unusual (a value which isn't a number or boolean, a null, or custom converters
+ * registered with the factory) goes through the normal LeafSetter logic.</p>
+ */
+public class PrimitiveLeafSetter extends LeafSetter
+{
+	/** */
+	PrimitiveAccessor primitive;
+
+	/**
+	 * @param field must be a primitive type accepted by {@code Accessors.isSupportedPrimitive()}
+	 */
+	public PrimitiveLeafSetter(Conversions conv, Field field, Collection<String> collisionPaths)
+	{
+		super(conv, new FieldWrapper(field), collisionPaths);
+
+		this.primitive = Accessors.forPrimitiveField(field);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.load.LeafSetter#safeSet(java.lang.Object, java.lang.Object, com.googlecode.objectify.impl.LoadContext)
+	 */
+	@Override
+	protected void safeSet(Object obj, Object value, LoadContext context)
+	{
+		if (this.conversions.isStandard())
+		{
+			if (value instanceof Number)
+			{
+				if (this.primitive.isIntegral())
+				{
+					this.primitive.setLong(obj, ((Number)value).longValue());
+					return;
+				}
+				else if (this.primitive.isFloatingPoint())
+				{
+					this.primitive.setDouble(obj, ((Number)value).doubleValue());
+					return;
+				}
+			}
+			else if (value instanceof Boolean && !this.primitive.isIntegral() && !this.primitive.isFloatingPoint())
+			{
+				this.primitive.setBoolean(obj, (Boolean)value);
+				return;
+			}
+		}
+
+		super.safeSet(obj, value, context);
+	}
+}
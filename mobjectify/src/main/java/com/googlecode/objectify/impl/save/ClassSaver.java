@@ -6,6 +6,8 @@ import java.util.Collection;
 import java.util.List;
 
 import com.google.appengine.api.datastore.Entity;
+import com.googlecode.objectify.impl.Accessors;
+import com.googlecode.objectify.impl.FieldInfo;
 import com.googlecode.objectify.impl.TypeUtils;
 import com.googlecode.objectify.impl.TypeUtils.FieldMetadata;
 import com.googlecode.objectify.impl.conv.Conversions;
@@ -67,8 +69,13 @@ public class ClassSaver implements Saver
 			}
 			else	// not embedded, so we're at a leaf object (including arrays and collections of basic types)
 			{
-				// Add a leaf saver
-				Saver saver = new LeafFieldSaver(conv, pathPrefix, clazz, field, ignoreClassIndexing, collectionize);
+				// Add a leaf saver; primitives get one which avoids boxing
+				Saver saver;
+				if (Accessors.isSupportedPrimitive(field.getType()) && !FieldInfo.of(field).isSerialized())
+					saver = new PrimitiveLeafFieldSaver(conv, pathPrefix, clazz, field, ignoreClassIndexing, collectionize);
+				else
+					saver = new LeafFieldSaver(conv, pathPrefix, clazz, field, ignoreClassIndexing, collectionize);
+				
 				this.fieldSavers.add(saver);
 			}
 		}
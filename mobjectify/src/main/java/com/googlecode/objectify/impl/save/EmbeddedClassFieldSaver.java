@@ -3,8 +3,7 @@ package com.googlecode.objectify.impl.save;
 import java.lang.reflect.Field;
 
 import com.google.appengine.api.datastore.Entity;
-import com.googlecode.objectify.annotation.Indexed;
-import com.googlecode.objectify.annotation.Unindexed;
+import com.googlecode.objectify.impl.FieldInfo;
 import com.googlecode.objectify.impl.conv.Conversions;
 
 /**
@@ -24,8 +23,8 @@ public class EmbeddedClassFieldSaver extends FieldSaver
 	{
 		super(pathPrefix, examinedClass, field, ignoreClassIndexing, collectionize);
 		
-		boolean ignoreClassIndexingAnnotations =
-			this.field.isAnnotationPresent(Indexed.class) || this.field.isAnnotationPresent(Unindexed.class);
+		FieldInfo info = FieldInfo.of(this.field);
+		boolean ignoreClassIndexingAnnotations = info.getIndexed() != null || info.getUnindexed() != null;
 		
 		// Must pass the indexed from our member field, not from the inherited value
 		this.classSaver = new ClassSaver(conv, this.path, field.getType(), ignoreClassIndexingAnnotations, collectionize, true);
@@ -6,8 +6,7 @@ import java.util.Collection;
 import java.util.List;
 
 import com.google.appengine.api.datastore.Entity;
-import com.googlecode.objectify.annotation.Indexed;
-import com.googlecode.objectify.annotation.Unindexed;
+import com.googlecode.objectify.impl.FieldInfo;
 import com.googlecode.objectify.impl.TypeUtils;
 import com.googlecode.objectify.impl.conv.Conversions;
 
@@ -35,8 +34,8 @@ abstract public class EmbeddedMultivalueFieldSaver extends FieldSaver
 		if (collectionize)
 			throw new IllegalStateException("You cannot nest multiple @Embedded arrays or collections. A second was found at " + field);
 		
-		boolean ignoreClassIndexingAnnotations =
-			this.field.isAnnotationPresent(Indexed.class) || this.field.isAnnotationPresent(Unindexed.class);
+		FieldInfo info = FieldInfo.of(this.field);
+		boolean ignoreClassIndexingAnnotations = info.getIndexed() != null || info.getUnindexed() != null;
 		
 		// Now we collectionize everything on down
 		// We use our indexed state to define everything below us
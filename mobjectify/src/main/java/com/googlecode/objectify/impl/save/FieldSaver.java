@@ -5,11 +5,11 @@ import java.lang.reflect.Field;
 import java.util.List;
 
 import com.google.appengine.api.datastore.Entity;
-import com.googlecode.objectify.annotation.Indexed;
-import com.googlecode.objectify.annotation.NotSaved;
-import com.googlecode.objectify.annotation.Unindexed;
 import com.googlecode.objectify.condition.Always;
 import com.googlecode.objectify.condition.If;
+import com.googlecode.objectify.impl.Accessor;
+import com.googlecode.objectify.impl.Accessors;
+import com.googlecode.objectify.impl.FieldInfo;
 import com.googlecode.objectify.impl.TypeUtils;
 
 /**
@@ -20,6 +20,7 @@ abstract public class FieldSaver implements Saver
 {
 	String path;
 	Field field;
+	Accessor accessor;
 
 	/** 
 	 * If this is non-null, it means we have a class-provided default value that should override the current save mode.
@@ -42,6 +43,7 @@ abstract public class FieldSaver implements Saver
 	public FieldSaver(String pathPrefix, Class<?> examinedClass, Field field, boolean ignoreClassIndexing, boolean collectionize)
 	{
 		this.field = field;
+		this.accessor = Accessors.forField(field);
 		this.path = TypeUtils.extendPropertyPath(pathPrefix, field.getName());
 		
 		// This might be null if there is no explicit default
@@ -49,49 +51,59 @@ abstract public class FieldSaver implements Saver
 			this.defaultIndexed = TypeUtils.isClassIndexed(field.getDeclaringClass());
 
 		// Check @Indexed and @Unindexed conditions
-		Indexed indexedAnn = field.getAnnotation(Indexed.class);
-		Unindexed unindexedAnn = field.getAnnotation(Unindexed.class);
+		FieldInfo info = FieldInfo.of(field);
 
-		if (indexedAnn != null && unindexedAnn != null)
+		if (info.getIndexed() != null && info.getUnindexed() != null)
 			throw new IllegalStateException("Cannot have @Indexed and @Unindexed on the same field: " + field);
 		
-		if (indexedAnn != null)
-			this.indexConditions = this.generateIfConditions(indexedAnn.value(), examinedClass);
+		if (info.getIndexed() != null)
+			this.indexConditions = this.generateIfConditions(info.getIndexed(), examinedClass);
 		
-		if (unindexedAnn != null)
-			this.unindexConditions = this.generateIfConditions(unindexedAnn.value(), examinedClass);
+		if (info.getUnindexed() != null)
+			this.unindexConditions = this.generateIfConditions(info.getUnindexed(), examinedClass);
 		
 		// Now watch out for @NotSaved conditions
-		NotSaved notSaved = field.getAnnotation(NotSaved.class);
+		FieldInfo.Condition[] notSaved = info.getNotSaved();
 		if (notSaved != null)
 		{
-			if (collectionize && (notSaved.value().length != 1 || notSaved.value()[0] != Always.class))
+			if (collectionize && (notSaved.length != 1 || notSaved[0].getType() != Always.class))
 				throw new IllegalStateException("You cannot use @NotSaved with a condition within @Embedded collections; check the field " + this.field);
 			
-			this.notSavedConditions = this.generateIfConditions(notSaved.value(), examinedClass);
+			this.notSavedConditions = this.generateIfConditions(notSaved, examinedClass);
 		}
 	}
 	
 	/** */
-	private If<?, ?>[] generateIfConditions(Class<? extends If<?, ?>>[] ifClasses, Class<?> examinedClass)
+	private If<?, ?>[] generateIfConditions(FieldInfo.Condition[] conditions, Class<?> examinedClass)
 	{
-		If<?, ?>[] result = new If<?, ?>[ifClasses.length];
+		If<?, ?>[] result = new If<?, ?>[conditions.length];
 		
-		for (int i=0; i<ifClasses.length; i++)
+		for (int i=0; i<conditions.length; i++)
 		{
-			Class<? extends If<?, ?>> ifClass = ifClasses[i];
-			result[i] = this.createIf(ifClass, examinedClass);
+			Class<? extends If<?, ?>> ifClass = conditions[i].getType();
+			
+			// Companions know how to construct the If and what its type arguments are
+			result[i] = conditions[i].create(examinedClass, this.field);
+			if (result[i] == null)
+				result[i] = this.createIf(ifClass, examinedClass);
+
+			Class<?> valueType = conditions[i].getValueType();
+			Class<?> pojoType = conditions[i].getPojoType();
+			if (valueType == null || pojoType == null)
+			{
+				List<Class<?>> typeArguments = TypeUtils.getTypeArguments(If.class, ifClass);
+				valueType = typeArguments.get(0);
+				pojoType = typeArguments.get(1);
+			}
 
 			// Sanity check the generic If class types to ensure that they matches the actual types of the field & entity.
-			List<Class<?>> typeArguments = TypeUtils.getTypeArguments(If.class, ifClass);
-			
-			if (!TypeUtils.isAssignableFrom(typeArguments.get(0), field.getType()))
+			if (!TypeUtils.isAssignableFrom(valueType, field.getType()))
 				throw new IllegalStateException("Cannot use If class " + ifClass.getName() + " on " + field
-						+ " because you cannot assign " + field.getType().getName() + " to " + typeArguments.get(0).getName());
+						+ " because you cannot assign " + field.getType().getName() + " to " + valueType.getName());
 			
-			if (!TypeUtils.isAssignableFrom(typeArguments.get(1), examinedClass))
+			if (!TypeUtils.isAssignableFrom(pojoType, examinedClass))
 				throw new IllegalStateException("Cannot use If class " + ifClass.getName() + " on " + field
-						+ " because the containing class " + examinedClass.getName() + " is not compatible with " + typeArguments.get(1).getName());
+						+ " because the containing class " + examinedClass.getName() + " is not compatible with " + pojoType.getName());
 		}
 		
 		return result;
@@ -124,13 +136,13 @@ abstract public class FieldSaver implements Saver
 	 */
 	@Override
 	@SuppressWarnings("unchecked")
-	final public void save(Object pojo, Entity entity, boolean index)
+	public void save(Object pojo, Entity entity, boolean index)
 	{
 		// First thing, if we have an explicit class-level default, use it
 		if (this.defaultIndexed != null)
 			index = this.defaultIndexed;
 		
-		Object value = TypeUtils.field_get(this.field, pojo);
+		Object value = this.accessor.get(pojo);
 		
 		if (this.notSavedConditions != null)
 		{
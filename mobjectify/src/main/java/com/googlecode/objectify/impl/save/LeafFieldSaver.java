@@ -1,17 +1,19 @@
 package com.googlecode.objectify.impl.save;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 
-import com.google.appengine.api.datastore.Blob;
 import com.google.appengine.api.datastore.Entity;
+import com.googlecode.objectify.Lazy;
 import com.googlecode.objectify.annotation.Serialized;
+import com.googlecode.objectify.impl.BlobCodec;
+import com.googlecode.objectify.impl.FieldInfo;
+import com.googlecode.objectify.impl.LazyContentWrapper;
 import com.googlecode.objectify.impl.TypeUtils;
+import com.googlecode.objectify.impl.UnloadedLazy;
 import com.googlecode.objectify.impl.conv.Conversions;
+import com.googlecode.objectify.impl.conv.ConverterCache;
 import com.googlecode.objectify.impl.conv.ConverterSaveContext;
 
 /**
@@ -27,12 +29,18 @@ public class LeafFieldSaver extends FieldSaver implements ConverterSaveContext
 	/** If true, we add values to a collection inside the entity */
 	boolean collectionize;
 	
-	/** If true, we serialize the value into a Blob */
-	boolean serialize;
+	/** If non-null, we serialize the value into a Blob */
+	BlobCodec serialize;
 	
 	/** If true, null values are not saved. Leaf collection types are treated this way. */
 	boolean ignoreIfNull;
 	
+	/** If true, the field is a Lazy and we save its contents */
+	boolean lazy;
+	
+	/** Remembers which converter handles our values */
+	ConverterCache converterCache = new ConverterCache();
+	
 	/**
 	 * @param field must be a noncollection, nonarray type if collectionize is true
 	 * @param ignoreClassIndexing see the FieldSaver javadocs
@@ -46,14 +54,19 @@ public class LeafFieldSaver extends FieldSaver implements ConverterSaveContext
 		
 		this.conversions = conv;
 		this.collectionize = collectionize;
-		this.serialize = field.isAnnotationPresent(Serialized.class);
+		this.lazy = (field.getType() == Lazy.class);
+		
+		// For the checks below, a lazy field behaves like its contents
+		Class<?> valueType = this.lazy ? LazyContentWrapper.getRawType(LazyContentWrapper.getContentType(field.getGenericType())) : field.getType();
+		if (FieldInfo.of(field).isSerialized())
+			this.serialize = new BlobCodec(conv, field.getAnnotation(Serialized.class), field);
 		
 		if (this.collectionize)
-			if (!this.serialize && TypeUtils.isArrayOrCollection(field.getType()))
+			if (this.serialize == null && TypeUtils.isArrayOrCollection(valueType))
 				throw new IllegalStateException("Cannot place array or collection properties inside @Embedded arrays or collections. The offending field is " + field);
 		
 		// Don't save null arrays or collections
-		if (!this.serialize && TypeUtils.isArrayOrCollection(field.getType()))
+		if (this.serialize == null && TypeUtils.isArrayOrCollection(valueType))
 			this.ignoreIfNull = true;
 	}
 	
@@ -106,24 +119,30 @@ public class LeafFieldSaver extends FieldSaver implements ConverterSaveContext
 	 */
 	protected Object prepareForSave(Object value)
 	{
-		// For now, special case serialization
-		if (this.serialize && value != null)
+		if (this.lazy && value != null)
 		{
-			// If it's @Serialized, we serialize it no matter what it looks like
-			try
+			Lazy<?> lazyValue = (Lazy<?>)value;
+			
+			// If nobody looked at it, the raw value can go right back into the datastore
+			synchronized (lazyValue)
 			{
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				ObjectOutputStream oos = new ObjectOutputStream(baos);
-				oos.writeObject(value);
-				
-				return new Blob(baos.toByteArray());
+				if (!lazyValue.isLoaded())
+					return ((UnloadedLazy<?>)lazyValue).getRaw();
 			}
-			catch (IOException ex) { throw new RuntimeException(ex); }
+			
+			value = lazyValue.get();
+		}
+		
+		// For now, special case serialization
+		if (this.serialize != null && value != null)
+		{
+			// If it's @Serialized, we serialize it no matter what it looks like
+			return this.serialize.encode(value);
 		}
 		else
 		{
 			// Run it through the conversions.
-			return this.conversions.forDatastore(value, this);
+			return this.conversions.forDatastore(value, this, this.converterCache);
 		}
 	}
 
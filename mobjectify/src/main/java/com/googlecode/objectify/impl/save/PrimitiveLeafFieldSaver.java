@@ -0,0 +1,66 @@
+package com.googlecode.objectify.impl.save;
+
+import java.lang.reflect.Field;
+
+import com.google.appengine.api.datastore.Entity;
+import com.googlecode.objectify.impl.Accessors;
+import com.googlecode.objectify.impl.PrimitiveAccessor;
+import com.googlecode.objectify.impl.conv.Conversions;
+
+/**
+ * <p>LeafFieldSaver for fields of primitive numeric or boolean type.  The value is read
+ * without boxing it to the field's wrapper type and stored the way the datastore keeps
+ * it anyway: integral types as Long, floating point types as Double.</p>
+ *
+ * <p>Fields with @Indexed, @Unindexed, or @NotSaved conditions need the boxed value to
+ * evaluate the conditions, as do custom converters; these go through the normal
+ * LeafFieldSaver logic.  So do fields inside embedded collections.</p>
+ */
+public class PrimitiveLeafFieldSaver extends LeafFieldSaver
+{
+	/** */
+	PrimitiveAccessor primitive;
+
+	/** True if we can take the shortcut */
+	boolean simple;
+
+	/**
+	 * @param field must be a primitive type accepted by {@code Accessors.isSupportedPrimitive()}
+	 */
+	public PrimitiveLeafFieldSaver(Conversions conv, String pathPrefix, Class<?> examinedClass, Field field, boolean ignoreClassIndexing, boolean collectionize)
+	{
+		super(conv, pathPrefix, examinedClass, field, ignoreClassIndexing, collectionize);
+
+		this.primitive = Accessors.forPrimitiveField(field);
+		this.simple = !collectionize
+				&& this.indexConditions == null
+				&& this.unindexConditions == null
+				&& this.notSavedConditions == null;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.impl.save.FieldSaver#save(java.lang.Object, com.google.appengine.api.datastore.Entity, boolean)
+	 */
+	@Override
+	public void save(Object pojo, Entity entity, boolean index)
+	{
+		if (!this.simple || !this.conversions.isStandard())
+		{
+			super.save(pojo, entity, index);
+			return;
+		}
+
+		if (this.defaultIndexed != null)
+			index = this.defaultIndexed;
+
+		Object value;
+		if (this.primitive.isIntegral())
+			value = Long.valueOf(this.primitive.getLong(pojo));
+		else if (this.primitive.isFloatingPoint())
+			value = Double.valueOf(this.primitive.getDouble(pojo));
+		else
+			value = Boolean.valueOf(this.primitive.getBoolean(pojo));
+
+		this.setEntityProperty(entity, value, index);
+	}
+}
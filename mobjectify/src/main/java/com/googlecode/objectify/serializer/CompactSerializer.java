@@ -0,0 +1,297 @@
+package com.googlecode.objectify.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.googlecode.objectify.util.VarInts;
+
+/**
+ * <p>A compact tagged binary format for the kinds of values that typically end up in
+ * {@code @Serialized} fields: strings, boxed primitives, dates, byte arrays, and the
+ * common collection and map classes, nested arbitrarily.  Each value costs a one-byte tag
+ * plus its data; there are no class descriptors.  Integers and longs are written as
+ * variable-length numbers.</p>
+ *
+ * <p>Anything else (including subclasses of the types above, such as a TreeMap or
+ * java.sql.Date) is written with java serialization inside the stream, so the exact class
+ * always comes back.  Unlike java serialization, shared references within the graph are
+ * not preserved; each occurrence is written (and read back) as a separate copy.</p>
+ */
+public class CompactSerializer implements Serializer
+{
+	/** First byte of every stream.  Must never be 0xAC, the first byte of java serialization. */
+	static final int VERSION = 1;
+
+	/** Tags */
+	static final int NULL = 0;
+	static final int TRUE = 1;
+	static final int FALSE = 2;
+	static final int BYTE = 3;
+	static final int SHORT = 4;
+	static final int INT = 5;
+	static final int LONG = 6;
+	static final int FLOAT = 7;
+	static final int DOUBLE = 8;
+	static final int CHAR = 9;
+	static final int STRING = 10;
+	static final int BYTES = 11;
+	static final int DATE = 12;
+	static final int ARRAY_LIST = 13;
+	static final int LINKED_LIST = 14;
+	static final int HASH_SET = 15;
+	static final int LINKED_HASH_SET = 16;
+	static final int HASH_MAP = 17;
+	static final int LINKED_HASH_MAP = 18;
+	static final int JAVA = 19;
+
+	/** Byte arrays longer than this are read in pieces, so a corrupt length can't allocate a huge array */
+	static final int MAX_EAGER_BYTES = 64 * 1024;
+
+	/** */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.serializer.Serializer#serialize(java.lang.Object, java.io.OutputStream)
+	 */
+	@Override
+	public void serialize(Object value, OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(VERSION);
+		this.write(value, data);
+		data.flush();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.serializer.Serializer#deserialize(java.io.InputStream)
+	 */
+	@Override
+	public Object deserialize(InputStream in) throws IOException, ClassNotFoundException
+	{
+		DataInputStream data = new DataInputStream(in);
+
+		int version = data.read();
+		if (version != VERSION)
+			throw new IOException("Unknown compact serialization version " + version);
+
+		return this.read(data);
+	}
+
+	/** */
+	@SuppressWarnings("rawtypes")
+	void write(Object value, DataOutputStream out) throws IOException
+	{
+		if (value == null)
+		{
+			out.write(NULL);
+			return;
+		}
+
+		Class<?> clazz = value.getClass();
+
+		if (clazz == String.class)
+		{
+			byte[] bytes = ((String)value).getBytes(UTF8);
+			out.write(STRING);
+			VarInts.writeVarLong(bytes.length, out);
+			out.write(bytes);
+		}
+		else if (clazz == Long.class)
+		{
+			out.write(LONG);
+			VarInts.writeVarLong(VarInts.zigzag((Long)value), out);
+		}
+		else if (clazz == Integer.class)
+		{
+			out.write(INT);
+			VarInts.writeVarLong(VarInts.zigzag((Integer)value), out);
+		}
+		else if (clazz == Boolean.class)
+		{
+			out.write((Boolean)value ? TRUE : FALSE);
+		}
+		else if (clazz == Double.class)
+		{
+			out.write(DOUBLE);
+			out.writeDouble((Double)value);
+		}
+		else if (clazz == Float.class)
+		{
+			out.write(FLOAT);
+			out.writeFloat((Float)value);
+		}
+		else if (clazz == Short.class)
+		{
+			out.write(SHORT);
+			out.writeShort((Short)value);
+		}
+		else if (clazz == Byte.class)
+		{
+			out.write(BYTE);
+			out.writeByte((Byte)value);
+		}
+		else if (clazz == Character.class)
+		{
+			out.write(CHAR);
+			out.writeChar((Character)value);
+		}
+		else if (clazz == byte[].class)
+		{
+			byte[] bytes = (byte[])value;
+			out.write(BYTES);
+			VarInts.writeVarLong(bytes.length, out);
+			out.write(bytes);
+		}
+		else if (clazz == Date.class)
+		{
+			out.write(DATE);
+			out.writeLong(((Date)value).getTime());
+		}
+		else if (clazz == ArrayList.class)
+			this.writeCollection(ARRAY_LIST, (Collection)value, out);
+		else if (clazz == LinkedList.class)
+			this.writeCollection(LINKED_LIST, (Collection)value, out);
+		else if (clazz == HashSet.class)
+			this.writeCollection(HASH_SET, (Collection)value, out);
+		else if (clazz == LinkedHashSet.class)
+			this.writeCollection(LINKED_HASH_SET, (Collection)value, out);
+		else if (clazz == HashMap.class)
+			this.writeMap(HASH_MAP, (Map)value, out);
+		else if (clazz == LinkedHashMap.class)
+			this.writeMap(LINKED_HASH_MAP, (Map)value, out);
+		else
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(value);
+			oos.close();
+
+			out.write(JAVA);
+			VarInts.writeVarLong(bytes.size(), out);
+			bytes.writeTo(out);
+		}
+	}
+
+	/** */
+	void writeCollection(int tag, Collection<?> coll, DataOutputStream out) throws IOException
+	{
+		out.write(tag);
+		VarInts.writeVarLong(coll.size(), out);
+		for (Object element: coll)
+			this.write(element, out);
+	}
+
+	/** */
+	void writeMap(int tag, Map<?, ?> map, DataOutputStream out) throws IOException
+	{
+		out.write(tag);
+		VarInts.writeVarLong(map.size(), out);
+		for (Map.Entry<?, ?> entry: map.entrySet())
+		{
+			this.write(entry.getKey(), out);
+			this.write(entry.getValue(), out);
+		}
+	}
+
+	/** */
+	Object read(DataInputStream in) throws IOException, ClassNotFoundException
+	{
+		int tag = in.read();
+		switch (tag)
+		{
+			case NULL: return null;
+			case TRUE: return Boolean.TRUE;
+			case FALSE: return Boolean.FALSE;
+			case BYTE: return in.readByte();
+			case SHORT: return in.readShort();
+			case INT: return (int)VarInts.unzigzag(VarInts.readVarLong(in));
+			case LONG: return VarInts.unzigzag(VarInts.readVarLong(in));
+			case FLOAT: return in.readFloat();
+			case DOUBLE: return in.readDouble();
+			case CHAR: return in.readChar();
+			case STRING: return new String(readBytes(in), UTF8);
+			case BYTES: return readBytes(in);
+			case DATE: return new Date(in.readLong());
+			case ARRAY_LIST: return this.readCollection(new ArrayList<Object>(), in);
+			case LINKED_LIST: return this.readCollection(new LinkedList<Object>(), in);
+			case HASH_SET: return this.readCollection(new HashSet<Object>(), in);
+			case LINKED_HASH_SET: return this.readCollection(new LinkedHashSet<Object>(), in);
+			case HASH_MAP: return this.readMap(new HashMap<Object, Object>(), in);
+			case LINKED_HASH_MAP: return this.readMap(new LinkedHashMap<Object, Object>(), in);
+			case JAVA: return new ObjectInputStream(new ByteArrayInputStream(readBytes(in))).readObject();
+
+			default: throw new IOException("Corrupt compact serialization stream; unknown tag " + tag);
+		}
+	}
+
+	/** */
+	Object readCollection(Collection<Object> coll, DataInputStream in) throws IOException, ClassNotFoundException
+	{
+		long size = VarInts.readVarLong(in);
+		for (long i=0; i<size; i++)
+			coll.add(this.read(in));
+
+		return coll;
+	}
+
+	/** */
+	Object readMap(Map<Object, Object> map, DataInputStream in) throws IOException, ClassNotFoundException
+	{
+		long size = VarInts.readVarLong(in);
+		for (long i=0; i<size; i++)
+		{
+			Object key = this.read(in);
+			map.put(key, this.read(in));
+		}
+
+		return map;
+	}
+
+	/** Reads a length-prefixed byte array */
+	static byte[] readBytes(DataInputStream in) throws IOException
+	{
+		long length = VarInts.readVarLong(in);
+		if (length < 0 || length > Integer.MAX_VALUE)
+			throw new IOException("Corrupt compact serialization stream; bad length " + length);
+
+		if (length <= MAX_EAGER_BYTES)
+		{
+			byte[] bytes = new byte[(int)length];
+			in.readFully(bytes);
+			return bytes;
+		}
+
+		// Only grow as fast as the data actually arrives
+		ByteArrayOutputStream out = new ByteArrayOutputStream(MAX_EAGER_BYTES);
+		byte[] chunk = new byte[MAX_EAGER_BYTES];
+		long remaining = length;
+		while (remaining > 0)
+		{
+			int count = in.read(chunk, 0, (int)Math.min(chunk.length, remaining));
+			if (count < 0)
+				throw new IOException("Unexpected end of compact serialization stream");
+
+			out.write(chunk, 0, count);
+			remaining -= count;
+		}
+
+		return out.toByteArray();
+	}
+}
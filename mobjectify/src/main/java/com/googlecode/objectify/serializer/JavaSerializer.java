@@ -0,0 +1,34 @@
+package com.googlecode.objectify.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>Plain old java serialization.  This is the default, and uncompressed values are
+ * stored exactly the way previous versions of Objectify stored them.</p>
+ */
+public class JavaSerializer implements Serializer
+{
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.serializer.Serializer#serialize(java.lang.Object, java.io.OutputStream)
+	 */
+	@Override
+	public void serialize(Object value, OutputStream out) throws IOException
+	{
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(value);
+		oos.flush();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.googlecode.objectify.serializer.Serializer#deserialize(java.io.InputStream)
+	 */
+	@Override
+	public Object deserialize(InputStream in) throws IOException, ClassNotFoundException
+	{
+		return new ObjectInputStream(in).readObject();
+	}
+}
@@ -0,0 +1,34 @@
+package com.googlecode.objectify.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>Turns the value of a {@code @Serialized} field into bytes and back again.  The
+ * serializer can be chosen per field with {@code @Serialized(SomeSerializer.class)}
+ * or for the whole factory with {@code ObjectifyFactory.getConversions().setSerializer()}.</p>
+ * 
+ * <p>Objectify takes care of buffering, optional compression, and recording which
+ * serializer wrote each value, so implementations only need to deal with the value
+ * itself.  Implementations must be thread-safe.  Data is always read back with the
+ * serializer which wrote it, so implementations must also have a no-arg constructor if
+ * they are named in an annotation or if their data may be read after switching serializers.</p>
+ * 
+ * @see JavaSerializer
+ * @see CompactSerializer
+ */
+public interface Serializer
+{
+	/**
+	 * Write the value to the stream.  Do not close the stream.
+	 * 
+	 * @param value will never be null
+	 */
+	void serialize(Object value, OutputStream out) throws IOException;
+
+	/**
+	 * Read back a value written by serialize().
+	 */
+	Object deserialize(InputStream in) throws IOException, ClassNotFoundException;
+}
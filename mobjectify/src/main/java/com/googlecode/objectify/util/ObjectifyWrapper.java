@@ -10,6 +10,7 @@ import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Transaction;
 import com.googlecode.objectify.AsyncObjectify;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.NotFoundException;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyFactory;
@@ -38,6 +39,12 @@ public class ObjectifyWrapper implements Objectify
 		return this.base.get(keys);
 	}
 	
+	@Override
+	public <T> Map<Key<T>, T> get(LoadProfile profile, Iterable<? extends Key<? extends T>> keys)
+	{
+		return this.base.get(profile, keys);
+	}
+	
 	@Override
 	public <T> T get(Key<? extends T> key) throws NotFoundException
 	{
@@ -67,6 +74,12 @@ public class ObjectifyWrapper implements Objectify
 	{
 		return this.base.get(clazz, idsOrNames);
 	}
+	
+	@Override
+	public <T> LongMap<T> get(Class<? extends T> clazz, long[] ids)
+	{
+		return this.base.get(clazz, ids);
+	}
 
 	@Override
 	public <T> T find(Key<? extends T> key)
@@ -163,4 +176,10 @@ public class ObjectifyWrapper implements Objectify
 	{
 		return this.base.getDatastore();
 	}
+
+	@Override
+	public long getElidedWrites()
+	{
+		return this.base.getElidedWrites();
+	}
 }
\ No newline at end of file
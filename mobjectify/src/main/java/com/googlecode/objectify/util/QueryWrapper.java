@@ -8,6 +8,7 @@ import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.QueryResultIterable;
 import com.google.appengine.api.datastore.QueryResultIterator;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadProfile;
 import com.googlecode.objectify.Query;
 
 /**
@@ -55,6 +56,12 @@ public class QueryWrapper<T> implements Query<T>
 	{
 		return this.base.offset(value);
 	}
+	
+	@Override
+	public Query<T> profile(LoadProfile profile)
+	{
+		return this.base.profile(profile);
+	}
 
 	@Override
 	public Query<T> startCursor(Cursor value)
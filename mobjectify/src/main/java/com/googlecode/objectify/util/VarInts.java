@@ -0,0 +1,56 @@
+package com.googlecode.objectify.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>Variable-length number encoding shared by the compact binary formats
+ * ({@code CompactSerializer} and {@code CacheEntityCodec}).  Numbers are written seven
+ * bits at a time, low bits first, with the high bit set on all but the last byte.
+ * Signed numbers should be zigzagged first so that small negative numbers stay small.</p>
+ */
+public class VarInts
+{
+	/** Moves the sign bit to the bottom so that small negative numbers stay small */
+	public static long zigzag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/** */
+	public static long unzigzag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/** Seven bits at a time, low bits first, high bit set on all but the last byte */
+	public static void writeVarLong(long value, OutputStream out) throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.write((int)value);
+	}
+
+	/** */
+	public static long readVarLong(InputStream in) throws IOException
+	{
+		long value = 0;
+		for (int shift=0; shift<64; shift+=7)
+		{
+			int b = in.read();
+			if (b < 0)
+				throw new IOException("Unexpected end of stream in variable length number");
+
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+
+		throw new IOException("Corrupt stream; variable length number is too long");
+	}
+}
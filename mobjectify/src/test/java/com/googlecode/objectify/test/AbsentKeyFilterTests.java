@@ -0,0 +1,125 @@
+package com.googlecode.objectify.test;
+
+import java.util.Collections;
+
+import javax.persistence.Id;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.annotation.Cached;
+import com.googlecode.objectify.cache.AbsentKeyFilter;
+
+/**
+ * Tests of how negative results are cached
+ */
+public class AbsentKeyFilterTests extends TestBase
+{
+	/** Memcache expirations are coarse; one second can pass before the test looks */
+	@Cached(negativeExpirationSeconds=2)
+	public static class Brief
+	{
+		@Id Long id;
+		String value;
+
+		public Brief() {}
+		public Brief(long id, String value) { this.id = id; this.value = value; }
+	}
+
+	/** */
+	@Cached(negativeExpirationSeconds=0)
+	public static class Never
+	{
+		@Id Long id;
+	}
+
+	/** */
+	private boolean cached(Key<?> key)
+	{
+		return this.memcache().contains(this.fact.getCacheKeyCodec().encode(key.getRaw()));
+	}
+
+	/** */
+	@Test
+	public void testNegativeExpiration() throws Exception
+	{
+		this.fact.register(Brief.class);
+		this.fact.register(Never.class);
+		Objectify ofy = this.fact.begin();
+
+		Key<Brief> brief = new Key<Brief>(Brief.class, 1);
+		Key<Never> never = new Key<Never>(Never.class, 1);
+		assert ofy.find(brief) == null;
+		assert ofy.find(never) == null;
+
+		assert this.cached(brief);
+		assert this.memcache().get(this.fact.getCacheKeyCodec().encode(brief.getRaw())) == null;
+		assert !this.memcache().contains(this.fact.getCacheKeyCodec().encode(never.getRaw()));
+
+		Thread.sleep(2100);
+		assert !this.cached(brief);
+	}
+
+	/** */
+	@Test
+	public void testRepeatedMissesSkipMemcache() throws Exception
+	{
+		AbsentKeyFilter filter = new AbsentKeyFilter(100, 60);
+		this.fact.setAbsentKeyFilter(filter);
+		this.fact.register(Brief.class);
+		this.fact.register(Never.class);
+		Objectify ofy = this.fact.begin();
+
+		Key<Brief> key = new Key<Brief>(Brief.class, 1);
+		assert ofy.find(key) == null;
+		assert ofy.find(new Key<Never>(Never.class, 1)) == null;
+		assert filter.size() == 1;
+
+		// Appears behind the cache's back, so only the filter can be answering
+		Entity ent = new Entity(KeyFactory.createKey("Brief", 1));
+		ent.setProperty("value", "sneaky");
+		DatastoreServiceFactory.getDatastoreService().put(null, ent);
+		this.memcache().clearAll();
+
+		assert ofy.find(key) == null;
+		assert filter.getHitCount() == 1;
+
+		// Writes through the factory are seen right away
+		ofy.put(new Brief(1, "real"));
+		assert ofy.find(key).value.equals("real");
+		assert filter.size() == 0;
+	}
+
+	/** */
+	@Test
+	public void testFilter() throws Exception
+	{
+		AbsentKeyFilter filter = new AbsentKeyFilter(2, 60);
+
+		com.google.appengine.api.datastore.Key parent = KeyFactory.createKey("Parent", "p");
+		com.google.appengine.api.datastore.Key named = KeyFactory.createKey(parent, "Thing", "Aa");
+		filter.addAbsent(named, 60);
+
+		assert filter.isAbsent(named);
+		assert !filter.isAbsent(KeyFactory.createKey(parent, "Thing", "BB"));	// same String.hashCode()
+		assert !filter.isAbsent(KeyFactory.createKey("Thing", "Aa"));
+		assert !filter.isAbsent(KeyFactory.createKey("Other", "Aa"));
+
+		// A generation holds two keys, so by the fourth the first two are gone
+		for (long i=1; i<=4; i++)
+			filter.addAbsent(KeyFactory.createKey("Thing", i), 60);
+
+		assert !filter.isAbsent(named);
+		assert !filter.isAbsent(KeyFactory.createKey("Thing", 1));
+		assert filter.isAbsent(KeyFactory.createKey("Thing", 3));
+		assert filter.isAbsent(KeyFactory.createKey("Thing", 4));
+
+		filter.removeAll(Collections.singleton(KeyFactory.createKey("Thing", 3)));
+		assert !filter.isAbsent(KeyFactory.createKey("Thing", 3));
+		assert filter.size() == 2;
+	}
+}
@@ -0,0 +1,225 @@
+package com.googlecode.objectify.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.Result;
+import com.googlecode.objectify.cache.AsyncMemcache;
+import com.googlecode.objectify.cache.ListenableHook;
+import com.googlecode.objectify.cache.MemcacheServiceAdapter;
+import com.googlecode.objectify.test.entity.Trivial;
+
+/**
+ * Tests of the cache's use of an asynchronous memcache
+ */
+public class AsyncMemcacheTests extends TestBase
+{
+	/** A call which has been made, but which doesn't say so until someone waits for it */
+	static class Deferred<T> extends FutureTask<T>
+	{
+		boolean waited;
+
+		Deferred(Callable<T> call) { super(call); this.run(); }
+
+		@Override
+		public boolean isDone()
+		{
+			return this.waited;
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException
+		{
+			this.waited = true;
+			return super.get();
+		}
+	}
+
+	/** Makes every memcache call right away, but reports them done only once waited for */
+	static class DeferredMemcache implements AsyncMemcache
+	{
+		AsyncMemcache real = new MemcacheServiceAdapter(MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE));
+		List<Deferred<?>> calls = new ArrayList<Deferred<?>>();
+		boolean broken;
+
+		<T> Future<T> defer(final Callable<Future<T>> call)
+		{
+			Deferred<T> deferred = new Deferred<T>(new Callable<T>() {
+				@Override
+				public T call() throws Exception
+				{
+					if (broken)
+						throw new IllegalStateException("memcache is down");
+
+					return call.call().get();
+				}
+			});
+
+			this.calls.add(deferred);
+			return deferred;
+		}
+
+		int waiting()
+		{
+			int count = 0;
+			for (Deferred<?> call: this.calls)
+				if (!call.isDone())
+					count++;
+
+			return count;
+		}
+
+		@Override
+		public Future<Map<String, Object>> getAll(final Collection<String> keys)
+		{
+			return this.defer(new Callable<Future<Map<String, Object>>>() {
+				public Future<Map<String, Object>> call() { return real.getAll(keys); }
+			});
+		}
+
+		@Override
+		public Future<Set<String>> putAll(final Map<String, ?> values, final Expiration expires, final SetPolicy policy)
+		{
+			return this.defer(new Callable<Future<Set<String>>>() {
+				public Future<Set<String>> call() { return real.putAll(values, expires, policy); }
+			});
+		}
+
+		@Override
+		public Future<Map<String, IdentifiableValue>> getIdentifiables(final Collection<String> keys)
+		{
+			return this.defer(new Callable<Future<Map<String, IdentifiableValue>>>() {
+				public Future<Map<String, IdentifiableValue>> call() { return real.getIdentifiables(keys); }
+			});
+		}
+
+		@Override
+		public Future<Set<String>> putIfUntouched(final Map<String, IdentifiableValue> expected, final Map<String, ?> values, final Expiration expires)
+		{
+			return this.defer(new Callable<Future<Set<String>>>() {
+				public Future<Set<String>> call() { return real.putIfUntouched(expected, values, expires); }
+			});
+		}
+
+	}
+
+	/** */
+	DeferredMemcache deferred;
+
+	/** TestNG shares the test instance between methods, so this starts fresh */
+	private ObjectifyFactory deferredFactory(boolean broken)
+	{
+		this.deferred = new DeferredMemcache();
+		this.deferred.broken = broken;
+		return this.memcacheFactory(this.deferred);
+	}
+
+	/** */
+	@Test
+	public void testWritesArePending() throws Exception
+	{
+		ObjectifyFactory factory = this.deferredFactory(false);
+		Objectify ofy = factory.begin();
+
+		ofy.put(new Trivial("foo", 5));
+		assert this.deferred.waiting() == 1;
+
+		ListenableHook.completeAllPendingFutures();
+		assert this.deferred.waiting() == 0;
+	}
+
+	/** */
+	@Test
+	public void testDatastoreWaitsForMemcache() throws Exception
+	{
+		Entity ent = new Entity(KeyFactory.createKey(Trivial.class.getSimpleName(), 1));
+		ent.setProperty("someString", "foo");
+		ent.setProperty("someNumber", 5L);
+		DatastoreServiceFactory.getDatastoreService().put(null, ent);
+
+		Objectify ofy = this.deferredFactory(false).begin();
+		Result<Trivial> result = ofy.async().get(Trivial.class, 1);
+
+		// Only the lookup, which hasn't answered yet
+		assert this.deferred.waiting() == 1;
+		assert this.deferred.calls.size() == 1;
+
+		assert result.get().getSomeString().equals("foo");
+
+		// The lookup missed, so the key was reserved, the entity fetched, and the fill sent
+		assert this.deferred.calls.size() == 4;
+		ListenableHook.completeAllPendingFutures();
+		assert this.deferred.waiting() == 0;
+		assert this.memcache().get(this.fact.getCacheKeyCodec().encode(ent.getKey())) instanceof byte[];
+	}
+
+	/** */
+	@Test
+	public void testAdapterLimitsCompareAndSet() throws Exception
+	{
+		MemcacheService raw = MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE);
+		List<String> keys = Arrays.asList("a", "b", "c");
+		for (String key: keys)
+			raw.put(key, key);
+
+		Map<String, IdentifiableValue> found = new MemcacheServiceAdapter(raw, 2).getIdentifiables(keys).get();
+		assert found.size() == 2;
+		assert found.containsKey("a") && found.containsKey("b");
+	}
+
+	/** Keys past the limit are still read, but aren't filled */
+	@Test
+	public void testMissPastTheLimitIsNotFilled() throws Exception
+	{
+		ObjectifyFactory limited = this.memcacheFactory(new MemcacheServiceAdapter(MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE), 1));
+		Key<Trivial> one = this.fact.begin().put(new Trivial("one", 1));
+		Key<Trivial> two = this.fact.begin().put(new Trivial("two", 2));
+
+		// Rather than wait out the locks
+		this.memcache().clearAll();
+
+		assert limited.begin().get(Arrays.asList(one, two)).size() == 2;
+		int filled = 0;
+		for (Key<Trivial> key: Arrays.asList(one, two))
+			if (this.memcache().get(this.fact.getCacheKeyCodec().encode(key.getRaw())) instanceof byte[])
+				filled++;
+
+		assert filled == 1;
+	}
+
+	/** */
+	@Test
+	public void testMemcacheFailuresAreIgnored() throws Exception
+	{
+		Objectify ofy = this.deferredFactory(true).begin();
+
+		Key<Trivial> key = ofy.put(new Trivial("foo", 5));
+		assert ofy.get(key).getSomeString().equals("foo");
+
+		ofy.delete(key);
+		assert ofy.find(key) == null;
+
+		ListenableHook.completeAllPendingFutures();
+	}
+}
@@ -2,7 +2,10 @@ package com.googlecode.objectify.test;
 
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.ObjectifyOpts;
 import com.googlecode.objectify.test.entity.Trivial;
+import com.googlecode.objectify.util.LongMap;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
@@ -38,6 +41,52 @@ public class BulkGetTests extends TestBase
 
     }
 
+    /** */
+    @Test
+    public void testPrimitiveIds()
+    {
+        Objectify ofy = this.fact.begin();
+
+        Key<Trivial> k1 = ofy.put(new Trivial("foo", 5));
+        Key<Trivial> k2 = ofy.put(new Trivial("bar", 6));
+
+        LongMap<Trivial> map = ofy.get(Trivial.class, new long[] { k1.getId(), 999L, k2.getId() });
+        assert map.size() == 2;
+        assert map.get(k1.getId()).getSomeString().equals("foo");
+        assert map.get(k2.getId()).getSomeString().equals("bar");
+        assert !map.containsKey(999L);
+
+        // TestBase's factory never uses a session cache
+        ObjectifyFactory plain = new ObjectifyFactory();
+        plain.register(Trivial.class);
+
+        Objectify cached = plain.begin(new ObjectifyOpts().setSessionCache(true));
+        Trivial first = cached.get(k1);
+        map = cached.get(Trivial.class, new long[] { k1.getId(), k2.getId() });
+        assert map.size() == 2;
+        assert map.get(k1.getId()) == first;
+    }
+
+    /** */
+    @Test
+    public void testLongMapGrows()
+    {
+        LongMap<String> map = new LongMap<String>(2);
+        for (long i=0; i<1000; i++)
+            assert map.put(i * 1024, "v" + i) == null;
+
+        assert map.size() == 1000;
+        assert map.put(1024, "again").equals("v1");
+        assert map.size() == 1000;
+
+        for (long i=2; i<1000; i++)
+            assert map.get(i * 1024).equals("v" + i);
+
+        assert map.get(1) == null;
+        assert map.keys().length == 1000;
+        assert map.values().size() == 1000;
+    }
+
     private boolean sameList(List<Key<Trivial>> l1, Collection<Key<Trivial>> l2) {
         return Arrays.equals(l1.toArray(), l2.toArray());
     }
@@ -0,0 +1,160 @@
+package com.googlecode.objectify.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.cache.MemcacheServiceAdapter;
+import com.googlecode.objectify.test.entity.Trivial;
+
+/**
+ * Tests that big gets and writes are split into several memcache calls
+ */
+public class CacheChunkingTests extends TestBase
+{
+	/** Remembers how many values each call carried */
+	static class CountingMemcache extends MemcacheServiceAdapter
+	{
+		List<Integer> gets = new ArrayList<Integer>();
+		List<Integer> puts = new ArrayList<Integer>();
+
+		CountingMemcache()
+		{
+			super(MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE));
+		}
+
+		@Override
+		public Future<Map<String, Object>> getAll(Collection<String> keys)
+		{
+			this.gets.add(keys.size());
+			return super.getAll(keys);
+		}
+
+		@Override
+		public Future<Set<String>> putAll(Map<String, ?> values, Expiration expires, SetPolicy policy)
+		{
+			this.puts.add(values.size());
+			return super.putAll(values, expires, policy);
+		}
+	}
+
+	/** */
+	private ObjectifyFactory factory(CountingMemcache memcache)
+	{
+		ObjectifyFactory fact = this.memcacheFactory(memcache);
+		fact.setCacheChunkSize(2);
+		return fact;
+	}
+
+	/** Puts the first few ids behind the cache's back and returns keys for all of them */
+	private List<Key<Trivial>> keys(int exist, int total)
+	{
+		List<Key<Trivial>> keys = new ArrayList<Key<Trivial>>();
+		for (long id=1; id<=total; id++)
+		{
+			if (id <= exist)
+			{
+				Entity ent = new Entity(KeyFactory.createKey(Trivial.class.getSimpleName(), id));
+				ent.setProperty("someString", "s" + id);
+				ent.setProperty("someNumber", id);
+				DatastoreServiceFactory.getDatastoreService().put(null, ent);
+			}
+
+			keys.add(new Key<Trivial>(Trivial.class, id));
+		}
+
+		return keys;
+	}
+
+	/** */
+	@Test
+	public void testGetsAreChunked() throws Exception
+	{
+		CountingMemcache memcache = new CountingMemcache();
+		ObjectifyFactory fact = this.factory(memcache);
+		List<Key<Trivial>> keys = this.keys(3, 5);
+
+		Objectify ofy = fact.begin();
+		Map<Key<Trivial>, Trivial> found = ofy.get(keys);
+		assert found.size() == 3;
+		assert found.get(keys.get(2)).getSomeString().equals("s3");
+
+		assert memcache.gets.size() == 3;
+		for (int size: memcache.gets)
+			assert size <= 2;
+		for (int size: memcache.puts)
+			assert size <= 2;
+
+		// Now from memcache
+		assert ofy.get(keys).size() == 3;
+		assert fact.getCacheStats().getKind("Trivial").getHitCount() == 3;
+		assert fact.getCacheStats().getKind("Trivial").getNegativeHitCount() == 2;
+	}
+
+	/** */
+	@Test
+	public void testWritesAreChunked() throws Exception
+	{
+		CountingMemcache memcache = new CountingMemcache();
+		ObjectifyFactory fact = this.factory(memcache);
+		List<Key<Trivial>> keys = this.keys(5, 5);
+
+		fact.begin().delete(keys);
+		assert memcache.puts.size() == 3;
+		for (int size: memcache.puts)
+			assert size <= 2;
+	}
+
+	/** */
+	@Test
+	public void testFillsAreChunkedByBytes() throws Exception
+	{
+		CountingMemcache memcache = new CountingMemcache();
+		ObjectifyFactory fact = this.factory(memcache);
+		fact.setCacheChunkSize(100);
+		fact.setCacheChunkBytes(1);
+		List<Key<Trivial>> keys = this.keys(3, 3);
+
+		assert fact.begin().get(keys).size() == 3;
+		assert memcache.gets.size() == 1;
+		assert memcache.puts.size() == 3;
+	}
+
+	/** */
+	@Test
+	public void testGetsAreChunkedByBytesOnceThereAreStats() throws Exception
+	{
+		CountingMemcache memcache = new CountingMemcache();
+		ObjectifyFactory fact = this.factory(memcache);
+		fact.setCacheChunkSize(100);
+		List<Key<Trivial>> keys = this.keys(3, 3);
+
+		assert fact.begin().get(keys).size() == 3;
+		assert memcache.gets.size() == 1;
+
+		long mean = fact.getCacheStats().getKind("Trivial").getMeanValueBytes();
+		assert mean > 0;
+
+		// Room for two of them
+		fact.setCacheChunkBytes(mean * 2 + 1);
+		memcache.gets.clear();
+
+		assert fact.begin().get(keys).size() == 3;
+		assert memcache.gets.size() == 2;
+		assert memcache.gets.get(0) == 2;
+	}
+}
@@ -0,0 +1,180 @@
+package com.googlecode.objectify.test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.GeoPt;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.ShortBlob;
+import com.google.appengine.api.datastore.Text;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.cache.CacheEntityCodec;
+import com.googlecode.objectify.test.entity.Trivial;
+
+/**
+ * Tests of the encoding of entities stored in memcache
+ */
+public class CacheEntityCodecTests extends TestBase
+{
+	/** */
+	CacheEntityCodec codec = new CacheEntityCodec();
+
+	/** */
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		com.google.appengine.api.datastore.Key key = KeyFactory.createKey(KeyFactory.createKey("Parent", "p"), "Thing", 5);
+
+		Entity ent = new Entity(key);
+		ent.setProperty("string", "foo");
+		ent.setProperty("long", -123456789L);
+		ent.setProperty("int", 7);
+		ent.setProperty("double", 1.5);
+		ent.setProperty("bool", true);
+		ent.setProperty("date", new Date(1234567890L));
+		ent.setProperty("key", KeyFactory.createKey("Other", "x"));
+		ent.setProperty("list", Arrays.asList("a", null, 3L));
+		ent.setProperty("nothing", null);
+		ent.setProperty("geo", new GeoPt(1.0f, 2.0f));
+		ent.setProperty("short", new ShortBlob(new byte[] { 1, 2 }));
+		ent.setUnindexedProperty("text", new Text("some text"));
+		ent.setUnindexedProperty("blob", new Blob(new byte[] { 3, 4 }));
+		ent.setUnindexedProperty("hidden", "not indexed");
+
+		Entity back = this.codec.decode(key, this.codec.encode(ent));
+
+		assert back.getKey().equals(key);
+		assert back.getProperties().equals(ent.getProperties());
+		assert back.getProperty("int") instanceof Integer;
+		assert back.isUnindexedProperty("hidden");
+		assert !back.isUnindexedProperty("string");
+	}
+
+	/** */
+	@Test
+	public void testLargeValuesAreCompressed() throws Exception
+	{
+		StringBuilder bld = new StringBuilder();
+		for (int i=0; i<1000; i++)
+			bld.append("repetitive ");
+
+		com.google.appengine.api.datastore.Key key = KeyFactory.createKey("Thing", 1);
+		Entity ent = new Entity(key);
+		ent.setUnindexedProperty("text", new Text(bld.toString()));
+
+		byte[] compressed = this.codec.encode(ent);
+		byte[] plain = new CacheEntityCodec(Integer.MAX_VALUE).encode(ent);
+
+		assert compressed.length < bld.length() / 10;
+		assert plain.length > bld.length();
+		assert this.codec.decode(key, compressed).getProperty("text").equals(ent.getProperty("text"));
+		assert this.codec.decode(key, plain).getProperty("text").equals(ent.getProperty("text"));
+	}
+
+	/** Key values keep their whole path and namespace without the cost of keyToString() */
+	@Test
+	public void testKeyValues() throws Exception
+	{
+		com.google.appengine.api.datastore.Key key = KeyFactory.createKey("Thing", 1);
+		com.google.appengine.api.datastore.Key deep = KeyFactory.createKey(KeyFactory.createKey(KeyFactory.createKey("A", 7), "B", "b"), "C", 1L << 40);
+
+		com.google.appengine.api.datastore.Key spaced;
+		NamespaceManager.set("other");
+		try
+		{
+			spaced = KeyFactory.createKey(KeyFactory.createKey("A", "a"), "B", 2);
+		}
+		finally
+		{
+			NamespaceManager.set("");
+		}
+
+		Entity ent = new Entity(key);
+		ent.setProperty("deep", deep);
+		ent.setProperty("spaced", spaced);
+
+		Entity back = this.codec.decode(key, this.codec.encode(ent));
+		assert back.getProperty("deep").equals(deep);
+		assert back.getProperty("spaced").equals(spaced);
+		assert ((com.google.appengine.api.datastore.Key)back.getProperty("spaced")).getParent().getNamespace().equals("other");
+		assert NamespaceManager.get() == null || NamespaceManager.get().equals("");
+
+		Entity plain = new Entity(key);
+		plain.setProperty("deep", KeyFactory.keyToString(deep));
+		assert this.codec.encode(ent).length < this.codec.encode(plain).length;
+	}
+
+	/** */
+	@Test
+	public void testOtherVersionsAreRefused() throws Exception
+	{
+		com.google.appengine.api.datastore.Key key = KeyFactory.createKey("Thing", 1);
+		byte[] bytes = this.codec.encode(new Entity(key));
+		bytes[0] = (byte)(CacheEntityCodec.VERSION + 1);
+
+		try
+		{
+			this.codec.decode(key, bytes);
+			assert false;
+		}
+		catch (java.io.IOException ex) {}
+	}
+
+	/** */
+	@Test
+	public void testCacheStoresBytes() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		Key<Trivial> key = this.putRaw(1, "foo");
+		assert ofy.get(key).getSomeString().equals("foo");
+
+		Object cached = this.memcache().get(this.fact.getCacheKeyCodec().encode(key.getRaw()));
+		assert cached instanceof byte[];
+		assert ofy.get(key).getSomeString().equals("foo");
+
+		// A value we can't read is just a miss
+		this.memcache().put(this.fact.getCacheKeyCodec().encode(key.getRaw()), new byte[] { 99, 0 });
+		assert ofy.get(key).getSomeString().equals("foo");
+	}
+
+	/** */
+	@Test
+	public void testCorruptLength() throws Exception
+	{
+		com.google.appengine.api.datastore.Key key = KeyFactory.createKey("Thing", 1);
+
+		// version, plain, one property, then a name length claiming about 2GB
+		byte[] corrupt = new byte[] { CacheEntityCodec.VERSION, 0, 1, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07, 'a' };
+		try
+		{
+			this.codec.decode(key, corrupt);
+			assert false;
+		}
+		catch (IOException ex) {}
+	}
+
+	/** */
+	@Test
+	public void testWithoutCodec() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		Key<Trivial> encoded = this.putRaw(1, "foo");
+		ofy.get(encoded);
+
+		this.fact.setCacheEntityCodec(null);
+		ofy = this.fact.begin();
+		Key<Trivial> plain = this.putRaw(2, "bar");
+		ofy.get(plain);
+
+		assert this.memcache().get(this.fact.getCacheKeyCodec().encode(plain.getRaw())) instanceof Entity;
+		assert ofy.get(plain).getSomeString().equals("bar");
+		assert ofy.get(encoded).getSomeString().equals("foo");
+	}
+}
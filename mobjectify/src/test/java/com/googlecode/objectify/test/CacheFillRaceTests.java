@@ -0,0 +1,333 @@
+package com.googlecode.objectify.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceConfig;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.cache.AbsentKeyFilter;
+import com.googlecode.objectify.cache.AsyncMemcache;
+import com.googlecode.objectify.cache.LocalCache;
+import com.googlecode.objectify.cache.MemcacheServiceAdapter;
+import com.googlecode.objectify.test.entity.Trivial;
+import com.googlecode.objectify.util.SimpleFutureWrapper;
+
+/**
+ * Tests that reads which race writes don't leave stale entities in memcache
+ */
+public class CacheFillRaceTests extends TestBase
+{
+	/**
+	 * Lets a test do something between a reader's datastore read and its cache fill, and
+	 * counts the calls.
+	 */
+	static class InterruptedMemcache extends MemcacheServiceAdapter
+	{
+		Runnable beforeFill;
+		List<String> calls = new ArrayList<String>();
+
+		InterruptedMemcache()
+		{
+			super(MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE));
+		}
+
+		void filling()
+		{
+			if (this.beforeFill != null)
+			{
+				Runnable run = this.beforeFill;
+				this.beforeFill = null;
+				run.run();
+			}
+		}
+
+		@Override
+		public Future<Map<String, Object>> getAll(Collection<String> keys)
+		{
+			this.calls.add("getAll");
+			return super.getAll(keys);
+		}
+
+		@Override
+		public Future<Set<String>> putAll(Map<String, ?> values, Expiration expires, SetPolicy policy)
+		{
+			this.calls.add("putAll");
+			return super.putAll(values, expires, policy);
+		}
+
+		@Override
+		public Future<Map<String, IdentifiableValue>> getIdentifiables(Collection<String> keys)
+		{
+			this.calls.add("getIdentifiables");
+			return super.getIdentifiables(keys);
+		}
+
+		@Override
+		public Future<Set<String>> putIfUntouched(Map<String, IdentifiableValue> expected, Map<String, ?> values, Expiration expires)
+		{
+			this.calls.add("putIfUntouched");
+			this.filling();
+			return super.putIfUntouched(expected, values, expires);
+		}
+	}
+
+	/** Lets a test do something once a reader's datastore read is done, before anything is filled */
+	static class InterruptedGets implements InvocationHandler
+	{
+		AsyncDatastoreService base = DatastoreServiceFactory.getAsyncDatastoreService();
+		Runnable afterRead;
+
+		/** If not null, batch gets are noted here as they are issued */
+		List<String> calls;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			Object result;
+			try
+			{
+				result = method.invoke(this.base, args);
+			}
+			catch (InvocationTargetException ex)
+			{
+				throw ex.getCause();
+			}
+
+			if (method.getName().equals("get") && args[args.length - 1] instanceof Iterable && this.calls != null)
+				this.calls.add("datastore");
+
+			if (method.getName().equals("get") && args[args.length - 1] instanceof Iterable && this.afterRead != null)
+			{
+				final Runnable run = this.afterRead;
+				this.afterRead = null;
+
+				@SuppressWarnings("unchecked")
+				Future<Map<com.google.appengine.api.datastore.Key, Entity>> read = (Future<Map<com.google.appengine.api.datastore.Key, Entity>>)result;
+				return new SimpleFutureWrapper<Map<com.google.appengine.api.datastore.Key, Entity>, Map<com.google.appengine.api.datastore.Key, Entity>>(read) {
+					@Override
+					protected Map<com.google.appengine.api.datastore.Key, Entity> wrap(Map<com.google.appengine.api.datastore.Key, Entity> t)
+					{
+						run.run();
+						return t;
+					}
+				};
+			}
+
+			return result;
+		}
+	}
+
+	/** @return a factory with a local cache for Trivial, reading through the gets */
+	private ObjectifyFactory localFactory(InterruptedGets gets)
+	{
+		ObjectifyFactory fact = this.rawDatastoreFactory(gets);
+		LocalCache local = new LocalCache(100, 1000000);
+		local.setExpirationSeconds(Trivial.class.getSimpleName(), 60);
+		fact.setLocalCache(local);
+		return fact;
+	}
+
+	/** */
+	private Object cached(Key<?> key)
+	{
+		return this.memcache().get(this.fact.getCacheKeyCodec().encode(key.getRaw()));
+	}
+
+	/** */
+	@Test
+	public void testReadsFill() throws Exception
+	{
+		Key<Trivial> key = this.putRaw(1, "foo");
+		Objectify ofy = this.fact.begin();
+
+		assert ofy.get(key).getSomeString().equals("foo");
+		assert this.cached(key) instanceof byte[];
+
+		// Negative results too
+		Key<Trivial> missing = new Key<Trivial>(Trivial.class, 999);
+		assert ofy.find(missing) == null;
+		assert this.memcache().contains(this.fact.getCacheKeyCodec().encode(missing.getRaw()));
+		assert this.cached(missing) == null;
+	}
+
+	/** */
+	@Test
+	public void testStaleFillIsRefused() throws Exception
+	{
+		this.checkStaleFillIsRefused(false);
+	}
+
+	/** The fill may happen long after the read, when the write's lock is gone */
+	@Test
+	public void testStaleFillIsRefusedAfterTheLock() throws Exception
+	{
+		this.checkStaleFillIsRefused(true);
+	}
+
+	/** */
+	private void checkStaleFillIsRefused(final boolean lockExpires) throws Exception
+	{
+		final InterruptedMemcache memcache = new InterruptedMemcache();
+		ObjectifyFactory reading = this.memcacheFactory(memcache);
+
+		final Key<Trivial> key = this.putRaw(1, "old");
+
+		// The reader has read "old" from the datastore when this write lands
+		memcache.beforeFill = new Runnable() {
+			@Override
+			public void run()
+			{
+				Trivial triv = new Trivial("new", 6);
+				triv.setId(key.getId());
+				fact.begin().put(triv);
+
+				// Rather than wait out the lock
+				if (lockExpires)
+					memcache().delete(fact.getCacheKeyCodec().encode(key.getRaw()));
+			}
+		};
+
+		assert reading.begin().get(key).getSomeString().equals("old");
+		assert !(this.cached(key) instanceof byte[]);
+		assert this.fact.begin().get(key).getSomeString().equals("new");
+	}
+
+	/** A miss costs a lookup, a reservation, and a compare-and-set fill, however many keys */
+	@Test
+	public void testMissMakesFourMemcacheCalls() throws Exception
+	{
+		InterruptedMemcache memcache = new InterruptedMemcache();
+		ObjectifyFactory reading = this.memcacheFactory(memcache);
+
+		List<Key<Trivial>> keys = new ArrayList<Key<Trivial>>();
+		for (long id=1; id<=10; id++)
+			keys.add((id <= 5) ? this.putRaw(id, "s" + id) : new Key<Trivial>(Trivial.class, id));
+
+		assert reading.begin().get(keys).size() == 5;
+		assert memcache.calls.equals(Arrays.asList("getAll", "putAll", "getIdentifiables", "putIfUntouched")) : memcache.calls;
+		assert this.cached(keys.get(0)) instanceof byte[];
+
+		// Hits don't touch the reservations
+		memcache.calls.clear();
+		assert reading.begin().get(keys).size() == 5;
+		assert memcache.calls.equals(Arrays.asList("getAll")) : memcache.calls;
+	}
+
+	/** The per-key identifiables mustn't hold up the datastore read */
+	@Test
+	public void testDatastoreReadStartsBeforeIdentifiables() throws Exception
+	{
+		final InterruptedMemcache memcache = new InterruptedMemcache();
+		final InterruptedGets gets = new InterruptedGets();
+		gets.calls = memcache.calls;
+
+		ObjectifyFactory reading = new ObjectifyFactory() {
+			@Override
+			protected AsyncMemcache getAsyncMemcache()
+			{
+				return memcache;
+			}
+
+			@Override
+			protected AsyncDatastoreService getRawAsyncDatastoreService(DatastoreServiceConfig cfg)
+			{
+				return (AsyncDatastoreService)Proxy.newProxyInstance(
+						AsyncDatastoreService.class.getClassLoader(), new Class<?>[] { AsyncDatastoreService.class }, gets);
+			}
+		};
+		reading.register(Trivial.class);
+
+		Key<Trivial> key = this.putRaw(1, "foo");
+		assert reading.begin().get(key).getSomeString().equals("foo");
+		assert memcache.calls.equals(Arrays.asList("getAll", "putAll", "datastore", "getIdentifiables", "putIfUntouched")) : memcache.calls;
+		assert this.cached(key) instanceof byte[];
+	}
+
+	/** */
+	@Test
+	public void testStaleLocalFillIsRefused() throws Exception
+	{
+		InterruptedGets gets = new InterruptedGets();
+		final ObjectifyFactory fact = this.localFactory(gets);
+		final Key<Trivial> key = this.putRaw(1, "old");
+
+		// The reader has read "old" from the datastore when this write lands
+		gets.afterRead = new Runnable() {
+			@Override
+			public void run()
+			{
+				fact.begin().put(new Trivial(key.getId(), "new", 6));
+			}
+		};
+
+		assert fact.begin().get(key).getSomeString().equals("old");
+		Entity local = fact.getLocalCache().getAll(Collections.singleton(key.getRaw())).get(key.getRaw());
+		assert local.getProperty("someString").equals("new");
+		assert fact.begin().get(key).getSomeString().equals("new");
+	}
+
+	/** */
+	@Test
+	public void testStaleAbsenceIsForgotten() throws Exception
+	{
+		InterruptedGets gets = new InterruptedGets();
+		final ObjectifyFactory fact = this.localFactory(gets);
+		fact.setAbsentKeyFilter(new AbsentKeyFilter(100, 60));
+		final Key<Trivial> key = new Key<Trivial>(Trivial.class, 1);
+
+		// The reader has found nothing in the datastore when this write lands
+		gets.afterRead = new Runnable() {
+			@Override
+			public void run()
+			{
+				fact.begin().put(new Trivial(key.getId(), "new", 6));
+			}
+		};
+
+		assert fact.begin().find(key) == null;
+		assert !fact.getAbsentKeyFilter().isAbsent(key.getRaw());
+		assert fact.begin().get(key).getSomeString().equals("new");
+	}
+
+	/** */
+	@Test
+	public void testWritesLockFills() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		Key<Trivial> key = ofy.put(new Trivial("foo", 5));
+
+		assert ofy.get(key).getSomeString().equals("foo");
+		assert "objectify:locked".equals(this.cached(key));
+
+		// Rather than wait out the lock
+		this.memcache().delete(this.fact.getCacheKeyCodec().encode(key.getRaw()));
+
+		assert ofy.get(key).getSomeString().equals("foo");
+		assert this.cached(key) instanceof byte[];
+
+		ofy.delete(key);
+		assert ofy.find(key) == null;
+		assert !(this.cached(key) instanceof byte[]);
+	}
+}
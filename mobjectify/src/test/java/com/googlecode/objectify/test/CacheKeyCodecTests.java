@@ -0,0 +1,131 @@
+package com.googlecode.objectify.test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.cache.CacheKeyCodec;
+import com.googlecode.objectify.cache.KeyStringCacheKeyCodec;
+import com.googlecode.objectify.cache.PathCacheKeyCodec;
+import com.googlecode.objectify.test.entity.Trivial;
+
+/**
+ * Tests of the codecs which make memcache keys
+ */
+public class CacheKeyCodecTests extends TestBase
+{
+	/** */
+	CacheKeyCodec codec = new PathCacheKeyCodec();
+
+	/** */
+	@Test
+	public void testReadable() throws Exception
+	{
+		Key parent = KeyFactory.createKey("Car", 5);
+		assert this.codec.encode(parent).equals("Car:5");
+		assert this.codec.encode(KeyFactory.createKey(parent, "Wheel", "front")).equals("Car:5/Wheel'front");
+	}
+
+	/** Names full of delimiters, and parents with the same name as their children */
+	@Test
+	public void testUnambiguous() throws Exception
+	{
+		Key a = KeyFactory.createKey("A", "x");
+		Key[] keys = {
+			a,
+			KeyFactory.createKey(a, "A", "x"),
+			KeyFactory.createKey("A", "x/A'x"),
+			KeyFactory.createKey("A", "x\\/A'x"),
+			KeyFactory.createKey("A", "1"),
+			KeyFactory.createKey("A", 1),
+			KeyFactory.createKey("A:1", 1),
+			KeyFactory.createKey("A", ":1"),
+			KeyFactory.createKey("A", "x!"),
+			KeyFactory.createKey("A", "#"),
+		};
+
+		Set<String> encoded = new HashSet<String>();
+		for (Key key: keys)
+			assert encoded.add(this.codec.encode(key)) : "Collision on " + key;
+
+		NamespaceManager.set("A");
+		try
+		{
+			assert encoded.add(this.codec.encode(KeyFactory.createKey("A", "x")));
+		}
+		finally
+		{
+			NamespaceManager.set("");
+		}
+	}
+
+	/** */
+	@Test
+	public void testLongPathsAreHashed() throws Exception
+	{
+		StringBuilder name = new StringBuilder();
+		for (int i=0; i<PathCacheKeyCodec.MAX_LENGTH; i++)
+			name.append('n');
+
+		String one = this.codec.encode(KeyFactory.createKey("A", name + "1"));
+		String two = this.codec.encode(KeyFactory.createKey("A", name + "2"));
+
+		assert one.length() == PathCacheKeyCodec.MAX_LENGTH;
+		assert two.length() == PathCacheKeyCodec.MAX_LENGTH;
+		assert !one.equals(two);
+		assert one.startsWith("A'nnn");
+	}
+
+	/** Memcache counts its key limit in bytes, so wide characters must hash sooner */
+	@Test
+	public void testLimitIsInBytes() throws Exception
+	{
+		StringBuilder name = new StringBuilder();
+		for (int i=0; i<PathCacheKeyCodec.MAX_LENGTH / 2; i++)
+			name.append('\u00e9');
+
+		String wide = this.codec.encode(KeyFactory.createKey("A", name.toString()));
+		assert wide.length() < PathCacheKeyCodec.MAX_LENGTH;
+		assert wide.getBytes("UTF-8").length <= PathCacheKeyCodec.MAX_LENGTH;
+		assert wide.charAt(wide.length() - 41) == '#';
+
+		String escapes = this.codec.encode(KeyFactory.createKey("A", name.toString().replace('\u00e9', '#') + "\u00e9"));
+		assert escapes.getBytes("UTF-8").length <= PathCacheKeyCodec.MAX_LENGTH;
+		assert escapes.charAt(escapes.length() - 42) != '\\';
+	}
+
+	/** */
+	@Test
+	public void testFactoryCodecIsUsed() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		com.googlecode.objectify.Key<Trivial> key = ofy.put(new Trivial("foo", 5));
+		ofy.get(key);
+
+		MemcacheService memcache = MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE);
+		assert memcache.contains(this.codec.encode(key.getRaw()));
+		assert !memcache.contains(KeyFactory.keyToString(key.getRaw()));
+	}
+
+	/** */
+	@Test
+	public void testKeyStringCodec() throws Exception
+	{
+		this.fact.setCacheKeyCodec(new KeyStringCacheKeyCodec());
+
+		Objectify ofy = this.fact.begin();
+		com.googlecode.objectify.Key<Trivial> key = ofy.put(new Trivial("foo", 5));
+		assert ofy.get(key).getSomeString().equals("foo");
+
+		MemcacheService memcache = MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE);
+		assert memcache.contains(KeyFactory.keyToString(key.getRaw()));
+	}
+}
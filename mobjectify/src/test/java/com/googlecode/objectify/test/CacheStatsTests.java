@@ -0,0 +1,118 @@
+package com.googlecode.objectify.test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.testng.annotations.Test;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.cache.CacheStats;
+import com.googlecode.objectify.cache.ListenableHook;
+import com.googlecode.objectify.test.entity.Trivial;
+
+/**
+ * Tests of the statistics the global cache keeps
+ */
+public class CacheStatsTests extends TestBase
+{
+	/** */
+	@Test
+	public void testCounts() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		Key<Trivial> key = this.putRaw(1, "foo");
+		Key<Trivial> missing = new Key<Trivial>(Trivial.class, 999);
+
+		ofy.get(key);
+		ofy.get(key);
+		ofy.find(missing);
+		ofy.find(missing);
+
+		CacheStats.KindStats trivial = this.fact.getCacheStats().getKind("Trivial");
+		assert trivial.getMissCount() == 2;
+		assert trivial.getHitCount() == 1;
+		assert trivial.getNegativeHitCount() == 1;
+		assert trivial.getBytesWritten() > 0;
+		assert trivial.getBytesRead() == trivial.getBytesWritten();
+		assert trivial.getDatastoreLatency().getCount() == 2;
+		assert trivial.getMemcacheLatency().getCount() == 4;
+		assert trivial.getFillFailureCount() == 0;
+
+		// A value which can't be decoded is a miss
+		this.memcache().put(this.fact.getCacheKeyCodec().encode(key.getRaw()), new byte[] { 99, 0 });
+		ofy.get(key);
+		assert trivial.getDecodeFailureCount() == 1;
+		assert trivial.getMissCount() == 3;
+
+		assert this.fact.getCacheStats().getTotals().getHitCount() == 1;
+	}
+
+	/** */
+	@Test
+	public void testLatencyIsRecordedBeforeTheResultIsCollected() throws Exception
+	{
+		Key<Trivial> key = this.putRaw(1, "foo");
+
+		this.fact.begin().async().get(key);
+
+		// What AsyncCacheFilter does at the end of a request
+		ListenableHook.completeAllPendingFutures();
+
+		CacheStats.KindStats trivial = this.fact.getCacheStats().getKind("Trivial");
+		assert trivial.getMemcacheLatency().getCount() == 1;
+		assert trivial.getDatastoreLatency().getCount() == 1;
+	}
+
+	/** */
+	@Test
+	public void testRefusedFillsAreCounted() throws Exception
+	{
+		final CacheFillRaceTests.InterruptedMemcache memcache = new CacheFillRaceTests.InterruptedMemcache();
+		ObjectifyFactory reading = this.memcacheFactory(memcache);
+
+		final Key<Trivial> key = this.putRaw(1, "old");
+
+		// A write locks the key before the reader fills it
+		memcache.beforeFill = new Runnable() {
+			@Override
+			public void run()
+			{
+				fact.begin().delete(key);
+			}
+		};
+
+		reading.begin().get(key);
+		assert reading.getCacheStats().getKind("Trivial").getFillFailureCount() == 1;
+	}
+
+	/** */
+	@Test
+	public void testJmx() throws Exception
+	{
+		this.fact.begin().get(this.putRaw(1, "foo"));
+
+		ObjectName name = this.fact.getCacheStats().register("com.googlecode.objectify.test:type=CacheStats");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try
+		{
+			CompositeData totals = (CompositeData)server.getAttribute(name, "Totals");
+			assert ((Long)totals.get("missCount")) == 1;
+
+			CompositeData latency = (CompositeData)totals.get("datastoreLatency");
+			assert ((long[])latency.get("counts")).length == ((long[])latency.get("bucketLimitsMillis")).length + 1;
+
+			TabularData kinds = (TabularData)server.getAttribute(name, "Kinds");
+			assert kinds.size() == 1;
+		}
+		finally
+		{
+			server.unregisterMBean(name);
+		}
+	}
+}
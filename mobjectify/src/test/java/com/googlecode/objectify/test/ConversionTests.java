@@ -7,6 +7,7 @@ package com.googlecode.objectify.test;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.logging.Logger;
 
 import javax.persistence.Embedded;
@@ -17,6 +18,7 @@ import org.testng.annotations.Test;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.annotation.Cached;
@@ -239,4 +241,91 @@ public class ConversionTests extends TestBase
 		HasBigDecimal fetched = this.putAndGet(hbd);
 		assert hbd.data.equals(fetched.data);
 	}
+	
+	/** */
+	@Cached
+	public static class HasObject
+	{
+		public @Id Long id;
+		public Object data;
+	}
+	
+	/**
+	 * The converter cache remembers one value class per field; make sure a field
+	 * which sees different classes still converts each one properly.
+	 */
+	@Test
+	public void testChangingValueClasses() throws Exception
+	{
+		this.fact.register(HasObject.class);
+
+		HasObject ho = new HasObject();
+		
+		Object[] values = new Object[] { "foo", 123L, "bar", new Date(0), 456L, BIG_STRING };
+		for (Object value: values)
+		{
+			ho.data = value;
+			HasObject fetched = this.putAndGet(ho);
+			
+			if (value == BIG_STRING)
+				assert ((Text)fetched.data).getValue().equals(BIG_STRING);
+			else
+				assert value.equals(fetched.data);
+		}
+	}
+	
+	/** */
+	@Cached
+	public static class HasPrimitives
+	{
+		public @Id Long id;
+		public byte b;
+		public short s;
+		public int i;
+		public long l;
+		public float f;
+		public double d;
+		public boolean bool;
+	}
+	
+	/**
+	 * Primitive fields skip the boxed conversions
+	 */
+	@Test
+	public void testPrimitives() throws Exception
+	{
+		this.fact.register(HasPrimitives.class);
+		
+		HasPrimitives hp = new HasPrimitives();
+		hp.b = -7;
+		hp.s = Short.MAX_VALUE;
+		hp.i = Integer.MIN_VALUE;
+		hp.l = Long.MAX_VALUE;
+		hp.f = 1.1f;
+		hp.d = -2.5e300;
+		hp.bool = true;
+		
+		HasPrimitives fetched = this.putAndGet(hp);
+		assert fetched.b == -7;
+		assert fetched.s == Short.MAX_VALUE;
+		assert fetched.i == Integer.MIN_VALUE;
+		assert fetched.l == Long.MAX_VALUE;
+		assert fetched.f == 1.1f;
+		assert fetched.d == -2.5e300;
+		assert fetched.bool;
+		
+		// Numbers are stored the way the datastore would give them back
+		Entity ent = this.fact.begin().getDatastore().get(this.fact.getRawKey(fetched));
+		assert ent.getProperty("i") instanceof Long;
+		assert ent.getProperty("f") instanceof Double;
+		
+		// Values stored as some other numeric type still load
+		ent.setProperty("i", 12.9d);
+		ent.setProperty("d", 3L);
+		this.fact.begin().getDatastore().put(ent);
+		
+		fetched = this.fact.begin().get(this.fact.<HasPrimitives>getKey(fetched));
+		assert fetched.i == 12;
+		assert fetched.d == 3.0;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.googlecode.objectify.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.Id;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.datastore.Email;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyOpts;
+import com.googlecode.objectify.annotation.Cached;
+
+/**
+ * Tests of skipping unchanged puts with {@code ObjectifyOpts.setDirtyTracking()}
+ */
+public class DirtyTrackingTests extends TestBase
+{
+	/** */
+	@Cached
+	public static class Tracked
+	{
+		@Id Long id;
+		String name;
+		int count;
+		float ratio;
+		List<Integer> numbers;
+	}
+
+	/** Datastore types whose hashCode() is easy to collide */
+	@Cached
+	public static class Wrapped
+	{
+		@Id Long id;
+		Email email;
+		com.google.appengine.api.datastore.Key ref;
+	}
+
+	/** */
+	@BeforeMethod
+	public void setUp()
+	{
+		super.setUp();
+
+		this.fact.register(Tracked.class);
+		this.fact.register(Wrapped.class);
+	}
+
+	/** */
+	private Objectify beginTracking()
+	{
+		return this.fact.begin(new ObjectifyOpts().setDirtyTracking(true));
+	}
+
+	/** */
+	private Key<Tracked> putTracked()
+	{
+		Tracked tr = new Tracked();
+		tr.name = "foo";
+		tr.count = 5;
+		tr.ratio = 1.1f;
+		tr.numbers = Arrays.asList(1, 2, 3);
+
+		return this.fact.begin().put(tr);
+	}
+
+	/** */
+	@Test
+	public void testUnchangedPutIsSkipped() throws Exception
+	{
+		Key<Tracked> key = this.putTracked();
+
+		Objectify ofy = this.beginTracking();
+		Tracked tr = ofy.get(key);
+
+		// Sneak in a change behind the tracking instance's back; the skipped put must not undo it
+		Tracked other = this.fact.begin().get(key);
+		other.name = "bar";
+		this.fact.begin().put(other);
+
+		Key<Tracked> putKey = ofy.put(tr);
+		assert putKey.equals(key);
+		assert ofy.getElidedWrites() == 1;
+		assert this.fact.begin().get(key).name.equals("bar");
+
+		tr.count = 6;
+		ofy.put(tr);
+		assert ofy.getElidedWrites() == 1;
+		assert this.fact.begin().get(key).count == 6;
+	}
+
+	/** Entities we saved are remembered too, including ones with generated ids */
+	@Test
+	public void testRepeatedPutIsSkipped() throws Exception
+	{
+		Objectify ofy = this.beginTracking();
+
+		Tracked tr = new Tracked();
+		tr.name = "foo";
+		ofy.put(tr);
+		assert tr.id != null;
+		assert ofy.getElidedWrites() == 0;
+
+		ofy.put(tr);
+		assert ofy.getElidedWrites() == 1;
+
+		ofy.delete(tr);
+		ofy.put(tr);
+		assert ofy.getElidedWrites() == 1;
+		assert this.fact.begin().find(Tracked.class, tr.id) != null;
+	}
+
+	/** */
+	@Test
+	public void testQueryResultsAreTracked() throws Exception
+	{
+		this.putTracked();
+		this.putTracked();
+
+		Objectify ofy = this.beginTracking();
+		List<Tracked> found = ofy.query(Tracked.class).list();
+		found.get(1).name = "changed";
+
+		ofy.put(found);
+		assert ofy.getElidedWrites() == 1;
+		assert this.fact.begin().get(Tracked.class, found.get(1).id).name.equals("changed");
+	}
+
+	/** */
+	@Test
+	public void testOffByDefault() throws Exception
+	{
+		Key<Tracked> key = this.putTracked();
+
+		Objectify ofy = this.fact.begin();
+		ofy.put(ofy.get(key));
+		assert ofy.getElidedWrites() == 0;
+	}
+
+	/** "Aa" and "BB" have the same String.hashCode(), and so the same Email.hashCode() */
+	@Test
+	public void testEmailChangeWithSameHashCodeIsWritten() throws Exception
+	{
+		Wrapped wr = new Wrapped();
+		wr.email = new Email("Aa");
+		Key<Wrapped> key = this.fact.begin().put(wr);
+
+		Objectify ofy = this.beginTracking();
+		Wrapped fetched = ofy.get(key);
+		fetched.email = new Email("BB");
+		assert fetched.email.hashCode() == new Email("Aa").hashCode();
+
+		ofy.put(fetched);
+		assert ofy.getElidedWrites() == 0;
+		assert this.fact.begin().get(key).email.getEmail().equals("BB");
+	}
+
+	/** Keys which differ only by namespace print the same */
+	@Test
+	public void testKeyChangeOfNamespaceIsWritten() throws Exception
+	{
+		Wrapped wr = new Wrapped();
+		wr.ref = KeyFactory.createKey("Thing", 1);
+		Key<Wrapped> key = this.fact.begin().put(wr);
+
+		com.google.appengine.api.datastore.Key elsewhere;
+		NamespaceManager.set("other");
+		try
+		{
+			elsewhere = KeyFactory.createKey("Thing", 1);
+		}
+		finally
+		{
+			NamespaceManager.set("");
+		}
+		assert elsewhere.toString().equals(wr.ref.toString());
+
+		Objectify ofy = this.beginTracking();
+		Wrapped fetched = ofy.get(key);
+		fetched.ref = elsewhere;
+
+		ofy.put(fetched);
+		assert ofy.getElidedWrites() == 0;
+		assert this.fact.begin().get(key).ref.getNamespace().equals("other");
+	}
+}
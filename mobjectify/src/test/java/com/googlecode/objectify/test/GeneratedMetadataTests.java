@@ -0,0 +1,175 @@
+package com.googlecode.objectify.test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.Transient;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.datastore.Entity;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.annotation.AlsoLoad;
+import com.googlecode.objectify.annotation.NotSaved;
+import com.googlecode.objectify.annotation.Unindexed;
+import com.googlecode.objectify.condition.IfDefault;
+import com.googlecode.objectify.condition.IfTrue;
+import com.googlecode.objectify.impl.Accessor;
+import com.googlecode.objectify.impl.FieldInfo;
+import com.googlecode.objectify.impl.GeneratedMetadata;
+import com.googlecode.objectify.impl.MethodInfo;
+import com.googlecode.objectify.impl.PrimitiveAccessor;
+
+/**
+ * Tests of the companion classes written by the annotation processor, which runs over
+ * the test sources.
+ */
+public class GeneratedMetadataTests extends TestBase
+{
+	/** */
+	public static class Widget
+	{
+		@Id Long id;
+		int count;
+		String label;
+		private String secret;
+		@Transient String scratch;
+		@AlsoLoad("oldFlag") @NotSaved(IfDefault.class) @Unindexed(IfTrue.class) Boolean flag;
+
+		public String getSecret() { return this.secret; }
+		public void setSecret(String value) { this.secret = value; }
+
+		@PrePersist void touch() { this.scratch = "touched"; }
+	}
+
+	/** */
+	@Test
+	public void testCompanionExists() throws Exception
+	{
+		GeneratedMetadata meta = GeneratedMetadata.forClass(Widget.class);
+		assert meta != null;
+		assert meta.getDescribedClass() == Widget.class;
+		assert meta.getInstantiator().newInstance() instanceof Widget;
+
+		assert GeneratedMetadata.forClass(String.class) == null;
+	}
+
+	/** */
+	@Test
+	public void testAccessorsBehaveLikeFields() throws Exception
+	{
+		GeneratedMetadata meta = GeneratedMetadata.forClass(Widget.class);
+		Widget widget = new Widget();
+
+		Accessor label = meta.getAccessor("label");
+		label.set(widget, "hello");
+		assert widget.label.equals("hello");
+		assert label.get(widget).equals("hello");
+
+		try
+		{
+			label.set(widget, 123);
+			assert false;
+		}
+		catch (IllegalArgumentException ex) {}
+
+		Accessor count = meta.getAccessor("count");
+		assert count instanceof PrimitiveAccessor;
+
+		// Widening is allowed, just like Field.set()
+		count.set(widget, (short)12);
+		assert widget.count == 12;
+		((PrimitiveAccessor)count).setLong(widget, 34L);
+		assert widget.count == 34;
+
+		try
+		{
+			count.set(widget, null);
+			assert false;
+		}
+		catch (IllegalArgumentException ex) {}
+
+		try
+		{
+			count.set(widget, 5L);
+			assert false;
+		}
+		catch (IllegalArgumentException ex) {}
+
+		// Left for reflection
+		assert meta.getAccessor("secret") == null;
+	}
+
+	/** */
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		this.fact.register(Widget.class);
+
+		Widget widget = new Widget();
+		widget.count = 7;
+		widget.label = "label";
+		widget.setSecret("secret");
+
+		Widget fetched = this.putAndGet(widget);
+		assert fetched.count == 7;
+		assert fetched.label.equals("label");
+		assert fetched.getSecret().equals("secret");
+	}
+
+	/** */
+	@Test
+	public void testAnnotationsArePrecomputed() throws Exception
+	{
+		GeneratedMetadata meta = GeneratedMetadata.forClass(Widget.class);
+
+		assert meta.getFieldInfo("id").isId();
+		assert meta.getFieldInfo("secret") != null;
+		assert meta.getFieldInfo("scratch").isTransient();
+
+		FieldInfo flag = meta.getFieldInfo("flag");
+		assert Arrays.equals(flag.getAlsoLoad(), new String[] { "oldFlag" });
+		assert flag.getIndexed() == null;
+
+		// Type arguments resolved and constructors called without reflection
+		FieldInfo.Condition unindexed = flag.getUnindexed()[0];
+		assert unindexed.getType() == IfTrue.class;
+		assert unindexed.getValueType() == Boolean.class;
+		assert unindexed.getPojoType() == Object.class;
+		assert unindexed.create(Widget.class, null) instanceof IfTrue;
+
+		Field field = Widget.class.getDeclaredField("flag");
+		field.setAccessible(true);
+		FieldInfo.Condition notSaved = flag.getNotSaved()[0];
+		assert notSaved.create(Widget.class, field) instanceof IfDefault;
+
+		MethodInfo[] methods = meta.getMethodInfos();
+		assert methods.length == 1;
+		assert methods[0].isPrePersist();
+		assert methods[0].resolve(Widget.class).getName().equals("touch");
+	}
+
+	/** */
+	@Test
+	public void testConditionsStillApply() throws Exception
+	{
+		this.fact.register(Widget.class);
+		Objectify ofy = this.fact.begin();
+
+		Widget widget = new Widget();
+		widget.flag = false;
+		ofy.put(widget);
+		assert widget.scratch.equals("touched");
+
+		// IfDefault; the field's default is null
+		Entity ent = ofy.getDatastore().get(this.fact.getRawKey(widget));
+		assert ent.hasProperty("flag");
+
+		widget.flag = null;
+		ofy.put(widget);
+		ent = ofy.getDatastore().get(this.fact.getRawKey(widget));
+		assert !ent.hasProperty("flag");
+	}
+}
@@ -0,0 +1,110 @@
+package com.googlecode.objectify.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.KeyInterner;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.test.entity.Child;
+import com.googlecode.objectify.test.entity.Trivial;
+
+/**
+ * Tests of the KeyInterner and the places which use it
+ */
+public class KeyInternerTests extends TestBase
+{
+	/** */
+	@Test
+	public void testEqualKeysShareInstances() throws Exception
+	{
+		KeyInterner interner = new KeyInterner(100);
+		assert interner.getCapacity() == 128;
+
+		Key<Trivial> first = interner.intern(new Key<Trivial>(Trivial.class, 1));
+		Key<Trivial> second = interner.intern(new Key<Trivial>(Trivial.class, 1));
+		assert first == second;
+
+		Key<Trivial> fromRaw = interner.intern(new Key<Trivial>(Trivial.class, 1).getRaw());
+		assert fromRaw == first;
+
+		assert interner.intern(new Key<Trivial>(Trivial.class, 2)) != first;
+		assert interner.intern((Key<Trivial>)null) == null;
+	}
+
+	/** */
+	@Test
+	public void testParentsAreShared() throws Exception
+	{
+		KeyInterner interner = new KeyInterner(16);
+
+		Key<Trivial> parent = new Key<Trivial>(Trivial.class, 1);
+		Key<Child> one = interner.intern(new Key<Child>(parent, Child.class, 1).getRaw());
+		Key<Child> two = interner.intern(new Key<Child>(parent, Child.class, 2).getRaw());
+
+		assert (Object)one.getParent() == two.getParent();
+		assert (Object)interner.intern(parent) == one.getParent();
+	}
+
+	/** Overfilling the table loses some sharing but never returns a wrong key */
+	@Test
+	public void testBounded() throws Exception
+	{
+		KeyInterner interner = new KeyInterner(4);
+		for (long i=1; i<=100; i++)
+		{
+			Key<Trivial> key = new Key<Trivial>(Trivial.class, i);
+			assert interner.intern(key).equals(key);
+		}
+	}
+
+	/** */
+	@Test
+	public void testLoadedKeysAreInterned() throws Exception
+	{
+		this.fact.getConversions().setKeyInterner(new KeyInterner(1024));
+		try
+		{
+			Objectify ofy = this.fact.begin();
+
+			Key<Trivial> parent = ofy.put(new Trivial("parent", 1));
+			ofy.put(new Child(parent, "one"), new Child(parent, "two"));
+
+			List<Key<Child>> keys = ofy.query(Child.class).ancestor(parent).listKeys();
+			assert keys.size() == 2;
+			assert (Object)keys.get(0).getParent() == keys.get(1).getParent();
+
+			List<Key<Child>> again = ofy.query(Child.class).ancestor(parent).listKeys();
+			assert keys.get(0) == again.get(0);
+
+			Map<Key<Child>, Child> fetched = ofy.get(keys);
+			for (Map.Entry<Key<Child>, Child> entry: fetched.entrySet())
+			{
+				assert keys.contains(entry.getKey());
+				assert (Object)entry.getValue().getParent() == keys.get(0).getParent();
+			}
+		}
+		finally
+		{
+			this.fact.getConversions().setKeyInterner(null);
+		}
+	}
+
+	/** */
+	@Test
+	public void testOffByDefault() throws Exception
+	{
+		assert this.fact.getConversions().getKeyInterner() == null;
+
+		Objectify ofy = this.fact.begin();
+		Key<Trivial> key = ofy.put(new Trivial("foo", 5));
+
+		List<Key<Trivial>> keys = Arrays.asList(key);
+		Key<Trivial> fetched = ofy.get(keys).keySet().iterator().next();
+		assert fetched.equals(key);
+		assert fetched != ofy.get(keys).keySet().iterator().next();
+	}
+}
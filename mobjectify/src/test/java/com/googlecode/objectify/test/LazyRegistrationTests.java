@@ -0,0 +1,162 @@
+package com.googlecode.objectify.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.annotation.Cached;
+import com.googlecode.objectify.annotation.Subclass;
+import com.googlecode.objectify.impl.EntityMetadata;
+
+/**
+ * Tests of registering entities lazily, building their metadata on first use.
+ */
+public class LazyRegistrationTests extends TestBase
+{
+	/** */
+	@Cached
+	public static class Plain
+	{
+		@Id Long id;
+		String name;
+	}
+
+	/** No @Id, so building metadata fails */
+	public static class Broken
+	{
+		String name;
+	}
+
+	/** */
+	@Entity
+	public static class Vehicle
+	{
+		@Id Long id;
+		String color;
+	}
+
+	/** */
+	@Subclass
+	public static class Truck extends Vehicle
+	{
+		int axles;
+	}
+
+	/** */
+	ObjectifyFactory lazy;
+
+	/** */
+	@BeforeMethod
+	public void setUp()
+	{
+		super.setUp();
+
+		this.lazy = new ObjectifyFactory();
+		this.lazy.setLazyRegistration(true);
+	}
+
+	/** */
+	@Test
+	public void testErrorsAppearOnFirstUse() throws Exception
+	{
+		this.lazy.register(Broken.class);
+
+		for (int i=0; i<2; i++)
+		{
+			try
+			{
+				this.lazy.getMetadata(Broken.class);
+				assert false;
+			}
+			catch (IllegalStateException ex) {}
+		}
+	}
+
+	/** */
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void testDuplicateStillRejected() throws Exception
+	{
+		this.lazy.register(Plain.class);
+		this.lazy.register(Plain.class);
+	}
+
+	/** */
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		this.lazy.register(Plain.class);
+
+		Plain plain = new Plain();
+		plain.name = "plain";
+
+		Objectify ofy = this.lazy.begin();
+		Key<Plain> key = ofy.put(plain);
+
+		Plain fetched = this.lazy.begin().get(key);
+		assert fetched.name.equals("plain");
+	}
+
+	/** */
+	@Test
+	public void testPolymorphic() throws Exception
+	{
+		this.lazy.register(Vehicle.class);
+		this.lazy.register(Truck.class);
+
+		Truck truck = new Truck();
+		truck.color = "red";
+		truck.axles = 3;
+
+		Key<Truck> key = this.lazy.begin().put(truck);
+
+		Vehicle fetched = this.lazy.begin().get(new Key<Vehicle>(Vehicle.class, key.getId()));
+		assert fetched instanceof Truck;
+		assert ((Truck)fetched).axles == 3;
+		assert (Object)this.lazy.getMetadata(Truck.class) == this.lazy.getMetadata("Vehicle");
+	}
+
+	/** */
+	@Test
+	public void testConcurrentFirstUse() throws Exception
+	{
+		this.lazy.register(Plain.class);
+
+		ExecutorService exec = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<EntityMetadata<?>>> results = new ArrayList<Future<EntityMetadata<?>>>();
+			for (int i=0; i<8; i++)
+			{
+				results.add(exec.submit(new Callable<EntityMetadata<?>>() {
+					@Override
+					public EntityMetadata<?> call()
+					{
+						return lazy.getMetadata("Plain");
+					}
+				}));
+			}
+
+			EntityMetadata<?> first = results.get(0).get();
+			for (Future<EntityMetadata<?>> result: results)
+				assert result.get() == first;
+
+			assert this.lazy.getMetadata(Plain.class) == first;
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+	}
+}
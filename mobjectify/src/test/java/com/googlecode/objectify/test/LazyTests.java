@@ -0,0 +1,132 @@
+package com.googlecode.objectify.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.Embedded;
+import javax.persistence.Id;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.datastore.Text;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Lazy;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.annotation.Cached;
+import com.googlecode.objectify.annotation.Serialized;
+import com.googlecode.objectify.test.entity.Name;
+
+/**
+ * Tests of {@code Lazy} fields
+ */
+public class LazyTests extends TestBase
+{
+	/** */
+	@Cached
+	public static class HasLazy
+	{
+		@Id public Long id;
+		public String title;
+		public Lazy<Text> body;
+		@Serialized public Lazy<Name> author;
+		public Lazy<List<String>> tags;
+		public Lazy<Integer> count;
+	}
+
+	/** */
+	public static class EmbeddedLazy
+	{
+		@Id public Long id;
+		@Embedded public Lazy<String> bad;
+	}
+
+	/**
+	 */
+	@BeforeMethod
+	public void setUp()
+	{
+		super.setUp();
+
+		this.fact.register(HasLazy.class);
+	}
+
+	/** */
+	private HasLazy makeHasLazy()
+	{
+		HasLazy hl = new HasLazy();
+		hl.title = "title";
+		hl.body = new Lazy<Text>(new Text("a very long body"));
+		hl.author = new Lazy<Name>(new Name("foo", "bar"));
+		hl.tags = new Lazy<List<String>>(new ArrayList<String>(Arrays.asList("a", "b")));
+		hl.count = new Lazy<Integer>(5);
+
+		return hl;
+	}
+
+	/** */
+	@Test
+	public void testLoadsOnFirstAccess() throws Exception
+	{
+		HasLazy fetched = this.putAndGet(this.makeHasLazy());
+
+		assert fetched.title.equals("title");
+		assert !fetched.body.isLoaded();
+		assert !fetched.author.isLoaded();
+		assert !fetched.tags.isLoaded();
+		assert !fetched.count.isLoaded();
+
+		assert fetched.body.get().getValue().equals("a very long body");
+		assert fetched.body.isLoaded();
+		assert fetched.author.get().equals(new Name("foo", "bar"));
+		assert fetched.tags.get().equals(Arrays.asList("a", "b"));
+		assert fetched.count.get() == 5;
+	}
+
+	/** Saving untouched lazy values writes the raw datastore values back */
+	@Test
+	public void testUntouchedRoundTrip() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		Key<HasLazy> key = ofy.put(this.makeHasLazy());
+
+		HasLazy fetched = ofy.get(key);
+		fetched.title = "changed";
+		fetched.count.set(6);
+		ofy.put(fetched);
+		assert !fetched.author.isLoaded();
+
+		HasLazy refetched = ofy.get(key);
+		assert refetched.title.equals("changed");
+		assert refetched.body.get().getValue().equals("a very long body");
+		assert refetched.author.get().equals(new Name("foo", "bar"));
+		assert refetched.tags.get().equals(Arrays.asList("a", "b"));
+		assert refetched.count.get() == 6;
+	}
+
+	/** */
+	@Test
+	public void testNulls() throws Exception
+	{
+		HasLazy hl = this.makeHasLazy();
+		hl.body = null;
+		hl.author = new Lazy<Name>();
+
+		HasLazy fetched = this.putAndGet(hl);
+		assert fetched.body.get() == null;
+		assert fetched.author.get() == null;
+	}
+
+	/** */
+	@Test
+	public void testEmbeddedLazyNotAllowed() throws Exception
+	{
+		try
+		{
+			this.fact.register(EmbeddedLazy.class);
+			assert false;
+		}
+		catch (IllegalStateException ex) {}
+	}
+}
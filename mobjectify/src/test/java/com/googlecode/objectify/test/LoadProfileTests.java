@@ -0,0 +1,158 @@
+package com.googlecode.objectify.test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Embedded;
+import javax.persistence.Id;
+import javax.persistence.PostLoad;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadProfile;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyOpts;
+import com.googlecode.objectify.annotation.Cached;
+import com.googlecode.objectify.test.entity.Name;
+
+/**
+ * Tests of partial loading with a {@code LoadProfile}
+ */
+public class LoadProfileTests extends TestBase
+{
+	/** */
+	@Cached
+	public static class Wide
+	{
+		@Id Long id;
+		String title;
+		String body;
+		int count;
+		@Embedded Name author;
+		@Embedded Name[] editors;
+		boolean postLoaded;
+
+		@PostLoad void postLoad() { this.postLoaded = true; }
+	}
+
+	/** */
+	@BeforeMethod
+	public void setUp()
+	{
+		super.setUp();
+
+		this.fact.register(Wide.class);
+	}
+
+	/** */
+	private Wide makeWide()
+	{
+		Wide wide = new Wide();
+		wide.title = "title";
+		wide.body = "body";
+		wide.count = 5;
+		wide.author = new Name("foo", "bar");
+		wide.editors = new Name[] { new Name("baz", "bop"), new Name("qux", "quux") };
+
+		return wide;
+	}
+
+	/** */
+	@Test
+	public void testOnlyNamedFieldsLoaded() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		Key<Wide> key = ofy.put(this.makeWide());
+
+		LoadProfile profile = new LoadProfile("title", "count");
+		Map<Key<Wide>, Wide> fetched = ofy.get(profile, Collections.singleton(key));
+		Wide wide = fetched.get(key);
+
+		assert wide.id.equals(key.getId());
+		assert wide.title.equals("title");
+		assert wide.count == 5;
+		assert wide.body == null;
+		assert wide.author == null;
+		assert wide.editors == null;
+		assert !wide.postLoaded;
+	}
+
+	/** */
+	@Test
+	public void testEmbeddedPaths() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		Key<Wide> key = ofy.put(this.makeWide());
+
+		Wide wide = ofy.get(new LoadProfile("author.lastName", "editors"), Collections.singleton(key)).get(key);
+
+		assert wide.title == null;
+		assert wide.author.firstName == null;
+		assert wide.author.lastName.equals("bar");
+		assert wide.editors.length == 2;
+		assert wide.editors[1].equals(new Name("qux", "quux"));
+	}
+
+	/** Partial objects must not leak into the session cache, or come out of it */
+	@Test
+	public void testBypassesSessionCache() throws Exception
+	{
+		Objectify ofy = this.fact.begin(new ObjectifyOpts().setSessionCache(true));
+		Key<Wide> key = ofy.put(this.makeWide());
+
+		Wide partial = ofy.get(new LoadProfile("title"), Collections.singleton(key)).get(key);
+		assert partial.body == null;
+
+		Wide whole = ofy.get(key);
+		assert whole != partial;
+		assert whole.body.equals("body");
+		assert whole.postLoaded;
+	}
+
+	/** */
+	@Test
+	public void testQuery() throws Exception
+	{
+		Objectify ofy = this.fact.begin(new ObjectifyOpts().setSessionCache(true));
+		ofy.put(this.makeWide());
+
+		List<Wide> found = ofy.query(Wide.class).profile(new LoadProfile("body")).list();
+		assert found.size() == 1;
+		assert found.get(0).body.equals("body");
+		assert found.get(0).title == null;
+		assert !found.get(0).postLoaded;
+
+		Wide whole = ofy.query(Wide.class).get();
+		assert whole.title.equals("title");
+	}
+
+	/** put() would overwrite the fields which were not loaded */
+	@Test
+	public void testPartialObjectsCannotBePut() throws Exception
+	{
+		Objectify ofy = this.fact.begin();
+		Key<Wide> key = ofy.put(this.makeWide());
+
+		Wide partial = ofy.get(new LoadProfile("title"), Collections.singleton(key)).get(key);
+		Wide queried = ofy.query(Wide.class).profile(new LoadProfile("title")).list().get(0);
+
+		for (Wide wide: new Wide[] { partial, queried })
+		{
+			try
+			{
+				ofy.put(wide);
+				assert false;
+			}
+			catch (IllegalArgumentException ex) {}
+		}
+
+		// Fully loaded objects are fine
+		Wide whole = ofy.get(key);
+		whole.title = "changed";
+		ofy.put(whole);
+		assert ofy.get(key).body.equals("body");
+	}
+}
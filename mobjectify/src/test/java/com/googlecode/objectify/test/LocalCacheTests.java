@@ -0,0 +1,181 @@
+package com.googlecode.objectify.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.persistence.Id;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.annotation.Cached;
+import com.googlecode.objectify.cache.LocalCache;
+
+/**
+ * Tests of the in-JVM cache in front of memcache
+ */
+public class LocalCacheTests extends TestBase
+{
+	/** */
+	@Cached(localExpirationSeconds=60)
+	public static class Setting
+	{
+		@Id Long id;
+		String value;
+
+		public Setting() {}
+		public Setting(long id, String value) { this.id = id; this.value = value; }
+	}
+
+	/** */
+	@Cached
+	public static class Plain
+	{
+		@Id Long id;
+		String value;
+
+		public Plain() {}
+		public Plain(long id, String value) { this.id = id; this.value = value; }
+	}
+
+	/** Wipes memcache, so anything still found came from the local cache */
+	private void clearMemcache()
+	{
+		MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE).clearAll();
+	}
+
+	/** */
+	@Test
+	public void testHitsSkipMemcache() throws Exception
+	{
+		LocalCache local = new LocalCache(100, 1000000);
+		this.fact.setLocalCache(local);
+		this.fact.register(Setting.class);
+		this.fact.register(Plain.class);
+
+		Objectify ofy = this.fact.begin();
+		Key<Setting> settingKey = ofy.put(new Setting(1, "on"));
+		Key<Plain> plainKey = ofy.put(new Plain(1, "on"));
+
+		// Change the rows behind the cache's back
+		this.clearMemcache();
+		DatastoreService raw = DatastoreServiceFactory.getDatastoreService();
+		for (com.google.appengine.api.datastore.Key key: Arrays.asList(settingKey.getRaw(), plainKey.getRaw()))
+		{
+			Entity ent = new Entity(key);
+			ent.setProperty("value", "changed");
+			raw.put(null, ent);	// other tests leave stale current transactions behind
+		}
+
+		assert ofy.get(settingKey).value.equals("on");
+		assert ofy.get(plainKey).value.equals("changed");
+		assert local.getHitCount() == 1;
+	}
+
+	/** */
+	@Test
+	public void testLocalWritesInvalidate() throws Exception
+	{
+		this.fact.setLocalCache(new LocalCache(100, 1000000));
+		this.fact.register(Setting.class);
+
+		Objectify ofy = this.fact.begin();
+		Key<Setting> key = ofy.put(new Setting(1, "on"));
+		assert ofy.get(key).value.equals("on");
+
+		ofy.put(new Setting(1, "off"));
+		this.clearMemcache();
+		assert ofy.get(key).value.equals("off");
+
+		ofy.delete(key);
+		assert ofy.find(key) == null;
+	}
+
+	/** */
+	@Test
+	public void testFactoryOverridesAnnotation() throws Exception
+	{
+		LocalCache local = new LocalCache(100, 1000000);
+		local.setExpirationSeconds("Setting", 0);
+		local.setExpirationSeconds("Plain", 60);
+		this.fact.setLocalCache(local);
+		this.fact.register(Setting.class);
+		this.fact.register(Plain.class);
+
+		Objectify ofy = this.fact.begin();
+		ofy.put(new Setting(1, "on"));
+		ofy.put(new Plain(1, "on"));
+
+		assert local.size() == 1;
+	}
+
+	/** */
+	@Test
+	public void testBoundsAndCopies() throws Exception
+	{
+		LocalCache local = new LocalCache(2, 1000000);
+
+		for (long i=1; i<=3; i++)
+		{
+			Entity ent = new Entity(KeyFactory.createKey("Thing", i));
+			ent.setProperty("value", "v" + i);
+			local.put(ent.getKey(), ent, 60);
+		}
+
+		assert local.size() == 2;
+		assert local.getEvictionCount() == 1;
+
+		com.google.appengine.api.datastore.Key three = KeyFactory.createKey("Thing", 3);
+		Map<com.google.appengine.api.datastore.Key, Entity> found = local.getAll(Arrays.asList(KeyFactory.createKey("Thing", 1), three));
+		assert found.size() == 1;
+		assert local.getMissCount() == 1;
+
+		// Changing what came out must not change what's cached
+		found.get(three).setProperty("value", "changed");
+		assert local.getAll(Collections.singleton(three)).get(three).getProperty("value").equals("v3");
+
+		LocalCache light = new LocalCache(100, 100);
+		light.put(three, found.get(three), 60);
+		assert light.size() == 0;
+	}
+
+	/** Many entries but little weight must not leave each segment too light to hold anything */
+	@Test
+	public void testSmallWeightIsNotSplit() throws Exception
+	{
+		LocalCache local = new LocalCache(100, 1000);
+
+		for (long i=1; i<=6; i++)
+		{
+			Entity ent = new Entity(KeyFactory.createKey("Thing", i));
+			ent.setProperty("value", "v" + i);
+			local.put(ent.getKey(), ent, 60);
+		}
+
+		assert local.size() == 6;
+		assert local.getEvictionCount() == 0;
+	}
+
+	/** */
+	@Test
+	public void testExpiration() throws Exception
+	{
+		LocalCache local = new LocalCache(100, 1000000);
+		com.google.appengine.api.datastore.Key key = KeyFactory.createKey("Thing", 1);
+		local.put(key, null, 1);
+
+		Map<com.google.appengine.api.datastore.Key, Entity> found = local.getAll(Collections.singleton(key));
+		assert found.containsKey(key) && found.get(key) == null;
+
+		Thread.sleep(1100);
+		assert local.getAll(Collections.singleton(key)).isEmpty();
+	}
+}
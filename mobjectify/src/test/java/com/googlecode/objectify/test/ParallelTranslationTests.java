@@ -0,0 +1,196 @@
+package com.googlecode.objectify.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.persistence.Id;
+import javax.persistence.PostLoad;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyOpts;
+import com.googlecode.objectify.annotation.Cached;
+
+/**
+ * Tests of translating large batches on several threads
+ */
+public class ParallelTranslationTests extends TestBase
+{
+	/** */
+	static final int COUNT = 500;
+
+	/** */
+	@Cached
+	public static class Numbered
+	{
+		@Id Long id;
+		int number;
+		String loadedBy;
+
+		@PostLoad void postLoad()
+		{
+			if (this.number < 0)
+				throw new IllegalStateException("negative");
+
+			this.loadedBy = Thread.currentThread().getName();
+		}
+	}
+
+	/** */
+	ExecutorService executor;
+
+	/** */
+	List<Key<Numbered>> keys;
+
+	/** */
+	@BeforeMethod
+	public void setUp()
+	{
+		super.setUp();
+
+		this.fact.register(Numbered.class);
+		this.executor = Executors.newFixedThreadPool(4);
+
+		List<Numbered> things = new ArrayList<Numbered>();
+		for (int i=0; i<COUNT; i++)
+		{
+			Numbered num = new Numbered();
+			num.number = i;
+			things.add(num);
+		}
+
+		this.keys = new ArrayList<Key<Numbered>>(this.fact.begin().put(things).keySet());
+	}
+
+	/** */
+	@AfterMethod
+	public void tearDown()
+	{
+		this.executor.shutdownNow();
+		super.tearDown();
+	}
+
+	/** */
+	private Objectify beginParallel(Executor exec)
+	{
+		return this.fact.begin(new ObjectifyOpts().setTranslationExecutor(exec).setTranslationThreshold(100));
+	}
+
+	/** */
+	@Test
+	public void testGetPreservesOrder() throws Exception
+	{
+		List<Key<Numbered>> shuffled = new ArrayList<Key<Numbered>>(this.keys);
+		Collections.shuffle(shuffled, new Random(1234));
+
+		Map<Key<Numbered>, Numbered> fetched = this.beginParallel(this.executor).get(shuffled);
+		assert fetched.size() == COUNT;
+
+		// @PostLoad methods may use the Objectify, so they stay on its thread
+		String me = Thread.currentThread().getName();
+		Iterator<Key<Numbered>> keyIt = shuffled.iterator();
+		for (Map.Entry<Key<Numbered>, Numbered> entry: fetched.entrySet())
+		{
+			Key<Numbered> key = keyIt.next();
+			assert entry.getKey().equals(key);
+			assert entry.getValue().id.equals(key.getId());
+			assert entry.getValue().loadedBy.equals(me);
+		}
+	}
+
+	/** */
+	@Test
+	public void testPutPreservesOrder() throws Exception
+	{
+		List<Numbered> things = new ArrayList<Numbered>();
+		for (int i=0; i<COUNT; i++)
+		{
+			Numbered num = new Numbered();
+			num.number = COUNT + i;
+			things.add(num);
+		}
+
+		Objectify ofy = this.fact.begin(new ObjectifyOpts().setTranslationExecutor(this.executor).setPutTranslationThreshold(100));
+		Map<Key<Numbered>, Numbered> saved = ofy.put(things);
+		assert saved.size() == COUNT;
+
+		Iterator<Numbered> thingIt = things.iterator();
+		for (Map.Entry<Key<Numbered>, Numbered> entry: saved.entrySet())
+		{
+			Numbered num = thingIt.next();
+			assert entry.getValue() == num;
+			assert entry.getKey().getId() == num.id;
+		}
+
+		Map<Key<Numbered>, Numbered> fetched = this.fact.begin().get(saved.keySet());
+		for (Map.Entry<Key<Numbered>, Numbered> entry: fetched.entrySet())
+			assert entry.getValue().number == saved.get(entry.getKey()).number;
+	}
+
+	/** */
+	@Test
+	public void testQueryList() throws Exception
+	{
+		List<Numbered> found = this.beginParallel(this.executor).query(Numbered.class).order("number").list();
+		assert found.size() == COUNT;
+
+		String me = Thread.currentThread().getName();
+		for (int i=0; i<COUNT; i++)
+		{
+			assert found.get(i).number == i;
+			assert found.get(i).loadedBy.equals(me);
+		}
+	}
+
+	/** The calling thread must finish the work if the executor never gets to it */
+	@Test
+	public void testUselessExecutor() throws Exception
+	{
+		Executor useless = new Executor() {
+			@Override
+			public void execute(Runnable command) {}
+		};
+
+		Map<Key<Numbered>, Numbered> fetched = this.beginParallel(useless).get(this.keys);
+		assert fetched.size() == COUNT;
+
+		String me = Thread.currentThread().getName();
+		for (Numbered num: fetched.values())
+			assert num.loadedBy.equals(me);
+	}
+
+	/** */
+	@Test
+	public void testExceptionPropagates() throws Exception
+	{
+		Numbered bad = new Numbered();
+		bad.number = -1;
+		List<Key<Numbered>> withBad = new ArrayList<Key<Numbered>>(this.keys);
+		withBad.add(COUNT / 2, this.fact.begin().put(bad));
+
+		try
+		{
+			this.beginParallel(this.executor).get(withBad);
+			assert false;
+		}
+		catch (RuntimeException ex)
+		{
+			Throwable cause = ex;
+			while (!(cause instanceof IllegalStateException) && cause.getCause() != null)
+				cause = cause.getCause();
+
+			assert cause.getMessage().equals("negative");
+		}
+	}
+}
@@ -1,11 +1,19 @@
 package com.googlecode.objectify.test;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.persistence.Embedded;
+import javax.persistence.Entity;
 import javax.persistence.Id;
 
 import org.testng.annotations.Test;
 
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.Cached;
+import com.googlecode.objectify.annotation.Subclass;
+import com.googlecode.objectify.impl.PolymorphicEntityMetadata;
 
 /**
  * Basic tests for registering entities
@@ -52,6 +60,31 @@ public class RegisterTests extends TestBase
 
     }
 
+	@Entity
+	public static class Base
+	{
+		@Id
+		Long id;
+	}
+
+	@Subclass
+	public static class Derived extends Base
+	{
+		String extra;
+	}
+
+	@Subclass
+	public static class Middle extends Base
+	{
+	}
+
+	/** Fails to register, after Middle has been added to the hierarchy */
+	@Subclass
+	public static class BrokenLeaf extends Middle
+	{
+		public BrokenLeaf(String unusable) {}
+	}
+
 	@Test
 	public void testNoArgConstructor()
 	{
@@ -60,6 +93,89 @@ public class RegisterTests extends TestBase
 		assertRegisterFails(HasEmbedded.class, IllegalStateException.class);
 	}
 
+	/** A failed registration must not leave anything behind */
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void testFailedRegistrationNotVisible()
+	{
+		assertRegisterFails(HasEmbedded.class, IllegalStateException.class);
+		this.fact.getMetadata(HasEmbedded.class);
+	}
+
+	/** The hierarchy in use must not change when a subclass fails to register */
+	@Test
+	public void testFailedSubclassNotVisible() throws Exception
+	{
+		assertRegisterSucceeds(Base.class);
+		assertRegisterSucceeds(Derived.class);
+		assertRegisterFails(BrokenLeaf.class, IllegalStateException.class);
+
+		com.google.appengine.api.datastore.Entity ent = new com.google.appengine.api.datastore.Entity("Base");
+		ent.setUnindexedProperty(PolymorphicEntityMetadata.DISCRIMINATOR_PROPERTY, "Middle");
+		com.google.appengine.api.datastore.Key rawKey = DatastoreServiceFactory.getDatastoreService().put(null, ent);
+
+		try
+		{
+			this.fact.begin().get(new Key<Base>(Base.class, rawKey.getId()));
+			assert false;
+		}
+		catch (RuntimeException ex)
+		{
+			Throwable cause = ex;
+			while (!(cause instanceof IllegalStateException) && cause.getCause() != null)
+				cause = cause.getCause();
+
+			assert cause.getMessage().contains("'Middle'") : cause;
+		}
+
+		Derived derived = new Derived();
+		derived.extra = "extra";
+		Key<Derived> key = this.fact.begin().put(derived);
+		assert this.fact.begin().get(key).extra.equals("extra");
+	}
+
+	/** Readers on other threads must always see complete registrations */
+	@Test
+	public void testRegisterWhileInUse() throws Exception
+	{
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Throwable> problem = new AtomicReference<Throwable>();
+
+		Thread reader = new Thread() {
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (!stop.get())
+					{
+						if (fact.getMetadata("Trivial") == null)
+							throw new IllegalStateException("Trivial went missing");
+
+						// Once the subclass is visible, so is its hierarchy
+						try
+						{
+							if (fact.getMetadata(Derived.class).getKind() == null)
+								throw new IllegalStateException("No kind");
+						}
+						catch (IllegalArgumentException ex) {}	// not registered yet
+					}
+				}
+				catch (Throwable ex) { problem.set(ex); }
+			}
+		};
+		reader.start();
+
+		assertRegisterSucceeds(NonPublicConstructor.class);
+		assertRegisterSucceeds(Base.class);
+		assertRegisterSucceeds(Derived.class);
+
+		stop.set(true);
+		reader.join();
+
+		assert problem.get() == null : problem.get();
+		assert this.fact.getMetadata("Base").getKind().equals("Base");
+	}
+
 	private void assertRegisterSucceeds(Class<?> entity)
 	{
 		try
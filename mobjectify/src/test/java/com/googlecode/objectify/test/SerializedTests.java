@@ -1,7 +1,16 @@
 package com.googlecode.objectify.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.persistence.Embedded;
 import javax.persistence.Id;
@@ -9,8 +18,14 @@ import javax.persistence.Id;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.Cached;
 import com.googlecode.objectify.annotation.Serialized;
+import com.googlecode.objectify.impl.BlobCodec;
+import com.googlecode.objectify.serializer.CompactSerializer;
+import com.googlecode.objectify.serializer.JavaSerializer;
 import com.googlecode.objectify.test.entity.Name;
 
 /**
@@ -37,6 +52,20 @@ public class SerializedTests extends TestBase
 		@Embedded public EmbeddedSerialized[] hard;
 	}
 
+	@Cached
+	public static class CompactStuff
+	{
+		@Id public Long id;
+		
+		@Serialized(CompactSerializer.class) public Map<String, Object> compact;
+		
+		@Serialized(value=CompactSerializer.class, zip=true) public List<Object> zipped;
+		
+		@Serialized(zip=true) public Name javaZipped;
+		
+		@Serialized public Object plain;
+	}
+
 	/**
 	 */
 	@BeforeMethod
@@ -45,6 +74,7 @@ public class SerializedTests extends TestBase
 		super.setUp();
 		
 		this.fact.register(SerializedStuff.class);
+		this.fact.register(CompactStuff.class);
 	}
 	
 	@Test
@@ -71,4 +101,143 @@ public class SerializedTests extends TestBase
 		assert fetched.hard[1] == null;
 		assert Arrays.equals(fetched.hard[2].longs, ss.hard[2].longs);
 	}
+	
+	/** */
+	private CompactStuff makeCompactStuff()
+	{
+		CompactStuff cs = new CompactStuff();
+		
+		cs.compact = new LinkedHashMap<String, Object>();
+		cs.compact.put("string", "foo");
+		cs.compact.put("long", -123456789012L);
+		cs.compact.put("int", 42);
+		cs.compact.put("double", 1.5);
+		cs.compact.put("bool", true);
+		cs.compact.put("date", new Date(12345));
+		cs.compact.put("bytes", new byte[] { 1, 2, 3 });
+		cs.compact.put("name", new Name("foo", "bar"));	// falls back to java serialization
+		cs.compact.put("set", new HashSet<String>(Arrays.asList("a", "b")));
+		cs.compact.put("null", null);
+		
+		cs.zipped = new ArrayList<Object>();
+		for (int i=0; i<1000; i++)
+			cs.zipped.add("repetitive " + (i % 10));
+		
+		cs.javaZipped = new Name("baz", "bop");
+		cs.plain = new ArrayList<String>(Arrays.asList("x", "y"));
+		
+		return cs;
+	}
+	
+	/** */
+	private void assertCompactStuff(CompactStuff expected, CompactStuff fetched)
+	{
+		assert fetched.compact.keySet().equals(expected.compact.keySet());
+		for (Map.Entry<String, Object> entry: expected.compact.entrySet())
+		{
+			Object value = fetched.compact.get(entry.getKey());
+			if (entry.getValue() instanceof byte[])
+				assert Arrays.equals((byte[])entry.getValue(), (byte[])value);
+			else if (entry.getValue() == null)
+				assert value == null;
+			else
+				assert entry.getValue().equals(value) : entry.getKey();
+		}
+		
+		assert fetched.zipped.equals(expected.zipped);
+		assert fetched.javaZipped.equals(expected.javaZipped);
+		assert fetched.plain.equals(expected.plain);
+	}
+	
+	/** */
+	@Test
+	public void testSerializers() throws Exception
+	{
+		CompactStuff cs = this.makeCompactStuff();
+		CompactStuff fetched = this.putAndGet(cs);
+		
+		this.assertCompactStuff(cs, fetched);
+		
+		Entity ent = this.fact.begin().getDatastore().get(this.fact.getRawKey(cs));
+		byte[] compact = ((Blob)ent.getProperty("compact")).getBytes();
+		byte[] zipped = ((Blob)ent.getProperty("zipped")).getBytes();
+		byte[] javaZipped = ((Blob)ent.getProperty("javaZipped")).getBytes();
+		byte[] plain = ((Blob)ent.getProperty("plain")).getBytes();
+		
+		assert (compact[0] & 0xFF) == BlobCodec.HEADER_PLAIN;
+		assert (zipped[0] & 0xFF) == BlobCodec.HEADER_DEFLATED;
+		assert zipped.length < 1000;
+		assert (javaZipped[0] & 0xFF) == BlobCodec.HEADER_DEFLATED;
+		
+		// Unzipped java serialization must be stored the way it always was
+		assert (plain[0] & 0xFF) == 0xAC && (plain[1] & 0xFF) == 0xED;
+	}
+	
+	/**
+	 * Data written with java serialization must still be readable after switching the
+	 * factory serializer, and gets migrated when re-saved.
+	 */
+	@Test
+	public void testChangeFactorySerializer() throws Exception
+	{
+		CompactStuff cs = this.makeCompactStuff();
+		Key<CompactStuff> key = this.fact.begin().put(cs);
+		
+		this.fact.getConversions().setSerializer(new CompactSerializer());
+		
+		CompactStuff fetched = this.fact.begin().get(key);
+		this.assertCompactStuff(cs, fetched);
+		
+		this.fact.begin().put(fetched);
+		
+		Entity ent = this.fact.begin().getDatastore().get(this.fact.getRawKey(key));
+		byte[] plain = ((Blob)ent.getProperty("plain")).getBytes();
+		assert (plain[0] & 0xFF) == BlobCodec.HEADER_PLAIN;
+		
+		fetched = this.fact.begin().get(key);
+		this.assertCompactStuff(cs, fetched);
+	}
+	
+	/**
+	 * Data written by some other serializer must be readable after switching back to
+	 * java serialization.
+	 */
+	@Test
+	public void testChangeFactorySerializerBack() throws Exception
+	{
+		this.fact.getConversions().setSerializer(new CompactSerializer());
+		
+		CompactStuff cs = this.makeCompactStuff();
+		Key<CompactStuff> key = this.fact.begin().put(cs);
+		
+		Entity ent = this.fact.begin().getDatastore().get(this.fact.getRawKey(key));
+		byte[] plain = ((Blob)ent.getProperty("plain")).getBytes();
+		assert (plain[0] & 0xFF) == BlobCodec.HEADER_PLAIN;
+		assert (plain[1] & 0xFF) == BlobCodec.ID_COMPACT;
+		
+		this.fact.getConversions().setSerializer(new JavaSerializer());
+		
+		CompactStuff fetched = this.fact.begin().get(key);
+		this.assertCompactStuff(cs, fetched);
+	}
+	
+	/**
+	 * A corrupt length must be reported as an IOException, not by running out of memory.
+	 */
+	@Test
+	public void testCorruptCompactLength() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new CompactSerializer().serialize(new byte[] { 1, 2, 3 }, out);
+		byte[] bytes = out.toByteArray();
+		
+		// version, tag, then a length claiming about 2GB
+		byte[] corrupt = new byte[] { bytes[0], bytes[1], (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07, 1, 2, 3 };
+		try
+		{
+			new CompactSerializer().deserialize(new ByteArrayInputStream(corrupt));
+			assert false;
+		}
+		catch (IOException ex) {}
+	}
 }
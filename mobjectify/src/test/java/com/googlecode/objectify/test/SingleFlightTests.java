@@ -0,0 +1,335 @@
+package com.googlecode.objectify.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.ReadPolicy.Consistency;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.ObjectifyOpts;
+import com.googlecode.objectify.Result;
+import com.googlecode.objectify.cache.ListenableHook;
+import com.googlecode.objectify.test.entity.Trivial;
+
+/**
+ * Tests that concurrent cache misses for the same key share one datastore lookup
+ */
+public class SingleFlightTests extends TestBase
+{
+	/** Counts the batch gets, and keeps them in flight until somebody waits for them */
+	static class SlowGets implements InvocationHandler
+	{
+		AsyncDatastoreService base = DatastoreServiceFactory.getAsyncDatastoreService();
+		int gets;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			Object result;
+			try
+			{
+				result = method.invoke(this.base, args);
+			}
+			catch (InvocationTargetException ex)
+			{
+				throw ex.getCause();
+			}
+
+			if (method.getName().equals("get") && args[args.length - 1] instanceof Iterable)
+			{
+				this.gets++;
+				return new Unfinished<Object>((Future<?>)result);
+			}
+
+			return result;
+		}
+	}
+
+	/** */
+	static class Unfinished<T> implements Future<T>
+	{
+		Future<? extends T> base;
+		boolean waited;
+
+		Unfinished(Future<? extends T> base)
+		{
+			this.base = base;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) { return this.base.cancel(mayInterruptIfRunning); }
+
+		@Override
+		public boolean isCancelled() { return this.base.isCancelled(); }
+
+		@Override
+		public boolean isDone() { return this.waited && this.base.isDone(); }
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException
+		{
+			this.waited = true;
+			return this.base.get();
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			this.waited = true;
+			return this.base.get(timeout, unit);
+		}
+	}
+
+	/** Counts the batch gets from any thread, and holds each one until released */
+	static class HeldGets implements InvocationHandler
+	{
+		AsyncDatastoreService base = DatastoreServiceFactory.getAsyncDatastoreService();
+		AtomicInteger gets = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			Object result;
+			try
+			{
+				result = method.invoke(this.base, args);
+			}
+			catch (InvocationTargetException ex)
+			{
+				throw ex.getCause();
+			}
+
+			if (method.getName().equals("get") && args[args.length - 1] instanceof Iterable)
+			{
+				this.gets.incrementAndGet();
+				return new Held<Object>((Future<?>)result, this.release);
+			}
+
+			return result;
+		}
+	}
+
+	/** */
+	static class Held<T> extends Unfinished<T>
+	{
+		CountDownLatch release;
+
+		Held(Future<? extends T> base, CountDownLatch release)
+		{
+			super(base);
+			this.release = release;
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException
+		{
+			this.release.await();
+			return super.get();
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			this.release.await();
+			return super.get(timeout, unit);
+		}
+	}
+
+	/** */
+	@Test
+	public void testThreadsShareLookup() throws Exception
+	{
+		final HeldGets gets = new HeldGets();
+		final ObjectifyFactory fact = this.rawDatastoreFactory(gets);
+		final Key<Trivial> key = this.putRaw(1, "foo");
+
+		final int threads = 8;
+		final Environment env = ApiProxy.getCurrentEnvironment();
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+
+		List<Thread> running = new ArrayList<Thread>();
+		for (int i=0; i<threads; i++)
+		{
+			Thread thread = new Thread() {
+				@Override
+				public void run()
+				{
+					ApiProxy.setEnvironmentForCurrentThread(env);
+					try
+					{
+						start.await();
+						results.add(fact.begin().get(key));
+					}
+					catch (Throwable ex)
+					{
+						results.add(ex);
+					}
+					finally
+					{
+						ListenableHook.completeAllPendingFutures();
+					}
+				}
+			};
+			thread.start();
+			running.add(thread);
+		}
+
+		start.countDown();
+
+		// Everyone but the owner joins before the owner's lookup is let go
+		long deadline = System.currentTimeMillis() + 10000;
+		while (fact.getSingleFlight().getCoalescedCount() < threads - 1 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+
+		gets.release.countDown();
+		for (Thread thread: running)
+			thread.join(10000);
+
+		assert results.size() == threads : results;
+		for (Object result: results)
+			assert result instanceof Trivial && ((Trivial)result).getSomeString().equals("foo") : result;
+
+		assert gets.gets.get() == 1;
+		assert fact.getSingleFlight().getCoalescedCount() == threads - 1;
+		assert fact.getSingleFlight().size() == 0;
+	}
+
+	/** */
+	@Test
+	public void testConcurrentMissesShareLookup() throws Exception
+	{
+		SlowGets gets = new SlowGets();
+		ObjectifyFactory fact = this.rawDatastoreFactory(gets);
+		Key<Trivial> key = this.putRaw(1, "foo");
+		Key<Trivial> other = this.putRaw(2, "bar");
+
+		Result<Trivial> first = fact.begin().async().get(key);
+		Result<Trivial> second = fact.begin().async().get(key);
+		Result<Trivial> third = fact.begin().async().get(other);
+
+		assert first.get().getSomeString().equals("foo");
+		assert second.get().getSomeString().equals("foo");
+		assert third.get().getSomeString().equals("bar");
+
+		assert gets.gets == 2;
+		assert fact.getSingleFlight().getCoalescedCount() == 1;
+		assert fact.getSingleFlight().size() == 0;
+	}
+
+	/** */
+	@Test
+	public void testFinishedLookupsAreNotShared() throws Exception
+	{
+		SlowGets gets = new SlowGets();
+		ObjectifyFactory fact = this.rawDatastoreFactory(gets);
+		Key<Trivial> key = this.putRaw(1, "foo");
+
+		assert fact.begin().get(key).getSomeString().equals("foo");
+
+		// Behind the cache's back
+		this.putRaw(1, "bar");
+		this.memcache().clearAll();
+
+		assert fact.begin().get(key).getSomeString().equals("bar");
+		assert gets.gets == 2;
+		assert fact.getSingleFlight().getCoalescedCount() == 0;
+	}
+
+	/** */
+	@Test
+	public void testReadAfterWriteDoesNotJoinOlderLookup() throws Exception
+	{
+		SlowGets gets = new SlowGets();
+		ObjectifyFactory fact = this.rawDatastoreFactory(gets);
+		Key<Trivial> key = this.putRaw(1, "foo");
+
+		Result<Trivial> before = fact.begin().async().get(key);
+
+		Trivial triv = new Trivial(1L, "bar", 6);
+		fact.begin().put(triv);
+
+		Result<Trivial> after = fact.begin().async().get(key);
+
+		assert after.get().getSomeString().equals("bar");
+		before.get();
+
+		assert gets.gets == 2;
+		assert fact.getSingleFlight().getCoalescedCount() == 0;
+		assert fact.getSingleFlight().size() == 0;
+	}
+
+	/** */
+	@Test
+	public void testConsistenciesAreNotShared() throws Exception
+	{
+		SlowGets gets = new SlowGets();
+		ObjectifyFactory fact = this.rawDatastoreFactory(gets);
+		Key<Trivial> key = this.putRaw(1, "foo");
+
+		Result<Trivial> eventual = fact.begin(new ObjectifyOpts().setConsistency(Consistency.EVENTUAL)).async().get(key);
+		Result<Trivial> strong = fact.begin().async().get(key);
+
+		assert eventual.get().getSomeString().equals("foo");
+		assert strong.get().getSomeString().equals("foo");
+
+		assert gets.gets == 2;
+		assert fact.getSingleFlight().getCoalescedCount() == 0;
+	}
+
+	/** */
+	@Test
+	public void testJoinersGetTheirOwnEntities() throws Exception
+	{
+		SlowGets gets = new SlowGets();
+		ObjectifyFactory fact = this.rawDatastoreFactory(gets);
+		Key<Trivial> key = this.putRaw(1, "foo");
+		AsyncDatastoreService ads = fact.getAsyncDatastoreService(new ObjectifyOpts());
+
+		Future<Entity> first = ads.get(fact.getRawKey(key));
+		Future<Entity> second = ads.get(fact.getRawKey(key));
+
+		Entity firstEnt = first.get();
+		Entity secondEnt = second.get();
+
+		assert fact.getSingleFlight().getCoalescedCount() == 1;
+		assert firstEnt != secondEnt;
+		assert firstEnt.equals(secondEnt);
+		assert "foo".equals(secondEnt.getProperty("someString"));
+	}
+
+	/** */
+	@Test
+	public void testDisabled() throws Exception
+	{
+		SlowGets gets = new SlowGets();
+		ObjectifyFactory fact = this.rawDatastoreFactory(gets);
+		fact.setSingleFlight(null);
+		Key<Trivial> key = this.putRaw(1, "foo");
+
+		Result<Trivial> first = fact.begin().async().get(key);
+		Result<Trivial> second = fact.begin().async().get(key);
+
+		assert first.get().getSomeString().equals("foo");
+		assert second.get().getSomeString().equals("foo");
+		assert gets.gets == 2;
+	}
+}
@@ -5,13 +5,21 @@
 
 package com.googlecode.objectify.test;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
 import java.util.logging.Logger;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceConfig;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
@@ -20,6 +28,7 @@ import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.ObjectifyOpts;
+import com.googlecode.objectify.cache.AsyncMemcache;
 import com.googlecode.objectify.cache.ListenableHook;
 import com.googlecode.objectify.test.entity.Apple;
 import com.googlecode.objectify.test.entity.Banana;
@@ -119,4 +128,49 @@ public class TestBase
 
 		return ofy.find(key);
 	}
+	
+	/** Puts a Trivial straight into the datastore, behind the cache's back */
+	protected Key<Trivial> putRaw(long id, String someString)
+	{
+		Entity ent = new Entity(KeyFactory.createKey(Trivial.class.getSimpleName(), id));
+		ent.setProperty("someString", someString);
+		ent.setProperty("someNumber", 5L);
+		DatastoreServiceFactory.getDatastoreService().put(null, ent);
+		return new Key<Trivial>(ent.getKey());
+	}
+	
+	/** @return the memcache the global cache keeps its entities in */
+	protected MemcacheService memcache()
+	{
+		return MemcacheServiceFactory.getMemcacheService(ObjectifyFactory.MEMCACHE_NAMESPACE);
+	}
+	
+	/** @return a factory for Trivial whose global cache talks to the given memcache */
+	protected ObjectifyFactory memcacheFactory(final AsyncMemcache memcache)
+	{
+		ObjectifyFactory factory = new ObjectifyFactory() {
+			@Override
+			protected AsyncMemcache getAsyncMemcache()
+			{
+				return memcache;
+			}
+		};
+		factory.register(Trivial.class);
+		return factory;
+	}
+	
+	/** @return a factory for Trivial whose raw datastore calls all go to the handler */
+	protected ObjectifyFactory rawDatastoreFactory(final InvocationHandler datastore)
+	{
+		ObjectifyFactory factory = new ObjectifyFactory() {
+			@Override
+			protected AsyncDatastoreService getRawAsyncDatastoreService(DatastoreServiceConfig cfg)
+			{
+				return (AsyncDatastoreService)Proxy.newProxyInstance(
+						AsyncDatastoreService.class.getClassLoader(), new Class<?>[] { AsyncDatastoreService.class }, datastore);
+			}
+		};
+		factory.register(Trivial.class);
+		return factory;
+	}
 }
@@ -0,0 +1,82 @@
+package com.googlecode.objectify.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.TypedKeyFactory;
+import com.googlecode.objectify.annotation.Subclass;
+import com.googlecode.objectify.test.entity.Child;
+import com.googlecode.objectify.test.entity.Trivial;
+
+/**
+ * Tests of kind resolution and the TypedKeyFactory
+ */
+public class TypedKeyFactoryTests extends TestBase
+{
+	/** A @Subclass with no @Entity anywhere above it */
+	@Subclass
+	public static class Orphan
+	{
+	}
+
+	/** */
+	@Test
+	public void testSameKeysAsConstructors() throws Exception
+	{
+		TypedKeyFactory<Trivial> trivials = TypedKeyFactory.of(Trivial.class);
+		assert trivials.getKind().equals("Trivial");
+		assert trivials.create(5).equals(new Key<Trivial>(Trivial.class, 5));
+		assert trivials.create("foo").equals(new Key<Trivial>(Trivial.class, "foo"));
+
+		// Subclasses share the kind of their @Entity
+		assert TypedKeyFactory.of(PolymorphicAAATests.Dog.class).getKind().equals("Animal");
+	}
+
+	/** */
+	@Test
+	public void testParent() throws Exception
+	{
+		Key<Trivial> parent = new Key<Trivial>(Trivial.class, 1);
+		TypedKeyFactory<Child> children = TypedKeyFactory.of(parent, Child.class);
+
+		Key<Child> key = children.create(2);
+		assert key.equals(new Key<Child>(parent, Child.class, 2));
+		assert (Object)key.getParent() == parent;
+	}
+
+	/** */
+	@Test
+	public void testCreateAll() throws Exception
+	{
+		List<Key<Trivial>> keys = TypedKeyFactory.<Trivial>of(Trivial.class).createAll(Arrays.<Object>asList(3L, "three", 1L));
+		assert keys.size() == 3;
+		assert keys.get(0).getId() == 3;
+		assert keys.get(1).getName().equals("three");
+		assert keys.get(2).getId() == 1;
+
+		try
+		{
+			TypedKeyFactory.<Trivial>of(Trivial.class).createAll(Arrays.<Object>asList(1));
+			assert false;
+		}
+		catch (IllegalArgumentException ex) {}
+	}
+
+	/** Failures must not be cached as answers */
+	@Test
+	public void testBadKindAlwaysFails() throws Exception
+	{
+		for (int i=0; i<2; i++)
+		{
+			try
+			{
+				Key.getKind(Orphan.class);
+				assert false;
+			}
+			catch (IllegalArgumentException ex) {}
+		}
+	}
+}
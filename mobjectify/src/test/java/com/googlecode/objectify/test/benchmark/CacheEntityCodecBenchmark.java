@@ -0,0 +1,148 @@
+package com.googlecode.objectify.test.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Text;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googlecode.objectify.cache.CacheEntityCodec;
+
+/**
+ * <p>Compares java serialization of Entity objects (what the cache used to store in
+ * memcache) with the CacheEntityCodec, on batches of 100 typical entities.  Reports the
+ * time to encode and decode a batch and the average bytes per entity.  This is not a unit
+ * test (the name keeps surefire away from it); run main() by hand with the test
+ * classpath.</p>
+ *
+ * <p>The numbers are only meaningful relative to each other on the same JVM.</p>
+ */
+public class CacheEntityCodecBenchmark
+{
+	/** */
+	static final int BATCH = 100;
+	static final int WARMUP = 200;
+	static final int ITERATIONS = 500;
+
+	/** */
+	public static void main(String[] args) throws Exception
+	{
+		LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+		helper.setUp();
+		try
+		{
+			List<Entity> entities = makeEntities();
+			CacheEntityCodec codec = new CacheEntityCodec();
+
+			// Alternate so neither variant benefits from running last
+			for (int round=0; round<3; round++)
+			{
+				report("java serialization", null, entities);
+				report("CacheEntityCodec  ", codec, entities);
+			}
+		}
+		finally
+		{
+			helper.tearDown();
+		}
+	}
+
+	/** Something like a user record, with a parent and a few indexed fields */
+	static List<Entity> makeEntities()
+	{
+		List<Entity> entities = new ArrayList<Entity>(BATCH);
+		for (int i=0; i<BATCH; i++)
+		{
+			Key parent = KeyFactory.createKey("Account", "account-" + (i % 10));
+			Entity ent = new Entity(KeyFactory.createKey(parent, "Customer", 100000L + i));
+			ent.setProperty("name", "Customer Number " + i);
+			ent.setProperty("email", "customer" + i + "@example.com");
+			ent.setProperty("age", 20L + (i % 50));
+			ent.setProperty("active", i % 3 != 0);
+			ent.setProperty("created", new Date(1300000000000L + i));
+			ent.setProperty("tags", Arrays.asList("retail", "tier" + (i % 4)));
+			ent.setUnindexedProperty("notes", new Text("Prefers email contact; account opened at branch " + (i % 7)));
+			entities.add(ent);
+		}
+
+		return entities;
+	}
+
+	/** */
+	static void report(String label, CacheEntityCodec codec, List<Entity> entities) throws Exception
+	{
+		time(codec, entities, WARMUP);
+		long[] result = time(codec, entities, ITERATIONS);
+
+		System.out.println(label
+				+ "  encode: " + (result[0] / ITERATIONS / 1000) + " us/batch"
+				+ "  decode: " + (result[1] / ITERATIONS / 1000) + " us/batch"
+				+ "  average size: " + (result[2] / entities.size()) + " bytes");
+	}
+
+	/** @return the elapsed nanos for encoding and decoding, and the bytes of one batch */
+	static long[] time(CacheEntityCodec codec, List<Entity> entities, int iterations) throws Exception
+	{
+		long encoding = 0;
+		long decoding = 0;
+		long size = 0;
+		int sink = 0;
+
+		for (int i=0; i<iterations; i++)
+		{
+			long start = System.nanoTime();
+
+			List<byte[]> encoded = new ArrayList<byte[]>(entities.size());
+			for (Entity ent: entities)
+				encoded.add(codec == null ? serialize(ent) : codec.encode(ent));
+
+			long middle = System.nanoTime();
+
+			for (int j=0; j<encoded.size(); j++)
+			{
+				Entity ent = (codec == null) ? deserialize(encoded.get(j)) : codec.decode(entities.get(j).getKey(), encoded.get(j));
+				sink += ent.getProperties().size();
+			}
+
+			long end = System.nanoTime();
+
+			encoding += middle - start;
+			decoding += end - middle;
+
+			size = 0;
+			for (byte[] bytes: encoded)
+				size += bytes.length;
+		}
+
+		if (sink == 42)
+			System.out.println();
+
+		return new long[] { encoding, decoding, size };
+	}
+
+	/** */
+	static byte[] serialize(Entity ent) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(ent);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/** */
+	static Entity deserialize(byte[] bytes) throws Exception
+	{
+		return (Entity)new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+	}
+}
@@ -0,0 +1,125 @@
+package com.googlecode.objectify.test.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googlecode.objectify.cache.CacheKeyCodec;
+import com.googlecode.objectify.cache.KeyStringCacheKeyCodec;
+import com.googlecode.objectify.cache.PathCacheKeyCodec;
+
+/**
+ * <p>Compares memcache key codecs on batches of 1000 keys.  "Encode" is building the
+ * String keys for a batch; "decode" is getting back from String keys to datastore keys
+ * the way the cache does.  The old scheme parsed every hit with {@code stringToKey()},
+ * while the cache now looks hits up in the map it built while encoding.  This is not a
+ * unit test (the name keeps surefire away from it); run main() by hand with the test
+ * classpath.</p>
+ *
+ * <p>The numbers are only meaningful relative to each other on the same JVM.</p>
+ */
+public class CacheKeyCodecBenchmark
+{
+	/** */
+	static final int BATCH = 1000;
+	static final int WARMUP = 200;
+	static final int ITERATIONS = 500;
+
+	/** */
+	public static void main(String[] args)
+	{
+		LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+		helper.setUp();
+		try
+		{
+			List<Key> keys = makeKeys();
+
+			// Alternate so neither variant benefits from running last
+			for (int round=0; round<3; round++)
+			{
+				report("keyToString", new KeyStringCacheKeyCodec(), keys, true);
+				report("path       ", new PathCacheKeyCodec(), keys, false);
+			}
+		}
+		finally
+		{
+			helper.tearDown();
+		}
+	}
+
+	/** Half root entities with ids, half named children of a few parents */
+	static List<Key> makeKeys()
+	{
+		List<Key> keys = new ArrayList<Key>(BATCH);
+		for (int i=0; i<BATCH; i++)
+		{
+			if (i % 2 == 0)
+			{
+				keys.add(KeyFactory.createKey("Customer", 100000L + i));
+			}
+			else
+			{
+				Key parent = KeyFactory.createKey("Account", "account-" + (i % 10));
+				keys.add(KeyFactory.createKey(parent, "Transaction", "txn-" + i));
+			}
+		}
+
+		return keys;
+	}
+
+	/** */
+	static void report(String label, CacheKeyCodec codec, List<Key> keys, boolean parse)
+	{
+		time(codec, keys, parse, WARMUP);
+		long[] nanos = time(codec, keys, parse, ITERATIONS);
+
+		long chars = 0;
+		for (Key key: keys)
+			chars += codec.encode(key).length();
+
+		System.out.println(label
+				+ "  encode: " + (nanos[0] / ITERATIONS / 1000) + " us/batch"
+				+ "  decode: " + (nanos[1] / ITERATIONS / 1000) + " us/batch"
+				+ "  average length: " + (chars / keys.size()) + " chars");
+	}
+
+	/** @return the elapsed nanos for encoding and decoding */
+	static long[] time(CacheKeyCodec codec, List<Key> keys, boolean parse, int iterations)
+	{
+		long encoding = 0;
+		long decoding = 0;
+		int sink = 0;
+
+		for (int i=0; i<iterations; i++)
+		{
+			long start = System.nanoTime();
+
+			Map<String, Key> encoded = new HashMap<String, Key>(keys.size() * 2);
+			for (Key key: keys)
+				encoded.put(codec.encode(key), key);
+
+			long middle = System.nanoTime();
+
+			for (String string: encoded.keySet())
+			{
+				Key key = parse ? KeyFactory.stringToKey(string) : encoded.get(string);
+				sink += key.hashCode();
+			}
+
+			long end = System.nanoTime();
+
+			encoding += middle - start;
+			decoding += end - middle;
+		}
+
+		if (sink == 42)
+			System.out.println();
+
+		return new long[] { encoding, decoding };
+	}
+}
@@ -0,0 +1,107 @@
+package com.googlecode.objectify.test.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.impl.GeneratedMetadata;
+import com.googlecode.objectify.test.entity.Apple;
+import com.googlecode.objectify.test.entity.Banana;
+import com.googlecode.objectify.test.entity.Child;
+import com.googlecode.objectify.test.entity.Criminal;
+import com.googlecode.objectify.test.entity.Employee;
+import com.googlecode.objectify.test.entity.Fruit;
+import com.googlecode.objectify.test.entity.HasAlsoLoads;
+import com.googlecode.objectify.test.entity.HasArrays;
+import com.googlecode.objectify.test.entity.HasCollections;
+import com.googlecode.objectify.test.entity.NamedTrivial;
+import com.googlecode.objectify.test.entity.Town;
+import com.googlecode.objectify.test.entity.Trivial;
+import com.googlecode.objectify.test.entity.User;
+
+/**
+ * <p>Compares cold-start registration of the test entities with and without the companions
+ * written by {@code MetadataProcessor}.  Registration cost is dominated by one-time JVM work
+ * (class loading, reflection), so each measurement runs in a fresh JVM.  This is
+ * not a unit test (the name keeps surefire away from it); run main() by hand with the test
+ * classpath.</p>
+ *
+ * <p>The numbers are only meaningful relative to each other on the same machine.</p>
+ */
+public class RegistrationBenchmark
+{
+	/** */
+	static final int RUNS = 15;
+
+	/** */
+	static final Class<?>[] ENTITIES = {
+		Trivial.class, NamedTrivial.class, Employee.class, Town.class, Child.class,
+		Criminal.class, HasAlsoLoads.class, HasArrays.class, HasCollections.class, User.class,
+		Fruit.class, Apple.class, Banana.class
+	};
+
+	/**
+	 * With no arguments, runs the comparison.  With "child", registers everything once
+	 * and prints the elapsed nanos.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length > 0 && args[0].equals("child"))
+		{
+			// Load the factory machinery first; it costs the same either way
+			ObjectifyFactory fact = new ObjectifyFactory();
+
+			long start = System.nanoTime();
+			for (Class<?> clazz: ENTITIES)
+				fact.register(clazz);
+
+			System.out.println(System.nanoTime() - start);
+			return;
+		}
+
+		// Alternate so neither variant benefits from a warmer disk cache
+		long[] reflective = new long[RUNS];
+		long[] generated = new long[RUNS];
+		for (int i=0; i<RUNS; i++)
+		{
+			reflective[i] = runChild(false);
+			generated[i] = runChild(true);
+		}
+
+		report("reflective", reflective);
+		report("generated ", generated);
+	}
+
+	/** @return the nanos the child took to register everything */
+	static long runChild(boolean useGenerated) throws Exception
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java,
+				"-D" + GeneratedMetadata.USE_PROPERTY + "=" + useGenerated,
+				"-cp", System.getProperty("java.class.path"),
+				RegistrationBenchmark.class.getName(), "child");
+		builder.redirectErrorStream(true);
+
+		Process proc = builder.start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+		String last = null;
+		for (String line = reader.readLine(); line != null; line = reader.readLine())
+			last = line;
+
+		if (proc.waitFor() != 0)
+			throw new IllegalStateException("Child failed: " + last);
+
+		return Long.parseLong(last.trim());
+	}
+
+	/** */
+	static void report(String label, long[] nanos)
+	{
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+
+		System.out.println(label + "  median: " + (sorted[sorted.length / 2] / 1000) + " us   best: " + (sorted[0] / 1000) + " us");
+	}
+}
@@ -0,0 +1,152 @@
+package com.googlecode.objectify.test.benchmark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.impl.EntityMetadata;
+import com.googlecode.objectify.test.entity.Apple;
+import com.googlecode.objectify.test.entity.Banana;
+import com.googlecode.objectify.test.entity.Child;
+import com.googlecode.objectify.test.entity.Criminal;
+import com.googlecode.objectify.test.entity.Employee;
+import com.googlecode.objectify.test.entity.Fruit;
+import com.googlecode.objectify.test.entity.HasAlsoLoads;
+import com.googlecode.objectify.test.entity.HasArrays;
+import com.googlecode.objectify.test.entity.HasCollections;
+import com.googlecode.objectify.test.entity.NamedTrivial;
+import com.googlecode.objectify.test.entity.Town;
+import com.googlecode.objectify.test.entity.Trivial;
+import com.googlecode.objectify.test.entity.User;
+
+/**
+ * <p>Measures {@code ObjectifyFactory.getMetadata(String kind)} and {@code getMetadata(Class)}
+ * with several threads hammering the registry at once, against a synchronized map (the
+ * simplest thread-safe registry) as a baseline.  This is not a unit test (the name keeps
+ * surefire away from it); run main() by hand with the test classpath.</p>
+ *
+ * <p>The numbers are only meaningful relative to each other on the same JVM.</p>
+ */
+public class RegistryBenchmark
+{
+	/** */
+	static final long NANOS_PER_RUN = 1000L * 1000 * 1000;
+
+	/** */
+	static final Class<?>[] ENTITIES = {
+		Trivial.class, NamedTrivial.class, Employee.class, Town.class, Child.class,
+		Criminal.class, HasAlsoLoads.class, HasArrays.class, HasCollections.class, User.class,
+		Fruit.class, Apple.class, Banana.class
+	};
+
+	/** One kind of lookup */
+	interface Lookup
+	{
+		/** @return something, so the JIT can't drop the call */
+		Object lookup(int index);
+	}
+
+	/** */
+	public static void main(String[] args) throws Exception
+	{
+		final ObjectifyFactory fact = new ObjectifyFactory();
+		for (Class<?> clazz: ENTITIES)
+			fact.register(clazz);
+
+		final String[] kinds = new String[ENTITIES.length];
+		final Map<String, EntityMetadata<?>> synced = Collections.synchronizedMap(new HashMap<String, EntityMetadata<?>>());
+		for (int i=0; i<ENTITIES.length; i++)
+		{
+			kinds[i] = fact.getMetadata(ENTITIES[i]).getKind();
+			synced.put(kinds[i], fact.getMetadata(kinds[i]));
+		}
+
+		Lookup byKind = new Lookup() {
+			@Override
+			public Object lookup(int index) { return fact.getMetadata(kinds[index % kinds.length]); }
+		};
+
+		Lookup byClass = new Lookup() {
+			@Override
+			public Object lookup(int index) { return fact.getMetadata(ENTITIES[index % ENTITIES.length]); }
+		};
+
+		Lookup baseline = new Lookup() {
+			@Override
+			public Object lookup(int index) { return synced.get(kinds[index % kinds.length]); }
+		};
+
+		int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+		// The first pass is warmup
+		for (int pass=0; pass<2; pass++)
+		{
+			for (int threads=1; threads<=maxThreads; threads*=2)
+			{
+				if (pass == 0)
+				{
+					run(byKind, threads);
+					run(byClass, threads);
+					run(baseline, threads);
+				}
+				else
+				{
+					System.out.println(threads + " threads:"
+							+ "  kind " + run(byKind, threads) + " Mops/s"
+							+ "  class " + run(byClass, threads) + " Mops/s"
+							+ "  synchronized map " + run(baseline, threads) + " Mops/s");
+				}
+			}
+		}
+	}
+
+	/** @return millions of lookups per second across all threads */
+	static long run(final Lookup lookup, int threads) throws Exception
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicLong total = new AtomicLong();
+		final AtomicLong sink = new AtomicLong();
+
+		for (int t=0; t<threads; t++)
+		{
+			Thread thread = new Thread() {
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+						long deadline = System.nanoTime() + NANOS_PER_RUN;
+						long count = 0;
+						int hashes = 0;
+						while (System.nanoTime() < deadline)
+						{
+							for (int i=0; i<1000; i++)
+								hashes += System.identityHashCode(lookup.lookup(i));
+
+							count += 1000;
+						}
+
+						total.addAndGet(count);
+						sink.addAndGet(hashes);
+					}
+					catch (InterruptedException ex) {}
+					finally
+					{
+						done.countDown();
+					}
+				}
+			};
+			thread.start();
+		}
+
+		start.countDown();
+		done.await();
+
+		return total.get() * 1000 / NANOS_PER_RUN;
+	}
+}
@@ -0,0 +1,195 @@
+package com.googlecode.objectify.test.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.Embedded;
+import javax.persistence.Id;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.annotation.AlsoLoad;
+import com.googlecode.objectify.annotation.NotSaved;
+import com.googlecode.objectify.impl.Accessors;
+import com.googlecode.objectify.impl.GeneratedMetadata;
+import com.googlecode.objectify.impl.Transmog;
+
+/**
+ * <p>Times {@code Transmog.load()} and {@code Transmog.save()}, both for a typical entity
+ * and for one whose class has @AlsoLoad aliases and fields the stored entity lacks.
+ * Each is measured with the accessors written by the annotation processor, with
+ * MethodHandle accessors, and with plain reflection.
+ * This is not a unit test (the name keeps surefire away from it); run main() by hand
+ * with the test classpath.</p>
+ *
+ * <p>The numbers are only meaningful relative to each other on the same JVM.</p>
+ */
+public class TransmogBenchmark
+{
+	/** */
+	public static class Address
+	{
+		public String street;
+		public String city;
+		public int zip;
+	}
+
+	/** A reasonably typical entity with a mix of leaf, collection, and embedded fields */
+	public static class Thing
+	{
+		@Id Long id;
+		String name;
+		String description;
+		long count;
+		int rank;
+		double score;
+		boolean active;
+		Date created;
+		List<String> tags;
+		@Embedded Address home;
+		@Embedded Address work;
+	}
+
+	/** A class whose fields have been renamed twice; the stored entity lacks the @NotSaved half */
+	public static class Renamed
+	{
+		@Id Long id;
+		@AlsoLoad({"oldName", "olderName"}) String name;
+		@AlsoLoad({"oldDescription", "olderDescription"}) @NotSaved String description;
+		@AlsoLoad({"oldCount", "olderCount"}) long count;
+		@AlsoLoad({"oldRank", "olderRank"}) int rank;
+		@AlsoLoad({"oldScore", "olderScore"}) @NotSaved Double score;
+		@AlsoLoad({"oldActive", "olderActive"}) @NotSaved Boolean active;
+		@AlsoLoad({"oldCreated", "olderCreated"}) Date created;
+		@AlsoLoad({"oldTags", "olderTags"}) @NotSaved List<String> tags;
+	}
+
+	/** */
+	static final int WARMUP = 100000;
+	static final int ITERATIONS = 300000;
+
+	/** */
+	public static void main(String[] args)
+	{
+		LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+		helper.setUp();
+		try
+		{
+			ObjectifyFactory fact = new ObjectifyFactory();
+
+			// Accessors are picked when the Transmog is built, so build one of each
+			String[] variants = { "generated", "handles", "reflection" };
+			List<Transmog<Thing>> things = new ArrayList<Transmog<Thing>>();
+			List<Transmog<Renamed>> renames = new ArrayList<Transmog<Renamed>>();
+			for (String variant: variants)
+			{
+				GeneratedMetadata.setEnabled(variant.equals("generated"));
+				Accessors.setGenerateEnabled(variant.equals("handles"));
+
+				things.add(new Transmog<Thing>(fact.getConversions(), Thing.class));
+				renames.add(new Transmog<Renamed>(fact.getConversions(), Renamed.class));
+			}
+
+			Thing thing = makeThing();
+			Renamed renamed = makeRenamed();
+
+			for (int round=0; round<3; round++)
+			{
+				for (int i=0; i<variants.length; i++)
+				{
+					report("round " + round + " " + variants[i] + " typical", things.get(i), thing);
+					report("round " + round + " " + variants[i] + " renamed", renames.get(i), renamed);
+				}
+			}
+		}
+		finally
+		{
+			GeneratedMetadata.setEnabled(true);
+			Accessors.setGenerateEnabled(true);
+			helper.tearDown();
+		}
+	}
+
+	/** */
+	static Thing makeThing()
+	{
+		Thing thing = new Thing();
+		thing.id = 123L;
+		thing.name = "thing";
+		thing.description = "a thing which is being benchmarked";
+		thing.count = 456;
+		thing.rank = 7;
+		thing.score = 8.9;
+		thing.active = true;
+		thing.created = new Date();
+		thing.tags = new ArrayList<String>();
+		thing.tags.add("foo");
+		thing.tags.add("bar");
+		thing.home = new Address();
+		thing.home.street = "1 Main St";
+		thing.home.city = "Springfield";
+		thing.home.zip = 12345;
+		thing.work = new Address();
+		thing.work.street = "2 Market St";
+		thing.work.city = "Shelbyville";
+		thing.work.zip = 54321;
+
+		return thing;
+	}
+
+	/** */
+	static Renamed makeRenamed()
+	{
+		Renamed renamed = new Renamed();
+		renamed.id = 123L;
+		renamed.name = "renamed";
+		renamed.count = 456;
+		renamed.rank = 7;
+		renamed.created = new Date();
+
+		return renamed;
+	}
+
+	/** */
+	static <P> void report(String label, Transmog<P> transmog, P thing)
+	{
+		Entity entity = new Entity(KeyFactory.createKey("Thing", 123L));
+		transmog.save(thing, entity);
+
+		time(transmog, thing, entity, WARMUP);
+		long[] nanos = time(transmog, thing, entity, ITERATIONS);
+
+		System.out.println(label + "  save: " + (nanos[0] / ITERATIONS) + " ns/op   load: " + (nanos[1] / ITERATIONS) + " ns/op");
+	}
+
+	/** @return the elapsed nanos for save and load */
+	static <P> long[] time(Transmog<P> transmog, P thing, Entity entity, int iterations)
+	{
+		long start = System.nanoTime();
+		for (int i=0; i<iterations; i++)
+			transmog.save(thing, new Entity(KeyFactory.createKey("Thing", 123L)));
+
+		long middle = System.nanoTime();
+		for (int i=0; i<iterations; i++)
+			transmog.load(entity, newInstance(thing));
+
+		long end = System.nanoTime();
+
+		return new long[] { middle - start, end - middle };
+	}
+
+	/** */
+	@SuppressWarnings("unchecked")
+	static <P> P newInstance(P like)
+	{
+		try
+		{
+			return (P)like.getClass().newInstance();
+		}
+		catch (Exception ex) { throw new RuntimeException(ex); }
+	}
+}